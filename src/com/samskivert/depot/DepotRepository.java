@@ -7,6 +7,7 @@ package com.samskivert.depot;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 
 import java.util.Arrays;
@@ -19,6 +20,7 @@ import java.util.Set;
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.ObjectArrays;
 import com.google.common.collect.Sets;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -33,12 +35,14 @@ import com.samskivert.depot.expression.SQLExpression;
 import com.samskivert.depot.util.Sequence;
 import static com.samskivert.depot.Log.log;
 
+import com.samskivert.depot.impl.BatchModifier;
 import com.samskivert.depot.impl.DepotMarshaller;
 import com.samskivert.depot.impl.DepotMigrationHistoryRecord;
 import com.samskivert.depot.impl.DepotTypes;
 import com.samskivert.depot.impl.FindAllKeysQuery;
 import com.samskivert.depot.impl.FindAllQuery;
 import com.samskivert.depot.impl.FindOneQuery;
+import com.samskivert.depot.impl.KeyCacheKey;
 import com.samskivert.depot.impl.Modifier.*;
 import com.samskivert.depot.impl.Modifier;
 import com.samskivert.depot.impl.SQLBuilder;
@@ -344,6 +348,42 @@ public abstract class DepotRepository
         });
     }
 
+    /**
+     * Inserts all of the supplied persistent objects into the database. Records are grouped by
+     * class and inserted using JDBC batches of (at most) {@link #getBatchSize} statements, each
+     * batch being a single database operation. Records whose primary key must be generated by the
+     * database are inserted individually, as per {@link #insert}.
+     *
+     * @return the number of rows modified by this action, this should be the number of records.
+     *
+     * @throws DuplicateKeyException if an inserted record conflicts with the primary key (or any
+     * other unique key) of a record already in the database. Batches prior to the one containing
+     * the conflicting record will have been inserted.
+     * @throws DatabaseException if any problem is encountered communicating with the database.
+     */
+    public <T extends PersistentRecord> int insertAll (Collection<T> records)
+        throws DatabaseException
+    {
+        int mods = 0;
+        for (Map.Entry<Class<T>, List<T>> entry : groupByClass(records).entrySet()) {
+            Class<T> pClass = entry.getKey();
+            DepotMarshaller<T> marsh = _ctx.getMarshaller(pClass);
+            boolean generates = !Iterables.isEmpty(marsh.getValueGenerators());
+            List<T> batched = Lists.newArrayList();
+            for (T record : entry.getValue()) {
+                if (generates && marsh.getPrimaryKey(record, false) == null) {
+                    mods += insert(record);
+                } else {
+                    batched.add(record);
+                }
+            }
+            for (List<T> batch : Lists.partition(batched, _batchSize)) {
+                mods += sum(doBatchInsert(pClass, batch));
+            }
+        }
+        return mods;
+    }
+
     /**
      * Updates all fields of the supplied persistent object, using its primary key to identify the
      * row to be updated.
@@ -401,6 +441,30 @@ public abstract class DepotRepository
         return doUpdate(key, new UpdateClause(pClass, key, modifiedFields, record));
     }
 
+    /**
+     * Updates all fields of each of the supplied persistent objects, using their primary keys to
+     * identify the rows to be updated. Records are grouped by class and updated using JDBC batches
+     * of (at most) {@link #getBatchSize} statements, each batch being a single database operation
+     * that flushes all of its records from the cache at once.
+     *
+     * @return the number of rows modified by this action.
+     *
+     * @throws DatabaseException if any problem is encountered communicating with the database.
+     */
+    public <T extends PersistentRecord> int updateAll (Collection<T> records)
+        throws DatabaseException
+    {
+        int mods = 0;
+        for (Map.Entry<Class<T>, List<T>> entry : groupByClass(records).entrySet()) {
+            Class<T> pClass = entry.getKey();
+            requireNotComputed(pClass, "update");
+            for (List<T> batch : Lists.partition(entry.getValue(), _batchSize)) {
+                mods += sum(doBatchUpdate(pClass, batch));
+            }
+        }
+        return mods;
+    }
+
     /**
      * Updates the specified columns for all persistent objects matching the supplied key.
      *
@@ -653,6 +717,89 @@ public abstract class DepotRepository
         return created[0];
     }
 
+    /**
+     * Stores all of the supplied persistent objects in the database, as per {@link #store}.
+     * Records are grouped by class; those with primary keys are first updated in JDBC batches of
+     * (at most) {@link #getBatchSize} statements and those that matched no row are then inserted
+     * in batches. Where the JDBC driver does not report update counts, the rows that exist are
+     * looked up with a single query per batch. Records without a primary key are stored
+     * individually.
+     *
+     * @return the number of records that were created (the remainder having been updated).
+     *
+     * @throws DatabaseException if any problem is encountered communicating with the database.
+     */
+    public <T extends PersistentRecord> int storeAll (Collection<T> records)
+        throws DatabaseException
+    {
+        int created = 0;
+        for (Map.Entry<Class<T>, List<T>> entry : groupByClass(records).entrySet()) {
+            Class<T> pClass = entry.getKey();
+            requireNotComputed(pClass, "store");
+            DepotMarshaller<T> marsh = _ctx.getMarshaller(pClass);
+
+            // split out those records we can update in batches
+            List<T> keyed = Lists.newArrayList(), individual = Lists.newArrayList();
+            for (T record : entry.getValue()) {
+                if (marsh.hasPrimaryKey() && marsh.getPrimaryKey(record) != null) {
+                    keyed.add(record);
+                } else {
+                    individual.add(record);
+                }
+            }
+
+            for (List<T> batch : Lists.partition(keyed, _batchSize)) {
+                int[] counts = doBatchUpdate(pClass, batch);
+                List<T> inserts = Lists.newArrayList(), unreported = Lists.newArrayList();
+                for (int ii = 0; ii < counts.length; ii++) {
+                    T record = batch.get(ii);
+                    if (counts[ii] == 0) {
+                        inserts.add(record);
+                    } else if (counts[ii] == Statement.SUCCESS_NO_INFO) {
+                        unreported.add(record);
+                    } else {
+                        cacheStored(marsh, record);
+                    }
+                }
+                if (!unreported.isEmpty()) {
+                    // the driver ran these updates but didn't tell us which matched a row; rather
+                    // than updating them all again, look up which rows exist and insert the rest
+                    List<Key<T>> keys = Lists.newArrayListWithCapacity(unreported.size());
+                    for (T record : unreported) {
+                        keys.add(marsh.getPrimaryKey(record));
+                    }
+                    // (a KeySet is Iterable, so pass it as an array to get the varargs version)
+                    Set<Key<T>> existing = Sets.newHashSet(findAllKeys(
+                        pClass, true, new QueryClause[] { KeySet.newKeySet(pClass, keys) }));
+                    for (T record : unreported) {
+                        if (existing.contains(marsh.getPrimaryKey(record))) {
+                            cacheStored(marsh, record);
+                        } else {
+                            inserts.add(record);
+                        }
+                    }
+                }
+                if (!inserts.isEmpty()) {
+                    try {
+                        doBatchInsert(pClass, inserts);
+                        created += inserts.size();
+                    } catch (DuplicateKeyException dke) {
+                        // someone else inserted some of these in the meantime; fall back to
+                        // storing them one at a time, which will sort things out
+                        individual.addAll(inserts);
+                    }
+                }
+            }
+
+            for (T record : individual) {
+                if (store(record)) {
+                    created++;
+                }
+            }
+        }
+        return created;
+    }
+
     /**
      * Deletes all persistent objects from the database matching the primary key of the supplied
      * object (which should be one or zero).
@@ -684,6 +831,37 @@ public abstract class DepotRepository
         return deleteAll(primaryKey.getPersistentClass(), primaryKey, primaryKey);
     }
 
+    /**
+     * Deletes all persistent objects from the database matching the supplied primary keys. Keys
+     * are grouped by class and deleted (and flushed from the cache) in sets of (at most) {@link
+     * #getBatchSize} keys, each set being deleted with a single statement.
+     *
+     * @return the number of rows deleted by this action.
+     *
+     * @throws DatabaseException if any problem is encountered communicating with the database.
+     */
+    public <T extends PersistentRecord> int deleteAll (Collection<Key<T>> primaryKeys)
+        throws DatabaseException
+    {
+        Map<Class<T>, List<Key<T>>> byClass = Maps.newLinkedHashMap();
+        for (Key<T> key : primaryKeys) {
+            List<Key<T>> keys = byClass.get(key.getPersistentClass());
+            if (keys == null) {
+                byClass.put(key.getPersistentClass(), keys = Lists.newArrayList());
+            }
+            keys.add(key);
+        }
+
+        int mods = 0;
+        for (Map.Entry<Class<T>, List<Key<T>>> entry : byClass.entrySet()) {
+            for (List<Key<T>> batch : Lists.partition(entry.getValue(), _batchSize)) {
+                KeySet<T> keys = KeySet.newKeySet(entry.getKey(), batch);
+                mods += deleteAll(entry.getKey(), keys, keys);
+            }
+        }
+        return mods;
+    }
+
     /**
      * Deletes all persistent objects from the database that match the supplied where clause.
      *
@@ -769,6 +947,25 @@ public abstract class DepotRepository
         });
     }
 
+    /**
+     * Returns the maximum number of statements sent to the database in a single batch (or keys
+     * deleted by a single statement) by the bulk operations, {@link #insertAll}, {@link
+     * #updateAll}, {@link #storeAll} and {@link #deleteAll(Collection)}.
+     */
+    public int getBatchSize ()
+    {
+        return _batchSize;
+    }
+
+    /**
+     * Configures the maximum batch size used by our bulk operations. See {@link #getBatchSize}.
+     */
+    public void setBatchSize (int batchSize)
+    {
+        checkArgument(batchSize > 0, "Batch size must be positive.");
+        _batchSize = batchSize;
+    }
+
     /**
      * Registers a data migration for this repository. This migration will only be run once and its
      * unique identifier will be stored persistently to ensure that it is never run again on the
@@ -958,6 +1155,101 @@ public abstract class DepotRepository
         }
     }
 
+    /**
+     * Inserts the supplied records (all of which have their primary keys or need no generated
+     * values) in a single batched operation, caching them as {@link #insert} does.
+     *
+     * @return the number of rows modified by each insert.
+     */
+    protected <T extends PersistentRecord> int[] doBatchInsert (Class<T> pClass, List<T> records)
+        throws DatabaseException
+    {
+        DepotMarshaller<T> marsh = _ctx.getMarshaller(pClass);
+        Set<String> identityFields = Collections.emptySet();
+        List<InsertClause> inserts = Lists.newArrayListWithCapacity(records.size());
+        for (T record : records) {
+            inserts.add(new InsertClause(pClass, record, identityFields));
+        }
+        BatchModifier modifier = new BatchModifier(
+            _ctx.getSQLBuilder(DepotTypes.getDepotTypes(_ctx, inserts)), pClass, inserts,
+            true, null);
+        _ctx.invoke(modifier);
+
+        for (T record : records) {
+            Key<T> key = marsh.getPrimaryKey(record, false);
+            if (key != null) {
+                _ctx.cacheStore(CacheAdapter.CacheCategory.RECORD, new KeyCacheKey(key),
+                                record.clone());
+            }
+        }
+        return modifier.getCounts();
+    }
+
+    /**
+     * Updates all fields of the supplied records (all of which must have primary keys) in a single
+     * batched operation, flushing them from the cache beforehand.
+     *
+     * @return the number of rows modified by each update.
+     */
+    protected <T extends PersistentRecord> int[] doBatchUpdate (Class<T> pClass, List<T> records)
+        throws DatabaseException
+    {
+        DepotMarshaller<T> marsh = _ctx.getMarshaller(pClass);
+        List<Key<T>> keys = Lists.newArrayListWithCapacity(records.size());
+        List<UpdateClause> updates = Lists.newArrayListWithCapacity(records.size());
+        for (T record : records) {
+            Key<T> key = marsh.getPrimaryKey(record);
+            checkArgument(key != null, "Can't update record with null primary key.");
+            keys.add(key);
+            updates.add(new UpdateClause(pClass, key, marsh.getColumnFieldNames(), record));
+        }
+        BatchModifier modifier = new BatchModifier(
+            _ctx.getSQLBuilder(DepotTypes.getDepotTypes(_ctx, updates)), pClass, updates,
+            false, KeySet.newKeySet(pClass, keys));
+        _ctx.invoke(modifier);
+        return modifier.getCounts();
+    }
+
+    /**
+     * Caches a record that was updated by {@link #storeAll}, as {@link #store} does.
+     */
+    protected <T extends PersistentRecord> void cacheStored (DepotMarshaller<T> marsh, T record)
+    {
+        _ctx.cacheStore(CacheAdapter.CacheCategory.RECORD,
+                        new KeyCacheKey(marsh.getPrimaryKey(record)), record.clone());
+    }
+
+    /**
+     * Groups the supplied records by class, preserving their order within each class.
+     */
+    protected static <T extends PersistentRecord> Map<Class<T>, List<T>> groupByClass (
+        Collection<T> records)
+    {
+        Map<Class<T>, List<T>> groups = Maps.newLinkedHashMap();
+        for (T record : records) {
+            @SuppressWarnings("unchecked") Class<T> pClass = (Class<T>)record.getClass();
+            List<T> group = groups.get(pClass);
+            if (group == null) {
+                groups.put(pClass, group = Lists.newArrayList());
+            }
+            group.add(record);
+        }
+        return groups;
+    }
+
+    /**
+     * Totals the supplied batch update counts, counting rows for which the driver reported no
+     * count as modified.
+     */
+    protected static int sum (int[] counts)
+    {
+        int total = 0;
+        for (int count : counts) {
+            total += (count == Statement.SUCCESS_NO_INFO) ? 1 : count;
+        }
+        return total;
+    }
+
     /**
      * Concise way to transform query results.
      */
@@ -968,6 +1260,10 @@ public abstract class DepotRepository
 
     protected PersistenceContext _ctx;
     protected List<DataMigration> _dataMigs = Lists.newArrayList();
+    protected int _batchSize = DEFAULT_BATCH_SIZE;
+
+    /** The default maximum size of the batches issued by our bulk operations. */
+    protected static final int DEFAULT_BATCH_SIZE = 1000;
 
     protected static final SQLExpression<?>[] EMPTY_CONDS = new SQLExpression<?>[0];
 }
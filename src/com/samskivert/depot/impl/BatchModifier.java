@@ -0,0 +1,110 @@
+//
+// Depot library - a Java relational persistence library
+// https://github.com/threerings/depot/blob/master/LICENSE
+
+package com.samskivert.depot.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.List;
+
+import com.samskivert.depot.CacheInvalidator;
+import com.samskivert.depot.PersistentRecord;
+import com.samskivert.depot.Stats;
+import com.samskivert.depot.clause.QueryClause;
+import com.samskivert.depot.impl.jdbc.DatabaseLiaison;
+import com.samskivert.depot.impl.jdbc.JDBCUtil;
+
+/**
+ * A modifier that executes a list of update clauses (inserts, updates or deletes on a single
+ * persistent class) using JDBC batching. Consecutive clauses that generate identical SQL share a
+ * single prepared statement and are sent to the database in a single batch; the cache invalidator
+ * (if any) is run once for the whole lot.
+ */
+public class BatchModifier extends Modifier
+{
+    public BatchModifier (SQLBuilder builder, Class<? extends PersistentRecord> type,
+                          List<? extends QueryClause> clauses, boolean inserts,
+                          CacheInvalidator invalidator)
+    {
+        super(invalidator);
+        _builder = builder;
+        _type = type;
+        _clauses = clauses;
+        _inserts = inserts;
+        _counts = new int[clauses.size()];
+    }
+
+    /**
+     * Returns the number of rows modified by each of our clauses, or {@link
+     * Statement#SUCCESS_NO_INFO} for clauses whose count was not reported by the driver. This is
+     * only valid after the modifier has been successfully invoked.
+     */
+    public int[] getCounts ()
+    {
+        return _counts;
+    }
+
+    @Override // from Modifier
+    public void updateStats (Stats stats)
+    {
+        stats.noteModification(_type);
+    }
+
+    @Override // from Modifier
+    protected int invoke (Connection conn, DatabaseLiaison liaison)
+        throws SQLException
+    {
+        PreparedStatement stmt = null;
+        String sql = null;
+        int start = 0;
+        try {
+            for (int ii = 0, ll = _clauses.size(); ii < ll; ii++) {
+                _builder.newQuery(_clauses.get(ii));
+                String query = _builder.getQuery();
+                if (!query.equals(sql)) {
+                    // this clause can't share the current batch, so send that off and start anew
+                    if (stmt != null) {
+                        executeBatch(stmt, start);
+                        JDBCUtil.close(stmt);
+                    }
+                    stmt = _inserts ? _builder.prepareInsert(conn) : _builder.prepare(conn);
+                    sql = query;
+                    start = ii;
+                }
+                _builder.addBatch(conn, stmt);
+            }
+            if (stmt != null) {
+                executeBatch(stmt, start);
+            }
+        } finally {
+            JDBCUtil.close(stmt);
+        }
+
+        int mods = 0;
+        for (int count : _counts) {
+            mods += (count == Statement.SUCCESS_NO_INFO) ? 1 : count;
+        }
+        return mods;
+    }
+
+    /**
+     * Executes the supplied statement's batch, recording its results starting at the supplied
+     * clause index.
+     */
+    protected void executeBatch (PreparedStatement stmt, int start)
+        throws SQLException
+    {
+        int[] counts = stmt.executeBatch();
+        System.arraycopy(counts, 0, _counts, start, counts.length);
+    }
+
+    protected SQLBuilder _builder;
+    protected Class<? extends PersistentRecord> _type;
+    protected List<? extends QueryClause> _clauses;
+    protected boolean _inserts;
+    protected int[] _counts;
+}
@@ -77,6 +77,26 @@ public abstract class SQLBuilder
             conn, conn.prepareStatement(buildQuery(), PreparedStatement.RETURN_GENERATED_KEYS));
     }
 
+    /**
+     * Returns the SQL generated by the most recent call to {@link #newQuery}. Queries that generate
+     * identical SQL may be executed in a single JDBC batch; see {@link #addBatch}.
+     */
+    public String getQuery ()
+    {
+        return buildQuery();
+    }
+
+    /**
+     * Binds the arguments of the query most recently built by {@link #newQuery} to the supplied
+     * statement and adds them to its batch. The statement must have been prepared (via {@link
+     * #prepare} or {@link #prepareInsert}) for a query that generated identical SQL.
+     */
+    public void addBatch (Connection conn, PreparedStatement stmt)
+        throws SQLException
+    {
+        prepare(conn, stmt).addBatch();
+    }
+
     /**
      * Generates the SQL needed to construct a database column for field represented by the given
      * {@link FieldMarshaller}.
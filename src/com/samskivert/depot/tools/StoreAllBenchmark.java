@@ -0,0 +1,275 @@
+//
+// Depot library - a Java relational persistence library
+// https://github.com/threerings/depot/blob/master/LICENSE
+
+package com.samskivert.depot.tools;
+
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+
+import net.sf.ehcache.CacheManager;
+
+import com.samskivert.depot.DepotRepository;
+import com.samskivert.depot.EHCacheAdapter;
+import com.samskivert.depot.Key;
+import com.samskivert.depot.KeySet;
+import com.samskivert.depot.PersistenceContext;
+import com.samskivert.depot.PersistentRecord;
+import com.samskivert.depot.StaticConnectionProvider;
+import com.samskivert.depot.annotation.Entity;
+import com.samskivert.depot.annotation.Id;
+import com.samskivert.depot.expression.ColumnExp;
+import com.samskivert.depot.impl.KeyCacheKey;
+
+/**
+ * Checks {@link DepotRepository#storeAll} against an in-memory HSQLDB database, both with the
+ * update counts the driver reports and with every count replaced by {@link
+ * Statement#SUCCESS_NO_INFO} (as some drivers report them), and then compares its throughput to
+ * that of calling {@link DepotRepository#store} for each record. Half of the stored records
+ * already exist and half are new.
+ */
+public class StoreAllBenchmark
+{
+    /** The record we store. */
+    @Entity(name="StoreAllBenchmarkRecord")
+    public static class BenchRecord extends PersistentRecord
+    {
+        // AUTO-GENERATED: FIELDS START
+        public static final Class<BenchRecord> _R = BenchRecord.class;
+        public static final ColumnExp<Integer> ID = colexp(_R, "id");
+        public static final ColumnExp<Integer> VALUE = colexp(_R, "value");
+        // AUTO-GENERATED: FIELDS END
+
+        public static final int SCHEMA_VERSION = 1;
+
+        /** The record's unique identifier. */
+        @Id public int id;
+
+        /** The value we update. */
+        public int value;
+
+        // AUTO-GENERATED: METHODS START
+        /**
+         * Create and return a primary {@link Key} to identify a {@link BenchRecord}
+         * with the supplied key values.
+         */
+        public static Key<BenchRecord> getKey (int id)
+        {
+            return newKey(_R, id);
+        }
+
+        /** Register the key fields in an order matching the getKey() factory. */
+        static { registerKeyFields(ID); }
+        // AUTO-GENERATED: METHODS END
+    }
+
+    /** The repository through which we store our records. */
+    public static class BenchRepository extends DepotRepository
+    {
+        /** If true, our batch updates report {@link Statement#SUCCESS_NO_INFO} for every
+         * statement. */
+        public boolean reportNoInfo;
+
+        /** The number of calls to {@link #store} since this was last cleared. */
+        public int stores;
+
+        public BenchRepository (PersistenceContext ctx)
+        {
+            super(ctx);
+        }
+
+        @Override
+        public <T extends PersistentRecord> boolean store (T record)
+        {
+            stores++;
+            return super.store(record);
+        }
+
+        @Override
+        protected <T extends PersistentRecord> int[] doBatchUpdate (
+            Class<T> pClass, List<T> records)
+        {
+            int[] counts = super.doBatchUpdate(pClass, records);
+            if (reportNoInfo) {
+                Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+            }
+            return counts;
+        }
+
+        @Override
+        protected void getManagedRecords (Set<Class<? extends PersistentRecord>> classes)
+        {
+            classes.add(BenchRecord.class);
+        }
+    }
+
+    public static void main (String[] args)
+    {
+        int count = DEFAULT_RECORDS;
+        if (args.length > 1) {
+            System.err.println("Usage: StoreAllBenchmark [records]");
+            System.exit(-1);
+        } else if (args.length == 1) {
+            try {
+                count = Integer.parseInt(args[0]);
+            } catch (NumberFormatException nfe) {
+                System.err.println("Usage: StoreAllBenchmark [records]");
+                System.exit(-1);
+            }
+        }
+
+        PersistenceContext ctx = new PersistenceContext(
+            "storeall", StaticConnectionProvider.forTest("storeall"),
+            new EHCacheAdapter(CacheManager.create(), "storeall"));
+        BenchRepository repo = new BenchRepository(ctx);
+        ctx.initializeRepositories(true);
+        StoreAllBenchmark bench = new StoreAllBenchmark(repo, ctx);
+
+        // make sure both paths store and cache what they should
+        boolean passed = bench.check(false, count) & bench.check(true, count);
+        System.out.println(passed ? "storeAll checks passed." : "storeAll checks FAILED.");
+
+        // run everything through a few times so that the JIT has settled before we report
+        String[] labels = { "store", "storeAll", "storeAll (no counts)" };
+        for (int ii = 0; ii < WARMUP_ROUNDS; ii++) {
+            for (int jj = 0; jj < labels.length; jj++) {
+                bench.time(jj, count);
+            }
+        }
+        for (int ii = 0; ii < labels.length; ii++) {
+            long elapsed = bench.time(ii, count);
+            System.out.println(labels[ii] + ": " + (elapsed / 1000000L) + " ms, " +
+                (elapsed / (count * 1000L)) + " us/record");
+        }
+        // (we don't shut the context down, as the adapter's replicators complain without peers)
+        System.exit(passed ? 0 : -1);
+    }
+
+    public StoreAllBenchmark (BenchRepository repo, PersistenceContext ctx)
+    {
+        _repo = repo;
+        _ctx = ctx;
+    }
+
+    /**
+     * Stores the specified number of records, half existing and half new, with {@link
+     * DepotRepository#storeAll} and verifies the results.
+     *
+     * @return true if the check passed.
+     */
+    protected boolean check (boolean reportNoInfo, int count)
+    {
+        List<BenchRecord> records = createRecords(count);
+        _repo.reportNoInfo = reportNoInfo;
+        _repo.stores = 0;
+        int created = _repo.storeAll(records);
+        _repo.reportNoInfo = false;
+
+        String mode = reportNoInfo ? "no counts" : "counts";
+        boolean passed = true;
+        if (created != count / 2) {
+            System.err.println("[" + mode + "] Created " + created + " records, expected " +
+                (count / 2) + ".");
+            passed = false;
+        }
+        if (_repo.stores != 0) {
+            System.err.println("[" + mode + "] Stored " + _repo.stores +
+                " keyed records individually.");
+            passed = false;
+        }
+
+        // compare the database and cache contents to what we stored
+        List<Key<BenchRecord>> keys = Lists.newArrayListWithCapacity(count);
+        for (BenchRecord record : records) {
+            keys.add(BenchRecord.getKey(record.id));
+        }
+        List<BenchRecord> stored = _repo.from(BenchRecord.class).noCache().where(
+            KeySet.newKeySet(BenchRecord.class, keys)).select();
+        if (stored.size() != count) {
+            System.err.println("[" + mode + "] Found " + stored.size() + " rows, expected " +
+                count + ".");
+            passed = false;
+        }
+        for (BenchRecord record : stored) {
+            if (record.value != record.id) {
+                System.err.println("[" + mode + "] Row " + record.id + " has value " +
+                    record.value + ".");
+                passed = false;
+            }
+        }
+        for (Key<BenchRecord> key : keys) {
+            BenchRecord cached = _ctx.cacheLookup(new KeyCacheKey(key));
+            if (cached == null || cached.value != cached.id) {
+                System.err.println("[" + mode + "] Bad cached record for " + key + ": " +
+                    cached + ".");
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * Stores the specified number of records, half existing and half new, with the identified
+     * method.
+     *
+     * @return the nanoseconds spent storing the records.
+     */
+    protected long time (int method, int count)
+    {
+        List<BenchRecord> records = createRecords(count);
+        _repo.reportNoInfo = (method == 2);
+        long start = System.nanoTime();
+        if (method == 0) {
+            for (BenchRecord record : records) {
+                _repo.store(record);
+            }
+        } else {
+            _repo.storeAll(records);
+        }
+        long elapsed = System.nanoTime() - start;
+        _repo.reportNoInfo = false;
+        return elapsed;
+    }
+
+    /**
+     * Creates the specified number of records with fresh ids, inserting every other one into the
+     * database so that half of them exist. Each record's value is set to its id, which differs
+     * from the value of the inserted row.
+     */
+    protected List<BenchRecord> createRecords (int count)
+    {
+        List<BenchRecord> records = Lists.newArrayListWithCapacity(count);
+        List<BenchRecord> existing = Lists.newArrayListWithCapacity(count / 2);
+        for (int ii = 0; ii < count; ii++) {
+            BenchRecord record = new BenchRecord();
+            record.id = _nextId++;
+            if (ii % 2 == 1) {
+                existing.add(record);
+            } else {
+                record.value = record.id;
+            }
+            records.add(record);
+        }
+        _repo.insertAll(existing);
+        for (BenchRecord record : existing) {
+            record.value = record.id;
+        }
+        return records;
+    }
+
+    /** The repository through which we store records. */
+    protected BenchRepository _repo;
+
+    /** The context whose cache we check. */
+    protected PersistenceContext _ctx;
+
+    /** The next id to assign. */
+    protected int _nextId = 1;
+
+    protected static final int DEFAULT_RECORDS = 10000;
+    protected static final int WARMUP_ROUNDS = 3;
+}
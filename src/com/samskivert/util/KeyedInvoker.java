@@ -0,0 +1,456 @@
+//
+// samskivert library - useful routines for java programs
+// Copyright (C) 2001-2012 Michael Bayne, et al.
+// http://github.com/samskivert/samskivert/blob/master/COPYING
+
+package com.samskivert.util;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import static com.samskivert.util.UtilLog.log;
+
+/**
+ * An invoker that runs {@link Invoker.Unit}s on a pool of threads rather than a single thread.
+ * Each unit is posted with a key (a player id, a repository, etc.) and units with the same key
+ * are invoked one at a time in the order in which they were posted, while units with different
+ * keys are invoked in parallel. Units posted without a key share a single default key, and are
+ * thus invoked serially as they would be on a regular {@link Invoker}.
+ *
+ * <p> Each key with outstanding units gets a serial queue, which is scheduled on a work-stealing
+ * {@link ForkJoinPool}. A worker invokes one unit from the queue and then reschedules the queue
+ * (if it is not empty) behind any other queued work, so that a key with a deep backlog does not
+ * starve the others. As with {@link Invoker}, a unit whose {@link Invoker.Unit#invoke} returns
+ * true is passed to the result receiver for {@link Invoker.Unit#handleResult} processing.
+ *
+ * <p> Unit run times and queue wait times are profiled as with {@link Invoker}, and wait times
+ * and maximum queue depths are also tracked per queue name (see {@link #getQueueName}).
+ */
+public class KeyedInvoker
+    implements Executor, RunQueue
+{
+    /**
+     * Creates a keyed invoker that will invoke units on the specified number of threads and post
+     * results to the supplied result receiver.
+     */
+    public KeyedInvoker (String name, Executor resultReceiver, int threads)
+    {
+        _name = name;
+        _receiver = resultReceiver;
+        _pool = new ForkJoinPool(threads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            public ForkJoinWorkerThread newThread (ForkJoinPool pool) {
+                ForkJoinWorkerThread thread =
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(_name + "-" + thread.getPoolIndex());
+                return thread;
+            }
+        }, null, true);
+    }
+
+    /**
+     * Returns the name of this invoker.
+     */
+    public String getName ()
+    {
+        return _name;
+    }
+
+    /**
+     * Returns the number of threads on which this invoker invokes units.
+     */
+    public int getThreadCount ()
+    {
+        return _pool.getParallelism();
+    }
+
+    /**
+     * Set the long threshold for this invoker. Units that do not specify their own threshold
+     * will be reported as "long" if their duration exceeds this time.
+     */
+    public void setLongThreshold (long millis)
+    {
+        _longThreshold = millis;
+    }
+
+    /**
+     * Sets the parameters of the unit profiling histograms. This only affects units (and queues)
+     * that have not yet been profiled, so should be called early on in program initialization.
+     *
+     * @param bucketWidthMs size of time buckets, in milliseconds
+     * @param bucketCount number of time buckets
+     */
+    public void setProfilingParameters (int bucketWidthMs, int bucketCount)
+    {
+        _profileBucketWidth = bucketWidthMs;
+        _profileBucketCount = bucketCount;
+    }
+
+    /**
+     * Posts a unit to be invoked after all previously posted units with the same key.
+     *
+     * @param key the key on which to serialize the unit, or null for the default key.
+     */
+    public void postUnit (Object key, Invoker.Unit unit)
+    {
+        // note the time
+        unit.queueStamp = System.currentTimeMillis();
+
+        SerialQueue queue;
+        boolean schedule;
+        synchronized (_queues) {
+            // check for shutdown under the same lock as shutdown() and the queue draining, so that
+            // once we have queued our unit, the pool cannot be shut down before it is invoked
+            if (_shutdownRequested) {
+                throw new IllegalStateException("Cannot post units to shutdown invoker.");
+            }
+            queue = _queues.get(key);
+            if (queue == null) {
+                _queues.put(key, queue = new SerialQueue(key));
+            }
+            queue.units.add(unit);
+            _pending++;
+
+            // keep track of the deepest backlog seen on each named queue
+            int depth = queue.units.size();
+            Integer odepth = _maxDepths.get(queue.name);
+            if (odepth == null || depth > odepth) {
+                _maxDepths.put(queue.name, depth);
+            }
+
+            schedule = !queue.scheduled;
+            queue.scheduled = true;
+        }
+        if (schedule) {
+            _pool.execute(queue);
+        }
+    }
+
+    /**
+     * Posts a unit to be invoked on the default key, after all previously posted units that were
+     * posted without a key.
+     */
+    public void postUnit (Invoker.Unit unit)
+    {
+        postUnit(null, unit);
+    }
+
+    /**
+     * Posts a runnable to be run after all previously posted units with the same key.
+     */
+    public void postRunnable (Object key, final Runnable r)
+    {
+        postUnit(key, new Invoker.Unit() {
+            @Override public boolean invoke () {
+                r.run();
+                return false;
+            }
+
+            @Override public String toString () {
+                return "Posted Runnable: " + String.valueOf(r);
+            }
+        });
+    }
+
+    /**
+     * Returns the number of units waiting to be processed across all keys. As with {@link
+     * Invoker#getPendingUnits}, this does not include units that are currently being invoked.
+     */
+    public int getPendingUnits ()
+    {
+        synchronized (_queues) {
+            return _pending;
+        }
+    }
+
+    /**
+     * Returns the number of keys that currently have units waiting or being invoked.
+     */
+    public int getActiveQueues ()
+    {
+        synchronized (_queues) {
+            return _queues.size();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the maximum queue depth observed for each queue name since the last
+     * reset, optionally resetting the maxima.
+     */
+    public Map<String, Integer> getMaxQueueDepths (boolean reset)
+    {
+        synchronized (_queues) {
+            Map<String, Integer> depths = new HashMap<String, Integer>(_maxDepths);
+            if (reset) {
+                _maxDepths.clear();
+            }
+            return depths;
+        }
+    }
+
+    // from Executor
+    public void execute (Runnable command)
+    {
+        postRunnable(command);
+    }
+
+    // from RunQueue
+    public void postRunnable (Runnable r)
+    {
+        postRunnable(null, r);
+    }
+
+    // from RunQueue
+    public boolean isDispatchThread ()
+    {
+        Thread thread = Thread.currentThread();
+        return (thread instanceof ForkJoinWorkerThread) &&
+            ((ForkJoinWorkerThread)thread).getPool() == _pool;
+    }
+
+    // from RunQueue
+    public boolean isRunning ()
+    {
+        return !_pool.isShutdown();
+    }
+
+    /**
+     * Appends a line for each profiled unit class (and queue wait time) to the supplied buffer,
+     * optionally clearing the profiles.
+     */
+    public void appendProfiles (StringBuilder buf, boolean reset)
+    {
+        synchronized (_tracker) {
+            for (Map.Entry<Object, Invoker.UnitProfile> entry : _tracker.entrySet()) {
+                Object key = entry.getKey();
+                if (key instanceof Class<?>) {
+                    key = StringUtil.shortClassName((Class<?>)key);
+                }
+                buf.append("  ").append(key).append(" ");
+                buf.append(entry.getValue()).append("\n");
+                if (reset) {
+                    entry.getValue().clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if {@link #shutdown} has been called, after which no further units may be
+     * posted. {@link #isRunning} may still return true until all queued units have been invoked.
+     */
+    public boolean shutdownRequested ()
+    {
+        return _shutdownRequested;
+    }
+
+    /**
+     * Shuts down the invoker once all currently queued units have been processed. No further
+     * units may be posted once this has been called.
+     */
+    public void shutdown ()
+    {
+        synchronized (_queues) {
+            _shutdownRequested = true;
+            if (_queues.isEmpty()) {
+                _pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Returns the name under which metrics are collected for the queue of units with the supplied
+     * key. By default keys are grouped by class ({@link Class} and {@link String} keys name their
+     * own group), so that, for example, per-player queues are tracked in aggregate.
+     */
+    protected String getQueueName (Object key)
+    {
+        if (key == null) {
+            return "default";
+        } else if (key instanceof String) {
+            return (String)key;
+        } else if (key instanceof Class<?>) {
+            return StringUtil.shortClassName((Class<?>)key);
+        } else {
+            return StringUtil.shortClassName(key);
+        }
+    }
+
+    /**
+     * Invokes a unit taken from the supplied queue. Called on a pool thread.
+     */
+    protected void invokeUnit (SerialQueue queue, Invoker.Unit unit)
+    {
+        long start;
+        if (PERF_TRACK) {
+            // record the time spent on the queue as a special unit
+            start = System.currentTimeMillis();
+            long wait = start - unit.queueStamp;
+            recordMetrics("queue_wait_time", wait);
+            recordMetrics(queue.waitKey, wait);
+        } else {
+            start = 0L;
+        }
+
+        try {
+            willInvokeUnit(unit, start);
+            if (unit.invoke()) {
+                // if it returned true, post it to the receiver thread for result processing
+                _receiver.execute(unit);
+            }
+            didInvokeUnit(unit, start);
+
+        } catch (Throwable t) {
+            log.warning("Invocation unit failed", "invoker", _name, "unit", unit, t);
+        }
+    }
+
+    /**
+     * Called on a pool thread before we process an invoker unit.
+     *
+     * @param unit the unit about to be invoked.
+     * @param start a timestamp recorded immediately before invocation if {@link #PERF_TRACK} is
+     * enabled, 0L otherwise.
+     */
+    protected void willInvokeUnit (Invoker.Unit unit, long start)
+    {
+    }
+
+    /**
+     * Called on a pool thread after we process an invoker unit.
+     *
+     * @param unit the unit that was invoked.
+     * @param start a timestamp recorded immediately before invocation if {@link #PERF_TRACK} is
+     * enabled, 0L otherwise.
+     */
+    protected void didInvokeUnit (Invoker.Unit unit, long start)
+    {
+        // track some performance metrics
+        if (PERF_TRACK) {
+            long duration = System.currentTimeMillis() - start;
+            Object key = unit.getClass();
+            recordMetrics(key, duration);
+
+            // report long runners
+            long thresh = unit.getLongThreshold();
+            if (thresh == 0) {
+                thresh = _longThreshold;
+            }
+            if (duration > thresh) {
+                StringBuilder msg = new StringBuilder();
+                msg.append((duration >= 10*thresh) ? "Really long" : "Long");
+                msg.append(" invoker unit [invoker=").append(_name).append(", unit=").append(unit);
+                msg.append(" (").append(key).append("), time=").append(duration).append("ms");
+                if (unit.getDetail() != null) {
+                    msg.append(", detail=").append(unit.getDetail());
+                }
+                log.warning(msg.append("].").toString());
+            }
+        }
+    }
+
+    protected void recordMetrics (Object key, long duration)
+    {
+        synchronized (_tracker) {
+            Invoker.UnitProfile prof = _tracker.get(key);
+            if (prof == null) {
+                prof = new Invoker.UnitProfile(_profileBucketWidth, _profileBucketCount);
+                _tracker.put(key, prof);
+            }
+            prof.record(duration);
+        }
+    }
+
+    /** The units posted with a particular key, which are invoked one at a time. */
+    protected class SerialQueue implements Runnable
+    {
+        /** The key shared by our units. */
+        public final Object key;
+
+        /** The name under which we are profiled. */
+        public final String name;
+
+        /** The profiling key for our queue wait times. */
+        public final String waitKey;
+
+        /** Our units awaiting invocation. */
+        public final ArrayDeque<Invoker.Unit> units = new ArrayDeque<Invoker.Unit>();
+
+        /** Whether we are currently scheduled on (or running on) the pool. */
+        public boolean scheduled;
+
+        public SerialQueue (Object key) {
+            this.key = key;
+            this.name = getQueueName(key);
+            this.waitKey = "queue_wait_time:" + name;
+        }
+
+        // from Runnable
+        public void run () {
+            Invoker.Unit unit;
+            synchronized (_queues) {
+                unit = units.poll();
+                _pending--;
+            }
+
+            invokeUnit(this, unit);
+
+            boolean reschedule;
+            synchronized (_queues) {
+                reschedule = !units.isEmpty();
+                if (!reschedule) {
+                    scheduled = false;
+                    _queues.remove(key);
+                    if (_shutdownRequested && _queues.isEmpty()) {
+                        _pool.shutdown();
+                    }
+                }
+            }
+            if (reschedule) {
+                _pool.execute(this);
+            }
+        }
+    }
+
+    /** The name of this invoker (and prefix of its thread names). */
+    protected String _name;
+
+    /** The pool on which our serial queues are run. */
+    protected ForkJoinPool _pool;
+
+    /** The result receiver with which we're working. */
+    protected Executor _receiver;
+
+    /** The queues of all keys with outstanding units. Also used to synchronize our queue
+     * bookkeeping. */
+    protected Map<Object, SerialQueue> _queues = new HashMap<Object, SerialQueue>();
+
+    /** The total number of units awaiting invocation. */
+    protected int _pending;
+
+    /** The maximum depth observed on each named queue since the last reset. */
+    protected Map<String, Integer> _maxDepths = new HashMap<String, Integer>();
+
+    /** Tracks the counts of invocations by unit's class (and queue wait times). */
+    protected HashMap<Object, Invoker.UnitProfile> _tracker =
+        new HashMap<Object, Invoker.UnitProfile>();
+
+    /** Default size of buckets to use when profiling unit times. */
+    protected int _profileBucketWidth = 50;
+
+    /** Default number of buckets to use when profiling unit times. */
+    protected int _profileBucketCount = 10;
+
+    /** The long threshold for this particular invoker. */
+    protected long _longThreshold = 500L;
+
+    /** True after {@link #shutdown} has been called. */
+    protected volatile boolean _shutdownRequested;
+
+    /** Whether or not to track invoker unit performance. */
+    protected static final boolean PERF_TRACK = Invoker.PERF_TRACK;
+}
@@ -0,0 +1,228 @@
+//
+// samskivert library - useful routines for java programs
+// Copyright (C) 2001-2012 Michael Bayne, et al.
+// http://github.com/samskivert/samskivert/blob/master/COPYING
+
+package com.samskivert.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An unbounded, lock-free, multiple-producer single-consumer queue. Producers claim a slot with a
+ * single atomic increment and never block one another; items are stored in linked fixed-size
+ * array chunks, so appending allocates nothing but the occasional chunk. The single consumer may
+ * poll items one at a time or drain them in batches, and may block (via {@link LockSupport#park})
+ * until items arrive.
+ *
+ * <p> The time at which each item was appended is recorded so that the consumer can measure how
+ * long items wait in the queue.
+ *
+ * <p> Any number of threads may call {@link #append}, {@link #size} and {@link #hasElements}, but
+ * only one thread at a time may call the consuming methods ({@link #poll}, {@link #drainTo} and
+ * {@link #take}).
+ */
+public class MPSCQueue<T>
+{
+    public static <T> MPSCQueue<T> newQueue ()
+    {
+        return new MPSCQueue<T>();
+    }
+
+    public MPSCQueue ()
+    {
+        Chunk first = new Chunk(0L);
+        _headChunk = first;
+        _tailChunk.set(first);
+    }
+
+    /**
+     * Appends the supplied item to the end of the queue, waking the consumer if it is blocked
+     * waiting for items.
+     */
+    public void append (T item)
+    {
+        if (item == null) {
+            throw new NullPointerException("Cannot append null to queue");
+        }
+        long idx = _tail.getAndIncrement();
+        Chunk chunk = chunkFor(idx);
+        int offset = (int)(idx - chunk.base);
+        chunk.stamps[offset] = System.nanoTime();
+        chunk.items.set(offset, item); // publishes the stamp as well
+
+        Thread waiter = _waiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Returns the (approximate, if items are being appended or consumed concurrently) number of
+     * items in the queue.
+     */
+    public int size ()
+    {
+        return (int)Math.max(0L, _tail.get() - _head.get());
+    }
+
+    /**
+     * Returns true if the queue (momentarily) contains items.
+     */
+    public boolean hasElements ()
+    {
+        return _tail.get() > _head.get();
+    }
+
+    /**
+     * Removes and returns the item at the head of the queue, or null if the queue is empty. If
+     * <code>stamp</code> is non-null, its zeroth element is filled in with the {@link
+     * System#nanoTime} at which the item was appended.
+     */
+    public T poll (long[] stamp)
+    {
+        long head = _head.get();
+        if (_tail.get() <= head) {
+            return null;
+        }
+        Chunk chunk = _headChunk;
+        if (head == chunk.base + CHUNK_SIZE) {
+            // the producer that claimed the head slot may not have linked its chunk just yet
+            Chunk next;
+            while ((next = chunk.next.get()) == null) {
+                Thread.yield();
+            }
+            _headChunk = chunk = next;
+        }
+        int offset = (int)(head - chunk.base);
+        Object item;
+        while ((item = chunk.items.get(offset)) == null) {
+            // the slot has been claimed, but the item not yet stored
+            Thread.yield();
+        }
+        chunk.items.lazySet(offset, null);
+        if (stamp != null) {
+            stamp[0] = chunk.stamps[offset];
+        }
+        _head.lazySet(head + 1);
+        @SuppressWarnings("unchecked") T titem = (T)item;
+        return titem;
+    }
+
+    /**
+     * Removes up to <code>items.length</code> items from the head of the queue, storing them into
+     * the supplied array (and their append times into <code>stamps</code> if it is non-null, which
+     * must then be at least as long as <code>items</code>).
+     *
+     * @return the number of items drained, which may be zero.
+     */
+    public int drainTo (T[] items, long[] stamps)
+    {
+        long[] stamp = (stamps == null) ? null : _stamp;
+        int count = 0;
+        for (int max = items.length; count < max; count++) {
+            T item = poll(stamp);
+            if (item == null) {
+                break;
+            }
+            items[count] = item;
+            if (stamps != null) {
+                stamps[count] = stamp[0];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Drains items as per {@link #drainTo}, but blocks the calling thread until at least one item
+     * is available.
+     *
+     * @return the number of items drained, which will be at least one.
+     */
+    public int take (T[] items, long[] stamps)
+    {
+        int count;
+        while ((count = drainTo(items, stamps)) == 0) {
+            // advertise that we're about to sleep, then check once more before doing so: an
+            // appender either sees us waiting or we see its item
+            _waiter = Thread.currentThread();
+            if (!hasElements()) {
+                LockSupport.park(this);
+            }
+            _waiter = null;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the chunk that contains the slot with the supplied index, creating (and linking)
+     * chunks as necessary.
+     */
+    protected Chunk chunkFor (long idx)
+    {
+        // start from the most recently linked chunk, unless it's beyond our index, in which case
+        // the consumer's chunk must precede it (the consumer cannot pass a slot until it's filled)
+        Chunk chunk = _tailChunk.get();
+        if (chunk.base > idx) {
+            chunk = _headChunk;
+        }
+        while (idx >= chunk.base + CHUNK_SIZE) {
+            Chunk next = chunk.next.get();
+            if (next == null) {
+                Chunk nchunk = new Chunk(chunk.base + CHUNK_SIZE);
+                next = chunk.next.compareAndSet(null, nchunk) ? nchunk : chunk.next.get();
+            }
+            chunk = next;
+        }
+        // advance the tail hint if no one has moved it past us in the meantime
+        Chunk tail = _tailChunk.get();
+        if (chunk.base > tail.base) {
+            _tailChunk.compareAndSet(tail, chunk);
+        }
+        return chunk;
+    }
+
+    /** A fixed-size block of queue slots. */
+    protected static class Chunk
+    {
+        /** The index of the first slot in this chunk. */
+        public final long base;
+
+        /** The items in this chunk's slots. */
+        public final AtomicReferenceArray<Object> items =
+            new AtomicReferenceArray<Object>(CHUNK_SIZE);
+
+        /** The append times of this chunk's items (published by the write to {@link #items}). */
+        public final long[] stamps = new long[CHUNK_SIZE];
+
+        /** The chunk that follows this one. */
+        public final AtomicReference<Chunk> next = new AtomicReference<Chunk>();
+
+        public Chunk (long base) {
+            this.base = base;
+        }
+    }
+
+    /** The index of the next slot to be claimed by an appender. */
+    protected final AtomicLong _tail = new AtomicLong();
+
+    /** The most recently linked chunk (a hint from which appenders search). */
+    protected final AtomicReference<Chunk> _tailChunk = new AtomicReference<Chunk>();
+
+    /** The index of the next slot to be consumed (written only by the consumer). */
+    protected final AtomicLong _head = new AtomicLong();
+
+    /** The chunk containing the next slot to be consumed. */
+    protected volatile Chunk _headChunk;
+
+    /** The consumer thread, while it is parked (or about to park) waiting for items. */
+    protected volatile Thread _waiter;
+
+    /** Used by the consumer to fetch stamps while draining. */
+    protected final long[] _stamp = new long[1];
+
+    /** The number of slots in each chunk. */
+    protected static final int CHUNK_SIZE = 1024;
+}
@@ -20,12 +20,14 @@
 package com.threerings.cast;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
 import java.awt.Point;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
@@ -37,6 +39,7 @@ import com.samskivert.util.Tuple;
 import com.samskivert.swing.RuntimeAdjust;
 
 import com.threerings.util.DirectionCodes;
+import com.threerings.util.GovernedLRUHashMap;
 
 import com.threerings.media.image.Colorization;
 import com.threerings.media.image.ImageManager;
@@ -81,13 +84,22 @@ public class CharacterManager
 
         // create a cache for our composited action frames
         log.debug("Creating action cache [size=" + _runCacheSize + "k].");
-        _frameCache = new LRUHashMap<CompositedFramesKey, CompositedMultiFrameImage>(
-                _runCacheSize * 1024, new LRUHashMap.ItemSizer<CompositedMultiFrameImage>() {
+        _frameCache = new GovernedLRUHashMap<CompositedFramesKey, CompositedMultiFrameImage>(
+                "CharacterManager", _runCacheSize * 1024,
+                new LRUHashMap.ItemSizer<CompositedMultiFrameImage>() {
             public int computeSize (CompositedMultiFrameImage value) {
                 return (int)value.getEstimatedMemoryUsage();
             }
         });
-        _frameCache.setTracking(true); // TODO
+    }
+
+    /**
+     * Clears the composited frame cache and unregisters it from the cache governor. This should be
+     * called when the manager is discarded before the application exits.
+     */
+    public void shutdown ()
+    {
+        _frameCache.dispose();
     }
 
     /**
@@ -120,6 +132,16 @@ public class CharacterManager
         _acache = cache;
     }
 
+    /**
+     * Instructs the character manager to store composited action frames
+     * in the supplied disk cache and to restore them from it rather than
+     * compositing them anew.
+     */
+    public void setFrameDiskCache (FrameDiskCache cache)
+    {
+        _diskCache = cache;
+    }
+
     /**
      * Returns a {@link CharacterSprite} representing the character
      * described by the given {@link CharacterDescriptor}, or
@@ -182,10 +204,13 @@ public class CharacterManager
         // periodically report our frame image cache performance
         if (!_cacheStatThrottle.throttleOp()) {
             long size = getEstimatedCacheMemoryUsage();
-            int[] eff = _frameCache.getTrackedEffectiveness();
+            CacheStats stats = _frameCache.getMeter().getStats();
+            int[] deff = (_diskCache == null) ? null : _diskCache.getEffectiveness();
             log.debug("CharacterManager LRU [mem=" + (size / 1024) + "k" +
-                      ", size=" + _frameCache.size() + ", hits=" + eff[0] +
-                      ", misses=" + eff[1] + "].");
+                      ", size=" + _frameCache.size() + ", hits=" + stats.hitCount() +
+                      ", misses=" + stats.missCount() + ", evictions=" + stats.evictionCount() +
+                      ((deff == null) ? "" :
+                      ", diskHits=" + deff[0] + ", diskMisses=" + deff[1]) + "].");
         }
 
         return frames;
@@ -328,7 +353,43 @@ public class CharacterManager
         // use those to create an entity that will lazily composite things
         // together as they are needed
         ComponentFrames[] cfvec = sources.toArray(new ComponentFrames[sources.size()]);
-        return new CompositedActionFrames(_imgr, _frameCache, action, cfvec);
+        CompositedActionFrames frames =
+            new CompositedActionFrames(_imgr, _frameCache, action, cfvec);
+        if (_diskCache != null) {
+            frames.setDiskCache(_diskCache, getDiskCacheKey(descrip, action));
+        }
+        return frames;
+    }
+
+    /**
+     * Returns a key that identifies the composited frames for the specified
+     * action of the specified character in our disk cache.
+     */
+    protected String getDiskCacheKey (CharacterDescriptor descrip, String action)
+    {
+        int[] cids = descrip.getComponentIds();
+        Colorization[][] zations = descrip.getColorizations();
+        Point[] xlations = descrip.getTranslations();
+        StringBuilder buf = new StringBuilder(action);
+        for (int ii = 0; ii < cids.length; ii++) {
+            buf.append("|").append(cids[ii]);
+            Colorization[] czations = (zations == null) ? null : zations[ii];
+            if (czations != null) {
+                for (Colorization zation : czations) {
+                    if (zation != null) {
+                        buf.append(",").append(zation.colorizationId);
+                        buf.append(":").append(zation.rootColor.getRGB());
+                        buf.append(":").append(Arrays.toString(zation.range));
+                        buf.append(":").append(Arrays.toString(zation.offsets));
+                    }
+                }
+            }
+            Point xlation = (xlations == null) ? null : xlations[ii];
+            if (xlation != null) {
+                buf.append("@").append(xlation.x).append(",").append(xlation.y);
+            }
+        }
+        return StringUtil.md5hex(buf.toString());
     }
 
     protected ComponentFrames compositeShadow (
@@ -436,7 +497,10 @@ public class CharacterManager
         Maps.newHashMap();
 
     /** A cache of composited animation frames. */
-    protected LRUHashMap<CompositedFramesKey, CompositedMultiFrameImage> _frameCache;
+    protected GovernedLRUHashMap<CompositedFramesKey, CompositedMultiFrameImage> _frameCache;
+
+    /** The disk cache of composited animation frames, if we have one. */
+    protected FrameDiskCache _diskCache;
 
     /** The character class to be created. */
     protected Class<? extends CharacterSprite> _charClass = CharacterSprite.class;
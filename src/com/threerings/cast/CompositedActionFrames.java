@@ -23,6 +23,7 @@ import java.util.Map;
 
 import com.samskivert.util.StringUtil;
 
+import com.threerings.util.CacheGovernor;
 import com.threerings.util.DirectionCodes;
 
 import com.threerings.media.image.Colorization;
@@ -86,6 +87,19 @@ public class CompositedActionFrames
         _orientCount = _sources[0].frames.getOrientationCount();
     }
 
+    /**
+     * Configures a disk cache in which our composited frames will be stored and from which they
+     * will be restored when they are not found in the in-memory cache.
+     *
+     * @param key a key that uniquely identifies the action, components and component
+     * colorizations and translations from which our frames are composited.
+     */
+    public void setDiskCache (FrameDiskCache diskCache, String key)
+    {
+        _diskCache = diskCache;
+        _diskKey = key;
+    }
+
     // documentation inherited from interface
     public int getOrientationCount ()
     {
@@ -99,7 +113,21 @@ public class CompositedActionFrames
         CompositedMultiFrameImage cmfi =
             _frameCache.get(_key);
         if (cmfi == null) {
-            cmfi = createFrames(orient);
+            long start = System.nanoTime();
+            String dkey = (_diskCache == null) ? null : (_diskKey + ":" + orient);
+            CompositedMirage[] images = (dkey == null) ? null : _diskCache.read(dkey, _imgr);
+            if (images != null) {
+                cmfi = new CompositedMultiFrameImage(_imgr, _sources, _action, orient, images);
+            } else {
+                cmfi = createFrames(orient);
+                if (dkey != null && cmfi.isComposited()) {
+                    _diskCache.write(dkey, cmfi.getImages());
+                }
+            }
+            if (_frameCache instanceof CacheGovernor.GovernedCache) {
+                ((CacheGovernor.GovernedCache)_frameCache).getMeter().recordLoad(
+                    System.nanoTime() - start);
+            }
             _frameCache.put(new CompositedFramesKey(orient), cmfi);
         }
         return cmfi;
@@ -193,6 +221,12 @@ public class CompositedActionFrames
     /** Our source components and action frames. */
     protected ComponentFrames[] _sources;
 
+    /** The disk cache in which we store our composited frames, if any. */
+    protected FrameDiskCache _diskCache;
+
+    /** Identifies our frames in the disk cache. */
+    protected String _diskKey;
+
     /** Used to avoid creating a new key object every time we do a cache
      * lookup. */
     protected CompositedFramesKey _key = new CompositedFramesKey(0);
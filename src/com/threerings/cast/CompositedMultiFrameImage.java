@@ -59,6 +59,38 @@ public class CompositedMultiFrameImage
         }
     }
 
+    /**
+     * Creates a multi-frame image from previously composited frame images (restored from a
+     * {@link FrameDiskCache}, for example).
+     */
+    public CompositedMultiFrameImage (
+        ImageManager imgr, ComponentFrames[] sources,
+        String action, int orient, CompositedMirage[] images)
+    {
+        _imgr = imgr;
+        _sources = sources;
+        _action = action;
+        _orient = orient;
+        _images = images;
+    }
+
+    /**
+     * Returns true if our frames are actually composited, rather than forwarded directly from a
+     * single source.
+     */
+    public boolean isComposited ()
+    {
+        return !(_sources.length == 1 && _sources[0].frames instanceof TileSetFrameImage);
+    }
+
+    /**
+     * Returns our composited frame images.
+     */
+    public CompositedMirage[] getImages ()
+    {
+        return _images;
+    }
+
     // documentation inherited
     public int getFrameCount () {
         return _images.length;
@@ -116,7 +148,7 @@ public class CompositedMultiFrameImage
      */
     protected CompositedMirage createCompositedMirage (int index)
     {
-        if (_sources.length == 1 && _sources[0].frames instanceof TileSetFrameImage) {
+        if (!isComposited()) {
             TileSetFrameImage frames = (TileSetFrameImage)_sources[0].frames;
             Rectangle tbounds = new Rectangle();
             frames.getTrimmedBounds(_orient, index, tbounds);
@@ -0,0 +1,406 @@
+//
+// Nenya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/nenya
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.cast;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import com.google.common.collect.Maps;
+
+import com.threerings.media.image.BufferedMirage;
+import com.threerings.media.image.ImageManager;
+
+import static com.threerings.cast.Log.log;
+
+/**
+ * A second tier (behind the {@link CharacterManager}'s in-memory cache) for composited character
+ * frames, kept on disk so that frames composited in one session need not be composited in the
+ * next, and frames evicted from the memory cache can be restored without recompositing.
+ *
+ * <p> Frames are appended to a single file as run-length encoded rasters (runs of transparent
+ * pixels are stored as counts) and read back through a memory mapping of that file. An index
+ * from key to record offset is rebuilt by scanning the file when the cache is opened. The cache
+ * is marked with a version supplied by the application (which should change whenever the
+ * component imagery may have changed); a cache with a different version is discarded. Once the
+ * file reaches its maximum size, the cache is marked full and stops accepting new frames until it
+ * is next opened, at which point it is discarded and started afresh.
+ */
+public class FrameDiskCache
+{
+    /**
+     * Opens (or creates) the cache stored in the supplied file.
+     *
+     * @param version identifies the component imagery from which the cached frames were
+     * composited; cached frames with a different version are discarded.
+     * @param maxSize the maximum size (in bytes) to which the cache file may grow.
+     *
+     * @exception IOException thrown if the cache file could not be opened or initialized.
+     */
+    public FrameDiskCache (File file, String version, long maxSize)
+        throws IOException
+    {
+        _file = file;
+        _maxSize = maxSize;
+        _raf = new RandomAccessFile(file, "rw");
+        _channel = _raf.getChannel();
+        try {
+            open(version);
+        } catch (IOException ioe) {
+            close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Reads and decodes the frames stored under the specified key.
+     *
+     * @return the frames, or null if no frames are stored under the key.
+     */
+    public synchronized CompositedMirage[] read (String key, ImageManager imgr)
+    {
+        Long offset = _index.get(key);
+        if (offset == null) {
+            _misses++;
+            return null;
+        }
+        try {
+            if (_map == null || _map.capacity() < _size) {
+                _map = _channel.map(FileChannel.MapMode.READ_ONLY, 0, _size);
+            }
+            ByteBuffer buf = _map.duplicate();
+            buf.position((int)(long)offset);
+            buf.getInt(); // record length
+            buf.position(buf.position() + buf.getInt()); // skip the key
+
+            CompositedMirage[] frames = new CompositedMirage[buf.getInt()];
+            for (int ii = 0; ii < frames.length; ii++) {
+                int width = buf.getInt(), height = buf.getInt();
+                int xorigin = buf.getInt(), yorigin = buf.getInt();
+                BufferedImage image = imgr.createImage(width, height, Transparency.BITMASK);
+                image.setRGB(0, 0, width, height, decode(buf, width, height), 0, width);
+                frames[ii] = new CachedMirage(image, xorigin, yorigin);
+            }
+            _hits++;
+            return frames;
+
+        } catch (Exception e) {
+            log.warning("Failed to read cached frames", "file", _file, "key", key, e);
+            _index.remove(key);
+            _misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Stores the supplied frames under the specified key (if the cache is not full).
+     */
+    public synchronized void write (String key, CompositedMirage[] frames)
+    {
+        if (_full || _index.containsKey(key)) {
+            return;
+        }
+
+        // snapshot and encode the frames
+        byte[] kbytes = key.getBytes(UTF8);
+        int[][] data = new int[frames.length][];
+        int length = 4 + kbytes.length + 4;
+        for (int ii = 0; ii < frames.length; ii++) {
+            BufferedImage image = frames[ii].getSnapshot();
+            if (image == null) {
+                return; // nothing we can cache
+            }
+            int width = frames[ii].getWidth(), height = frames[ii].getHeight();
+            data[ii] = encode(image.getRGB(0, 0, width, height, null, 0, width), width);
+            length += 4*4 + data[ii].length*4;
+        }
+        if (_size + 4 + length > _maxSize) {
+            log.info("Composited frame cache full", "file", _file, "size", _size,
+                     "frames", _index.size());
+            _full = true;
+            markFull();
+            return;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(4 + length);
+        buf.putInt(length);
+        buf.putInt(kbytes.length);
+        buf.put(kbytes);
+        buf.putInt(frames.length);
+        for (int ii = 0; ii < frames.length; ii++) {
+            buf.putInt(frames[ii].getWidth());
+            buf.putInt(frames[ii].getHeight());
+            buf.putInt(frames[ii].getXOrigin());
+            buf.putInt(frames[ii].getYOrigin());
+            buf.asIntBuffer().put(data[ii]);
+            buf.position(buf.position() + data[ii].length*4);
+        }
+        buf.flip();
+
+        try {
+            long offset = _size;
+            while (buf.hasRemaining()) {
+                _channel.write(buf, offset + buf.position());
+            }
+            _size += buf.limit();
+            _index.put(key, offset);
+        } catch (IOException ioe) {
+            log.warning("Failed to write cached frames; disabling cache", "file", _file, ioe);
+            _full = true;
+        }
+    }
+
+    /**
+     * Returns a measure of the effectiveness of this cache.
+     *
+     * @return an array containing {hits, misses}.
+     */
+    public synchronized int[] getEffectiveness ()
+    {
+        return new int[] { _hits, _misses };
+    }
+
+    /**
+     * Closes the cache file. The cache must not be used thereafter.
+     */
+    public synchronized void close ()
+    {
+        _map = null;
+        _full = true;
+        try {
+            _raf.close();
+        } catch (IOException ioe) {
+            log.warning("Failed to close composited frame cache", "file", _file, ioe);
+        }
+    }
+
+    /**
+     * Validates our file's header, discarding its contents if it is not compatible (or the cache
+     * filled up in its last session), and indexes the records it contains.
+     */
+    protected void open (String version)
+        throws IOException
+    {
+        byte[] vbytes = version.getBytes(UTF8);
+        int hlength = 4 + 4 + 4 + 4 + vbytes.length;
+        long length = _channel.size();
+
+        boolean valid = (length >= hlength && length < _maxSize);
+        if (valid) {
+            ByteBuffer header = ByteBuffer.allocate(hlength);
+            readFully(header, 0);
+            header.flip();
+            valid = header.getInt() == MAGIC && header.getInt() == FORMAT_VERSION &&
+                header.getInt() == 0 && header.getInt() == vbytes.length;
+            if (valid) {
+                byte[] ovbytes = new byte[vbytes.length];
+                header.get(ovbytes);
+                valid = Arrays.equals(ovbytes, vbytes);
+            }
+        }
+        if (!valid) {
+            if (length > 0) {
+                log.info("Discarding composited frame cache", "file", _file, "size", length);
+            }
+            ByteBuffer header = ByteBuffer.allocate(hlength);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(0).putInt(vbytes.length);
+            header.put(vbytes).flip();
+            _channel.truncate(0);
+            _channel.write(header, 0);
+            length = hlength;
+        }
+
+        // index our records, stopping at (and dropping) any partially written record; we read
+        // rather than map the file here so that there is no mapping when we truncate it
+        _size = hlength;
+        ByteBuffer rheader = ByteBuffer.allocate(8);
+        while (_size + 8 <= length) {
+            rheader.clear();
+            readFully(rheader, _size);
+            int rlength = rheader.getInt(0), klength = rheader.getInt(4);
+            if (rlength < 8 || _size + 4 + rlength > length || klength < 0 ||
+                    klength > rlength - 8) {
+                break;
+            }
+            ByteBuffer kbuf = ByteBuffer.allocate(klength);
+            readFully(kbuf, _size + 8);
+            _index.put(new String(kbuf.array(), UTF8), _size);
+            _size += 4 + rlength;
+        }
+        if (_size < length) {
+            log.warning("Truncating damaged composited frame cache", "file", _file,
+                        "size", length, "valid", _size);
+            _channel.truncate(_size);
+        }
+        if (_size > hlength) {
+            _map = _channel.map(FileChannel.MapMode.READ_ONLY, 0, _size);
+        }
+    }
+
+    /**
+     * Sets the flag in our header that causes the cache to be discarded when next opened.
+     */
+    protected void markFull ()
+    {
+        ByteBuffer flag = ByteBuffer.allocate(4);
+        flag.putInt(1).flip();
+        try {
+            _channel.write(flag, FULL_FLAG_OFFSET);
+        } catch (IOException ioe) {
+            log.warning("Failed to mark composited frame cache full", "file", _file, ioe);
+        }
+    }
+
+    /**
+     * Fills the supplied buffer from our file, starting at the specified position.
+     *
+     * @exception EOFException thrown if the file ends before the buffer is filled.
+     */
+    protected void readFully (ByteBuffer buf, long position)
+        throws IOException
+    {
+        while (buf.hasRemaining()) {
+            if (_channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * Run-length encodes the supplied pixels: each row is stored as a series of (transparent
+     * count, opaque count, opaque pixels) runs.
+     */
+    protected static int[] encode (int[] pixels, int width)
+    {
+        int[] data = new int[pixels.length + pixels.length/width*2 + 2];
+        int dd = 0;
+        for (int row = 0; row < pixels.length; row += width) {
+            int xx = 0;
+            while (xx < width) {
+                int start = xx;
+                while (xx < width && (pixels[row + xx] >>> 24) == 0) {
+                    xx++;
+                }
+                int clear = xx - start;
+                start = xx;
+                while (xx < width && (pixels[row + xx] >>> 24) != 0) {
+                    xx++;
+                }
+                int opaque = xx - start;
+                if (dd + 2 + opaque > data.length) {
+                    data = Arrays.copyOf(data, Math.max(data.length*2, dd + 2 + opaque));
+                }
+                data[dd++] = clear;
+                data[dd++] = opaque;
+                System.arraycopy(pixels, row + start, data, dd, opaque);
+                dd += opaque;
+            }
+        }
+        return Arrays.copyOf(data, dd);
+    }
+
+    /**
+     * Decodes the pixels of a frame encoded by {@link #encode} from the supplied buffer.
+     */
+    protected static int[] decode (ByteBuffer buf, int width, int height)
+    {
+        int[] pixels = new int[width*height];
+        for (int row = 0, count = pixels.length; row < count; row += width) {
+            for (int xx = 0; xx < width; ) {
+                xx += buf.getInt();
+                int opaque = buf.getInt();
+                for (int end = row + xx + opaque, pp = row + xx; pp < end; pp++) {
+                    pixels[pp] = buf.getInt();
+                }
+                xx += opaque;
+            }
+        }
+        return pixels;
+    }
+
+    /** A composited frame restored from the cache. */
+    protected static class CachedMirage extends BufferedMirage
+        implements CompositedMirage
+    {
+        public CachedMirage (BufferedImage image, int xorigin, int yorigin) {
+            super(image);
+            _xorigin = xorigin;
+            _yorigin = yorigin;
+        }
+
+        public int getXOrigin () {
+            return _xorigin;
+        }
+
+        public int getYOrigin () {
+            return _yorigin;
+        }
+
+        protected int _xorigin, _yorigin;
+    }
+
+    /** The file in which our frames are stored. */
+    protected File _file;
+
+    /** Our open cache file and its channel. */
+    protected RandomAccessFile _raf;
+    protected FileChannel _channel;
+
+    /** A read-only mapping of (at least the indexed portion of) our file. */
+    protected MappedByteBuffer _map;
+
+    /** Maps keys to the offsets of their records. */
+    protected Map<String, Long> _index = Maps.newHashMap();
+
+    /** The size of the valid portion of our file. */
+    protected long _size;
+
+    /** The maximum size of our file. */
+    protected long _maxSize;
+
+    /** Set once we've filled up (or failed to write). */
+    protected boolean _full;
+
+    /** Our effectiveness statistics. */
+    protected int _hits, _misses;
+
+    /** Identifies our cache files. */
+    protected static final int MAGIC = 0x43465243; // "CFRC"
+
+    /** The version of our file format. */
+    protected static final int FORMAT_VERSION = 2;
+
+    /** The position in our header of the flag set once the cache has filled up. */
+    protected static final long FULL_FLAG_OFFSET = 8;
+
+    /** The encoding of our keys and version. */
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+}
@@ -69,7 +69,9 @@ public class BoundConfig extends ParameterizedConfig
                 .<Scope, BoundConfig>build().asMap();
         }
         BoundConfig bound = _bound.get(scope);
-        if (bound == null) {
+        if (bound != null) {
+            bound.refreshIfStale();
+        } else {
             _bound.put(scope, bound = (BoundConfig)clone());
             bound.init(_cfgmgr);
             bound._base = this;
@@ -96,11 +98,10 @@ public class BoundConfig extends ParameterizedConfig
         // fire the event
         super.wasUpdated();
 
-        // update the bound instances
+        // update the bound instances that are being observed and mark the rest as stale
         if (_bound != null) {
             for (BoundConfig bound : _bound.values()) {
-                copy(bound);
-                bound.wasUpdated();
+                bound.baseUpdated();
             }
             if (_bound.isEmpty()) {
                 _bound = null;
@@ -108,6 +109,22 @@ public class BoundConfig extends ParameterizedConfig
         }
     }
 
+    @Override
+    protected boolean isObserved ()
+    {
+        if (super.isObserved()) {
+            return true;
+        }
+        if (_bound != null) {
+            for (BoundConfig bound : _bound.values()) {
+                if (bound.isObserved()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Binds this config to the specified scope.
      */
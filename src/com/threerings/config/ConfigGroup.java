@@ -110,18 +110,9 @@ public class ConfigGroup<T extends ManagedConfig>
      */
     public void init (ConfigManager cfgmgr, ConfigManager.Consumer<Exception> exceptionConsumer)
     {
-        _cfgmgr = cfgmgr;
-
-        // load the existing configurations (first checking for an xml file, then a binary file)
-        if (_cfgmgr.getConfigPath() != null &&
-                (readConfigs(true, exceptionConsumer) || readConfigs(false, exceptionConsumer))) {
-            log.debug("Read configurations for group " + _name + ".");
-        }
-
-        // provide the configurations with a reference to the manager
-        for (ManagedConfig config : getRawConfigs()) {
-            initConfig(config);
-        }
+        ConfigRead read = startRead(cfgmgr);
+        read.run();
+        finishInit(read, exceptionConsumer);
     }
 
     /**
@@ -167,7 +158,7 @@ public class ConfigGroup<T extends ManagedConfig>
      */
     public ManagedConfig getRawConfig (String name)
     {
-        return _configsByName.get(name);
+        return (_snapshot == null) ? _configsByName.get(name) : getSnapshotConfig(name);
     }
 
     /**
@@ -190,6 +181,9 @@ public class ConfigGroup<T extends ManagedConfig>
      */
     public Iterable<ManagedConfig> getRawConfigs ()
     {
+        if (_snapshot != null) {
+            readSnapshot();
+        }
         return _configsByName.values();
     }
 
@@ -246,6 +240,9 @@ public class ConfigGroup<T extends ManagedConfig>
             Class<?> clazz = (config == null) ? null : config.getClass();
             throw new IllegalArgumentException(clazz + " is not of type " + _cclass);
         }
+        if (_snapshot != null) {
+            getSnapshotConfig(config.getName()); // so that we replace it as usual
+        }
         ManagedConfig oldCfg = _configsByName.put(config.getName(), config);
         initConfig(config);
         if (fireEvents) {
@@ -264,6 +261,9 @@ public class ConfigGroup<T extends ManagedConfig>
      */
     public void removeConfig (ManagedConfig config)
     {
+        if (_snapshot != null) {
+            getSnapshotConfig(config.getName());
+        }
         ManagedConfig oldCfg = _configsByName.remove(config.getName());
         if (oldCfg != null) {
             // notify listeners that the config has "changed" and then remove it
@@ -469,32 +469,109 @@ public class ConfigGroup<T extends ManagedConfig>
     }
 
     /**
-     * Attempts to read the initial set of configurations.
+     * Initializes this group to read its configurations from the supplied snapshot as they are
+     * requested rather than from its config file.
+     */
+    protected void initSnapshot (
+        ConfigManager cfgmgr, ConfigSnapshot.Group snapshot,
+        ConfigManager.Consumer<Exception> exceptionConsumer)
+    {
+        _cfgmgr = cfgmgr;
+        _snapshot = snapshot.isEmpty() ? null : snapshot;
+        _snapshotExceptionConsumer = exceptionConsumer;
+    }
+
+    /**
+     * Returns the named configuration, reading it from the snapshot if it hasn't been already.
+     * Synchronized because readers would otherwise race to modify the configs map.
+     */
+    protected synchronized ManagedConfig getSnapshotConfig (String name)
+    {
+        ManagedConfig config = _configsByName.get(name);
+        if (config != null || _snapshot == null) {
+            return config;
+        }
+        config = _snapshot.read(name, _snapshotExceptionConsumer);
+        if (config != null) {
+            _configsByName.put(name, config);
+            initConfig(config);
+        }
+        if (_snapshot.isEmpty()) {
+            _snapshot = null;
+        }
+        return config;
+    }
+
+    /**
+     * Reads all of the configurations remaining in the snapshot.
+     */
+    protected synchronized void readSnapshot ()
+    {
+        if (_snapshot != null) {
+            for (String name : Lists.newArrayList(_snapshot.getNames())) {
+                getSnapshotConfig(name);
+            }
+            _snapshot = null;
+        }
+    }
+
+    /**
+     * Sets the group's manager and opens the stream from which its initial set of configurations
+     * will be read (first checking for an xml file, then a binary file). The returned read may
+     * then be {@link ConfigRead#run run} on any thread before being passed to {@link #finishInit}
+     * on this one.
+     */
+    protected ConfigRead startRead (ConfigManager cfgmgr)
+    {
+        _cfgmgr = cfgmgr;
+        if (_cfgmgr.getConfigPath() == null) {
+            return new ConfigRead(null, false);
+        }
+        InputStream stream = getConfigStream(true);
+        return (stream == null) ?
+            new ConfigRead(getConfigStream(false), false) : new ConfigRead(stream, true);
+    }
+
+    /**
+     * Completes the initialization of this group using the results of the supplied read,
+     * falling back to the binary file if the xml file could not be read.
+     */
+    protected void finishInit (
+        ConfigRead read, ConfigManager.Consumer<Exception> exceptionConsumer)
+    {
+        if (!readConfigs(read, exceptionConsumer) && read.xml) {
+            read = new ConfigRead(getConfigStream(false), false);
+            read.run();
+            readConfigs(read, exceptionConsumer);
+        }
+
+        // provide the configurations with a reference to the manager
+        for (ManagedConfig config : getRawConfigs()) {
+            initConfig(config);
+        }
+    }
+
+    /**
+     * Adds the initial set of configurations from the supplied (completed) read.
      *
      * @return true if successful, false otherwise.
      */
-    protected boolean readConfigs (boolean xml, ConfigManager.Consumer<Exception> exceptionConsumer)
+    protected boolean readConfigs (
+        ConfigRead read, ConfigManager.Consumer<Exception> exceptionConsumer)
     {
-        InputStream stream = getConfigStream(xml);
-        if (stream == null) {
+        if (read.exception != null) {
+            exceptionConsumer.accept(read.exception);
+            log.warning("Error reading configurations.", "group", _name, read.exception);
             return false;
         }
-        ManagedConfig[] configs;
-        try {
-            Importer in = xml ? new XMLImporter(stream) : new BinaryImporter(stream);
-            configs = (ManagedConfig[])in.readObject();
-            in.close();
-
-        } catch (Exception e) { // IOException, ClassCastException
-            exceptionConsumer.accept(e);
-            log.warning("Error reading configurations.", "group", _name, e);
+        if (read.configs == null) {
             return false;
         }
-
-        if (xml) {
-            validateOuters(configs);
+        if (read.xml) {
+            validateOuters(read.configs);
         }
-        initConfigs(configs);
+        initConfigs(read.configs);
+        log.debug("Read configurations for group " + _name + ".");
         return true;
     }
 
@@ -651,6 +728,55 @@ public class ConfigGroup<T extends ManagedConfig>
         });
     }
 
+    /**
+     * Reads a group's initial set of configurations from an open stream. Reads touch no state
+     * other than their own, so those of different groups may be run concurrently.
+     */
+    protected static class ConfigRead
+        implements Runnable
+    {
+        /** Whether the stream contains xml (as opposed to binary) data. */
+        public final boolean xml;
+
+        /** The configurations read, if successful. */
+        public ManagedConfig[] configs;
+
+        /** The exception that caused the read to fail, if any. */
+        public Exception exception;
+
+        /** The time taken by the read, in milliseconds. */
+        public long elapsed;
+
+        public ConfigRead (InputStream stream, boolean xml)
+        {
+            _stream = stream;
+            this.xml = xml;
+        }
+
+        // documentation inherited from interface Runnable
+        public void run ()
+        {
+            if (_stream == null) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            try {
+                Importer in = xml ? new XMLImporter(_stream) : new BinaryImporter(_stream);
+                configs = (ManagedConfig[])in.readObject();
+                in.close();
+
+            } catch (Exception e) { // IOException, ClassCastException
+                exception = e;
+            } finally {
+                _stream = null;
+                elapsed = System.currentTimeMillis() - start;
+            }
+        }
+
+        /** The stream from which to read, or null if there is nothing (more) to read. */
+        protected InputStream _stream;
+    }
+
     /** The configuration manager that created this group. */
     protected ConfigManager _cfgmgr;
 
@@ -665,4 +791,11 @@ public class ConfigGroup<T extends ManagedConfig>
 
     /** Configuration event listeners. */
     protected ObserverList<ConfigGroupListener> _listeners;
+
+    /** The snapshot from which we read our remaining configurations, if any (cleared once all
+     * have been read, after which the configs map is no longer modified by reads). */
+    protected volatile ConfigSnapshot.Group _snapshot;
+
+    /** Notified of failures to read configurations from the snapshot. */
+    protected ConfigManager.Consumer<Exception> _snapshotExceptionConsumer;
 }
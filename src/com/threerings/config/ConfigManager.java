@@ -38,10 +38,19 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Throwables;
 
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import com.samskivert.util.ArrayUtil;
 import com.samskivert.util.ListUtil;
@@ -51,15 +60,21 @@ import com.samskivert.util.StringUtil;
 
 import com.threerings.resource.ResourceManager;
 
+import com.threerings.config.util.ConfigId;
+import com.threerings.config.util.DependencyIndex;
+
 import com.threerings.editor.util.Validator;
 import com.threerings.export.BinaryImporter;
 import com.threerings.export.Exportable;
 import com.threerings.export.Exporter;
 import com.threerings.export.Importer;
 import com.threerings.expr.Scope;
+import com.threerings.util.CacheGovernor;
+import com.threerings.util.CacheMeter;
 import com.threerings.util.CacheUtil;
 import com.threerings.util.Copyable;
 import com.threerings.util.MessageManager;
+import com.threerings.util.RunningStats;
 
 import static com.threerings.ClydeLog.log;
 
@@ -128,18 +143,16 @@ public class ConfigManager
         }
 
         // create the resource cache
-        _resources = CacheUtil.softValues();
+        _resourceMeter = new CacheMeter("ConfigManager resources");
+        CacheGovernor.getDefault().register(_resourceMeter);
+        _resources = CacheUtil.softValues(_resourceMeter);
 
         // register the global groups
         Class<?>[] classes = _classes.get("global");
         if (classes == null) {
             return;
         }
-        for (Class<?> clazz : classes) {
-            @SuppressWarnings("unchecked") Class<? extends ManagedConfig> cclass =
-                    (Class<? extends ManagedConfig>)clazz;
-            registerGroup(cclass, exceptionConsumer);
-        }
+        registerGroups(classes, exceptionConsumer);
     }
 
     /**
@@ -152,6 +165,7 @@ public class ConfigManager
         _rsrcmgr = parent._rsrcmgr;
         _msgmgr = parent._msgmgr;
         _resources = parent._resources;
+        _resourceMeter = parent._resourceMeter;
         _classes = parent._classes;
 
         // copy the groups over (any group not in the list will be silently discarded)
@@ -391,11 +405,14 @@ public class ConfigManager
         ManagedConfig config = _resources.get(name);
         if (config == null) {
             try {
+                long start = System.nanoTime();
                 BinaryImporter in = new BinaryImporter(_rsrcmgr.getResource(name));
                 _resources.put(name, config = (ManagedConfig)in.readObject());
                 config.setName(name);
                 config.init(getRoot());
                 in.close();
+                _resourceMeter.recordLoad(System.nanoTime() - start);
+                resourceConfigLoaded(config);
 
             } catch (FileNotFoundException fnfe) {
                 return null;
@@ -570,22 +587,32 @@ public class ConfigManager
     /**
      * Updates a resource-loaded configuration through the cache.  If the configuration is not in
      * the cache, the provided configuration will be stored under the specified name and returned.
-     * Otherwise, the cached version will be updated to reflect the provided configuration and
-     * returned.
+     * Otherwise, the cached version will be updated to reflect the provided configuration (and
+     * the configurations that depend on it refreshed) and returned.
      */
     public ManagedConfig updateResourceConfig (String name, ManagedConfig config)
     {
         ManagedConfig oconfig = _resources.get(name);
         if (oconfig == null) {
             _resources.put(name, config);
+            resourceConfigLoaded(config);
             return config;
         } else {
             config.copy(oconfig);
             oconfig.wasUpdated();
+            refreshDependents(oconfig);
             return oconfig;
         }
     }
 
+    /**
+     * Returns a snapshot of the resource-loaded configurations currently in the cache.
+     */
+    public List<ManagedConfig> getResourceConfigs ()
+    {
+        return Lists.newArrayList(_resources.values());
+    }
+
     /**
      * Validates the references of all configs managed by this manager.
      *
@@ -616,6 +643,99 @@ public class ConfigManager
      * Refreshes all configurations of the specified class.
      */
     public void refresh (Class<? extends ManagedConfig> clazz)
+    {
+        RefreshTimer timer = new RefreshTimer();
+        try {
+            refreshClass(clazz, timer);
+        } finally {
+            timer.done(clazz);
+        }
+    }
+
+    /**
+     * Refreshes the specified configuration and all of those that depend upon it (directly or
+     * indirectly), as determined by the {@link #getDependencyIndex dependency index}. Derived
+     * and bound instances of the refreshed configs that are not being observed are not updated
+     * until they are next requested.
+     */
+    public void refreshAffected (ManagedConfig config)
+    {
+        RefreshTimer timer = new RefreshTimer();
+        try {
+            refresh(config);
+            timer.configs++;
+            refreshDependents(config, timer);
+        } finally {
+            timer.done(config.getName());
+        }
+    }
+
+    /**
+     * Refreshes the configurations that depend (directly or indirectly) on the specified
+     * configuration, which has been updated, as in {@link #refreshAffected}.
+     */
+    public void refreshDependents (ManagedConfig config)
+    {
+        RefreshTimer timer = new RefreshTimer();
+        try {
+            refreshDependents(config, timer);
+        } finally {
+            timer.done(config.getName());
+        }
+    }
+
+    /**
+     * Returns the index that maps the configs in this manager (and its ancestors) to their
+     * dependents, creating it if necessary. Once created, the index is kept up to date as configs
+     * are added, removed and updated.
+     */
+    public DependencyIndex getDependencyIndex ()
+    {
+        if (_depindex == null) {
+            _depindex = new DependencyIndex(this);
+        }
+        return _depindex;
+    }
+
+    /**
+     * Sets the number of threads used to read the global config groups when the manager is
+     * initialized. One means that the groups are read sequentially on the initializing thread.
+     */
+    public static void setLoadThreads (int threads)
+    {
+        _loadThreads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets whether global config managers should read their groups from a current
+     * {@link ConfigSnapshot} (when there is one) rather than from the group files.
+     */
+    public static void setUseSnapshots (boolean useSnapshots)
+    {
+        _useSnapshots = useSnapshots;
+    }
+
+    /**
+     * Returns the times (in milliseconds) taken to read each of the global config groups when the
+     * manager was initialized, in registration order.
+     */
+    public Map<String, Long> getGroupLoadTimes ()
+    {
+        return _groupLoadTimes;
+    }
+
+    /**
+     * Returns the times (in milliseconds) taken by the refreshes performed by this manager.
+     */
+    public RunningStats getRefreshTimes ()
+    {
+        return _refreshTimes;
+    }
+
+    /**
+     * Refreshes the configurations of the specified class.
+     */
+    protected void refreshClass (Class<? extends ManagedConfig> clazz, RefreshTimer timer)
     {
         // look for groups first
         @SuppressWarnings("unchecked") ConfigGroup<ManagedConfig>[] groups =
@@ -624,6 +744,7 @@ public class ConfigManager
             for (ConfigGroup<ManagedConfig> group : groups) {
                 for (ManagedConfig config : group.getRawConfigs()) {
                     refresh(config);
+                    timer.configs++;
                 }
             }
             return;
@@ -647,8 +768,48 @@ public class ConfigManager
                 log.warning("Failed to refresh config from resource.", "name", name, e);
                 continue;
             }
+            if (nconfig.equals(oconfig)) {
+                continue; // unchanged
+            }
             nconfig.copy(oconfig);
+            if (_depindex != null) {
+                _depindex.update(oconfig);
+            }
             refresh(oconfig);
+            timer.configs++;
+
+            // configs of other classes may depend on the one that changed
+            refreshDependents(oconfig, timer);
+        }
+    }
+
+    /**
+     * Refreshes the configurations that depend on the specified configuration, as determined by
+     * the dependency index.
+     */
+    protected void refreshDependents (ManagedConfig config, RefreshTimer timer)
+    {
+        DependencyIndex index = getDependencyIndex();
+        for (ConfigId id : index.getAffected(index.getId(config))) {
+            ManagedConfig dependent = (id.clazz == ManagedConfig.class) ?
+                _resources.get(id.name) : getRawConfig(id.clazz, id.name);
+            if (dependent != null && dependent != config) {
+                refresh(dependent);
+                timer.configs++;
+            }
+        }
+    }
+
+    /**
+     * Notes that a resource configuration has been loaded into the cache, so that it can be added
+     * to the dependency indices of this manager and its ancestors.
+     */
+    protected void resourceConfigLoaded (ManagedConfig config)
+    {
+        for (ConfigManager mgr = this; mgr != null; mgr = mgr._parent) {
+            if (mgr._depindex != null) {
+                mgr._depindex.update(config);
+            }
         }
     }
 
@@ -749,6 +910,121 @@ public class ConfigManager
         _groups.put(clazz, group);
     }
 
+    /**
+     * Registers a set of new config groups. The groups' streams are opened on this thread, but
+     * their contents are read and deserialized concurrently (if we have more than one
+     * {@link #setLoadThreads load thread}). Once all have been read, the groups are registered
+     * and then initialized in order on this thread, so the result (including the order in which
+     * exceptions are reported) is the same however many threads are used.
+     */
+    protected void registerGroups (Class<?>[] classes, Consumer<Exception> exceptionConsumer)
+    {
+        if (_useSnapshots && registerSnapshotGroups(classes, exceptionConsumer)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<ConfigGroup<ManagedConfig>> groups = Lists.newArrayListWithCapacity(classes.length);
+        List<ConfigGroup.ConfigRead> reads = Lists.newArrayListWithCapacity(classes.length);
+        for (Class<?> clazz : classes) {
+            @SuppressWarnings("unchecked") Class<ManagedConfig> cclass =
+                (Class<ManagedConfig>)clazz;
+            ConfigGroup<ManagedConfig> group = new ConfigGroup<ManagedConfig>(cclass);
+            groups.add(group);
+            reads.add(group.startRead(this));
+        }
+
+        int threads = Math.min(_loadThreads, reads.size());
+        if (threads > 1) {
+            runReads(reads, threads);
+        } else {
+            for (ConfigGroup.ConfigRead read : reads) {
+                read.run();
+            }
+        }
+        long read = System.currentTimeMillis() - start;
+
+        // make all of the groups available before any are initialized
+        for (int ii = 0; ii < classes.length; ii++) {
+            _groups.put(classes[ii], groups.get(ii));
+        }
+        String slowest = null;
+        long sum = 0L, max = -1L;
+        for (int ii = 0, nn = groups.size(); ii < nn; ii++) {
+            ConfigGroup<ManagedConfig> group = groups.get(ii);
+            ConfigGroup.ConfigRead gread = reads.get(ii);
+            group.finishInit(gread, exceptionConsumer);
+            _groupLoadTimes.put(group.getName(), gread.elapsed);
+            sum += gread.elapsed;
+            if (gread.elapsed > max) {
+                max = gread.elapsed;
+                slowest = group.getName();
+            }
+        }
+        log.info("Loaded config groups", "groups", groups.size(), "threads", threads,
+            "read", read + "ms", "readSum", sum + "ms", "slowest", slowest + " (" + max + "ms)",
+            "elapsed", (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Registers a set of new config groups whose configurations will be read from the
+     * {@link ConfigSnapshot} as they are requested, if there is a current snapshot.
+     *
+     * @return true if the groups were registered, false if there is no current snapshot.
+     */
+    protected boolean registerSnapshotGroups (
+        Class<?>[] classes, Consumer<Exception> exceptionConsumer)
+    {
+        long start = System.currentTimeMillis();
+        ConfigSnapshot snapshot = ConfigSnapshot.open(this, classes);
+        if (snapshot == null) {
+            return false;
+        }
+        for (Class<?> clazz : classes) {
+            @SuppressWarnings("unchecked") Class<ManagedConfig> cclass =
+                (Class<ManagedConfig>)clazz;
+            ConfigGroup<ManagedConfig> group = new ConfigGroup<ManagedConfig>(cclass);
+            ConfigSnapshot.Group sgroup = snapshot.getGroup(group.getName());
+            if (sgroup == null) {
+                // the group was omitted from the snapshot (stripped, perhaps); read it normally
+                group.init(this, exceptionConsumer);
+            } else {
+                group.initSnapshot(this, sgroup, exceptionConsumer);
+            }
+            _groups.put(clazz, group);
+        }
+        log.info("Registered config groups from snapshot", "groups", classes.length,
+            "snapshotGroups", snapshot.getGroupCount(),
+            "elapsed", (System.currentTimeMillis() - start) + "ms");
+        return true;
+    }
+
+    /**
+     * Runs the supplied reads on a temporary pool of the specified number of threads, returning
+     * when all have completed.
+     */
+    protected void runReads (List<ConfigGroup.ConfigRead> reads, int threads)
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().
+            setNameFormat("ConfigManager loader %d").setDaemon(true).build());
+        try {
+            List<Callable<Object>> tasks = Lists.newArrayListWithCapacity(reads.size());
+            for (ConfigGroup.ConfigRead read : reads) {
+                tasks.add(Executors.callable(read));
+            }
+            for (Future<Object> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warning("Interrupted while reading config groups.");
+        } catch (ExecutionException e) {
+            // the reads catch their own exceptions, so this can only be an error
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     /**
      * Refreshes the specified configuration by simulating an update without firing a global
      * update event.
@@ -768,6 +1044,9 @@ public class ConfigManager
      */
     protected void fireConfigUpdated (ManagedConfig config)
     {
+        if (_depindex != null && !_ignoreUpdates) {
+            _depindex.update(config);
+        }
         if (_updateListeners != null && !_ignoreUpdates) {
             final ConfigEvent<ManagedConfig> event = new ConfigEvent<ManagedConfig>(this, config);
             _updateListeners.apply(
@@ -804,6 +1083,33 @@ public class ConfigManager
                 }.immutableSortedCopy(configs), clazz);
     }
 
+    /**
+     * Measures a refresh.
+     */
+    protected class RefreshTimer
+    {
+        /** The number of configs refreshed. */
+        public int configs;
+
+        /**
+         * Records and logs the completion of the refresh.
+         */
+        public void done (Object what)
+        {
+            long elapsed = System.currentTimeMillis() - _start;
+            _refreshTimes.addSample(elapsed);
+            log.info("Refreshed configs", "what", what, "configs", configs,
+                "instancesUpdated",
+                ParameterizedConfig._instanceRefreshes.get() - _instanceRefreshes,
+                "instancesDeferred", ParameterizedConfig._staleMarks.get() - _staleMarks,
+                "elapsed", elapsed + "ms");
+        }
+
+        protected long _start = System.currentTimeMillis();
+        protected int _instanceRefreshes = ParameterizedConfig._instanceRefreshes.get();
+        protected int _staleMarks = ParameterizedConfig._staleMarks.get();
+    }
+
     /** The type of this manager. */
     protected String _type;
 
@@ -825,6 +1131,9 @@ public class ConfigManager
     /** Resource-loaded configs mapped by path. */
     protected Map<String, ManagedConfig> _resources;
 
+    /** Records the statistics of the resource cache. */
+    protected CacheMeter _resourceMeter;
+
     /** Maps manager types to their classes (as read from the manager properties). */
     protected HashMap<String, Class<?>[]> _classes;
 
@@ -833,4 +1142,19 @@ public class ConfigManager
 
     /** Set when we should ignore config updates because we're refreshing. */
     protected boolean _ignoreUpdates;
+
+    /** Maps configs to their dependents, if the index has been requested. */
+    protected DependencyIndex _depindex;
+
+    /** The times taken by our refreshes. */
+    protected RunningStats _refreshTimes = new RunningStats();
+
+    /** The times taken to read the global groups, mapped by group name. */
+    protected Map<String, Long> _groupLoadTimes = Maps.newLinkedHashMap();
+
+    /** The number of threads with which to read the global groups. */
+    protected static int _loadThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Whether or not to read the global groups from a current snapshot. */
+    protected static boolean _useSnapshots = true;
 }
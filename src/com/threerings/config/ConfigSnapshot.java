@@ -0,0 +1,353 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+import com.samskivert.io.StreamUtil;
+
+import com.threerings.io.ByteBufferInputStream;
+
+import com.threerings.resource.ResourceManager;
+
+import com.threerings.export.BinaryExporter;
+import com.threerings.export.BinaryImporter;
+
+import static com.threerings.ClydeLog.log;
+
+/**
+ * A snapshot of the global configurations of a {@link ConfigManager}, written at build time so
+ * that processes can start without reading every config group. Each config is stored as its own
+ * (uncompressed) binary export, located through an index of names, so the snapshot can be
+ * memory-mapped and its configs deserialized one at a time, as they are first requested. The
+ * snapshot records a hash of the manager properties and group files from which it was made and
+ * is ignored if they have since changed.
+ */
+public class ConfigSnapshot
+{
+    /** The name of the snapshot file within the config directory. */
+    public static final String FILENAME = "configs.snapshot";
+
+    /**
+     * The configs of a single group within the snapshot that have not yet been read.
+     */
+    public class Group
+    {
+        /**
+         * Returns the names of the configs that have not yet been read, in the order in which
+         * they were written.
+         */
+        public Collection<String> getNames ()
+        {
+            return _entries.keySet();
+        }
+
+        /**
+         * Determines whether all of the group's configs have been read.
+         */
+        public boolean isEmpty ()
+        {
+            return _entries.isEmpty();
+        }
+
+        /**
+         * Reads the named config, if it is in the snapshot and has not already been read.
+         *
+         * @param exceptionConsumer notified (as well as the log) if the config is in the snapshot
+         * but cannot be read.
+         * @return the config, or null if not found or it couldn't be read.
+         */
+        public ManagedConfig read (
+            String name, ConfigManager.Consumer<Exception> exceptionConsumer)
+        {
+            long[] entry = _entries.remove(name);
+            if (entry == null) {
+                // no such config (or it was already read): a normal lookup miss, not a failure
+                return null;
+            }
+            ByteBuffer buf = _buffer.duplicate();
+            buf.limit((int)(entry[0] + entry[1]));
+            buf.position((int)entry[0]);
+            try {
+                BinaryImporter in = new BinaryImporter(new ByteBufferInputStream(buf));
+                return (ManagedConfig)in.readObject();
+            } catch (Exception e) { // IOException, ClassCastException
+                log.warning("Failed to read config from snapshot.", "name", name, e);
+                exceptionConsumer.accept(e);
+                return null;
+            }
+        }
+
+        /** The unread configs' offsets and lengths, mapped by name. */
+        protected Map<String, long[]> _entries = Maps.newLinkedHashMap();
+    }
+
+    /**
+     * Computes the hash of the manager properties and config files from which the specified
+     * manager's global groups are loaded.
+     *
+     * @param classes the classes of the global groups.
+     */
+    public static byte[] computeSourceHash (ConfigManager cfgmgr, Class<?>[] classes)
+        throws IOException
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); // shouldn't happen
+        }
+        ResourceManager rsrcmgr = cfgmgr.getResourceManager();
+        String path = cfgmgr.getConfigPath();
+        InputStream in;
+        try {
+            in = rsrcmgr.getResource(path + "manager.properties");
+        } catch (IOException ioe) {
+            in = rsrcmgr.getResource(path + "manager.txt");
+        }
+        update(digest, in);
+        for (Class<?> clazz : classes) {
+            // hash the same file the group would read: the xml file if present, else the binary
+            String name = ConfigGroup.getName(clazz);
+            digest.update(name.getBytes("UTF-8"));
+            try {
+                in = rsrcmgr.getResource(path + name + ".xml");
+            } catch (IOException e) {
+                try {
+                    in = rsrcmgr.getResource(path + name + ".dat");
+                } catch (IOException e2) {
+                    digest.update((byte)0);
+                    continue;
+                }
+            }
+            update(digest, in);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Writes a snapshot of the supplied (global) manager's groups.
+     */
+    public static void write (ConfigManager cfgmgr, File file)
+        throws IOException
+    {
+        byte[] hash = computeSourceHash(cfgmgr, cfgmgr._classes.get("global"));
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream iout = new DataOutputStream(index);
+        List<ConfigGroup<?>> groups = Lists.newArrayList(cfgmgr.getGroups());
+        int count = 0;
+        for (ConfigGroup<?> group : groups) {
+            ManagedConfig[] configs = cfgmgr.toSaveableArray(
+                group.getConfigClass(), group.getRawConfigs(), ManagedConfig.class);
+            if (configs == null) {
+                continue; // stripped entirely
+            }
+            count++;
+            iout.writeUTF(group.getName());
+            iout.writeInt(configs.length);
+            for (ManagedConfig config : configs) {
+                int offset = data.size();
+                BinaryExporter out = new BinaryExporter(data, false);
+                out.writeObject(config);
+                out.finish();
+                iout.writeUTF(config.getName());
+                iout.writeInt(offset);
+                iout.writeInt(data.size() - offset);
+            }
+        }
+
+        // write to a temporary file and move it into place so that readers never see a partial
+        // snapshot
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeShort(hash.length);
+            out.write(hash);
+            out.writeInt(count);
+            index.writeTo(out);
+            data.writeTo(out);
+        } finally {
+            StreamUtil.close(out);
+        }
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            throw new IOException("Failed to move snapshot into place [file=" + file + "].");
+        }
+    }
+
+    /**
+     * Opens the snapshot of the specified manager's global groups, if it exists and was made
+     * from the current versions of their sources.
+     *
+     * @param classes the classes of the global groups.
+     * @return the snapshot, or null if there is no valid snapshot.
+     */
+    public static ConfigSnapshot open (ConfigManager cfgmgr, Class<?>[] classes)
+    {
+        String path = cfgmgr.getConfigPath() + FILENAME;
+        ResourceManager rsrcmgr = cfgmgr.getResourceManager();
+        ByteBuffer buffer;
+        try {
+            File file = rsrcmgr.getResourceFile(path);
+            if (file != null && file.exists()) {
+                // map the file directly; the mapping remains valid after the file is closed
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                } finally {
+                    raf.close();
+                }
+            } else {
+                InputStream in = rsrcmgr.getResource(path);
+                try {
+                    buffer = ByteBuffer.wrap(ByteStreams.toByteArray(in));
+                } finally {
+                    StreamUtil.close(in);
+                }
+            }
+        } catch (IOException e) {
+            return null; // no snapshot
+        }
+
+        try {
+            return new ConfigSnapshot(buffer, computeSourceHash(cfgmgr, classes));
+        } catch (IOException e) {
+            log.info("Ignoring config snapshot.", "path", path, "reason", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the unread configs of the named group, or null if the group is not in the snapshot.
+     */
+    public Group getGroup (String name)
+    {
+        return _groups.get(name);
+    }
+
+    /**
+     * Returns the number of groups in the snapshot.
+     */
+    public int getGroupCount ()
+    {
+        return _groups.size();
+    }
+
+    /**
+     * Reads the snapshot's index from the supplied buffer.
+     *
+     * @exception IOException if the snapshot is invalid or out of date.
+     */
+    protected ConfigSnapshot (ByteBuffer buffer, byte[] hash)
+        throws IOException
+    {
+        _buffer = buffer;
+        ByteBufferInputStream bin = new ByteBufferInputStream(buffer.duplicate());
+        DataInputStream in = new DataInputStream(bin);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Invalid magic number");
+        }
+        if (in.readShort() != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version");
+        }
+        byte[] shash = new byte[in.readShort()];
+        in.readFully(shash);
+        if (!Arrays.equals(shash, hash)) {
+            throw new IOException("Sources have changed");
+        }
+        List<long[]> entries = Lists.newArrayList();
+        for (int ii = 0, nn = in.readInt(); ii < nn; ii++) {
+            Group group = new Group();
+            _groups.put(in.readUTF(), group);
+            for (int jj = 0, mm = in.readInt(); jj < mm; jj++) {
+                String name = in.readUTF();
+                long[] entry = new long[] { in.readInt(), in.readInt() };
+                group._entries.put(name, entry);
+                entries.add(entry);
+            }
+        }
+        // the offsets are relative to the data that follows the index
+        int base = bin.getBuffer().position();
+        for (long[] entry : entries) {
+            entry[0] += base;
+            if (entry[0] + entry[1] > buffer.limit()) {
+                throw new IOException("Snapshot is truncated");
+            }
+        }
+    }
+
+    /**
+     * Feeds the contents of the supplied stream to the digest and closes it.
+     */
+    protected static void update (MessageDigest digest, InputStream in)
+        throws IOException
+    {
+        try {
+            byte[] buf = new byte[8192];
+            for (int read; (read = in.read(buf)) != -1; ) {
+                digest.update(buf, 0, read);
+            }
+        } finally {
+            StreamUtil.close(in);
+        }
+    }
+
+    /** The snapshot data. */
+    protected ByteBuffer _buffer;
+
+    /** The groups in the snapshot, mapped by name. */
+    protected Map<String, Group> _groups = Maps.newHashMap();
+
+    /** Identifies snapshot files. */
+    protected static final int MAGIC = 0x434E4653; // "CNFS"
+
+    /** The version of the snapshot format; snapshots of other versions are ignored. */
+    protected static final short FORMAT_VERSION = 1;
+}
@@ -30,6 +30,7 @@ import java.lang.ref.SoftReference;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.collect.Lists;
 
@@ -37,6 +38,8 @@ import com.threerings.editor.Editable;
 import com.threerings.editor.Property;
 import com.threerings.editor.util.Validator;
 import com.threerings.expr.Scope;
+import com.threerings.util.CacheGovernor;
+import com.threerings.util.CacheMeter;
 import com.threerings.util.CacheUtil;
 import com.threerings.util.DeepOmit;
 import com.threerings.util.DeepUtil;
@@ -73,6 +76,8 @@ public class ParameterizedConfig extends ManagedConfig
     @Override
     public ManagedConfig getInstance (Scope scope, ArgumentMap args)
     {
+        // our own instances are derived from us, so we must be up to date before we return them
+        refreshIfStale();
         if (args == null || args.isEmpty() || parameters.length == 0) {
             return getBound(scope);
         }
@@ -97,10 +102,13 @@ public class ParameterizedConfig extends ManagedConfig
             }
         }
         if (_derived == null) {
-            _derived = CacheUtil.softValues(1);
+            _derived = CacheUtil.softValues(DERIVED_METER, 1);
         }
         ParameterizedConfig instance = _derived.get(filteredArgs);
-        if (instance == null) {
+        if (instance != null) {
+            instance.refreshIfStale();
+        } else {
+            long start = System.nanoTime();
             if (derivedArgs == null) {
                 derivedArgs = filteredArgs.clone();
             }
@@ -109,6 +117,7 @@ public class ParameterizedConfig extends ManagedConfig
             instance._base = this;
             instance._args = derivedArgs;
             applyArguments(instance, derivedArgs);
+            DERIVED_METER.recordLoad(System.nanoTime() - start);
         }
         return instance.getBound(scope);
     }
@@ -124,13 +133,11 @@ public class ParameterizedConfig extends ManagedConfig
         // fire the event
         super.wasUpdated();
 
-        // update derived instances
+        // update the derived instances that are being observed and mark the rest as stale, to be
+        // updated when next requested
         if (_derived != null) {
-            for (Map.Entry<ArgumentMap, ParameterizedConfig> entry : _derived.entrySet()) {
-                ParameterizedConfig instance = entry.getValue();
-                copy(instance);
-                applyArguments(instance, entry.getKey());
-                instance.wasUpdated();
+            for (ParameterizedConfig instance : _derived.values()) {
+                instance.baseUpdated();
             }
             if (_derived.isEmpty()) {
                 _derived = null;
@@ -138,6 +145,23 @@ public class ParameterizedConfig extends ManagedConfig
         }
     }
 
+    @Override
+    public void addListener (ConfigUpdateListener<?> listener)
+    {
+        // make sure a stale instance is brought up to date before anyone starts observing it
+        refreshIfStale();
+        super.addListener(listener);
+    }
+
+    /**
+     * Returns true if this is a derived (or bound) instance whose base config has been updated
+     * since it was last brought up to date.
+     */
+    public boolean isStale ()
+    {
+        return _stale;
+    }
+
     /**
      * Is the specified parameter path blacklisted for this config?
      * If this method returns false that is no guarantee that the path is valid.
@@ -182,6 +206,65 @@ public class ParameterizedConfig extends ManagedConfig
         }
     }
 
+    /**
+     * Called on a derived (or bound) instance when its base config has been updated. Instances
+     * that are observed, or that have observed instances of their own, are brought up to date
+     * (and their listeners notified) immediately; the rest are marked stale.
+     */
+    protected void baseUpdated ()
+    {
+        if (isObserved()) {
+            refresh();
+        } else if (!_stale) {
+            _stale = true;
+            _staleMarks.incrementAndGet();
+        }
+    }
+
+    /**
+     * Determines whether this config or any of its derived (or bound) instances, however
+     * indirectly, has listeners.
+     */
+    protected boolean isObserved ()
+    {
+        if (_listeners != null) {
+            return true;
+        }
+        if (_derived != null) {
+            for (ParameterizedConfig instance : _derived.values()) {
+                if (instance.isObserved()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Brings this derived (or bound) instance up to date with its base config if it is stale.
+     */
+    protected void refreshIfStale ()
+    {
+        if (_stale) {
+            refresh();
+        }
+    }
+
+    /**
+     * Brings this derived (or bound) instance up to date with its base config and notifies its
+     * listeners.
+     */
+    protected void refresh ()
+    {
+        _stale = false;
+        _base.copy(this);
+        if (_args != null) {
+            _base.applyArguments(this, _args);
+        }
+        wasUpdated();
+        _instanceRefreshes.incrementAndGet();
+    }
+
     /**
      * Returns an instance of this config bound in the specified scope.
      */
@@ -244,4 +327,21 @@ public class ParameterizedConfig extends ManagedConfig
     /** Maps arguments to derived instances. */
     @DeepOmit
     protected transient Map<ArgumentMap, ParameterizedConfig> _derived;
+
+    /** Set when this is a derived (or bound) instance whose base has been updated since it was
+     * last brought up to date. */
+    @DeepOmit
+    protected transient boolean _stale;
+
+    /** The number of times derived and bound instances have been brought up to date and marked
+     * as stale, respectively (for refresh metrics). */
+    protected static final AtomicInteger _instanceRefreshes = new AtomicInteger();
+    protected static final AtomicInteger _staleMarks = new AtomicInteger();
+
+    /** Records the statistics of the derived instance caches of all parameterized configs. */
+    protected static final CacheMeter DERIVED_METER =
+        new CacheMeter("ParameterizedConfig derived");
+    static {
+        CacheGovernor.getDefault().register(DERIVED_METER);
+    }
 }
@@ -0,0 +1,80 @@
+//
+// $Id$
+
+package com.threerings.config.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.common.base.Preconditions;
+
+import com.threerings.resource.ResourceManager;
+
+import com.threerings.config.ConfigManager;
+import com.threerings.config.ConfigSnapshot;
+
+import static com.threerings.ClydeLog.log;
+
+/**
+ * Writes a {@link ConfigSnapshot} of the global configs in a resource directory, next to the
+ * group files from which they are loaded. Processes that load configs from that directory will
+ * then read the configs from the snapshot as they need them, until the group files change.
+ *
+ * You probably want something like this in your build.xml:
+ * <pre>{@code
+ *
+ * <target name="snapshot" depends="-preptools">
+ *   <java fork="true" classpathref="classpath" failonerror="true"
+ *         classname="com.threerings.config.tools.ConfigSnapshotter">
+ *     <jvmarg value="-Djava.awt.headless=true"/>
+ *     <arg value="${rsrc.dir}/"/>
+ *   </java>
+ * </target>
+ *
+ * }</pre>
+ */
+public class ConfigSnapshotter
+{
+    /**
+     * Command-line tool entry point.
+     */
+    public static void main (String[] args)
+        throws IOException
+    {
+        if (args.length < 1 || args.length > 2 ||
+                (args.length == 2 && !"-flatten".equals(args[1]))) {
+            System.err.println("Args: <rsrcDir> [-flatten]");
+            System.err.println("If -flatten is given, the configs are flattened before writing.");
+            System.exit(1);
+        }
+        new ConfigSnapshotter().snapshot(args[0], args.length == 2);
+    }
+
+    /**
+     * Writes a snapshot of the configs in the specified resource directory.
+     *
+     * @param flatten if true, flatten the configs (as per {@link ConfigFlattener}) before writing
+     * them. Only do so if the processes using the snapshot do not themselves resolve parameters.
+     */
+    public void snapshot (String rsrcDir, boolean flatten)
+        throws IOException
+    {
+        ResourceManager rsrcmgr = new ResourceManager(rsrcDir);
+        rsrcmgr.initResourceDir(rsrcDir);
+        File configDir = rsrcmgr.getResourceFile("config/");
+        Preconditions.checkArgument(
+            configDir != null && configDir.isDirectory(), "%s isn't a directory", configDir);
+
+        // load the configs from their sources rather than any existing snapshot
+        ConfigManager.setUseSnapshots(false);
+        ConfigManager cfgmgr = new ConfigManager(rsrcmgr, null, "config/");
+        cfgmgr.init();
+        if (flatten) {
+            new ConfigFlattener().flatten(cfgmgr);
+        }
+
+        File file = new File(configDir, ConfigSnapshot.FILENAME);
+        ConfigSnapshot.write(cfgmgr, file);
+        log.info("Wrote config snapshot.", "file", file, "size", file.length());
+    }
+}
@@ -0,0 +1,195 @@
+//
+// $Id$
+
+package com.threerings.config.util;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+import com.threerings.config.ConfigEvent;
+import com.threerings.config.ConfigGroup;
+import com.threerings.config.ConfigGroupListener;
+import com.threerings.config.ConfigManager;
+import com.threerings.config.ConfigReference;
+import com.threerings.config.ManagedConfig;
+
+/**
+ * Maps each config in a config manager (and its ancestors) to the configs that depend on it, as
+ * determined by the {@link DependencyGatherer}. The index listens to the groups it covers in
+ * order to track added and removed configs; the manager informs it of updated configs and of
+ * resource configs loaded through it (or its descendants).
+ *
+ * <p> Configs in groups are identified by their group's config class and their name; resource
+ * configs are identified by {@link ManagedConfig} and their resource path.
+ */
+public class DependencyIndex
+    implements ConfigGroupListener
+{
+    /**
+     * Creates and populates an index of the configs in the specified manager and its ancestors.
+     */
+    public DependencyIndex (ConfigManager cfgmgr)
+    {
+        _cfgmgr = cfgmgr;
+        for (ConfigManager mgr = cfgmgr; mgr != null; mgr = mgr.getParent()) {
+            for (ConfigGroup<?> group : mgr.getGroups()) {
+                group.addListener(this);
+                _groups.add(group);
+                for (ManagedConfig config : group.getRawConfigs()) {
+                    update(config);
+                }
+            }
+        }
+
+        // index the resource configs loaded so far, including any loaded while gathering
+        // the dependencies of those already indexed
+        Set<String> indexed = Sets.newHashSet();
+        for (boolean added = true; added; ) {
+            added = false;
+            for (ManagedConfig config : cfgmgr.getResourceConfigs()) {
+                if (indexed.add(config.getName())) {
+                    update(config);
+                    added = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops listening to our groups.
+     */
+    public void dispose ()
+    {
+        for (ConfigGroup<?> group : _groups) {
+            group.removeListener(this);
+        }
+        _groups.clear();
+    }
+
+    /**
+     * Returns the identifier under which the supplied config is indexed.
+     */
+    public ConfigId getId (ManagedConfig config)
+    {
+        ConfigGroup<?> group = config.getConfigGroup();
+        return (group == null) ? new ConfigId(ManagedConfig.class, config.getName()) :
+            new ConfigId(group.getConfigClass(), config.getName());
+    }
+
+    /**
+     * Returns the identifiers of the configs that refer directly to the identified config.
+     */
+    public Set<ConfigId> getDependents (ConfigId id)
+    {
+        return Collections.unmodifiableSet(_dependents.get(id));
+    }
+
+    /**
+     * Returns the identifiers of the configs that depend, directly or indirectly, on the
+     * identified config (not including the config itself, unless it depends on itself), ordered
+     * such that each config follows those on which it depends.
+     */
+    public List<ConfigId> getAffected (ConfigId id)
+    {
+        List<ConfigId> affected = Lists.newArrayList();
+        Set<ConfigId> seen = Sets.newHashSet();
+        Deque<ConfigId> queue = new ArrayDeque<ConfigId>();
+        queue.add(id);
+        while (!queue.isEmpty()) {
+            for (ConfigId dependent : _dependents.get(queue.remove())) {
+                if (seen.add(dependent)) {
+                    affected.add(dependent);
+                    queue.add(dependent);
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * (Re)indexes the dependencies of the supplied config.
+     */
+    public void update (ManagedConfig config)
+    {
+        ConfigId id = getId(config);
+        remove(id);
+        SetMultimap<Class<? extends ManagedConfig>, ConfigReference<?>> refs =
+            DependencyGatherer.gather(_cfgmgr, config);
+        for (Map.Entry<Class<? extends ManagedConfig>, Set<ConfigReference<?>>> entry :
+                Multimaps.asMap(refs).entrySet()) {
+            Class<? extends ManagedConfig> clazz = entry.getKey();
+            for (ConfigReference<?> ref : entry.getValue()) {
+                ConfigId dependency = normalize(clazz, ref.getName());
+                _dependencies.put(id, dependency);
+                _dependents.put(dependency, id);
+            }
+        }
+    }
+
+    /**
+     * Removes the identified config's dependencies from the index.
+     */
+    public void remove (ConfigId id)
+    {
+        for (ConfigId dependency : _dependencies.removeAll(id)) {
+            _dependents.remove(dependency, id);
+        }
+    }
+
+    // documentation inherited from interface ConfigGroupListener
+    public void configAdded (ConfigEvent<ManagedConfig> event)
+    {
+        update(event.getConfig());
+    }
+
+    // documentation inherited from interface ConfigGroupListener
+    public void configRemoved (ConfigEvent<ManagedConfig> event)
+    {
+        ManagedConfig config = event.getConfig();
+        remove(new ConfigId(((ConfigGroup<?>)event.getSource()).getConfigClass(),
+            config.getName()));
+    }
+
+    /**
+     * Returns the identifier of the config referenced with the specified type and name.
+     */
+    protected ConfigId normalize (Class<? extends ManagedConfig> clazz, String name)
+    {
+        if (_cfgmgr.isResourceClass(clazz)) {
+            ConfigGroup<?>[] groups = _cfgmgr.getGroups(clazz);
+            if (groups.length == 0 || groups[0].getRawConfig(name) == null) {
+                return new ConfigId(ManagedConfig.class, name);
+            }
+        }
+        for (Class<?> c = clazz; c != ManagedConfig.class && c != null; c = c.getSuperclass()) {
+            @SuppressWarnings("unchecked") Class<? extends ManagedConfig> mclass =
+                (Class<? extends ManagedConfig>)c;
+            if (_cfgmgr.getGroups(mclass).length > 0) {
+                return new ConfigId(mclass, name);
+            }
+        }
+        return new ConfigId(clazz, name);
+    }
+
+    /** The manager whose configs we index. */
+    protected ConfigManager _cfgmgr;
+
+    /** The groups to which we listen. */
+    protected List<ConfigGroup<?>> _groups = Lists.newArrayList();
+
+    /** Maps configs to the configs on which they depend. */
+    protected SetMultimap<ConfigId, ConfigId> _dependencies = HashMultimap.create();
+
+    /** Maps configs to the configs that depend on them. */
+    protected SetMultimap<ConfigId, ConfigId> _dependents = HashMultimap.create();
+}
@@ -23,10 +23,13 @@ package com.threerings.crowd.chat.server;
 
 import java.io.IOException;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -35,17 +38,21 @@ import com.google.inject.Singleton;
 
 import com.threerings.io.ObjectInputStream;
 import com.threerings.io.ObjectOutputStream;
+import com.threerings.presents.dobj.DObject;
 import com.threerings.presents.server.PresentsDObjectMgr;
 import com.threerings.util.Name;
 
 import com.threerings.crowd.chat.data.ChatChannel;
 import com.threerings.crowd.chat.data.ChatMessage;
 import com.threerings.crowd.chat.data.KeepNoHistory;
+import com.threerings.crowd.chat.data.SpeakObject;
 import com.threerings.crowd.chat.data.UserMessage;
 import com.threerings.io.Streamable;
 
 /**
- * Provides a server-wide history of chat messages.
+ * Provides a server-wide history of chat messages.  Each message is stored once, in a ring buffer
+ * belonging to the channel (chat channel or speak object) on which it was delivered, and each
+ * user's history consists of the ranges of those buffers that the user heard.
  */
 @Singleton
 public class ChatHistory
@@ -94,10 +101,14 @@ public class ChatHistory
      */
     public ChatHistory ()
     {
-        SpeakUtil.registerMessageObserver(new SpeakUtil.MessageObserver() {
+        SpeakUtil.registerMessageObserver(new SpeakUtil.SpeakObjectObserver() {
             public void messageDelivered (String source, Name hearer, UserMessage message) {
                 record(null, source, message, hearer);
             }
+            public void messageDelivered (
+                SpeakObject speakObj, String source, Name hearer, UserMessage message) {
+                record(getChannelKey(speakObj), null, source, message, hearer);
+            }
         });
     }
 
@@ -108,9 +119,13 @@ public class ChatHistory
      */
     public List<Entry> get (Name username)
     {
-        List<Entry> history = getList(username);
-        if (history != null) {
-            prune(System.currentTimeMillis(), history);
+        if (username instanceof KeepNoHistory) {
+            return null;
+        }
+        List<Entry> history = Lists.newArrayList();
+        UserHistory uhist = _histories.get(username);
+        if (uhist != null) {
+            uhist.getEntries(System.currentTimeMillis(), history);
         }
         return history;
     }
@@ -141,76 +156,325 @@ public class ChatHistory
      * ChatMessage#timestamp} is not already filled in, it will be.
      */
     public void record (ChatChannel channel, String source, UserMessage msg, Name ...usernames)
+    {
+        record(channel, channel, source, msg, usernames);
+    }
+
+    /**
+     * Causes the chat history for the given user to be held briefly after the {@link #clear}
+     * call so that session observers can grab it.
+     */
+    public void hold (Name username)
+    {
+        _holds.add(username);
+    }
+
+    /**
+     * Records the specified channel and message to the specified users' chat histories, storing
+     * the message in the history of the channel identified by the given key.  Recording the same
+     * message to the same channel repeatedly (once for each of its hearers, say) stores it once.
+     *
+     * @param key the key identifying the channel, or null to use a channel shared by all messages
+     * recorded without one.
+     */
+    protected void record (
+        Object key, ChatChannel channel, String source, UserMessage msg, Name ...usernames)
     {
         // fill in the message's time stamp if necessary
         if (msg.timestamp == 0L) {
             msg.timestamp = System.currentTimeMillis();
         }
 
-        Entry entry = new Entry(channel, source, msg);
+        ChannelHistory chist = null;
+        long seq = 0L;
         for (Name username : usernames) {
-            // add the message to this user's chat history
-            List<Entry> history = getList(username);
-            if (history == null) {
+            UserHistory uhist = getUserHistory(username);
+            if (uhist == null) {
                 continue;
             }
+            if (chist == null) {
+                // add the message to the channel's history (fetching the channel moves it to the
+                // end of the access order, so the channels at the front have been idle longest)
+                key = (key == null) ? NO_CHANNEL : key;
+                if ((chist = _channels.get(key)) == null) {
+                    _channels.put(key, chist = new ChannelHistory());
+                }
+                seq = chist.append(channel, source, msg);
+            }
+            // note that the user heard it
+            uhist.heard(chist, seq);
+        }
 
-            history.add(entry);
-
-            // if the history is big enough, potentially prune it (we always prune when asked for
-            // the history, so this is just to balance memory usage with CPU expense)
-            if (history.size() > 15) {
-                prune(msg.timestamp, history);
+        // drop any idle channels whose messages have all expired
+        for (Iterator<ChannelHistory> it = _channels.values().iterator(); it.hasNext(); ) {
+            if (!it.next().prune(msg.timestamp)) {
+                break;
             }
+            it.remove();
         }
     }
 
     /**
-     * Causes the chat history for the given user to be held briefly after the {@link #clear}
-     * call so that session observers can grab it.
+     * Returns the key identifying the channel of the messages delivered on the specified speak
+     * object: its oid if it is a distributed object (so that the channel's history doesn't hold on
+     * to the object once it has been destroyed), otherwise null for the shared channel.
      */
-    public void hold (Name username)
+    protected Object getChannelKey (SpeakObject speakObj)
     {
-        _holds.add(username);
+        return (speakObj instanceof DObject) ? ((DObject)speakObj).getOid() : null;
     }
 
     /**
      * Returns this user's chat history, creating one if necessary. If the given name implements
      * {@link KeepNoHistory}, null is returned.
      */
-    protected List<Entry> getList (Name username)
+    protected UserHistory getUserHistory (Name username)
     {
         if (username instanceof KeepNoHistory) {
             return null;
         }
-        List<Entry> history = _histories.get(username);
+        UserHistory history = _histories.get(username);
         if (history == null) {
-            _histories.put(username, history = Lists.newArrayList());
+            _histories.put(username, history = new UserHistory());
         }
         return history;
     }
 
     /**
-     * Prunes all messages from this history which are expired.
+     * The recent messages delivered on a single channel, stored in a ring buffer indexed by
+     * sequence number.
+     */
+    protected class ChannelHistory
+    {
+        /**
+         * Returns the sequence number of the oldest message still in the history.
+         */
+        public long getFirst ()
+        {
+            return _first;
+        }
+
+        /**
+         * Returns the sequence number of the last message in the history (one less than
+         * {@link #getFirst} if the history is empty).
+         */
+        public long getLast ()
+        {
+            return _next - 1;
+        }
+
+        /**
+         * Returns the entry with the specified sequence number, which must be in the history.
+         */
+        public Entry getEntry (long seq)
+        {
+            return _entries[getIndex(seq)];
+        }
+
+        /**
+         * Returns the order in which the specified entry was recorded relative to those of all
+         * other channels.
+         */
+        public long getOrdinal (long seq)
+        {
+            return _ordinals[getIndex(seq)];
+        }
+
+        /**
+         * Appends a message to the history, unless it is the message most recently appended.
+         *
+         * @return the sequence number of the message.
+         */
+        public long append (ChatChannel channel, String source, UserMessage msg)
+        {
+            if (_next > _first) {
+                Entry last = getEntry(_next - 1);
+                if (last.message == msg && last.channel == channel &&
+                        Objects.equal(last.source, source)) {
+                    return _next - 1;
+                }
+            }
+            prune(msg.timestamp);
+            if (_next - _first == _entries.length) {
+                // copy the entries into a buffer twice the size
+                Entry[] oentries = _entries;
+                long[] oordinals = _ordinals;
+                _entries = new Entry[oentries.length * 2];
+                _ordinals = new long[oentries.length * 2];
+                for (long seq = _first; seq < _next; seq++) {
+                    int oidx = (int)seq & (oentries.length - 1);
+                    _entries[getIndex(seq)] = oentries[oidx];
+                    _ordinals[getIndex(seq)] = oordinals[oidx];
+                }
+            }
+            int idx = getIndex(_next);
+            _entries[idx] = new Entry(channel, source, msg);
+            _ordinals[idx] = _nextOrdinal++;
+            return _next++;
+        }
+
+        /**
+         * Prunes all messages from the history which are expired.
+         *
+         * @return true if the history is now empty.
+         */
+        public boolean prune (long now)
+        {
+            for (; _first < _next; _first++) {
+                int idx = getIndex(_first);
+                if (now - _entries[idx].message.timestamp < HISTORY_EXPIRATION) {
+                    return false; // stop when we get to the first valid message
+                }
+                _entries[idx] = null;
+            }
+            // if a burst of chat made us grow, we can go back to the initial size
+            if (_entries.length > INITIAL_CHANNEL_CAPACITY) {
+                _entries = new Entry[INITIAL_CHANNEL_CAPACITY];
+                _ordinals = new long[INITIAL_CHANNEL_CAPACITY];
+            }
+            return true;
+        }
+
+        /**
+         * Returns the index in the buffer of the message with the specified sequence number.
+         */
+        protected int getIndex (long seq)
+        {
+            return (int)seq & (_entries.length - 1);
+        }
+
+        /** The entries in the history. */
+        protected Entry[] _entries = new Entry[INITIAL_CHANNEL_CAPACITY];
+
+        /** The order in which each entry was recorded relative to all channels. */
+        protected long[] _ordinals = new long[INITIAL_CHANNEL_CAPACITY];
+
+        /** The sequence number of the oldest message in the history. */
+        protected long _first;
+
+        /** The sequence number to assign to the next message. */
+        protected long _next;
+    }
+
+    /**
+     * A run of consecutive messages on a channel heard by a user.
      */
-    protected void prune (long now, List<Entry> history)
+    protected static class Span
     {
-        int prunepos = 0;
-        for (int ll = history.size(); prunepos < ll; prunepos++) {
-            Entry entry = history.get(prunepos);
-            if (now - entry.message.timestamp < HISTORY_EXPIRATION) {
-                break; // stop when we get to the first valid message
+        /** The channel on which the messages were delivered. */
+        public final ChannelHistory channel;
+
+        /** The sequence numbers of the first and last messages heard. */
+        public long first, last;
+
+        public Span (ChannelHistory channel, long seq)
+        {
+            this.channel = channel;
+            this.first = this.last = seq;
+        }
+    }
+
+    /**
+     * Tracks the messages heard by a single user.
+     */
+    protected static class UserHistory
+    {
+        /**
+         * Notes that the user heard the message with the specified sequence number.
+         */
+        public void heard (ChannelHistory channel, long seq)
+        {
+            // extend the user's latest span on the channel if the message follows on from it
+            for (int ii = _spans.size() - 1; ii >= 0; ii--) {
+                Span span = _spans.get(ii);
+                if (span.channel == channel) {
+                    if (span.last >= seq) {
+                        return; // already heard
+                    } else if (span.last == seq - 1) {
+                        span.last = seq;
+                        return;
+                    }
+                    break;
+                }
+            }
+
+            // if we have enough spans, drop any whose messages have all expired
+            if (_spans.size() > 8) {
+                for (Iterator<Span> it = _spans.iterator(); it.hasNext(); ) {
+                    Span span = it.next();
+                    if (span.last < span.channel.getFirst()) {
+                        it.remove();
+                    }
+                }
+            }
+            _spans.add(new Span(channel, seq));
+        }
+
+        /**
+         * Adds the unexpired entries heard by the user to the supplied list in the order in which
+         * they were recorded.
+         */
+        public void getEntries (long now, List<Entry> results)
+        {
+            // prune the channels and drop any spans whose messages have all expired
+            for (Iterator<Span> it = _spans.iterator(); it.hasNext(); ) {
+                Span span = it.next();
+                span.channel.prune(now);
+                if (span.last < span.channel.getFirst()) {
+                    it.remove();
+                }
+            }
+
+            // merge the remaining spans in the order in which their entries were recorded
+            long[] cursors = new long[_spans.size()];
+            for (int ii = 0; ii < cursors.length; ii++) {
+                Span span = _spans.get(ii);
+                cursors[ii] = Math.max(span.first, span.channel.getFirst());
+            }
+            while (true) {
+                int next = -1;
+                long ordinal = Long.MAX_VALUE;
+                for (int ii = 0; ii < cursors.length; ii++) {
+                    Span span = _spans.get(ii);
+                    if (cursors[ii] <= span.last) {
+                        long oord = span.channel.getOrdinal(cursors[ii]);
+                        if (oord < ordinal) {
+                            next = ii;
+                            ordinal = oord;
+                        }
+                    }
+                }
+                if (next == -1) {
+                    return;
+                }
+                results.add(_spans.get(next).channel.getEntry(cursors[next]++));
             }
         }
-        history.subList(0, prunepos).clear();
+
+        /** The spans of messages heard, in the order in which they were begun. */
+        protected List<Span> _spans = Lists.newArrayList();
     }
 
     /** Recent chat history for the server. */
-    protected Map<Name, List<Entry>> _histories = Maps.newHashMap();
+    protected Map<Name, UserHistory> _histories = Maps.newHashMap();
+
+    /** The histories of the channels on which recent messages were delivered, in the order in
+     * which they were last recorded to. */
+    protected LinkedHashMap<Object, ChannelHistory> _channels =
+        new LinkedHashMap<Object, ChannelHistory>(16, 0.75f, true);
+
+    /** The number of entries recorded, used to order the entries of different channels. */
+    protected long _nextOrdinal;
 
     /** Names we will hold for. */
     protected Set<Name> _holds = Sets.newHashSet();
 
     // dependencies
     @Inject protected PresentsDObjectMgr _omgr;
+
+    /** The key for messages recorded without a channel. */
+    protected static final Object NO_CHANNEL = new Object();
+
+    /** The initial capacity of each channel's ring buffer (must be a power of two). */
+    protected static final int INITIAL_CHANNEL_CAPACITY = 16;
 }
@@ -54,6 +54,20 @@ public class SpeakUtil
         void messageDelivered (String source, Name hearer, UserMessage message);
     }
 
+    /**
+     * A {@link MessageObserver} that also wants to know the object on which each message was
+     * spoken, so that it can tell apart the messages heard in different places.
+     */
+    public static interface SpeakObjectObserver extends MessageObserver
+    {
+        /**
+         * Called (instead of {@link #messageDelivered(String,Name,UserMessage)}) for each player
+         * that hears a particular chat message spoken on the specified object.
+         */
+        void messageDelivered (
+            SpeakObject speakObj, String source, Name hearer, UserMessage message);
+    }
+
     /**
      * Registers a {@link MessageObserver} to be notified whenever a user-originated chat message
      * is heard by another user.
@@ -247,7 +261,13 @@ public class SpeakUtil
         }
 
         public boolean apply (MessageObserver observer) {
-            observer.messageDelivered(_sender.getChatIdentifier(_message), _hearer, _message);
+            String source = _sender.getChatIdentifier(_message);
+            if (observer instanceof SpeakObjectObserver) {
+                ((SpeakObjectObserver)observer).messageDelivered(
+                    _sender, source, _hearer, _message);
+            } else {
+                observer.messageDelivered(source, _hearer, _message);
+            }
             return true;
         }
 
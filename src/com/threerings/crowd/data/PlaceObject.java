@@ -27,6 +27,7 @@ import com.threerings.util.Name;
 import com.threerings.presents.dobj.DObject;
 import com.threerings.presents.dobj.DObjectManager;
 import com.threerings.presents.dobj.DSet;
+import com.threerings.presents.dobj.IndexedDSet;
 import com.threerings.presents.dobj.OidList;
 import com.threerings.presents.dobj.ServerMessageEvent;
 
@@ -105,7 +106,7 @@ public class PlaceObject extends DObject
      * ensure that readers and updaters don't step on one another even if they make rapid fire
      * changes to a user's occupant info.
      */
-    public DSet<OccupantInfo> occupantInfo = new DSet<OccupantInfo>();
+    public DSet<OccupantInfo> occupantInfo = new IndexedDSet<OccupantInfo>();
 
     /** Used to generate speak requests on this place object. */
     public SpeakMarshaller speakService;
@@ -32,8 +32,9 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.collect.Sets;
 
@@ -238,6 +239,6 @@ public class ObjectMarshaller
     protected Object _prototype;
 
     /** Maps classes to created marshallers. */
-    protected static HashMap<Class<?>, ObjectMarshaller> _marshallers =
-        new HashMap<Class<?>, ObjectMarshaller>();
+    protected static Map<Class<?>, ObjectMarshaller> _marshallers =
+        new ConcurrentHashMap<Class<?>, ObjectMarshaller>();
 }
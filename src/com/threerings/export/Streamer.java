@@ -38,7 +38,8 @@ import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.base.Charsets;
 
@@ -129,8 +130,8 @@ public abstract class Streamer<T>
         throws IOException, ClassNotFoundException;
 
     /** Registered streamers. */
-    protected static HashMap<Class<?>, Streamer<?>> _streamers =
-            new HashMap<Class<?>, Streamer<?>>();
+    protected static Map<Class<?>, Streamer<?>> _streamers =
+        new ConcurrentHashMap<Class<?>, Streamer<?>>();
     static {
         // register basic streamers for wrapper types, primitive arrays
         Streamer<?> streamer = new Streamer<Boolean>() {
@@ -35,8 +35,9 @@ import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 
-import java.util.HashMap;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.lwjgl.BufferUtils;
 
@@ -96,8 +97,8 @@ public abstract class Stringifier<T>
         throws Exception;
 
     /** Registered stringifiers. */
-    protected static HashMap<Class<?>, Stringifier<?>> _stringifiers =
-        new HashMap<Class<?>, Stringifier<?>>();
+    protected static Map<Class<?>, Stringifier<?>> _stringifiers =
+        new ConcurrentHashMap<Class<?>, Stringifier<?>>();
     static {
         // register basic stringifiers for wrapper types, primitive arrays
         _stringifiers.put(Boolean.class, new Stringifier<Boolean>() {
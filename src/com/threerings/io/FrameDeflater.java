@@ -0,0 +1,153 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.io;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses frames produced by a {@link FramingOutputStream} using a single streaming deflate
+ * context that persists for the lifetime of a connection. Each frame is sync flushed so that the
+ * receiving {@link FramedInputStream} can inflate it as soon as it arrives, while the shared
+ * dictionary lets later frames benefit from the contents of earlier ones. Frames smaller than the
+ * configured threshold are passed through untouched, as they are not worth the CPU.
+ *
+ * <p><em>Note:</em> a frame deflater maintains compression state that must match the state of the
+ * inflater on the other end, so every frame it produces must be delivered, in order. Frames should
+ * be deflated on a single thread, but the deflater may be {@link #end}ed from another once its
+ * connection closes.
+ */
+public class FrameDeflater
+{
+    /** The default size (in bytes of frame data) below which frames are sent uncompressed. */
+    public static final int DEFAULT_THRESHOLD = 256;
+
+    /**
+     * Creates a deflater that compresses frames with at least the default threshold's worth of
+     * data.
+     */
+    public FrameDeflater ()
+    {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a deflater that compresses frames with at least <code>threshold</code> bytes of
+     * data.
+     */
+    public FrameDeflater (int threshold)
+    {
+        _threshold = threshold;
+    }
+
+    /**
+     * Returns the size (in bytes of frame data) below which frames are sent uncompressed.
+     */
+    public int getThreshold ()
+    {
+        return _threshold;
+    }
+
+    /**
+     * Compresses the supplied frame (as returned by
+     * {@link FramingOutputStream#frameAndReturnBuffer}) if it is large enough to warrant
+     * compression.
+     *
+     * @return the supplied buffer, if the frame was too small to compress, or a buffer containing
+     * the compressed frame, positioned at zero. The latter is reused by subsequent calls, so its
+     * contents must be written or copied before this method is called again.
+     */
+    public synchronized ByteBuffer deflate (ByteBuffer frame)
+    {
+        int length = frame.limit() - FramedInputStream.HEADER_SIZE;
+        if (length < _threshold || _ended) {
+            return frame;
+        }
+
+        // feed the frame data into our deflater
+        if (_deflater == null) {
+            _deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        if (frame.hasArray()) {
+            _deflater.setInput(frame.array(), frame.arrayOffset() + FramedInputStream.HEADER_SIZE,
+                length);
+        } else {
+            byte[] data = new byte[length];
+            frame.position(FramedInputStream.HEADER_SIZE);
+            frame.get(data);
+            frame.rewind();
+            _deflater.setInput(data);
+        }
+
+        // and flush it all out; the output of a sync flush is complete when the deflater fails to
+        // fill the space we gave it
+        int count = FramedInputStream.HEADER_SIZE;
+        while (true) {
+            int avail = _output.length - count;
+            int got = _deflater.deflate(_output, count, avail, Deflater.SYNC_FLUSH);
+            count += got;
+            if (got < avail) {
+                break;
+            }
+            byte[] noutput = new byte[_output.length << 1];
+            System.arraycopy(_output, 0, noutput, 0, count);
+            _output = noutput;
+        }
+
+        // write our header, flagging the frame as compressed
+        int header = count | FramedInputStream.COMPRESSED_FLAG;
+        _output[0] = (byte)((header >>> 24) & 0xFF);
+        _output[1] = (byte)((header >>> 16) & 0xFF);
+        _output[2] = (byte)((header >>>  8) & 0xFF);
+        _output[3] = (byte)((header >>>  0) & 0xFF);
+        return ByteBuffer.wrap(_output, 0, count);
+    }
+
+    /**
+     * Releases the deflate context.  Frames passed to {@link #deflate} thereafter are returned
+     * uncompressed, as there is no longer anyone to receive them.
+     */
+    public synchronized void end ()
+    {
+        if (_deflater != null) {
+            _deflater.end();
+            _deflater = null;
+        }
+        _ended = true;
+    }
+
+    /** The size below which we don't bother compressing. */
+    protected int _threshold;
+
+    /** Our streaming deflate context, created when we compress our first frame. */
+    protected Deflater _deflater;
+
+    /** Set once we have been ended. */
+    protected boolean _ended;
+
+    /** The buffer into which we write compressed frames. */
+    protected byte[] _output = new byte[INITIAL_BUFFER_CAPACITY];
+
+    /** The initial size of our output buffer. */
+    protected static final int INITIAL_BUFFER_CAPACITY = 1024;
+}
@@ -28,6 +28,9 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
 /**
  * The framed input stream reads input that was framed by a framing output
  * stream. Framing in this case simply means writing the length of the
@@ -45,6 +48,11 @@ import java.nio.channels.ReadableByteChannel;
  * single frame at a time, so any data left over from a previous frame
  * will disappear when <code>readFrame()</code> is called again.
  *
+ * <p>Frames that were compressed by a {@link FrameDeflater} are flagged
+ * as such in their header and are inflated transparently when they are
+ * read, so the consumer of the stream sees the same data regardless of
+ * whether the sender chose to compress it.
+ *
  * <p><em>Note:</em> The framing input stream does not synchronize reads
  * from its internal buffer. It is intended to only be accessed from a
  * single thread.
@@ -61,6 +69,7 @@ public class FramedInputStream extends InputStream
     public FramedInputStream ()
     {
         _buffer = ByteBuffer.allocate(INITIAL_BUFFER_CAPACITY);
+        _frame = _buffer;
     }
 
     /**
@@ -162,7 +171,9 @@ public class FramedInputStream extends InputStream
         length += (_buffer.get() & 0xFF);
         _buffer.position(_have);
 
-        return length;
+        // note whether or not the frame was compressed
+        _compressed = (length & COMPRESSED_FLAG) != 0;
+        return length & ~COMPRESSED_FLAG;
     }
 
     /**
@@ -171,6 +182,7 @@ public class FramedInputStream extends InputStream
      * to deliver that frame via our {@link InputStream} interface.
      */
     protected final boolean checkForCompleteFrame ()
+        throws IOException
     {
         if (_length == -1 || _have < _length) {
             return false;
@@ -179,9 +191,109 @@ public class FramedInputStream extends InputStream
         // prepare the buffer such that this frame can be read
         _buffer.position(HEADER_SIZE);
         _buffer.limit(_length);
+        _frame = _buffer;
+        _inflateNanos = 0L;
+
+        // if the frame was compressed, inflate it and serve up the inflated data instead
+        if (_compressed) {
+            long start = System.nanoTime();
+            inflateFrame();
+            _inflateNanos = System.nanoTime() - start;
+        }
         return true;
     }
 
+    /**
+     * Returns true if the frame most recently read by {@link #readFrame}
+     * was compressed.
+     */
+    public boolean isCompressed ()
+    {
+        return _compressed;
+    }
+
+    /**
+     * Returns the number of bytes occupied on the wire by the frame most
+     * recently read by {@link #readFrame}, including the frame header.
+     * This will differ from the amount of data {@link #available} if the
+     * frame was compressed.
+     */
+    public int getFrameLength ()
+    {
+        return _length;
+    }
+
+    /**
+     * Returns the number of nanoseconds spent inflating the frame most
+     * recently read by {@link #readFrame}, or zero if it was not
+     * compressed.
+     */
+    public long getInflateNanos ()
+    {
+        return _inflateNanos;
+    }
+
+    /**
+     * Inflates the compressed frame in our buffer into our inflated frame
+     * buffer and prepares the latter to deliver the data.
+     */
+    protected void inflateFrame ()
+        throws IOException
+    {
+        if (_inflater == null) {
+            _inflater = new Inflater();
+            _inflated = ByteBuffer.allocate(INITIAL_BUFFER_CAPACITY);
+        }
+        _inflater.setInput(_buffer.array(), _buffer.arrayOffset() + HEADER_SIZE,
+            _length - HEADER_SIZE);
+
+        // the sender sync flushed the frame, so it is complete when the inflater wants more input
+        // and did not fill the space we gave it
+        byte[] data = _inflated.array();
+        int count = 0;
+        try {
+            while (true) {
+                int got = _inflater.inflate(data, count, data.length - count);
+                count += got;
+                if (count == data.length) {
+                    // don't let things grow without bounds
+                    if (data.length >= MAX_BUFFER_CAPACITY) {
+                        throw new IOException("Inflated frame exceeds maximum size " +
+                            "[length=" + _length + "].");
+                    }
+                    _inflated = ByteBuffer.allocate(data.length << 1);
+                    _inflated.put(data);
+                    data = _inflated.array();
+                } else if (_inflater.needsInput()) {
+                    break;
+                } else if (got == 0) {
+                    throw new IOException("Inflater stalled on compressed frame " +
+                        "[length=" + _length + "].");
+                }
+            }
+        } catch (DataFormatException dfe) {
+            throw (IOException)new IOException("Malformed compressed frame").initCause(dfe);
+        }
+
+        _inflated.position(0);
+        _inflated.limit(count);
+        _frame = _inflated;
+    }
+
+    /**
+     * Releases the inflater used to decompress frames, if one was
+     * created. The stream should not be read from thereafter.
+     */
+    @Override
+    public void close ()
+    {
+        if (_inflater != null) {
+            _inflater.end();
+            _inflater = null;
+            _inflated = null;
+        }
+    }
+
     /**
      * Reads the next byte of data from this input stream. The value byte
      * is returned as an <code>int</code> in the range <code>0</code> to
@@ -196,7 +308,7 @@ public class FramedInputStream extends InputStream
     @Override
     public int read ()
     {
-        return (_buffer.remaining() > 0) ? (_buffer.get() & 0xFF) : -1;
+        return (_frame.remaining() > 0) ? (_frame.get() & 0xFF) : -1;
     }
 
     /**
@@ -234,11 +346,11 @@ public class FramedInputStream extends InputStream
 
         // trim the amount to be read to what is available; if they wanted
         // bytes and we have none, return -1 to indicate EOF
-        if ((len = Math.min(len, _buffer.remaining())) == 0) {
+        if ((len = Math.min(len, _frame.remaining())) == 0) {
             return -1;
         }
 
-        _buffer.get(b, off, len);
+        _frame.get(b, off, len);
         return len;
     }
 
@@ -270,7 +382,7 @@ public class FramedInputStream extends InputStream
     @Override
     public int available ()
     {
-        return _buffer.remaining();
+        return _frame.remaining();
     }
 
     /**
@@ -299,12 +411,28 @@ public class FramedInputStream extends InputStream
     public void reset ()
     {
         // position our buffer at the beginning of the frame data
-        _buffer.position(HEADER_SIZE);
+        _frame.position((_frame == _buffer) ? HEADER_SIZE : 0);
     }
 
     /** The buffer in which we maintain our frame data. */
     protected ByteBuffer _buffer;
 
+    /** The buffer from which the current frame is read: either {@link #_buffer} or, if the frame
+     * was compressed, {@link #_inflated}. */
+    protected ByteBuffer _frame;
+
+    /** Whether or not the current frame is compressed. */
+    protected boolean _compressed;
+
+    /** Inflates compressed frames; created when we receive our first compressed frame. */
+    protected Inflater _inflater;
+
+    /** The buffer into which we inflate compressed frames. */
+    protected ByteBuffer _inflated;
+
+    /** The time spent inflating the current frame. */
+    protected long _inflateNanos;
+
     /** The length of the current frame being read. */
     protected int _length = -1;
 
@@ -315,6 +443,9 @@ public class FramedInputStream extends InputStream
     /** The size of the frame header (a 32-bit integer). */
     protected static final int HEADER_SIZE = 4;
 
+    /** The header bit that indicates that a frame's data is compressed. */
+    protected static final int COMPRESSED_FLAG = 0x80000000;
+
     /** The default initial size of the internal buffer. */
     protected static final int INITIAL_BUFFER_CAPACITY = 32;
 
@@ -55,4 +55,13 @@ public interface Streamable
      * package up units of code and ship them between peers, or even between client and server.
      */
     public interface Closure extends Streamable {}
+
+    /**
+     * A marker interface for streamable classes that are streamed as their nearest unmarked
+     * ancestor: they are written with that class's name and so are read back as instances of
+     * it. This allows a class to specialize the local behavior of a streamable type without
+     * requiring the other end of the connection to know about the specialization. The streamed
+     * form of such a class must be identical to that of its superclass.
+     */
+    public interface AsSuperclass extends Streamable {}
 }
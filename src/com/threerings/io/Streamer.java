@@ -90,12 +90,19 @@ public abstract class Streamer
     /**
      * Returns the class that should be used when streaming this object. In general that is the
      * object's natural class, but for enum values, that might be its declaring class as enums use
-     * classes in a way that would otherwise pollute our id to class mapping space.
+     * classes in a way that would otherwise pollute our id to class mapping space, and classes
+     * marked with {@link Streamable.AsSuperclass} are streamed as their first unmarked ancestor.
      */
     public static Class<?> getStreamerClass (Object object)
     {
-        return (object instanceof Enum<?>) ?
-            ((Enum<?>)object).getDeclaringClass() : object.getClass();
+        if (object instanceof Enum<?>) {
+            return ((Enum<?>)object).getDeclaringClass();
+        }
+        Class<?> sclass = object.getClass();
+        while (Streamable.AsSuperclass.class.isAssignableFrom(sclass)) {
+            sclass = sclass.getSuperclass();
+        }
+        return sclass;
     }
 
     /**
@@ -34,6 +34,7 @@ import java.awt.Rectangle;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -44,6 +45,7 @@ import com.samskivert.util.Throttle;
 import com.samskivert.util.Tuple;
 
 import com.threerings.resource.ResourceManager;
+import com.threerings.util.GovernedLRUHashMap;
 
 import static com.threerings.media.Log.log;
 
@@ -120,13 +122,12 @@ public class ImageManager
         // create our image cache
         int icsize = getCacheSize();
         log.debug("Creating image cache", "size", (icsize + "k"));
-        _ccache = new LRUHashMap<ImageKey, CacheRecord>(
-                icsize * 1024, new LRUHashMap.ItemSizer<CacheRecord>() {
+        _ccache = new GovernedLRUHashMap<ImageKey, CacheRecord>(
+                "ImageManager", icsize * 1024, new LRUHashMap.ItemSizer<CacheRecord>() {
             public int computeSize (CacheRecord value) {
                 return (int)value.getEstimatedMemoryUsage();
             }
         });
-        _ccache.setTracking(true);
     }
 
     /**
@@ -158,6 +159,17 @@ public class ImageManager
         }
     }
 
+    /**
+     * Clears the image cache and unregisters it from the cache governor. This should be called
+     * when the manager is discarded before the application exits.
+     */
+    public void shutdown ()
+    {
+        synchronized (_ccache) {
+            _ccache.dispose();
+        }
+    }
+
     /**
      * Creates a buffered image, optimized for display on our graphics device.
      */
@@ -290,7 +302,9 @@ public class ImageManager
 //         log.info("Cache miss", "key", key, "crec", crec);
 
         // load up the raw image
+        long start = System.nanoTime();
         BufferedImage image = loadImage(key);
+        _ccache.getMeter().recordLoad(System.nanoTime() - start);
         if (image == null) {
             log.warning("Failed to load image " + key + ".");
             // create a blank image instead
@@ -449,16 +463,17 @@ public class ImageManager
         // compute our estimated memory usage
         long size = 0;
 
-        int[] eff = null;
         synchronized (_ccache) {
             Iterator<CacheRecord> iter = _ccache.values().iterator();
             while (iter.hasNext()) {
                 size += iter.next().getEstimatedMemoryUsage();
             }
-            eff = _ccache.getTrackedEffectiveness();
         }
+        CacheStats stats = _ccache.getMeter().getStats();
         log.info("ImageManager LRU", "mem", ((size / 1024) + "k"), "size", _ccache.size(),
-            "hits", eff[0], "misses", eff[1], "totalKeys", _keySet.size());
+            "budget", ((_ccache.getBudget() / 1024) + "k"), "hits", stats.hitCount(),
+            "misses", stats.missCount(), "evictions", stats.evictionCount(),
+            "totalKeys", _keySet.size());
     }
 
     /** Maintains a source image and a set of colorized versions in the image cache. */
@@ -470,7 +485,8 @@ public class ImageManager
             _source = source;
         }
 
-        public BufferedImage getImage (Colorization[] zations, LRUHashMap<ImageKey, CacheRecord> cache)
+        public synchronized BufferedImage getImage (
+            Colorization[] zations, LRUHashMap<ImageKey, CacheRecord> cache)
         {
             if (zations == null) {
                 return _source;
@@ -537,7 +553,7 @@ public class ImageManager
     protected OptimalImageCreator _icreator;
 
     /** A cache of loaded images. */
-    protected LRUHashMap<ImageKey, CacheRecord> _ccache;
+    protected GovernedLRUHashMap<ImageKey, CacheRecord> _ccache;
 
     /** The set of all keys we've ever seen. */
     protected HashSet<ImageKey> _keySet = Sets.newHashSet();
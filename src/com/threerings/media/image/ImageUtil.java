@@ -21,6 +21,11 @@ package com.threerings.media.image;
 
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import java.awt.AlphaComposite;
 import java.awt.Color;
@@ -40,7 +45,8 @@ import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 
-import com.samskivert.util.Logger;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import com.samskivert.swing.Label;
 
@@ -88,8 +94,8 @@ public class ImageUtil
 
     /**
      * Used to recolor images by shifting bands of color (in HSV color space) to a new hue. The
-     * source images must be 8-bit color mapped images, as the recoloring process works by
-     * analysing the color map and modifying it.
+     * source images should be 8-bit color mapped images, which are recolored by analysing the
+     * color map and modifying it; other images are recolored (more expensively) pixel by pixel.
      */
     public static BufferedImage recolorImage (
         BufferedImage image, Color rootColor, float[] dists, float[] offsets)
@@ -109,52 +115,28 @@ public class ImageUtil
     }
 
     /**
-     * Recolors the supplied image using the supplied colorizations.
+     * Recolors the supplied image using the supplied colorizations. Color mapped images are
+     * recolored by adjusting their color map (and share the source image's raster); other images
+     * are recolored pixel by pixel into a new image of the same type, large images being divided
+     * into bands of rows that are recolored in parallel.
      */
     public static BufferedImage recolorImage (BufferedImage image, Colorization[] zations)
     {
         ColorModel cm = image.getColorModel();
         if (!(cm instanceof IndexColorModel)) {
-            throw new RuntimeException(Logger.format(
-                "Unable to recolor images with non-index color model", "cm", cm.getClass()));
+            return recolorDirectImage(image, zations);
         }
 
-        // now process the image
+        // recolor the color map
         IndexColorModel icm = (IndexColorModel)cm;
         int size = icm.getMapSize();
-        int zcount = zations.length;
         int[] rgbs = new int[size];
-
-        // fetch the color data
         icm.getRGBs(rgbs);
-
-        // convert the colors to HSV
-        float[] hsv = new float[3];
-        int[] fhsv = new int[3];
-        for (int ii = 0; ii < size; ii++) {
-            int value = rgbs[ii];
-
-            // don't fiddle with alpha pixels
-            if ((value & 0xFF000000) == 0) {
-                continue;
-            }
-
-            // convert the color to HSV
-            int red = (value >> 16) & 0xFF;
-            int green = (value >> 8) & 0xFF;
-            int blue = (value >> 0) & 0xFF;
-            Color.RGBtoHSB(red, green, blue, hsv);
-            Colorization.toFixedHSV(hsv, fhsv);
-
-            // see if this color matches and of our colorizations and recolor it if it does
-            for (int z = 0; z < zcount; z++) {
-                Colorization cz = zations[z];
-                if (cz != null && cz.matches(hsv, fhsv)) {
-                    // massage the HSV bands and update the RGBs array
-                    rgbs[ii] = cz.recolorColor(hsv);
-                    break;
-                }
-            }
+        RecolorTable table = RecolorTable.obtain(zations);
+        try {
+            table.recolorPalette(rgbs);
+        } finally {
+            RecolorTable.release(table);
         }
 
         // create a new image with the adjusted color palette
@@ -164,6 +146,78 @@ public class ImageUtil
         return new BufferedImage(nicm, image.getRaster(), false, null);
     }
 
+    /**
+     * Recolors an image that does not use a color map.
+     */
+    protected static BufferedImage recolorDirectImage (
+        final BufferedImage image, final Colorization[] zations)
+    {
+        final int width = image.getWidth(), height = image.getHeight();
+        final BufferedImage target = createCompatibleImage(image, width, height);
+        int bands = Math.min(height / MIN_RECOLOR_BAND_HEIGHT,
+                             Runtime.getRuntime().availableProcessors());
+        if (bands < 2 || width * height < PARALLEL_RECOLOR_PIXELS) {
+            recolorRows(image, target, zations, 0, height);
+            return target;
+        }
+
+        // recolor all but the first band on our pool, and the first on this thread
+        List<Future<?>> results = Lists.newArrayListWithCapacity(bands - 1);
+        for (int ii = 1; ii < bands; ii++) {
+            final int y0 = height * ii / bands, y1 = height * (ii + 1) / bands;
+            results.add(getRecolorExecutor().submit(new Runnable() {
+                public void run () {
+                    recolorRows(image, target, zations, y0, y1);
+                }
+            }));
+        }
+        recolorRows(image, target, zations, 0, height / bands);
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while recoloring image", ie);
+            } catch (ExecutionException ee) {
+                throw new RuntimeException("Failed to recolor image", ee.getCause());
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Recolors the specified rows of the source image into the target image.
+     */
+    protected static void recolorRows (
+        BufferedImage source, BufferedImage target, Colorization[] zations, int y0, int y1)
+    {
+        RecolorTable table = RecolorTable.obtain(zations);
+        try {
+            int width = source.getWidth();
+            int[] row = new int[width];
+            for (int yy = y0; yy < y1; yy++) {
+                source.getRGB(0, yy, width, 1, row, 0, width);
+                table.recolorPixels(row, 0, width);
+                target.setRGB(0, yy, width, 1, row, 0, width);
+            }
+        } finally {
+            RecolorTable.release(table);
+        }
+    }
+
+    /**
+     * Returns the pool on which large images are recolored, creating it if necessary.
+     */
+    protected static synchronized ExecutorService getRecolorExecutor ()
+    {
+        if (_recolorExecutor == null) {
+            _recolorExecutor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), new ThreadFactoryBuilder().
+                setNameFormat("ImageUtil recolorer %d").setDaemon(true).build());
+        }
+        return _recolorExecutor;
+    }
+
     /**
      * Paints multiple copies of the supplied image using the supplied graphics context such that
      * the requested area is filled with the image.
@@ -595,9 +649,18 @@ public class ImageUtil
     /** The graphics configuration for the default screen device. */
     protected static GraphicsConfiguration _gc;
 
+    /** The pool on which large images are recolored. */
+    protected static ExecutorService _recolorExecutor;
+
     /** Used when seeking fully transparent pixels for outlining. */
     protected static final int TRANS_MASK = (0xFF << 24);
 
     /** Used when outlining. */
     protected static final int RGB_MASK = 0x00FFFFFF;
+
+    /** Images with fewer pixels than this are recolored on the calling thread. */
+    protected static final int PARALLEL_RECOLOR_PIXELS = 256 * 256;
+
+    /** The minimum number of rows recolored by each thread when recoloring in parallel. */
+    protected static final int MIN_RECOLOR_BAND_HEIGHT = 32;
 }
@@ -0,0 +1,275 @@
+//
+// Nenya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/nenya
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.media.image;
+
+import java.util.Arrays;
+
+import java.awt.Color;
+
+import com.samskivert.util.LRUHashMap;
+
+/**
+ * Maps colors through a set of {@link Colorization}s, remembering the result for every color it
+ * has seen so that each distinct color is converted to HSV, matched and recolored only once.
+ * Colors are tried against the colorizations in order and recolored by the first that matches;
+ * fully transparent colors and colors that match no colorization are left unchanged.
+ *
+ * <p> A table is not thread safe, so threads recoloring in parallel should each use their own.
+ * Tables are best obtained through {@link #obtain}, which reuses the table from a previous
+ * recoloring with the same colorizations (and thus the colors it has already recolored).
+ */
+public class RecolorTable
+{
+    /**
+     * Obtains a table for the supplied colorizations, reusing one {@link #release}d by an earlier
+     * recoloring with equivalent colorizations if one is available, or creating one if not. The
+     * caller has exclusive use of the table until it releases it.
+     */
+    public static RecolorTable obtain (Colorization[] zations)
+    {
+        Key key = new Key(zations);
+        RecolorTable table;
+        synchronized (_tables) {
+            table = _tables.remove(key);
+        }
+        return (table == null) ? new RecolorTable(zations, key) : table;
+    }
+
+    /**
+     * Returns a table obtained with {@link #obtain} so that later recolorings with the same
+     * colorizations can reuse it. The least recently released tables are discarded once the
+     * retained tables exceed a fixed memory budget.
+     */
+    public static void release (RecolorTable table)
+    {
+        synchronized (_tables) {
+            _tables.put(table._key, table);
+        }
+    }
+
+    /**
+     * Creates a table that recolors using the supplied colorizations (any of which may be null).
+     */
+    public RecolorTable (Colorization[] zations)
+    {
+        this(zations, new Key(zations));
+    }
+
+    /**
+     * Returns the supplied (ARGB) color recolored by the first of our colorizations that matches
+     * it, or the color itself if none match. The returned color is opaque whenever the color was
+     * recolored, as befits a palette entry.
+     */
+    public int recolor (int argb)
+    {
+        // fully transparent colors are never recolored (and are very common), so skip the lookup
+        if ((argb & 0xFF000000) == 0) {
+            return argb;
+        }
+
+        int mask = _keys.length - 1;
+        int ii = hash(argb) & mask;
+        while (_used[ii]) {
+            if (_keys[ii] == argb) {
+                return _values[ii];
+            }
+            ii = (ii + 1) & mask;
+        }
+
+        int value = compute(argb);
+        _keys[ii] = argb;
+        _values[ii] = value;
+        _used[ii] = true;
+        if (++_size * 2 > _keys.length) {
+            rehash(_keys.length * 2);
+        }
+        return value;
+    }
+
+    /**
+     * Recolors, in place, the supplied palette of (ARGB) colors.
+     */
+    public void recolorPalette (int[] rgbs)
+    {
+        for (int ii = 0; ii < rgbs.length; ii++) {
+            rgbs[ii] = recolor(rgbs[ii]);
+        }
+    }
+
+    /**
+     * Recolors, in place, the specified run of (ARGB) pixels, retaining the alpha of each pixel.
+     */
+    public void recolorPixels (int[] pixels, int offset, int length)
+    {
+        int last = 0, lastValue = 0;
+        for (int ii = offset, end = offset + length; ii < end; ii++) {
+            int argb = pixels[ii];
+            // runs of identical pixels are the norm, so check the previous pixel before hashing
+            if (argb != last) {
+                last = argb;
+                lastValue = (argb & 0xFF000000) | (recolor(argb) & 0x00FFFFFF);
+            }
+            pixels[ii] = lastValue;
+        }
+    }
+
+    /**
+     * Returns the approximate number of bytes occupied by this table.
+     */
+    public int getMemoryUsage ()
+    {
+        return _keys.length * 9;
+    }
+
+    protected RecolorTable (Colorization[] zations, Key key)
+    {
+        _zations = zations;
+        _key = key;
+    }
+
+    /**
+     * Computes the recoloring of the supplied (non-transparent) color.
+     */
+    protected int compute (int argb)
+    {
+        Color.RGBtoHSB((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF, _hsv);
+        Colorization.toFixedHSV(_hsv, _fhsv);
+        for (Colorization cz : _zations) {
+            if (cz != null && cz.matches(_hsv, _fhsv)) {
+                return cz.recolorColor(_hsv);
+            }
+        }
+        return argb;
+    }
+
+    /**
+     * Grows our table to the specified (power of two) capacity.
+     */
+    protected void rehash (int capacity)
+    {
+        int[] okeys = _keys, ovalues = _values;
+        boolean[] oused = _used;
+        _keys = new int[capacity];
+        _values = new int[capacity];
+        _used = new boolean[capacity];
+        int mask = capacity - 1;
+        for (int ii = 0; ii < okeys.length; ii++) {
+            if (oused[ii]) {
+                int jj = hash(okeys[ii]) & mask;
+                while (_used[jj]) {
+                    jj = (jj + 1) & mask;
+                }
+                _keys[jj] = okeys[ii];
+                _values[jj] = ovalues[ii];
+                _used[jj] = true;
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of the supplied color for use as a table position.
+     */
+    protected static int hash (int argb)
+    {
+        int hash = argb * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "[zations=" + Arrays.toString(_zations) + ", colors=" + _size + "]";
+    }
+
+    /**
+     * Identifies a set of colorizations by their parameters rather than their ids, as ad hoc
+     * colorizations share the same id.
+     */
+    protected static class Key
+    {
+        public Key (Colorization[] zations) {
+            _ids = new int[zations.length];
+            _roots = new int[zations.length];
+            _ranges = new float[zations.length][];
+            _offsets = new float[zations.length][];
+            for (int ii = 0; ii < zations.length; ii++) {
+                Colorization cz = zations[ii];
+                if (cz != null) {
+                    _ids[ii] = cz.colorizationId;
+                    _roots[ii] = cz.rootColor.getRGB();
+                    _ranges[ii] = cz.range.clone();
+                    _offsets[ii] = cz.offsets.clone();
+                }
+            }
+            _hash = Arrays.hashCode(_ids) * 31 + Arrays.hashCode(_roots);
+        }
+
+        @Override
+        public int hashCode () {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals (Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key okey = (Key)other;
+            return _hash == okey._hash && Arrays.equals(_ids, okey._ids) &&
+                Arrays.equals(_roots, okey._roots) && Arrays.deepEquals(_ranges, okey._ranges) &&
+                Arrays.deepEquals(_offsets, okey._offsets);
+        }
+
+        protected int[] _ids, _roots;
+        protected float[][] _ranges, _offsets;
+        protected int _hash;
+    }
+
+    /** The colorizations we apply. */
+    protected Colorization[] _zations;
+
+    /** Identifies our colorizations in the table cache. */
+    protected Key _key;
+
+    /** The colors we've seen, their recolorings and which table positions are occupied. */
+    protected int[] _keys = new int[INITIAL_CAPACITY], _values = new int[INITIAL_CAPACITY];
+    protected boolean[] _used = new boolean[INITIAL_CAPACITY];
+
+    /** The number of colors in our table. */
+    protected int _size;
+
+    /** Scratch space for color conversion. */
+    protected float[] _hsv = new float[3];
+    protected int[] _fhsv = new int[3];
+
+    /** The initial capacity of our table (which must be a power of two). */
+    protected static final int INITIAL_CAPACITY = 256;
+
+    /** The approximate number of bytes of released tables that we retain for reuse. */
+    protected static final int TABLE_CACHE_SIZE = 1 << 20;
+
+    /** Released tables available for reuse, by colorizations. */
+    protected static LRUHashMap<Key, RecolorTable> _tables = new LRUHashMap<Key, RecolorTable>(
+        TABLE_CACHE_SIZE, new LRUHashMap.ItemSizer<RecolorTable>() {
+            public int computeSize (RecolorTable table) {
+                return table.getMemoryUsage();
+            }
+        });
+}
@@ -0,0 +1,251 @@
+//
+// Nenya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/nenya
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.media.image.tools;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.media.image.Colorization;
+import com.threerings.media.image.ImageUtil;
+import com.threerings.media.image.RecolorTable;
+
+/**
+ * Checks the {@link RecolorTable} path of {@link ImageUtil#recolorImage(BufferedImage,
+ * Colorization[])} against the per-color HSV path it replaced and times the two. Each image is
+ * recolored both as a color mapped image (whose palette the baseline recolors entry by entry, as
+ * {@link ImageUtil} used to) and as a direct color image (which the baseline recolors pixel by
+ * pixel, converting every pixel to HSV), and the results of the two paths must be identical.
+ */
+public class RecolorBenchmark
+{
+    public static void main (String[] args)
+        throws IOException
+    {
+        List<BufferedImage> sources = Lists.newArrayList();
+        List<String> names = Lists.newArrayList();
+        if (args.length == 0) {
+            sources.add(createTestImage(TEST_IMAGE_SIZE, TEST_IMAGE_SIZE));
+            names.add("generated " + TEST_IMAGE_SIZE + "x" + TEST_IMAGE_SIZE);
+        }
+        for (String arg : args) {
+            BufferedImage image = ImageIO.read(new File(arg));
+            if (image == null) {
+                System.err.println("Usage: RecolorBenchmark [image ...]");
+                System.err.println("Unable to read image '" + arg + "'.");
+                System.exit(-1);
+            }
+            sources.add(image);
+            names.add(arg);
+        }
+
+        boolean passed = true;
+        for (int ii = 0; ii < sources.size(); ii++) {
+            BufferedImage source = sources.get(ii);
+            BufferedImage indexed = convert(source, BufferedImage.TYPE_BYTE_INDEXED);
+            BufferedImage direct = convert(source, BufferedImage.TYPE_INT_ARGB);
+            passed &= run(names.get(ii) + " (indexed)", indexed);
+            passed &= run(names.get(ii) + " (direct)", direct);
+        }
+        System.out.println(passed ? "Recoloring checks passed." : "Recoloring checks FAILED.");
+        System.exit(passed ? 0 : -1);
+    }
+
+    /**
+     * Recolors the supplied image with both paths, checking that they agree and reporting their
+     * timings.
+     *
+     * @return true if the paths agreed.
+     */
+    protected static boolean run (String name, BufferedImage image)
+    {
+        // run everything through a few times so that the JIT has settled before we report
+        for (int ii = 0; ii < WARMUP_ROUNDS; ii++) {
+            recolorBaseline(image, ZATIONS);
+            ImageUtil.recolorImage(image, ZATIONS);
+        }
+
+        // alternate the paths and report the median of each, as a single recoloring of a color
+        // mapped image is short enough for a collection or two to swamp the mean
+        long[] baselines = new long[TIMED_ROUNDS], tables = new long[TIMED_ROUNDS];
+        BufferedImage expected = null, actual = null;
+        for (int ii = 0; ii < TIMED_ROUNDS; ii++) {
+            long start = System.nanoTime();
+            expected = recolorBaseline(image, ZATIONS);
+            baselines[ii] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            actual = ImageUtil.recolorImage(image, ZATIONS);
+            tables[ii] = System.nanoTime() - start;
+        }
+        Arrays.sort(baselines);
+        Arrays.sort(tables);
+        long baseline = baselines[TIMED_ROUNDS / 2], table = tables[TIMED_ROUNDS / 2];
+
+        int width = image.getWidth(), height = image.getHeight();
+        int[] erow = new int[width], arow = new int[width];
+        int mismatches = 0, recolored = 0;
+        int[] orow = new int[width];
+        for (int yy = 0; yy < height; yy++) {
+            expected.getRGB(0, yy, width, 1, erow, 0, width);
+            actual.getRGB(0, yy, width, 1, arow, 0, width);
+            image.getRGB(0, yy, width, 1, orow, 0, width);
+            for (int xx = 0; xx < width; xx++) {
+                if (erow[xx] != arow[xx]) {
+                    if (mismatches++ == 0) {
+                        System.err.println(name + ": first mismatch at " + xx + ", " + yy +
+                            ": expected " + Integer.toHexString(erow[xx]) + ", got " +
+                            Integer.toHexString(arow[xx]) + ".");
+                    }
+                }
+                if (orow[xx] != erow[xx]) {
+                    recolored++;
+                }
+            }
+        }
+
+        System.out.println(name + ": " + width + "x" + height + ", " +
+            (recolored * 100L / (width * height)) + "% of pixels recolored, " +
+            (mismatches == 0 ? "identical" : (mismatches + " pixels differ")));
+        System.out.println("  baseline: " + (baseline / 1000L) + " us/image, table: " +
+            (table / 1000L) + " us/image (median of " + TIMED_ROUNDS + ")");
+        return mismatches == 0;
+    }
+
+    /**
+     * Recolors the supplied image via the per-color HSV path: the entries of a color map or the
+     * pixels of a direct color image are each converted to HSV and recolored by the first
+     * matching colorization.
+     */
+    protected static BufferedImage recolorBaseline (BufferedImage image, Colorization[] zations)
+    {
+        float[] hsv = new float[3];
+        int[] fhsv = new int[3];
+        if (image.getColorModel() instanceof IndexColorModel) {
+            IndexColorModel icm = (IndexColorModel)image.getColorModel();
+            int size = icm.getMapSize();
+            int[] rgbs = new int[size];
+            icm.getRGBs(rgbs);
+            for (int ii = 0; ii < size; ii++) {
+                rgbs[ii] = recolorBaseline(rgbs[ii], zations, hsv, fhsv);
+            }
+            IndexColorModel nicm = new IndexColorModel(
+                icm.getPixelSize(), size, rgbs, 0, icm.hasAlpha(),
+                icm.getTransparentPixel(), icm.getTransferType());
+            return new BufferedImage(nicm, image.getRaster(), false, null);
+        }
+
+        int width = image.getWidth(), height = image.getHeight();
+        BufferedImage target = ImageUtil.createCompatibleImage(image, width, height);
+        int[] row = new int[width];
+        for (int yy = 0; yy < height; yy++) {
+            image.getRGB(0, yy, width, 1, row, 0, width);
+            for (int xx = 0; xx < width; xx++) {
+                int argb = row[xx];
+                row[xx] = (argb & 0xFF000000) |
+                    (recolorBaseline(argb, zations, hsv, fhsv) & 0x00FFFFFF);
+            }
+            target.setRGB(0, yy, width, 1, row, 0, width);
+        }
+        return target;
+    }
+
+    /**
+     * Recolors a single color via the per-color HSV path.
+     */
+    protected static int recolorBaseline (
+        int argb, Colorization[] zations, float[] hsv, int[] fhsv)
+    {
+        // don't fiddle with alpha pixels
+        if ((argb & 0xFF000000) == 0) {
+            return argb;
+        }
+        Color.RGBtoHSB((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF, hsv);
+        Colorization.toFixedHSV(hsv, fhsv);
+        for (Colorization cz : zations) {
+            if (cz != null && cz.matches(hsv, fhsv)) {
+                return cz.recolorColor(hsv);
+            }
+        }
+        return argb;
+    }
+
+    /**
+     * Draws the supplied image into a new image of the specified type.
+     */
+    protected static BufferedImage convert (BufferedImage image, int type)
+    {
+        BufferedImage target = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        Graphics2D gfx = target.createGraphics();
+        try {
+            gfx.drawImage(image, 0, 0, null);
+        } finally {
+            gfx.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Creates an image with bands of shaded hues, a transparent border and some noise, so that
+     * it has both long runs of identical pixels and many distinct colors.
+     */
+    protected static BufferedImage createTestImage (int width, int height)
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int border = width / 16, seed = 1;
+        for (int yy = border; yy < height - border; yy++) {
+            for (int xx = border; xx < width - border; xx++) {
+                seed = seed * 1103515245 + 12345;
+                float hue = (xx / 32) * 32f / width;
+                float value = 0.4f + 0.6f * yy / height;
+                if ((seed >>> 28) == 0) {
+                    value *= 0.9f; // a sprinkling of noise
+                }
+                image.setRGB(xx, yy, Color.HSBtoRGB(hue, 0.8f, value));
+            }
+        }
+        return image;
+    }
+
+    /** The colorizations applied to our images. */
+    protected static final Colorization[] ZATIONS = {
+        new Colorization(1, new Color(0xC03020), new float[] { 0.1f, 0.5f, 0.6f },
+                         new float[] { 0.5f, 0f, 0f }),
+        new Colorization(2, new Color(0x30A040), new float[] { 0.08f, 0.5f, 0.6f },
+                         new float[] { 0.3f, -0.2f, 0.1f }),
+        new Colorization(3, new Color(0x3050C0), new float[] { 0.05f, 0.4f, 0.5f },
+                         new float[] { 0.1f, 0.1f, -0.1f }) };
+
+    protected static final int TEST_IMAGE_SIZE = 512;
+    protected static final int WARMUP_ROUNDS = 50;
+    protected static final int TIMED_ROUNDS = 100;
+}
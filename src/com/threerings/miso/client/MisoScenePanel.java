@@ -54,6 +54,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+import com.samskivert.util.Histogram;
 import com.samskivert.util.StringUtil;
 
 import com.samskivert.swing.Controller;
@@ -113,8 +114,6 @@ public class MisoScenePanel extends VirtualMediaPanel
         _resolver = _resolvers.get(_ctx);
         if (_resolver == null) {
             _resolver = new SceneBlockResolver();
-            _resolver.setDaemon(true);
-            _resolver.setPriority(Thread.MIN_PRIORITY);
             _resolver.start();
             _resolvers.put(_ctx, _resolver);
         }
@@ -143,10 +142,16 @@ public class MisoScenePanel extends VirtualMediaPanel
      */
     protected void clearScene ()
     {
+        // don't bother resolving blocks from the old scene
+        for (SceneBlock block : _blocks.values()) {
+            _resolver.cancel(block);
+        }
         _blocks.clear();
         _vizobjs.clear();
-        _fringes.clear();
-        _masks.clear();
+        synchronized (_fringes) {
+            _fringes.clear();
+            _masks.clear();
+        }
         if (_dpanel != null) {
             _dpanel.newScene();
         }
@@ -714,6 +719,10 @@ public class MisoScenePanel extends VirtualMediaPanel
     {
         super.viewLocationDidChange(dx, dy);
 
+        // note the direction in which we're scrolling so that we can prefetch blocks
+        _scrolldx += dx;
+        _scrolldy += dy;
+
         // compute the tile coordinates of our upper left screen coordinate and request a rethink
         // if they've changed
         MisoUtil.screenToTile(_metrics, _vbounds.x, _vbounds.y, _tcoords);
@@ -793,8 +802,10 @@ public class MisoScenePanel extends VirtualMediaPanel
             return 0;
         }
 
-        // compute the intersecting set of blocks
-        _applicator.applyToTiles(_ibounds, _rethinkOp);
+        // compute the intersecting set of blocks, including those we're scrolling toward
+        computePrefetchBounds(_ibounds, _scrolldx, _scrolldy, _pbounds);
+        _scrolldx = _scrolldy = 0;
+        _applicator.applyToTiles(_pbounds, _rethinkOp);
 //         Log.info("Influential blocks " +
 //                  StringUtil.toString(_rethinkOp.blocks) + ".");
 
@@ -810,6 +821,8 @@ public class MisoScenePanel extends VirtualMediaPanel
                     _dpanel.blockCleared(block);
                 }
                 iter.remove();
+                // if it's still waiting to be resolved, don't bother
+                _resolver.cancel(block);
             }
         }
 
@@ -837,6 +850,9 @@ public class MisoScenePanel extends VirtualMediaPanel
         }
         _rethinkOp.blocks.clear();
 
+        // our view has moved, so resolve the blocks nearest it first
+        _resolver.reprioritize();
+
         // recompute our visible object set
         recomputeVisible();
 
@@ -877,6 +893,53 @@ public class MisoScenePanel extends VirtualMediaPanel
             visibleBounds.height + infbory);
     }
 
+    /**
+     * Configures <code>prefetchBounds</code> to contain the supplied influential bounds, extended
+     * in the direction in which the view is scrolling so that the blocks we're headed toward are
+     * resolved before they are needed.
+     */
+    protected void computePrefetchBounds (
+        Rectangle influentialBounds, int dx, int dy, Rectangle prefetchBounds)
+    {
+        prefetchBounds.setBounds(influentialBounds);
+        int px = Integer.signum(dx) * influentialBounds.width / PREFETCH_FRACTION;
+        int py = Integer.signum(dy) * influentialBounds.height / PREFETCH_FRACTION;
+        if (px != 0 || py != 0) {
+            prefetchBounds.add(new Rectangle(
+                influentialBounds.x + px, influentialBounds.y + py,
+                influentialBounds.width, influentialBounds.height));
+        }
+    }
+
+    /**
+     * Returns the priority with which the supplied block should be resolved: its distance (in
+     * pixels) from the center of the view.
+     */
+    protected int getResolutionPriority (SceneBlock block)
+    {
+        Rectangle fbounds = block.getFootprint().getBounds();
+        double dx = fbounds.getCenterX() - _vbounds.getCenterX();
+        double dy = fbounds.getCenterY() - _vbounds.getCenterY();
+        return (int)Math.min(Integer.MAX_VALUE, Math.sqrt(dx*dx + dy*dy));
+    }
+
+    /**
+     * Returns the scene block resolver used by this panel.
+     */
+    public SceneBlockResolver getResolver ()
+    {
+        return _resolver;
+    }
+
+    /**
+     * Returns a snapshot of the histogram of the times (in milliseconds) that blocks which were
+     * visible when queued spent waiting to be resolved.
+     */
+    public Histogram getVisibleWaitHistogram ()
+    {
+        return _visiWait.clone();
+    }
+
     /**
      * Returns the bounds for which all intersecting scene blocks are kept resolved. Do not modify
      * the rectangle returned by this method.
@@ -916,6 +979,9 @@ public class MisoScenePanel extends VirtualMediaPanel
         if (_dpanel != null) {
             _dpanel.resolvedBlock(block);
         }
+        if (_visiBlocks.contains(block)) {
+            _visiWait.addValue((int)(System.currentTimeMillis() - block.getQueueStamp()));
+        }
 
         Rectangle sbounds = block.getScreenBounds();
         if (!_delayRepaint && sbounds != null && sbounds.intersects(_vbounds)) {
@@ -1398,8 +1464,11 @@ public class MisoScenePanel extends VirtualMediaPanel
     /** Computes the fringe tile for the specified coordinate. */
     protected BaseTile computeFringeTile (int tx, int ty)
     {
-        return _ctx.getTileManager().getAutoFringer().getFringeTile(_model, tx, ty, _fringes,
-            _masks);
+        // blocks are resolved on multiple threads, and our fringe caches are shared
+        synchronized (_fringes) {
+            return _ctx.getTileManager().getAutoFringer().getFringeTile(_model, tx, ty, _fringes,
+                _masks);
+        }
     }
 
     /**
@@ -1526,6 +1595,16 @@ public class MisoScenePanel extends VirtualMediaPanel
     /** Contains the bounds of our visible "area of influence" in screen coords. */
     protected Rectangle _vibounds = new Rectangle();
 
+    /** Contains the bounds of the blocks we keep resolved: our area of influence extended in the
+     * direction we're scrolling. */
+    protected Rectangle _pbounds = new Rectangle();
+
+    /** The distance we've scrolled since our last rethink. */
+    protected int _scrolldx, _scrolldy;
+
+    /** Tracks how long blocks that were visible when queued wait to be resolved. */
+    protected Histogram _visiWait = new Histogram(0, 25, 100);
+
     /** Used by {@link #rethink}. */
     protected RethinkOp _rethinkOp;
 
@@ -1602,6 +1681,9 @@ public class MisoScenePanel extends VirtualMediaPanel
     /** Flags indicating which features we should show in the scene. */
     protected int _showFlags = 0;
 
+    /** The fraction of our influential bounds by which we extend them when prefetching. */
+    protected static final int PREFETCH_FRACTION = 2;
+
     /** The scene block resolver for this scene panel's context. */
     protected SceneBlockResolver _resolver;
 
@@ -93,6 +93,40 @@ public class SceneBlock
         _visi = visi;
     }
 
+    /**
+     * Returns the priority with which this block should be resolved (lower values are resolved
+     * sooner). This is called on the AWT thread.
+     */
+    public int getResolutionPriority ()
+    {
+        return (_panel == null) ? 0 : _panel.getResolutionPriority(this);
+    }
+
+    /**
+     * Returns the time at which this block was queued for resolution.
+     */
+    public long getQueueStamp ()
+    {
+        return _queueStamp;
+    }
+
+    /**
+     * Called by the {@link SceneBlockResolver} when this block is queued for resolution.
+     */
+    protected void noteQueued (long stamp)
+    {
+        _queueStamp = stamp;
+    }
+
+    /**
+     * Called by the {@link SceneBlockResolver} if this block was abandoned before it came up for
+     * resolution.
+     */
+    protected void abandon ()
+    {
+        _wasAbandoned = true;
+    }
+
     /**
      * This method is called by the {@link SceneBlockResolver} on the
      * block resolution thread to allow us to load up our image data
@@ -624,6 +658,9 @@ public class SceneBlock
     /** If we discovered we were no longer needed in our last call to resolve. */
     protected boolean _wasAbandoned;
 
+    /** The time at which we were queued for resolution. */
+    protected long _queueStamp;
+
     // used to link up to our neighbors
     protected static final int[] DX = { -1, -1,  0,  1, 1, 1, 0, -1 };
     protected static final int[] DY = {  0, -1, -1, -1, 0, 1, 1,  1 };
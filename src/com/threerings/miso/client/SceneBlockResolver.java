@@ -19,39 +19,128 @@
 
 package com.threerings.miso.client;
 
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
 import java.awt.EventQueue;
 
+import com.google.common.collect.Lists;
+
 import com.samskivert.util.Histogram;
-import com.samskivert.util.LoopingThread;
-import com.samskivert.util.Queue;
 
 import static com.threerings.miso.Log.log;
 
 /**
- * A separate thread for resolving miso scene blocks.
+ * Resolves miso scene blocks on a small pool of low priority threads. Blocks are resolved in
+ * order of priority: those that were visible when queued first, then by proximity to the view of
+ * the panel that queued them (see {@link SceneBlock#getResolutionPriority}). Priorities are
+ * recomputed when the view moves (see {@link #reprioritize}), and blocks that are abandoned
+ * before they come up for resolution are dropped from the queue (see {@link #cancel}).
  */
-public class SceneBlockResolver extends LoopingThread
+public class SceneBlockResolver
 {
+    /**
+     * Creates a resolver with a default number of resolution threads.
+     */
     public SceneBlockResolver ()
     {
-        super("SceneBlockResolver");
+        this(DEFAULT_THREADS);
+    }
+
+    /**
+     * Creates a resolver with the specified number of resolution threads.
+     */
+    public SceneBlockResolver (int threads)
+    {
+        _threads = new Thread[threads];
+    }
+
+    /**
+     * Starts up our resolution threads.
+     */
+    public void start ()
+    {
+        for (int ii = 0; ii < _threads.length; ii++) {
+            _threads[ii] = new Thread("SceneBlockResolver-" + ii) {
+                @Override public void run () {
+                    resolveBlocks();
+                }
+            };
+            _threads[ii].setDaemon(true);
+            _threads[ii].setPriority(Thread.MIN_PRIORITY);
+            _threads[ii].start();
+        }
+    }
+
+    /**
+     * Shuts down our resolution threads once they finish the blocks they're resolving. Blocks
+     * remaining on the queue are not resolved.
+     */
+    public synchronized void shutdown ()
+    {
+        _running = false;
+        notifyAll();
     }
 
     /**
      * Queues up a scene block for resolution.
+     *
+     * @param hipri if true, the block will be resolved before any non-high-priority block.
      */
-    public void resolveBlock (SceneBlock block, boolean hipri)
+    public synchronized void resolveBlock (SceneBlock block, boolean hipri)
     {
         log.debug("Queueing block for resolution", "block", block, "hipri", hipri);
-        if (hipri) {
-            _queue.prepend(block);
-        } else {
-            _queue.append(block);
+        Request req = new Request(block, hipri, _nextSeq++);
+        req.priority = block.getResolutionPriority();
+        block.noteQueued(req.queued);
+        _queue.add(req);
+        notify();
+    }
+
+    /**
+     * Removes the supplied block from the resolution queue if it has not yet come up for
+     * resolution, in which case its panel will be informed (on the AWT thread) that it was
+     * abandoned.
+     *
+     * @return true if the block was removed from the queue.
+     */
+    public boolean cancel (final SceneBlock block)
+    {
+        synchronized (this) {
+            if (!remove(block)) {
+                return false;
+            }
+        }
+        block.abandon();
+        EventQueue.invokeLater(new Runnable() {
+            public void run () {
+                block.wasResolved();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Recomputes the priorities of all queued blocks. This should be called (on the AWT thread)
+     * when the view of a panel that queued blocks moves.
+     */
+    public synchronized void reprioritize ()
+    {
+        if (_queue.isEmpty()) {
+            return;
+        }
+        List<Request> reqs = Lists.newArrayList(_queue);
+        _queue.clear();
+        for (Request req : reqs) {
+            req.priority = req.block.getResolutionPriority();
         }
+        _queue.addAll(reqs);
     }
 
     /**
-     * Temporarily suspends the scene block resolution thread.
+     * Temporarily suspends scene block resolution.
      */
     public synchronized void suspendResolution ()
     {
@@ -59,46 +148,86 @@ public class SceneBlockResolver extends LoopingThread
     }
 
     /**
-     * Restores the operation of the scene block resolution thread after a
-     * previous call to {@link #suspendResolution}.
+     * Restores scene block resolution after a previous call to {@link #suspendResolution}.
      */
     public synchronized void restoreResolution ()
     {
         _resolving = true;
-        notify();
+        notifyAll();
     }
 
     /**
      * Returns the number of scene blocks on the resolution queue.
      */
-    public int queueSize ()
+    public synchronized int queueSize ()
     {
         return _queue.size();
     }
 
-    @Override
-    public void iterate ()
+    /**
+     * Returns a snapshot of the histogram of the times (in milliseconds) spent resolving blocks.
+     */
+    public Histogram getResolveHistogram ()
     {
-        final SceneBlock block = _queue.get();
+        synchronized (_histo) {
+            return _histo.clone();
+        }
+    }
 
-        while (!_resolving) {
+    /**
+     * Returns a snapshot of the histogram of the times (in milliseconds) between blocks being
+     * queued and their being resolved.
+     */
+    public Histogram getLatencyHistogram ()
+    {
+        synchronized (_latency) {
+            return _latency.clone();
+        }
+    }
+
+    /**
+     * The main loop of our resolution threads.
+     */
+    protected void resolveBlocks ()
+    {
+        while (true) {
+            Request req;
             synchronized (this) {
-                try {
-                    wait();
-                } catch (InterruptedException ie) {
-                    log.info("Resolver interrupted.");
+                while (_running && (!_resolving || _queue.isEmpty())) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ie) {
+                        log.info("Resolver interrupted.");
+                    }
+                }
+                if (!_running) {
+                    return;
                 }
+                req = _queue.poll();
             }
+            resolve(req);
         }
+    }
 
+    /**
+     * Resolves the requested block and queues up the notification of its resolution.
+     */
+    protected void resolve (Request req)
+    {
+        final SceneBlock block = req.block;
         try {
             long start = System.currentTimeMillis();
             log.debug("Resolving block " + block + ".");
             if (block.resolve()) {
                 log.debug("Resolved block " + block + ".");
             }
-            long elapsed = System.currentTimeMillis() - start;
-            _histo.addValue((int)elapsed);
+            long now = System.currentTimeMillis(), elapsed = now - start;
+            synchronized (_histo) {
+                _histo.addValue((int)elapsed);
+            }
+            synchronized (_latency) {
+                _latency.addValue((int)(now - req.queued));
+            }
 
             // warn if a block takes a long time to resolve
             if (elapsed > LONG_RESOLVE_TIME) {
@@ -107,15 +236,10 @@ public class SceneBlockResolver extends LoopingThread
             }
 
             // queue it up on the AWT thread to complete its resolution
-//             final boolean report = (_queue.size() == 0);
             EventQueue.invokeLater(new Runnable() {
                 public void run () {
                     // let the block's panel know that it is resolved
                     block.wasResolved();
-                    // report statistics
-//                    if (report) {
-//                        log.info("Resolution histogram " + _histo.summarize() + ".");
-//                    }
                 }
             });
 
@@ -124,15 +248,83 @@ public class SceneBlockResolver extends LoopingThread
         }
     }
 
-    /** The invoker's queue of units to be executed. */
-    protected Queue<SceneBlock> _queue = new Queue<SceneBlock>();
+    /**
+     * Removes the request for the supplied block from the queue. The caller must hold our monitor.
+     */
+    protected boolean remove (SceneBlock block)
+    {
+        for (Iterator<Request> iter = _queue.iterator(); iter.hasNext(); ) {
+            if (iter.next().block == block) {
+                iter.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** A queued request to resolve a block. */
+    protected static class Request
+    {
+        /** The block to be resolved. */
+        public final SceneBlock block;
+
+        /** Whether the block was high priority when queued. */
+        public final boolean hipri;
+
+        /** The order in which the block was queued. */
+        public final long seq;
+
+        /** The time at which the block was queued. */
+        public final long queued = System.currentTimeMillis();
+
+        /** The block's priority (lower is resolved sooner) as of our last reprioritization. */
+        public int priority;
+
+        public Request (SceneBlock block, boolean hipri, long seq) {
+            this.block = block;
+            this.hipri = hipri;
+            this.seq = seq;
+        }
+    }
+
+    /** Our resolution threads. */
+    protected Thread[] _threads;
+
+    /** Blocks waiting to be resolved, in order of priority. */
+    protected PriorityQueue<Request> _queue = new PriorityQueue<Request>(64, REQUEST_ORDER);
+
+    /** Used to order requests that have the same priority. */
+    protected long _nextSeq;
 
     /** Indicates whether or not we are resolving or suspended. */
     protected boolean _resolving = true;
 
+    /** Cleared when we are shut down. */
+    protected boolean _running = true;
+
     /** Used to time block loading. */
     protected Histogram _histo = new Histogram(0, 25, 100);
 
+    /** Used to time blocks from being queued to being resolved. */
+    protected Histogram _latency = new Histogram(0, 25, 100);
+
+    /** Orders resolution requests. */
+    protected static final Comparator<Request> REQUEST_ORDER = new Comparator<Request>() {
+        public int compare (Request r1, Request r2) {
+            if (r1.hipri != r2.hipri) {
+                return r1.hipri ? -1 : 1;
+            } else if (r1.priority != r2.priority) {
+                return (r1.priority < r2.priority) ? -1 : 1;
+            } else {
+                return (r1.seq < r2.seq) ? -1 : (r1.seq == r2.seq ? 0 : 1);
+            }
+        }
+    };
+
+    /** The default number of resolution threads. */
+    protected static final int DEFAULT_THREADS =
+        Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+
     /** Blocks shouldn't take too long to resolve. */
     protected static final long LONG_RESOLVE_TIME = 500L;
 }
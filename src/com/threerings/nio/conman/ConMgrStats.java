@@ -68,6 +68,48 @@ public class ConMgrStats
     /** The number of messages written since the server started up. */
     public long msgsOut;
 
+    /** The number of outgoing frames compressed since the server started up. */
+    public long framesDeflated;
+
+    /** The number of bytes (before compression) in the outgoing frames we compressed. */
+    public long deflateBytesIn;
+
+    /** The number of bytes (after compression) in the outgoing frames we compressed. */
+    public long deflateBytesOut;
+
+    /** The number of nanoseconds spent compressing outgoing frames. */
+    public long deflateNanos;
+
+    /** The number of incoming compressed frames inflated since the server started up. */
+    public long framesInflated;
+
+    /** The number of bytes (before inflation) in the incoming frames we inflated. */
+    public long inflateBytesIn;
+
+    /** The number of bytes (after inflation) in the incoming frames we inflated. */
+    public long inflateBytesOut;
+
+    /** The number of nanoseconds spent inflating incoming frames. */
+    public long inflateNanos;
+
+    /**
+     * Returns the ratio of compressed to uncompressed size of the outgoing frames we compressed,
+     * or one if we have compressed nothing.
+     */
+    public float getDeflateRatio ()
+    {
+        return (deflateBytesIn == 0) ? 1f : (float)deflateBytesOut / deflateBytesIn;
+    }
+
+    /**
+     * Returns the ratio of compressed to uncompressed size of the incoming frames we inflated, or
+     * one if we have inflated nothing.
+     */
+    public float getInflateRatio ()
+    {
+        return (inflateBytesOut == 0) ? 1f : (float)inflateBytesIn / inflateBytesOut;
+    }
+
     @Override
     public String toString ()
     {
@@ -416,6 +416,30 @@ public abstract class ConnectionManager extends LoopingThread
         _stats.bytesOut += bytes;
     }
 
+    /**
+     * Called when an outgoing frame of <code>bytesIn</code> bytes is compressed to
+     * <code>bytesOut</code> bytes.
+     */
+    protected synchronized void noteDeflate (int bytesIn, int bytesOut, long nanos)
+    {
+        _stats.framesDeflated++;
+        _stats.deflateBytesIn += bytesIn;
+        _stats.deflateBytesOut += bytesOut;
+        _stats.deflateNanos += nanos;
+    }
+
+    /**
+     * Called by connections when incoming compressed frames totalling <code>bytesIn</code> bytes
+     * are inflated to <code>bytesOut</code> bytes.
+     */
+    public synchronized void noteInflate (int frames, int bytesIn, int bytesOut, long nanos)
+    {
+        _stats.framesInflated += frames;
+        _stats.inflateBytesIn += bytesIn;
+        _stats.inflateBytesOut += bytesOut;
+        _stats.inflateNanos += nanos;
+    }
+
     /**
      * Posts a fake message to this connection's outgoing message queue that will cause the
      * connection to be closed when this message is reached. This is only used by outgoing
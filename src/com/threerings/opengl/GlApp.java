@@ -55,6 +55,7 @@ import com.threerings.math.Transform3D;
 import com.threerings.math.Vector3f;
 import com.threerings.media.image.ColorPository;
 import com.threerings.resource.ResourceManager;
+import com.threerings.util.CacheGovernor;
 import com.threerings.util.MessageManager;
 import com.threerings.util.ToolUtil;
 
@@ -377,6 +378,9 @@ public abstract class GlApp extends DynamicScope
         // note that we've opened a window
         ToolUtil.windowAdded();
 
+        // have our caches relieved when memory runs short
+        CacheGovernor.getDefault().watchMemory(CacheGovernor.DEFAULT_MEMORY_THRESHOLD);
+
         // give subclasses a chance to init
         didInit();
     }
@@ -407,6 +411,8 @@ public abstract class GlApp extends DynamicScope
     protected void willShutdown ()
     {
         _soundmgr.shutdown();
+        _imgcache.dispose();
+        _shadcache.dispose();
     }
 
     /**
@@ -153,6 +153,31 @@ public abstract class DeformerConfig extends DeepObject
                 public DrawCommand getDrawCommand (int pass) {
                     return drawCommand;
                 }
+                public void update () {
+                    // the bone matrices are in eye space, so they only remain the same when
+                    // neither the model nor the camera has moved; in that case, we can
+                    // reuse the data that we last skinned
+                    if (_lastBoneMatrices == null) {
+                        _lastBoneMatrices = new Matrix4f[boneMatrices.length];
+                        for (int ii = 0; ii < boneMatrices.length; ii++) {
+                            _lastBoneMatrices[ii] = new Matrix4f(boneMatrices[ii]);
+                        }
+                    } else if (!updateLastBoneMatrices()) {
+                        _skinSkipCount++;
+                        return;
+                    }
+                    super.update();
+                }
+                protected boolean updateLastBoneMatrices () {
+                    boolean changed = false;
+                    for (int ii = 0; ii < boneMatrices.length; ii++) {
+                        if (!_lastBoneMatrices[ii].equals(boneMatrices[ii])) {
+                            _lastBoneMatrices[ii].set(boneMatrices[ii]);
+                            changed = true;
+                        }
+                    }
+                    return changed;
+                }
                 protected void updateData () {
                     // skin based on attributes
                     if (tangents && normals) {
@@ -169,6 +194,7 @@ public abstract class DeformerConfig extends DeepObject
                             boneWeights, vertexOffset, vertexStride);
                     }
                 }
+                protected Matrix4f[] _lastBoneMatrices;
             };
         }
 
@@ -201,6 +227,14 @@ public abstract class DeformerConfig extends DeepObject
         }
     }
 
+    /**
+     * Returns the number of skinning updates skipped because the bone matrices hadn't changed.
+     */
+    public static long getSkinSkipCount ()
+    {
+        return _skinSkipCount;
+    }
+
     /**
      * Creates a deformed geometry object.
      */
@@ -350,4 +384,7 @@ public abstract class DeformerConfig extends DeepObject
             vidx += dinc;
         }
     }
+
+    /** The number of skinning updates skipped because the bone matrices hadn't changed. */
+    protected static long _skinSkipCount;
 }
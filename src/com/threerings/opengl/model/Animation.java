@@ -27,6 +27,7 @@ package com.threerings.opengl.model;
 
 import java.util.ArrayList;
 
+import com.samskivert.util.ArrayUtil;
 import com.samskivert.util.ObserverList;
 
 import com.threerings.config.ConfigEvent;
@@ -45,6 +46,7 @@ import com.threerings.expr.util.ScopeUtil;
 import com.threerings.math.Transform3D;
 
 import com.threerings.opengl.model.config.AnimationConfig;
+import com.threerings.opengl.model.config.AnimationTracks;
 import com.threerings.opengl.util.GlContext;
 
 import static com.threerings.opengl.Log.log;
@@ -170,6 +172,25 @@ public class Animation extends SimpleScope
             // nothing by default
         }
 
+        /**
+         * Determines whether this animation can currently blend its influence into a pose (as
+         * opposed to the node transforms).
+         */
+        public boolean canBlendPose ()
+        {
+            return false;
+        }
+
+        /**
+         * Blends in the influence of this animation to the supplied pose.
+         *
+         * @param update the current value of the update counter.
+         */
+        public void blendPose (Pose pose, int update)
+        {
+            // nothing by default
+        }
+
         /**
          * Dumps some information about the animation to the standard output.
          */
@@ -241,6 +262,7 @@ public class Animation extends SimpleScope
         public void setConfig (AnimationConfig.Imported config)
         {
             super.setConfig(_config = config);
+            _pose = null;
 
             // resolve the targets and initialize the snapshot array
             _targets = new Articulated.Node[config.targets.length];
@@ -256,16 +278,23 @@ public class Animation extends SimpleScope
                     _snapshot[ii] = new Transform3D();
                 }
             }
-            if (config.modifiers.length == 0) {
-                _transforms = config.transforms;
-            } else {
-                Transform3D[] nodeDefaults = new Transform3D[_targets.length];
-                for (int ii = 0; ii < _targets.length; ii++) {
-                    nodeDefaults[ii] = (_targets[ii] == null ?
-                        new Transform3D() : _targets[ii].getConfig().transform)
+            // note the modifiers that apply to each target, along with the target defaults
+            _tracks = config.tracks;
+            _modifiers = new AnimationConfig.TargetModifier[_targets.length][];
+            _defaults = new Transform3D[_targets.length];
+            for (AnimationConfig.TargetModifier modifier : config.modifiers) {
+                int idx = ArrayUtil.indexOf(config.targets, modifier.target);
+                if (idx == -1) {
+                    continue;
+                }
+                _modifiers[idx] = (_modifiers[idx] == null) ?
+                    new AnimationConfig.TargetModifier[] { modifier } :
+                    ArrayUtil.append(_modifiers[idx], modifier);
+                if (_defaults[idx] == null) {
+                    _defaults[idx] = (_targets[idx] == null ?
+                        new Transform3D() : _targets[idx].getConfig().transform)
                         .promote(Transform3D.UNIFORM);
                 }
-                _transforms = config.getModifiedTransforms(nodeDefaults);
             }
 
             // create the executors
@@ -276,7 +305,7 @@ public class Animation extends SimpleScope
                     action.frame, action.action.createExecutor(_ctx, this));
             }
 
-            if (_fidx > _transforms.length) {
+            if (_fidx > _tracks.getFrameCount()) {
                 _fidx = 0;
                 _eidx = 0;
             }
@@ -287,7 +316,7 @@ public class Animation extends SimpleScope
         {
             // initialize frame counter
             int offset = Math.round(_config.offset.getValue() * getFrameRate());
-            _fidx = _eidx = Math.max(0, offset) % _transforms.length;
+            _fidx = _eidx = Math.max(0, offset) % _tracks.getFrameCount();
             _accum = 0f;
             _completed = false;
 
@@ -359,7 +388,7 @@ public class Animation extends SimpleScope
             executeActions();
 
             // check for loop or completion
-            int fcount = _transforms.length;
+            int fcount = _tracks.getFrameCount();
             if (_config.loop) {
                 if (_fidx >= fcount) {
                     _fidx %= fcount;
@@ -385,19 +414,11 @@ public class Animation extends SimpleScope
         @Override
         public void updateTransforms ()
         {
-            Transform3D[] t1, t2;
-            if (_transitioning) {
-                t1 = _snapshot;
-                t2 = _transforms[_fidx];
-            } else {
-                t1 = _transforms[_fidx];
-                t2 = _transforms[(_fidx + 1) % _transforms.length];
-            }
             for (int ii = 0; ii < _targets.length; ii++) {
-                // lerp into the target transform
+                // sample into the target transform
                 Articulated.Node target = _targets[ii];
                 if (target != null) {
-                    t1[ii].lerp(t2[ii], _accum, target.getLocalTransform());
+                    sampleTransform(ii, target.getLocalTransform());
                 }
             }
         }
@@ -405,23 +426,15 @@ public class Animation extends SimpleScope
         @Override
         public void blendTransforms (int update)
         {
-            Transform3D[] t1, t2;
-            if (_transitioning) {
-                t1 = _snapshot;
-                t2 = _transforms[_fidx];
-            } else {
-                t1 = _transforms[_fidx];
-                t2 = _transforms[(_fidx + 1) % _transforms.length];
-            }
             for (int ii = 0; ii < _targets.length; ii++) {
                 // first make sure the target exists
                 Articulated.Node target = _targets[ii];
                 if (target == null) {
                     continue;
                 }
-                // then see if we're the first to touch it, in which case we can lerp directly
+                // then see if we're the first to touch it, in which case we can sample directly
                 if (target.lastUpdate != update) {
-                    t1[ii].lerp(t2[ii], _accum, target.getLocalTransform());
+                    sampleTransform(ii, target.getLocalTransform());
                     target.lastUpdate = update;
                     target.totalWeight = _weight;
                     continue;
@@ -432,12 +445,28 @@ public class Animation extends SimpleScope
                     continue;
                 }
                 float mweight = Math.min(_weight, 1f - target.totalWeight);
-                t1[ii].lerp(t2[ii], _accum, _xform);
+                sampleTransform(ii, _xform);
                 target.getLocalTransform().lerpLocal(
                     _xform, mweight / (target.totalWeight += mweight));
             }
         }
 
+        @Override
+        public boolean canBlendPose ()
+        {
+            return !_transitioning && _config.modifiers.length == 0;
+        }
+
+        @Override
+        public void blendPose (Pose pose, int update)
+        {
+            if (_pose != pose) {
+                _poseIndices = pose.getNodeIndices(_config.targets);
+                _pose = pose;
+            }
+            pose.accumulate(_tracks, _poseIndices, _fidx + _accum, _weight, update);
+        }
+
         @Override
         protected void blendToWeight (float weight, float interval)
         {
@@ -455,6 +484,45 @@ public class Animation extends SimpleScope
             return _config.getScaledRate() * ((Animation)_parentScope).getSpeed();
         }
 
+        /**
+         * Samples the current transform of the specified target.
+         *
+         * @return a reference to the result transform, for chaining.
+         */
+        protected Transform3D sampleTransform (int idx, Transform3D result)
+        {
+            if (_transitioning) {
+                getFrameTransform(idx, _fidx, _sample);
+                return _snapshot[idx].lerp(_sample, _accum, result);
+            }
+            if (_fidx + 1 < _tracks.getFrameCount() || _accum == 0f) {
+                return getFrameTransform(idx, _fidx + _accum, result);
+            }
+            // interpolate between the last frame and the first
+            getFrameTransform(idx, _fidx, _sample);
+            getFrameTransform(idx, 0, _next);
+            return _sample.lerp(_next, _accum, result);
+        }
+
+        /**
+         * Samples the transform of the specified target at the given position and applies any
+         * modifiers.
+         *
+         * @return a reference to the result transform, for chaining.
+         */
+        protected Transform3D getFrameTransform (int idx, float position, Transform3D result)
+        {
+            _tracks.sample(idx, position, result);
+            AnimationConfig.TargetModifier[] modifiers = _modifiers[idx];
+            if (modifiers != null) {
+                result.promote(Transform3D.UNIFORM);
+                for (AnimationConfig.TargetModifier modifier : modifiers) {
+                    modifier.modifyTransform(result, _defaults[idx], result);
+                }
+            }
+            return result;
+        }
+
         /**
          * Executes all actions scheduled before or at the current frame.
          */
@@ -472,8 +540,14 @@ public class Animation extends SimpleScope
         /** The targets of the animation. */
         protected Articulated.Node[] _targets;
 
-        /** The animation transforms after modifications are applied. */
-        protected Transform3D[][] _transforms;
+        /** The animation tracks. */
+        protected AnimationTracks _tracks;
+
+        /** The modifiers to apply to each target, if any. */
+        protected AnimationConfig.TargetModifier[][] _modifiers;
+
+        /** The default transforms of the modified targets. */
+        protected Transform3D[] _defaults;
 
         /** A snapshot of the original transforms of the targets, for transitioning. */
         protected Transform3D[] _snapshot;
@@ -481,6 +555,12 @@ public class Animation extends SimpleScope
         /** Executors for frame actions. */
         protected FrameExecutor[] _executors;
 
+        /** The pose for which we last resolved the target indices, if any. */
+        protected Pose _pose;
+
+        /** The indices of the targets within {@link #_pose}. */
+        protected int[] _poseIndices;
+
         /** Whether we are currently transitioning into the first frame. */
         protected boolean _transitioning;
 
@@ -504,6 +584,9 @@ public class Animation extends SimpleScope
 
         /** A temporary transform for interpolation. */
         protected Transform3D _xform = new Transform3D();
+
+        /** Temporary transforms for sampling. */
+        protected Transform3D _sample = new Transform3D(), _next = new Transform3D();
     }
 
     /**
@@ -854,6 +937,18 @@ public class Animation extends SimpleScope
             _animations[_aidx].blendTransforms(update);
         }
 
+        @Override
+        public boolean canBlendPose ()
+        {
+            return _animations[_aidx].canBlendPose();
+        }
+
+        @Override
+        public void blendPose (Pose pose, int update)
+        {
+            _animations[_aidx].blendPose(pose, update);
+        }
+
         /** The implementation configuration. */
         protected AnimationConfig.Sequential _config;
 
@@ -1081,6 +1176,24 @@ public class Animation extends SimpleScope
         _impl.blendTransforms(update);
     }
 
+    /**
+     * Determines whether the animation can currently blend its influence into a pose.
+     */
+    public boolean canBlendPose ()
+    {
+        return _impl.canBlendPose();
+    }
+
+    /**
+     * Blends in the influence of this animation to the supplied pose.
+     *
+     * @param update the current value of the update counter.
+     */
+    public void blendPose (Pose pose, int update)
+    {
+        _impl.blendPose(pose, update);
+    }
+
     /**
      * Dumps some information about the animation to the standard output.
      */
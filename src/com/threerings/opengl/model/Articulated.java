@@ -397,6 +397,16 @@ public class Articulated extends Model.Implementation
         protected Surface _surface;
     }
 
+    /**
+     * Sets whether models with several animations playing should blend them in flat
+     * {@link Pose} arrays rather than in the node transforms (the default is given by the
+     * <code>com.threerings.opengl.usePoses</code> system property).
+     */
+    public static void setUsePoses (boolean usePoses)
+    {
+        _usePoses = usePoses;
+    }
+
     /**
      * Creates a new articulated implementation.
      */
@@ -656,23 +666,29 @@ public class Articulated extends Model.Implementation
             _started = true;
         }
 
-        // copy the tracks to an array so that callbacks can manipulate the list;
-        // note if any tracks have completed
-        boolean tracksCompleted = false;
-        _playingArray = _playing.toArray(_playingArray);
-        for (int ii = 0, nn = _playing.size(); ii < nn; ii++) {
-            tracksCompleted |= _playingArray[ii].tick(elapsed);
-        }
+        // tick the animations and update the local node transforms unless our update level of
+        // detail has us skip this frame (in which case the elapsed time is carried over)
+        if (_lod.shouldUpdate(_ctx, _config.updateLod, _worldTransform, _nbounds, elapsed)) {
+            float aelapsed = _lod.takeElapsed();
+
+            // copy the tracks to an array so that callbacks can manipulate the list;
+            // note if any tracks have completed
+            boolean tracksCompleted = false;
+            _playingArray = _playing.toArray(_playingArray);
+            for (int ii = 0, nn = _playing.size(); ii < nn; ii++) {
+                tracksCompleted |= _playingArray[ii].tick(aelapsed);
+            }
 
-        // update the local node transforms
-        updateTransforms();
+            // update the local node transforms
+            updateTransforms();
 
-        // if any tracks have completed, remove them
-        if (tracksCompleted) {
-            for (int ii = _playing.size() - 1; ii >= 0; ii--) {
-                Animation animation = _playing.get(ii);
-                if (animation.hasCompleted()) {
-                    _playing.remove(ii);
+            // if any tracks have completed, remove them
+            if (tracksCompleted) {
+                for (int ii = _playing.size() - 1; ii >= 0; ii--) {
+                    Animation animation = _playing.get(ii);
+                    if (animation.hasCompleted()) {
+                        _playing.remove(ii);
+                    }
                 }
             }
         }
@@ -800,6 +816,7 @@ public class Articulated extends Model.Implementation
         _config.root.getArticulatedNodes(
             _ctx, this, onodes, nnodes, _worldTransform, _viewTransform);
         _nodes = nnodes.toArray(new Node[nnodes.size()]);
+        _pose = null;
         for (Node node : onodes.values()) {
             node.dispose(); // dispose of the unrecycled old nodes
         }
@@ -1012,12 +1029,51 @@ public class Articulated extends Model.Implementation
         // increment the update counter so that the tracks know which nodes have been updated
         _update++;
 
+        // blend in flat arrays if enabled and supported by all of the tracks
+        if (_usePoses && canBlendPose()) {
+            blendPose();
+            return;
+        }
+
         // process the tracks in order of decreasing priority
         for (int ii = 0; ii < nn; ii++) {
             _playing.get(ii).blendTransforms(_update);
         }
     }
 
+    /**
+     * Determines whether all of the playing animations can blend their influence into a pose.
+     */
+    protected boolean canBlendPose ()
+    {
+        for (int ii = 0, nn = _playing.size(); ii < nn; ii++) {
+            if (!_playing.get(ii).canBlendPose()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Blends the playing animations into the pose and copies the results to the local transforms
+     * of the nodes that they touched.
+     */
+    protected void blendPose ()
+    {
+        if (_pose == null) {
+            _pose = new Pose(_config);
+        }
+        for (int ii = 0, nn = _playing.size(); ii < nn; ii++) {
+            _playing.get(ii).blendPose(_pose, _update);
+        }
+        // the pose nodes are in the same (preorder) order as ours
+        for (int ii = 0; ii < _nodes.length; ii++) {
+            if (_pose.wasUpdated(ii, _update)) {
+                _pose.getLocal(ii, _nodes[ii].getLocalTransform());
+            }
+        }
+    }
+
     /**
      * Checks for an intersection with the skin mesh.
      */
@@ -1121,10 +1177,19 @@ public class Articulated extends Model.Implementation
     /** Holds the playing animations during the tick. */
     protected Animation[] _playingArray = new Animation[0];
 
+    /** Schedules the animation updates according to distance. */
+    protected LodScheduler _lod = new LodScheduler();
+
     /** Incremented on each call to {@link #updateTransforms} and used to determine which nodes
      * have been manipulated by animations on the current update. */
     protected int _update;
 
+    /** The flat pose in which to blend animations, if created. */
+    protected Pose _pose;
+
     /** If true, the model has completed. */
     protected boolean _completed;
+
+    /** Whether or not to blend animations in flat poses rather than the node transforms. */
+    protected static boolean _usePoses = Boolean.getBoolean("com.threerings.opengl.usePoses");
 }
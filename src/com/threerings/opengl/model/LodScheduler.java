@@ -0,0 +1,171 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model;
+
+import com.threerings.math.Box;
+import com.threerings.math.FloatMath;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+
+import com.threerings.opengl.geometry.config.DeformerConfig;
+import com.threerings.opengl.model.config.ArticulatedConfig.UpdateLod;
+import com.threerings.opengl.util.GlContext;
+
+/**
+ * Schedules the animation updates of a model according to its distance from the camera.  Models
+ * beyond the configured distances update only every Nth frame, with each model's updates offset
+ * by a different phase so that the load is spread across frames.  The time elapsed on skipped
+ * frames is accumulated and applied on the next update.
+ */
+public class LodScheduler
+{
+    /**
+     * Enables or disables update level of detail for all models.
+     */
+    public static void setEnabled (boolean enabled)
+    {
+        _enabled = enabled;
+    }
+
+    /**
+     * Checks whether update level of detail is enabled.
+     */
+    public static boolean isEnabled ()
+    {
+        return _enabled;
+    }
+
+    /**
+     * Returns the number of model updates performed since the counts were last reset.
+     */
+    public static long getUpdateCount ()
+    {
+        return _updateCount;
+    }
+
+    /**
+     * Returns the number of model updates skipped since the counts were last reset.
+     */
+    public static long getSkipCount ()
+    {
+        return _skipCount;
+    }
+
+    /**
+     * Returns the number of skinning updates skipped because the bone matrices hadn't changed
+     * since the counts were last reset.
+     */
+    public static long getSkinSkipCount ()
+    {
+        return DeformerConfig.getSkinSkipCount() - _skinSkipBase;
+    }
+
+    /**
+     * Resets the update counts.
+     */
+    public static void resetCounts ()
+    {
+        _updateCount = _skipCount = 0L;
+        _skinSkipBase = DeformerConfig.getSkinSkipCount();
+    }
+
+    /**
+     * Creates a new scheduler.
+     */
+    public LodScheduler ()
+    {
+        _phase = _nextPhase++;
+    }
+
+    /**
+     * Determines whether the model should update on this frame.  If so, the caller should use
+     * the time returned by {@link #takeElapsed} rather than that of the current frame.
+     *
+     * @param transform the world transform of the model.
+     * @param bounds the world space bounds of the model.
+     * @param elapsed the time elapsed since the last frame.
+     */
+    public boolean shouldUpdate (
+        GlContext ctx, UpdateLod lod, Transform3D transform, Box bounds, float elapsed)
+    {
+        _elapsed += elapsed;
+        int interval = (_enabled && lod.levels.length > 0) ?
+            lod.getInterval(getDistance(ctx, lod, transform, bounds)) : 1;
+        if (interval > 1 && (++_count + _phase) % interval != 0) {
+            _skipCount++;
+            return false;
+        }
+        _updateCount++;
+        return true;
+    }
+
+    /**
+     * Returns the time accumulated since the last update and resets the accumulator.
+     */
+    public float takeElapsed ()
+    {
+        float elapsed = _elapsed;
+        _elapsed = 0f;
+        return elapsed;
+    }
+
+    /**
+     * Computes the distance (absolute or relative to its size) of the model from the camera.
+     */
+    protected float getDistance (GlContext ctx, UpdateLod lod, Transform3D transform, Box bounds)
+    {
+        Vector3f camera = ctx.getCompositor().getCamera().getWorldTransform().getTranslation();
+        float distance = camera.distance(transform.extractTranslation(_translation));
+        if (lod.relativeToSize && !bounds.isEmpty()) {
+            distance /= Math.max(bounds.getDiagonalLength(), FloatMath.EPSILON);
+        }
+        return distance;
+    }
+
+    /** The phase of this scheduler's updates. */
+    protected int _phase;
+
+    /** The number of frames on which we've been asked whether to update. */
+    protected int _count;
+
+    /** The time accumulated since the last update. */
+    protected float _elapsed;
+
+    /** Holds the model translation. */
+    protected Vector3f _translation = new Vector3f();
+
+    /** Whether or not update level of detail is enabled. */
+    protected static boolean _enabled = true;
+
+    /** The phase to assign to the next scheduler. */
+    protected static int _nextPhase;
+
+    /** The number of updates performed and skipped. */
+    protected static long _updateCount, _skipCount;
+
+    /** The skin skip count at the time the counts were reset. */
+    protected static long _skinSkipBase;
+}
@@ -0,0 +1,526 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+
+import com.threerings.opengl.model.config.AnimationTracks;
+import com.threerings.opengl.model.config.ArticulatedConfig;
+
+/**
+ * The local and world transforms of the nodes of an articulated model, stored in flat arrays with
+ * each node following its parent so that the world transforms may be computed in a single pass.
+ * Poses sample and blend animation tracks directly, without creating any scopes or transform
+ * objects, and so may be used to evaluate skeletons headlessly (or in parallel, as each pose is
+ * independent of the others).  Only rigid and uniform transforms may be represented; each node
+ * occupies {@link #STRIDE} elements of each array (translation, rotation, and scale).
+ */
+public class Pose
+{
+    /** The number of array elements used to store each transform. */
+    public static final int STRIDE = 8;
+
+    /**
+     * Computes the world transforms of the supplied poses, dividing the work among the tasks of
+     * the given executor.
+     *
+     * @param roots the root transform of each pose, which must be rigid or uniform.
+     */
+    public static void updateWorld (
+        final List<Pose> poses, final List<Transform3D> roots, ExecutorService executor)
+    {
+        int size = poses.size();
+        int tasks = Math.min(size, PARALLEL_TASKS);
+        if (tasks <= 1) {
+            for (int ii = 0; ii < size; ii++) {
+                poses.get(ii).updateWorld(roots.get(ii));
+            }
+            return;
+        }
+        List<Callable<Void>> calls = Lists.newArrayListWithCapacity(tasks);
+        for (int ii = 0; ii < tasks; ii++) {
+            final int start = ii * size / tasks, end = (ii + 1) * size / tasks;
+            calls.add(new Callable<Void>() {
+                public Void call () {
+                    for (int jj = start; jj < end; jj++) {
+                        poses.get(jj).updateWorld(roots.get(jj));
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : executor.invokeAll(calls)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Creates a new pose for the nodes of the supplied model, initialized to their configured
+     * transforms.
+     */
+    public Pose (ArticulatedConfig config)
+    {
+        ArrayList<ArticulatedConfig.Node> nodes = new ArrayList<ArticulatedConfig.Node>();
+        ArrayList<Integer> parents = new ArrayList<Integer>();
+        addNodes(config.root, -1, nodes, parents);
+
+        int count = nodes.size();
+        _parents = new int[count];
+        _defaults = new float[count * STRIDE];
+        for (int ii = 0; ii < count; ii++) {
+            ArticulatedConfig.Node node = nodes.get(ii);
+            _parents[ii] = parents.get(ii);
+            _indices.put(node.name, ii);
+            if (!set(_defaults, ii * STRIDE, node.transform)) {
+                // approximate the transform, as for animations
+                Transform3D xform = node.transform;
+                set(_defaults, ii * STRIDE, new Transform3D(xform.extractTranslation(),
+                    xform.extractRotation(), xform.approximateUniformScale()));
+            }
+        }
+        _local = _defaults.clone();
+        _world = new float[count * STRIDE];
+        _updates = new int[count];
+        _weights = new float[count];
+    }
+
+    /**
+     * Returns the number of nodes in the pose.
+     */
+    public int getNodeCount ()
+    {
+        return _parents.length;
+    }
+
+    /**
+     * Returns the index of the parent of the specified node, or -1 if it is attached to the root.
+     */
+    public int getParent (int idx)
+    {
+        return _parents[idx];
+    }
+
+    /**
+     * Returns the index of the named node, or -1 if there is no such node.
+     */
+    public int getNodeIndex (String name)
+    {
+        Integer idx = _indices.get(name);
+        return (idx == null) ? -1 : idx;
+    }
+
+    /**
+     * Returns the indices of the named animation targets (-1 for targets that don't exist).
+     */
+    public int[] getNodeIndices (String[] targets)
+    {
+        int[] indices = new int[targets.length];
+        for (int ii = 0; ii < targets.length; ii++) {
+            indices[ii] = getNodeIndex(targets[ii]);
+        }
+        return indices;
+    }
+
+    /**
+     * Resets the local transforms to their configured values.
+     */
+    public void reset ()
+    {
+        System.arraycopy(_defaults, 0, _local, 0, _local.length);
+    }
+
+    /**
+     * Sets the local transforms of the animation targets to those sampled from the supplied
+     * tracks.
+     *
+     * @param indices the node index of each target, as returned by {@link #getNodeIndices}.
+     * @param position the (possibly fractional) frame index at which to sample.
+     */
+    public void sample (AnimationTracks tracks, int[] indices, float position)
+    {
+        for (int ii = 0; ii < indices.length; ii++) {
+            int idx = indices[ii];
+            if (idx != -1) {
+                tracks.sample(ii, position, _local, idx * STRIDE);
+            }
+        }
+    }
+
+    /**
+     * Blends the local transforms of the animation targets towards those sampled from the
+     * supplied tracks.
+     *
+     * @param indices the node index of each target, as returned by {@link #getNodeIndices}.
+     * @param position the (possibly fractional) frame index at which to sample.
+     * @param weight the weight of the sampled transforms.
+     */
+    public void blend (AnimationTracks tracks, int[] indices, float position, float weight)
+    {
+        for (int ii = 0; ii < indices.length; ii++) {
+            int idx = indices[ii];
+            if (idx != -1) {
+                tracks.sample(ii, position, _sample, 0);
+                lerp(_local, idx * STRIDE, _sample, weight);
+            }
+        }
+    }
+
+    /**
+     * Accumulates the influence of the supplied tracks on the animation targets in the manner of
+     * {@link Animation.Implementation#blendTransforms}: the first animation to touch a node on an
+     * update samples it directly, and later ones blend in until the total weight reaches one.
+     *
+     * @param indices the node index of each target, as returned by {@link #getNodeIndices}.
+     * @param position the (possibly fractional) frame index at which to sample.  Positions past
+     * the last frame interpolate between the last frame and the first, as when looping.
+     * @param weight the weight of the animation.
+     * @param update the current value of the update counter.
+     */
+    public void accumulate (
+        AnimationTracks tracks, int[] indices, float position, float weight, int update)
+    {
+        int last = tracks.getFrameCount() - 1;
+        for (int ii = 0; ii < indices.length; ii++) {
+            int idx = indices[ii];
+            if (idx == -1) {
+                continue;
+            }
+            if (_updates[idx] != update) {
+                sample(tracks, ii, position, last, _local, idx * STRIDE);
+                _updates[idx] = update;
+                _weights[idx] = weight;
+                continue;
+            }
+            float total = _weights[idx];
+            if (weight <= 0f || total >= 1f) {
+                continue;
+            }
+            float mweight = Math.min(weight, 1f - total);
+            sample(tracks, ii, position, last, _sample, 0);
+            lerp(_local, idx * STRIDE, _sample, mweight / (_weights[idx] = total + mweight));
+        }
+    }
+
+    /**
+     * Checks whether the specified node was touched by {@link #accumulate} on the given update.
+     */
+    public boolean wasUpdated (int idx, int update)
+    {
+        return _updates[idx] == update;
+    }
+
+    /**
+     * Returns a reference to the array of local transforms.
+     */
+    public float[] getLocal ()
+    {
+        return _local;
+    }
+
+    /**
+     * Returns a reference to the array of world transforms.
+     */
+    public float[] getWorld ()
+    {
+        return _world;
+    }
+
+    /**
+     * Sets the local transform of the specified node.
+     *
+     * @return true if the transform was set, false if it is of a type that cannot be represented
+     * in the pose (in which case the pose is unchanged).
+     */
+    public boolean setLocal (int idx, Transform3D transform)
+    {
+        return set(_local, idx * STRIDE, transform);
+    }
+
+    /**
+     * Retrieves the local transform of the specified node.
+     *
+     * @return a reference to the result transform, for chaining.
+     */
+    public Transform3D getLocal (int idx, Transform3D result)
+    {
+        return get(_local, idx * STRIDE, result);
+    }
+
+    /**
+     * Retrieves the world transform of the specified node.
+     *
+     * @return a reference to the result transform, for chaining.
+     */
+    public Transform3D getWorld (int idx, Transform3D result)
+    {
+        return get(_world, idx * STRIDE, result);
+    }
+
+    /**
+     * Computes the world transforms of the nodes by composing their local transforms with those
+     * of their parents.
+     *
+     * @param root the transform to which parentless nodes are attached, which must be rigid or
+     * uniform.
+     * @return true if the world transforms were computed, false if the root transform could not
+     * be represented.
+     */
+    public boolean updateWorld (Transform3D root)
+    {
+        int type = root.getType();
+        if (type > Transform3D.UNIFORM) {
+            return false;
+        }
+        float rtx = 0f, rty = 0f, rtz = 0f, rrx = 0f, rry = 0f, rrz = 0f, rrw = 1f, rs = 1f;
+        if (type != Transform3D.IDENTITY) {
+            Vector3f translation = root.getTranslation();
+            Quaternion rotation = root.getRotation();
+            rtx = translation.x;
+            rty = translation.y;
+            rtz = translation.z;
+            rrx = rotation.x;
+            rry = rotation.y;
+            rrz = rotation.z;
+            rrw = rotation.w;
+            rs = (type == Transform3D.UNIFORM) ? root.getScale() : 1f;
+        }
+        float[] local = _local, world = _world;
+        for (int ii = 0, idx = 0; ii < _parents.length; ii++, idx += STRIDE) {
+            float ptx, pty, ptz, prx, pry, prz, prw, ps;
+            int parent = _parents[ii];
+            if (parent == -1) {
+                ptx = rtx;
+                pty = rty;
+                ptz = rtz;
+                prx = rrx;
+                pry = rry;
+                prz = rrz;
+                prw = rrw;
+                ps = rs;
+            } else {
+                int pidx = parent * STRIDE;
+                ptx = world[pidx];
+                pty = world[pidx + 1];
+                ptz = world[pidx + 2];
+                prx = world[pidx + 3];
+                pry = world[pidx + 4];
+                prz = world[pidx + 5];
+                prw = world[pidx + 6];
+                ps = world[pidx + 7];
+            }
+
+            // as in Quaternion.transformScaleAndAdd
+            float xx = prx*prx, yy = pry*pry, zz = prz*prz;
+            float xy = prx*pry, xz = prx*prz, xw = prx*prw;
+            float yz = pry*prz, yw = pry*prw, zw = prz*prw;
+            float vx = local[idx], vy = local[idx + 1], vz = local[idx + 2];
+            float vx2 = vx*2f, vy2 = vy*2f, vz2 = vz*2f;
+            world[idx] = (vx + vy2*(xy - zw) + vz2*(xz + yw) - vx2*(yy + zz)) * ps + ptx;
+            world[idx + 1] = (vy + vx2*(xy + zw) + vz2*(yz - xw) - vy2*(xx + zz)) * ps + pty;
+            world[idx + 2] = (vz + vx2*(xz - yw) + vy2*(yz + xw) - vz2*(xx + yy)) * ps + ptz;
+
+            // as in Quaternion.mult
+            float ox = local[idx + 3], oy = local[idx + 4], oz = local[idx + 5],
+                ow = local[idx + 6];
+            world[idx + 3] = prw*ox + prx*ow + pry*oz - prz*oy;
+            world[idx + 4] = prw*oy + pry*ow + prz*ox - prx*oz;
+            world[idx + 5] = prw*oz + prz*ow + prx*oy - pry*ox;
+            world[idx + 6] = prw*ow - prx*ox - pry*oy - prz*oz;
+
+            world[idx + 7] = ps * local[idx + 7];
+        }
+        return true;
+    }
+
+    /**
+     * Adds the supplied node and its descendants to the lists in parent-before-child order.
+     */
+    protected static void addNodes (
+        ArticulatedConfig.Node node, int parent, List<ArticulatedConfig.Node> nodes,
+        List<Integer> parents)
+    {
+        int idx = nodes.size();
+        nodes.add(node);
+        parents.add(parent);
+        for (ArticulatedConfig.Node child : node.children) {
+            addNodes(child, idx, nodes, parents);
+        }
+    }
+
+    /**
+     * Stores a transform in the supplied array.
+     *
+     * @return true if the transform was stored, false if it is not rigid or uniform.
+     */
+    protected static boolean set (float[] array, int idx, Transform3D transform)
+    {
+        int type = transform.getType();
+        if (type == Transform3D.IDENTITY) {
+            setIdentity(array, idx);
+            return true;
+        } else if (type > Transform3D.UNIFORM) {
+            return false;
+        }
+        Vector3f translation = transform.getTranslation();
+        Quaternion rotation = transform.getRotation();
+        array[idx] = translation.x;
+        array[idx + 1] = translation.y;
+        array[idx + 2] = translation.z;
+        array[idx + 3] = rotation.x;
+        array[idx + 4] = rotation.y;
+        array[idx + 5] = rotation.z;
+        array[idx + 6] = rotation.w;
+        array[idx + 7] = (type == Transform3D.UNIFORM) ? transform.getScale() : 1f;
+        return true;
+    }
+
+    /**
+     * Retrieves a transform from the supplied array.
+     *
+     * @return a reference to the result transform, for chaining.
+     */
+    protected static Transform3D get (float[] array, int idx, Transform3D result)
+    {
+        float scale = array[idx + 7];
+        result.setType(scale == 1f ? Transform3D.RIGID : Transform3D.UNIFORM);
+        result.getTranslation().set(array[idx], array[idx + 1], array[idx + 2]);
+        result.getRotation().set(array[idx + 3], array[idx + 4], array[idx + 5], array[idx + 6]);
+        result.setScale(scale);
+        return result;
+    }
+
+    /**
+     * Samples a track at a position that may lie between the last frame and the first.
+     */
+    protected void sample (
+        AnimationTracks tracks, int target, float position, int last, float[] result, int offset)
+    {
+        if (position <= last) {
+            tracks.sample(target, position, result, offset);
+            return;
+        }
+        tracks.sample(target, last, result, offset);
+        tracks.sample(target, 0f, _next, 0);
+        lerp(result, offset, _next, position - last);
+    }
+
+    /**
+     * Interpolates the transform at the specified index of the supplied array towards the first
+     * transform of another array.
+     */
+    protected static void lerp (float[] array, int idx, float[] other, float t)
+    {
+        array[idx] += (other[0] - array[idx]) * t;
+        array[idx + 1] += (other[1] - array[idx + 1]) * t;
+        array[idx + 2] += (other[2] - array[idx + 2]) * t;
+        array[idx + 7] += (other[7] - array[idx + 7]) * t;
+
+        // as in Quaternion.slerp
+        float x = array[idx + 3], y = array[idx + 4], z = array[idx + 5], w = array[idx + 6];
+        float ox = other[3], oy = other[4], oz = other[5], ow = other[6], s0, s1;
+        float cosa = x*ox + y*oy + z*oz + w*ow;
+        if (cosa < 0f) {
+            cosa = -cosa;
+            ox = -ox;
+            oy = -oy;
+            oz = -oz;
+            ow = -ow;
+        }
+        if ((1f - cosa) > FloatMath.EPSILON) {
+            float angle = FloatMath.acos(cosa), sina = FloatMath.sin(angle);
+            s0 = FloatMath.sin((1f - t) * angle) / sina;
+            s1 = FloatMath.sin(t * angle) / sina;
+        } else {
+            s0 = 1f - t;
+            s1 = t;
+        }
+        array[idx + 3] = s0*x + s1*ox;
+        array[idx + 4] = s0*y + s1*oy;
+        array[idx + 5] = s0*z + s1*oz;
+        array[idx + 6] = s0*w + s1*ow;
+    }
+
+    /**
+     * Stores the identity transform in the supplied array.
+     */
+    protected static void setIdentity (float[] array, int idx)
+    {
+        array[idx] = array[idx + 1] = array[idx + 2] = 0f;
+        array[idx + 3] = array[idx + 4] = array[idx + 5] = 0f;
+        array[idx + 6] = array[idx + 7] = 1f;
+    }
+
+    /** The index of each node's parent, or -1 for parentless nodes. */
+    protected int[] _parents;
+
+    /** Maps node names to indices. */
+    protected HashMap<String, Integer> _indices = new HashMap<String, Integer>();
+
+    /** The configured local transforms of the nodes. */
+    protected float[] _defaults;
+
+    /** The local transforms of the nodes. */
+    protected float[] _local;
+
+    /** The world transforms of the nodes. */
+    protected float[] _world;
+
+    /** The value of the update counter when each node was last touched by an animation. */
+    protected int[] _updates;
+
+    /** The total weight of the animations applied to each node on the current update. */
+    protected float[] _weights;
+
+    /** Holds sampled transforms for blending. */
+    protected float[] _sample = new float[STRIDE];
+
+    /** Holds the first frame when interpolating past the last. */
+    protected float[] _next = new float[STRIDE];
+
+    /** The number of tasks into which to divide parallel updates. */
+    protected static final int PARALLEL_TASKS = Runtime.getRuntime().availableProcessors() * 4;
+}
@@ -25,6 +25,8 @@
 
 package com.threerings.opengl.model.config;
 
+import java.io.IOException;
+
 import com.samskivert.util.ArrayUtil;
 
 import com.threerings.config.ConfigReference;
@@ -35,6 +37,7 @@ import com.threerings.editor.EditorTypes;
 import com.threerings.editor.FileConstraints;
 import com.threerings.editor.util.EditorContext;
 import com.threerings.export.Exportable;
+import com.threerings.export.Importer;
 import com.threerings.expr.Scope;
 import com.threerings.expr.Transform3DExpression;
 import com.threerings.math.Transform3D;
@@ -171,9 +174,9 @@ public class AnimationConfig extends ParameterizedConfig
         @Shallow
         public String[] targets;
 
-        /** The transforms for each target, each frame. */
+        /** The (compressed) transforms for each target, each frame. */
         @Shallow
-        public Transform3D[][] transforms;
+        public AnimationTracks tracks;
 
         /**
          * Sets the source file from which to load the animation data.
@@ -215,7 +218,7 @@ public class AnimationConfig extends ParameterizedConfig
         public float getDuration ()
         {
             return transition +
-                (transforms == null ? 0f : (transforms.length - 1) / getScaledRate());
+                (tracks == null ? 0f : (tracks.getFrameCount() - 1) / getScaledRate());
         }
 
         /**
@@ -253,7 +256,7 @@ public class AnimationConfig extends ParameterizedConfig
         public Animation.Implementation getAnimationImplementation (
             GlContext ctx, Scope scope, Animation.Implementation impl)
         {
-            if (targets == null) {
+            if (targets == null || tracks == null) {
                 return null;
             }
             if (impl instanceof Animation.Imported) {
@@ -273,18 +276,11 @@ public class AnimationConfig extends ParameterizedConfig
         }
 
         /**
-         * Returns the modified transform array.  If there are no modifiers then this simply returns
-         * the 2D transforms array.
+         * Returns the modified transform array, decompressed from the tracks.
          */
         public Transform3D[][] getModifiedTransforms (Transform3D[] defaults)
         {
-            if (modifiers.length == 0) {
-                return transforms;
-            }
-            Transform3D[][] result = new Transform3D[transforms.length][];
-            for (int ii = 0; ii < result.length; ii++) {
-                result[ii] = transforms[ii].clone();
-            }
+            Transform3D[][] result = tracks.getTransforms();
             for (TargetModifier modifier : modifiers) {
                 int idx = ArrayUtil.indexOf(targets, modifier.target);
                 if (idx != -1) {
@@ -304,12 +300,27 @@ public class AnimationConfig extends ParameterizedConfig
         {
             if (def == null) {
                 targets = null;
-                transforms = null;
+                tracks = null;
             } else {
                 def.update(this);
             }
         }
 
+        /**
+         * Custom read method.
+         */
+        public void readFields (Importer in)
+            throws IOException
+        {
+            in.defaultReadFields();
+
+            // compress transforms exported before we stored them as tracks
+            Transform3D[][] transforms = in.read("transforms", null, Transform3D[][].class);
+            if (transforms != null) {
+                tracks = new AnimationTracks(transforms);
+            }
+        }
+
         /** The resource from which we read the animation data. */
         protected String _source;
 
@@ -498,13 +509,23 @@ public class AnimationConfig extends ParameterizedConfig
          * Alters the supplied transformation.
          */
         public Transform3D modifyTransform (Transform3D anim, Transform3D def)
+        {
+            return modifyTransform(anim, def, new Transform3D());
+        }
+
+        /**
+         * Alters the supplied transformation, placing the result in the object provided (which
+         * may be the same as <code>anim</code>).
+         *
+         * @return a reference to the result transform, for chaining.
+         */
+        public Transform3D modifyTransform (Transform3D anim, Transform3D def, Transform3D result)
         {
             _transform.set(
                     (ignoreTranslation ? def : anim).getTranslation(),
                     (ignoreRotation ? def : anim).getRotation(),
                     (ignoreScale ? def : anim).getScale());
-            Transform3D result = transform.compose(_transform);
-            return result;
+            return transform.compose(_transform, result);
         }
 
         protected static Transform3D _transform = new Transform3D();
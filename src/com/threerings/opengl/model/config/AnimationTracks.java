@@ -0,0 +1,668 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model.config;
+
+import com.threerings.export.Exportable;
+import com.threerings.math.FloatMath;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+
+/**
+ * A compact representation of the per-target transforms of an imported animation.  Each target's
+ * translation, rotation, and scale are stored as separate tracks of keys in flat primitive arrays:
+ * tracks that do not change are reduced to a single key, and keys that can be reconstructed by
+ * interpolating between their neighbors are dropped.  Rotations are quantized using the
+ * "smallest three" encoding, which stores the three smallest components of the (unit) quaternion
+ * in sixteen bits each along with the index of the omitted largest component.
+ *
+ * <p> Animations containing non-uniform scales (which cannot be represented by translation,
+ * rotation and uniform scale) are stored uncompressed.
+ */
+public class AnimationTracks
+    implements Exportable
+{
+    /**
+     * Creates a set of tracks from the supplied transforms (indexed by frame, then target).
+     */
+    public AnimationTracks (Transform3D[][] transforms)
+    {
+        _frameCount = transforms.length;
+        int tcount = (_frameCount == 0) ? 0 : transforms[0].length;
+        _types = new byte[tcount];
+        for (Transform3D[] frame : transforms) {
+            for (int ii = 0; ii < tcount; ii++) {
+                _types[ii] = (byte)Math.max(_types[ii], frame[ii].getType());
+            }
+        }
+        for (byte type : _types) {
+            if (type > Transform3D.UNIFORM || _frameCount > MAX_FRAMES) {
+                _transforms = transforms;
+                return;
+            }
+        }
+
+        // extract the components of each target, then find the keys of each track
+        float[] translations = new float[_frameCount * 3];
+        float[] rotations = new float[_frameCount * 4];
+        float[] scales = new float[_frameCount];
+        int[] tkeys = new int[tcount], rkeys = new int[tcount], skeys = new int[tcount];
+        short[][] tframes = new short[tcount][], rframes = new short[tcount][],
+            sframes = new short[tcount][];
+        for (int ii = 0; ii < tcount; ii++) {
+            getComponents(transforms, ii, translations, rotations, scales);
+            tkeys[ii] = (tframes[ii] = getKeys(translations, 3, TRANSLATION_TOLERANCE)).length;
+            rkeys[ii] = (rframes[ii] = getRotationKeys(rotations)).length;
+            skeys[ii] = (sframes[ii] = getKeys(scales, 1, SCALE_TOLERANCE)).length;
+        }
+
+        // allocate the arrays and populate them with the key values
+        _translationKeys = createOffsets(tkeys);
+        _rotationKeys = createOffsets(rkeys);
+        _scaleKeys = createOffsets(skeys);
+        _translationFrames = new short[_translationKeys[tcount]];
+        _rotationFrames = new short[_rotationKeys[tcount]];
+        _scaleFrames = new short[_scaleKeys[tcount]];
+        _translations = new float[_translationFrames.length * 3];
+        _rotations = new long[_rotationFrames.length];
+        _scales = new float[_scaleFrames.length];
+        for (int ii = 0; ii < tcount; ii++) {
+            getComponents(transforms, ii, translations, rotations, scales);
+            for (int jj = 0, kk = _translationKeys[ii]; jj < tkeys[ii]; jj++, kk++) {
+                int frame = tframes[ii][jj] & 0xFFFF;
+                _translationFrames[kk] = (short)frame;
+                System.arraycopy(translations, frame * 3, _translations, kk * 3, 3);
+            }
+            for (int jj = 0, kk = _rotationKeys[ii]; jj < rkeys[ii]; jj++, kk++) {
+                int frame = rframes[ii][jj] & 0xFFFF;
+                _rotationFrames[kk] = (short)frame;
+                int idx = frame * 4;
+                _rotations[kk] = encodeRotation(
+                    rotations[idx], rotations[idx + 1], rotations[idx + 2], rotations[idx + 3]);
+            }
+            for (int jj = 0, kk = _scaleKeys[ii]; jj < skeys[ii]; jj++, kk++) {
+                int frame = sframes[ii][jj] & 0xFFFF;
+                _scaleFrames[kk] = (short)frame;
+                _scales[kk] = scales[frame];
+            }
+        }
+    }
+
+    /**
+     * No-argument constructor for deserialization.
+     */
+    public AnimationTracks ()
+    {
+    }
+
+    /**
+     * Returns the number of frames in the animation.
+     */
+    public int getFrameCount ()
+    {
+        return _frameCount;
+    }
+
+    /**
+     * Returns the number of targets in the animation.
+     */
+    public int getTargetCount ()
+    {
+        return _types.length;
+    }
+
+    /**
+     * Returns the number of keys stored for the translation, rotation, and scale tracks of all
+     * targets (or zero if the transforms are stored uncompressed).
+     */
+    public int getKeyCount ()
+    {
+        return (_transforms == null) ?
+            (_translationFrames.length + _rotationFrames.length + _scaleFrames.length) : 0;
+    }
+
+    /**
+     * Samples the transform of the specified target at the given position.
+     *
+     * @param position the (possibly fractional) frame index, which must be between zero and the
+     * index of the last frame.
+     * @return a reference to the result transform, for chaining.
+     */
+    public Transform3D sample (int target, float position, Transform3D result)
+    {
+        if (_transforms != null) {
+            int frame = (int)position;
+            Transform3D xform = _transforms[frame][target];
+            return (frame == position) ? result.set(xform) :
+                xform.lerp(_transforms[frame + 1][target], position - frame, result);
+        }
+        int type = _types[target];
+        if (type == Transform3D.IDENTITY) {
+            return result.setToIdentity();
+        }
+        result.setType(type);
+        sampleTranslation(target, position, result.getTranslation());
+        sampleRotation(target, position, result.getRotation());
+        if (type == Transform3D.UNIFORM) {
+            result.setScale(sampleScale(target, position));
+        }
+        return result;
+    }
+
+    /**
+     * Samples the transform of the specified target at the given position, storing its
+     * translation, rotation, and uniform scale (eight elements in all) in the supplied array.
+     * Non-uniform scales (which are only present in uncompressed animations) are approximated.
+     */
+    public void sample (int target, float position, float[] result, int offset)
+    {
+        if (_transforms != null) {
+            Transform3D xform = sample(target, position, new Transform3D());
+            Vector3f translation = xform.extractTranslation();
+            Quaternion rotation = xform.extractRotation();
+            result[offset] = translation.x;
+            result[offset + 1] = translation.y;
+            result[offset + 2] = translation.z;
+            result[offset + 3] = rotation.x;
+            result[offset + 4] = rotation.y;
+            result[offset + 5] = rotation.z;
+            result[offset + 6] = rotation.w;
+            result[offset + 7] = xform.approximateUniformScale();
+            return;
+        }
+        int type = _types[target];
+        if (type == Transform3D.IDENTITY) {
+            result[offset] = result[offset + 1] = result[offset + 2] = 0f;
+            result[offset + 3] = result[offset + 4] = result[offset + 5] = 0f;
+            result[offset + 6] = result[offset + 7] = 1f;
+            return;
+        }
+        sampleTranslation(target, position, result, offset);
+        sampleRotation(target, position, result, offset + 3);
+        result[offset + 7] = (type == Transform3D.UNIFORM) ? sampleScale(target, position) : 1f;
+    }
+
+    /**
+     * Decompresses the tracks into an array of transforms indexed by frame, then target.
+     */
+    public Transform3D[][] getTransforms ()
+    {
+        Transform3D[][] transforms = new Transform3D[_frameCount][_types.length];
+        for (int ii = 0; ii < _frameCount; ii++) {
+            for (int jj = 0; jj < _types.length; jj++) {
+                transforms[ii][jj] = sample(jj, ii, new Transform3D());
+            }
+        }
+        return transforms;
+    }
+
+    /**
+     * Samples the translation of the specified target.
+     */
+    protected void sampleTranslation (int target, float position, Vector3f result)
+    {
+        int start = _translationKeys[target], end = _translationKeys[target + 1];
+        int key = findKey(_translationFrames, start, end, position);
+        int idx = key * 3;
+        if (key == end - 1) {
+            result.set(_translations[idx], _translations[idx + 1], _translations[idx + 2]);
+            return;
+        }
+        float t = getProportion(_translationFrames, key, position);
+        result.set(
+            FloatMath.lerp(_translations[idx], _translations[idx + 3], t),
+            FloatMath.lerp(_translations[idx + 1], _translations[idx + 4], t),
+            FloatMath.lerp(_translations[idx + 2], _translations[idx + 5], t));
+    }
+
+    /**
+     * Samples the translation of the specified target into the supplied array.
+     */
+    protected void sampleTranslation (int target, float position, float[] result, int offset)
+    {
+        int start = _translationKeys[target], end = _translationKeys[target + 1];
+        int key = findKey(_translationFrames, start, end, position);
+        int idx = key * 3;
+        if (key == end - 1) {
+            System.arraycopy(_translations, idx, result, offset, 3);
+            return;
+        }
+        float t = getProportion(_translationFrames, key, position);
+        for (int ii = 0; ii < 3; ii++) {
+            result[offset + ii] = FloatMath.lerp(
+                _translations[idx + ii], _translations[idx + 3 + ii], t);
+        }
+    }
+
+    /**
+     * Samples the rotation of the specified target into the supplied array.
+     */
+    protected void sampleRotation (int target, float position, float[] result, int offset)
+    {
+        int start = _rotationKeys[target], end = _rotationKeys[target + 1];
+        int key = findKey(_rotationFrames, start, end, position);
+        decodeRotation(_rotations[key], result, offset);
+        if (key != end - 1) {
+            slerp(result, offset, _rotations[key + 1],
+                getProportion(_rotationFrames, key, position));
+        }
+    }
+
+    /**
+     * Samples the rotation of the specified target.
+     */
+    protected void sampleRotation (int target, float position, Quaternion result)
+    {
+        int start = _rotationKeys[target], end = _rotationKeys[target + 1];
+        int key = findKey(_rotationFrames, start, end, position);
+        decodeRotation(_rotations[key], result);
+        if (key == end - 1) {
+            return;
+        }
+        float t = getProportion(_rotationFrames, key, position);
+        float x = result.x, y = result.y, z = result.z, w = result.w;
+        decodeRotation(_rotations[key + 1], result);
+        float ox = result.x, oy = result.y, oz = result.z, ow = result.w;
+
+        // as in Quaternion.slerp, but without requiring a second quaternion object
+        float cosa = x*ox + y*oy + z*oz + w*ow, s0, s1;
+        if (cosa < 0f) {
+            cosa = -cosa;
+            ox = -ox;
+            oy = -oy;
+            oz = -oz;
+            ow = -ow;
+        }
+        if ((1f - cosa) > FloatMath.EPSILON) {
+            float angle = FloatMath.acos(cosa), sina = FloatMath.sin(angle);
+            s0 = FloatMath.sin((1f - t) * angle) / sina;
+            s1 = FloatMath.sin(t * angle) / sina;
+        } else {
+            s0 = 1f - t;
+            s1 = t;
+        }
+        result.set(s0*x + s1*ox, s0*y + s1*oy, s0*z + s1*oz, s0*w + s1*ow);
+    }
+
+    /**
+     * Samples the scale of the specified target.
+     */
+    protected float sampleScale (int target, float position)
+    {
+        int start = _scaleKeys[target], end = _scaleKeys[target + 1];
+        int key = findKey(_scaleFrames, start, end, position);
+        return (key == end - 1) ? _scales[key] : FloatMath.lerp(
+            _scales[key], _scales[key + 1], getProportion(_scaleFrames, key, position));
+    }
+
+    /**
+     * Extracts the components of the specified target's transforms into the supplied arrays.
+     */
+    protected static void getComponents (
+        Transform3D[][] transforms, int target, float[] translations,
+        float[] rotations, float[] scales)
+    {
+        Quaternion rotation = new Quaternion();
+        for (int ii = 0; ii < transforms.length; ii++) {
+            Transform3D xform = transforms[ii][target];
+            int type = xform.getType();
+            Vector3f trans = (type == Transform3D.IDENTITY) ?
+                Vector3f.ZERO : xform.getTranslation();
+            Quaternion rot = (type == Transform3D.IDENTITY) ?
+                Quaternion.IDENTITY : xform.getRotation();
+            int tidx = ii * 3, ridx = ii * 4;
+            translations[tidx] = trans.x;
+            translations[tidx + 1] = trans.y;
+            translations[tidx + 2] = trans.z;
+
+            // store the rotations as they will be decoded, so that we account for the error
+            decodeRotation(encodeRotation(rot.x, rot.y, rot.z, rot.w), rotation);
+            rotations[ridx] = rotation.x;
+            rotations[ridx + 1] = rotation.y;
+            rotations[ridx + 2] = rotation.z;
+            rotations[ridx + 3] = rotation.w;
+            scales[ii] = (type == Transform3D.UNIFORM) ? xform.getScale() : 1f;
+        }
+    }
+
+    /**
+     * Finds the frames that must be stored as keys in order to reproduce the supplied values
+     * (with the given number of components each) to within the specified tolerance.
+     */
+    protected static short[] getKeys (float[] values, int dimension, float tolerance)
+    {
+        int fcount = values.length / dimension;
+        short[] keys = new short[fcount];
+        int kcount = 1;
+        for (int start = 0, end = start + 2; end < fcount; end++) {
+            // see if we can extend the segment starting at the last key to the end frame
+            for (int ii = start + 1; ii < end; ii++) {
+                float t = (ii - start) / (float)(end - start);
+                if (!interpolates(values, dimension, start, end, ii, t, tolerance)) {
+                    keys[kcount++] = (short)(start = end - 1);
+                    break;
+                }
+            }
+        }
+        return finishKeys(keys, kcount, isConstant(values, dimension, tolerance));
+    }
+
+    /**
+     * Finds the frames that must be stored as keys in order to reproduce the supplied rotations
+     * to within tolerance.
+     */
+    protected static short[] getRotationKeys (float[] rotations)
+    {
+        int fcount = rotations.length / 4;
+        short[] keys = new short[fcount];
+        int kcount = 1;
+        Quaternion q1 = new Quaternion(), q2 = new Quaternion(), result = new Quaternion();
+        boolean constant = true;
+        for (int ii = 1; ii < fcount && constant; ii++) {
+            constant = getAngularError(
+                q1.set(rotations[0], rotations[1], rotations[2], rotations[3]),
+                rotations, ii) <= ROTATION_TOLERANCE;
+        }
+        for (int start = 0, end = start + 2; end < fcount; end++) {
+            int sidx = start * 4, eidx = end * 4;
+            q1.set(rotations[sidx], rotations[sidx + 1], rotations[sidx + 2], rotations[sidx + 3]);
+            q2.set(rotations[eidx], rotations[eidx + 1], rotations[eidx + 2], rotations[eidx + 3]);
+            for (int ii = start + 1; ii < end; ii++) {
+                q1.slerp(q2, (ii - start) / (float)(end - start), result);
+                if (getAngularError(result, rotations, ii) > ROTATION_TOLERANCE) {
+                    keys[kcount++] = (short)(start = end - 1);
+                    break;
+                }
+            }
+        }
+        return finishKeys(keys, kcount, constant);
+    }
+
+    /**
+     * Adds the final key (if necessary) and trims the supplied key array.
+     */
+    protected static short[] finishKeys (short[] keys, int kcount, boolean constant)
+    {
+        if (constant) {
+            return new short[] { 0 };
+        }
+        int last = keys.length - 1;
+        if (last > 0 && keys[kcount - 1] != last) {
+            keys[kcount++] = (short)last;
+        }
+        short[] trimmed = new short[kcount];
+        System.arraycopy(keys, 0, trimmed, 0, kcount);
+        return trimmed;
+    }
+
+    /**
+     * Determines whether all of the supplied values are within tolerance of the first.
+     */
+    protected static boolean isConstant (float[] values, int dimension, float tolerance)
+    {
+        for (int ii = dimension; ii < values.length; ii++) {
+            if (Math.abs(values[ii] - values[ii % dimension]) > tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether interpolating between the start and end frames reproduces the value at
+     * the given frame to within tolerance.
+     */
+    protected static boolean interpolates (
+        float[] values, int dimension, int start, int end, int frame, float t, float tolerance)
+    {
+        for (int ii = 0; ii < dimension; ii++) {
+            float value = FloatMath.lerp(
+                values[start * dimension + ii], values[end * dimension + ii], t);
+            if (Math.abs(value - values[frame * dimension + ii]) > tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a measure of the difference between the supplied rotation and the one stored at
+     * the given frame (one minus the absolute value of the dot product).
+     */
+    protected static float getAngularError (Quaternion rotation, float[] rotations, int frame)
+    {
+        int idx = frame * 4;
+        return 1f - Math.abs(rotation.x*rotations[idx] + rotation.y*rotations[idx + 1] +
+            rotation.z*rotations[idx + 2] + rotation.w*rotations[idx + 3]);
+    }
+
+    /**
+     * Converts the supplied key counts into an array of offsets, where the last element contains
+     * the total number of keys.
+     */
+    protected static int[] createOffsets (int[] counts)
+    {
+        int[] offsets = new int[counts.length + 1];
+        for (int ii = 0; ii < counts.length; ii++) {
+            offsets[ii + 1] = offsets[ii] + counts[ii];
+        }
+        return offsets;
+    }
+
+    /**
+     * Returns the index of the last key at or before the specified position.
+     */
+    protected static int findKey (short[] frames, int start, int end, float position)
+    {
+        int low = start, high = end - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if ((frames[mid] & 0xFFFF) <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the proportion of the way from the specified key to the next at which the given
+     * position lies.
+     */
+    protected static float getProportion (short[] frames, int key, float position)
+    {
+        int f1 = frames[key] & 0xFFFF, f2 = frames[key + 1] & 0xFFFF;
+        return (position - f1) / (f2 - f1);
+    }
+
+    /**
+     * Encodes the supplied (unit) quaternion using the smallest three encoding.
+     */
+    protected static long encodeRotation (float x, float y, float z, float w)
+    {
+        // find the largest component and make sure it's positive (q and -q are equivalent)
+        float ax = Math.abs(x), ay = Math.abs(y), az = Math.abs(z), aw = Math.abs(w);
+        int largest = (ax > ay) ?
+            (ax > az ? (ax > aw ? 0 : 3) : (az > aw ? 2 : 3)) :
+            (ay > az ? (ay > aw ? 1 : 3) : (az > aw ? 2 : 3));
+        float[] comps = { x, y, z, w };
+        float sign = (comps[largest] < 0f) ? -1f : +1f;
+        long encoded = largest;
+        for (int ii = 0; ii < 4; ii++) {
+            if (ii != largest) {
+                encoded = (encoded << 16) | quantize(comps[ii] * sign);
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Decodes a quaternion encoded with {@link #encodeRotation}.
+     */
+    protected static void decodeRotation (long encoded, Quaternion result)
+    {
+        float c = dequantize((int)encoded & 0xFFFF);
+        float b = dequantize((int)(encoded >>> 16) & 0xFFFF);
+        float a = dequantize((int)(encoded >>> 32) & 0xFFFF);
+        float d = FloatMath.sqrt(Math.max(0f, 1f - a*a - b*b - c*c));
+        switch ((int)(encoded >>> 48)) {
+            case 0: result.set(d, a, b, c); break;
+            case 1: result.set(a, d, b, c); break;
+            case 2: result.set(a, b, d, c); break;
+            default: result.set(a, b, c, d); break;
+        }
+    }
+
+    /**
+     * Decodes a quaternion encoded with {@link #encodeRotation} into the supplied array.
+     */
+    protected static void decodeRotation (long encoded, float[] result, int offset)
+    {
+        float c = dequantize((int)encoded & 0xFFFF);
+        float b = dequantize((int)(encoded >>> 16) & 0xFFFF);
+        float a = dequantize((int)(encoded >>> 32) & 0xFFFF);
+        float d = FloatMath.sqrt(Math.max(0f, 1f - a*a - b*b - c*c));
+        float x, y, z, w;
+        switch ((int)(encoded >>> 48)) {
+            case 0: x = d; y = a; z = b; w = c; break;
+            case 1: x = a; y = d; z = b; w = c; break;
+            case 2: x = a; y = b; z = d; w = c; break;
+            default: x = a; y = b; z = c; w = d; break;
+        }
+        result[offset] = x;
+        result[offset + 1] = y;
+        result[offset + 2] = z;
+        result[offset + 3] = w;
+    }
+
+    /**
+     * Interpolates in-place between the quaternion stored in the supplied array and the one
+     * encoded in <code>encoded</code>.
+     */
+    protected static void slerp (float[] values, int offset, long encoded, float t)
+    {
+        float x = values[offset], y = values[offset + 1];
+        float z = values[offset + 2], w = values[offset + 3];
+        decodeRotation(encoded, values, offset);
+        float ox = values[offset], oy = values[offset + 1];
+        float oz = values[offset + 2], ow = values[offset + 3];
+
+        // as in Quaternion.slerp
+        float cosa = x*ox + y*oy + z*oz + w*ow, s0, s1;
+        if (cosa < 0f) {
+            cosa = -cosa;
+            ox = -ox;
+            oy = -oy;
+            oz = -oz;
+            ow = -ow;
+        }
+        if ((1f - cosa) > FloatMath.EPSILON) {
+            float angle = FloatMath.acos(cosa), sina = FloatMath.sin(angle);
+            s0 = FloatMath.sin((1f - t) * angle) / sina;
+            s1 = FloatMath.sin(t * angle) / sina;
+        } else {
+            s0 = 1f - t;
+            s1 = t;
+        }
+        values[offset] = s0*x + s1*ox;
+        values[offset + 1] = s0*y + s1*oy;
+        values[offset + 2] = s0*z + s1*oz;
+        values[offset + 3] = s0*w + s1*ow;
+    }
+
+    /**
+     * Quantizes a component of a quaternion (which, if not the largest, must be in the range
+     * [-1/sqrt(2), +1/sqrt(2)]) to sixteen bits.
+     */
+    protected static long quantize (float value)
+    {
+        float scaled = (FloatMath.clamp(value, -MAX_COMPONENT, +MAX_COMPONENT) + MAX_COMPONENT) /
+            (2f * MAX_COMPONENT);
+        return Math.round(scaled * 0xFFFF);
+    }
+
+    /**
+     * Reverses the quantization performed by {@link #quantize}.
+     */
+    protected static float dequantize (int value)
+    {
+        return (value / (float)0xFFFF) * (2f * MAX_COMPONENT) - MAX_COMPONENT;
+    }
+
+    /** The number of frames in the animation. */
+    protected int _frameCount;
+
+    /** The transform type of each target (the most general type of any of its transforms). */
+    protected byte[] _types = new byte[0];
+
+    /** For each target, the index of its first translation key (with a final entry containing the
+     * total number of keys). */
+    protected int[] _translationKeys;
+
+    /** The frame index of each translation key. */
+    protected short[] _translationFrames;
+
+    /** The values of the translation keys (three components each). */
+    protected float[] _translations;
+
+    /** For each target, the index of its first rotation key. */
+    protected int[] _rotationKeys;
+
+    /** The frame index of each rotation key. */
+    protected short[] _rotationFrames;
+
+    /** The encoded values of the rotation keys. */
+    protected long[] _rotations;
+
+    /** For each target, the index of its first scale key. */
+    protected int[] _scaleKeys;
+
+    /** The frame index of each scale key. */
+    protected short[] _scaleFrames;
+
+    /** The values of the scale keys. */
+    protected float[] _scales;
+
+    /** The uncompressed transforms, for animations that cannot be compressed. */
+    protected Transform3D[][] _transforms;
+
+    /** The maximum number of frames that we can compress (frame indices are stored as unsigned
+     * shorts). */
+    protected static final int MAX_FRAMES = 0xFFFF;
+
+    /** The maximum translation error (in each component) permitted in compression. */
+    protected static final float TRANSLATION_TOLERANCE = 0.0001f;
+
+    /** The maximum rotation error (one minus the absolute dot product) permitted in compression. */
+    protected static final float ROTATION_TOLERANCE = 0.0000001f;
+
+    /** The maximum scale error permitted in compression. */
+    protected static final float SCALE_TOLERANCE = 0.0001f;
+
+    /** The magnitude of the largest possible value of any but the largest quaternion component. */
+    protected static final float MAX_COMPONENT = 1f / FloatMath.sqrt(2f);
+}
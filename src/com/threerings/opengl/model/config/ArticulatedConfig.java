@@ -276,6 +276,54 @@ public class ArticulatedConfig extends ModelConfig.Imported
         public boolean startOnUpdated;
     }
 
+    /**
+     * Controls the rate at which the model's animations (and thus its skin) are updated
+     * according to its distance from the camera.
+     */
+    public static class UpdateLod extends DeepObject
+        implements Exportable
+    {
+        /** Whether distances are measured in multiples of the model's size (its bounds' diagonal
+         * length), which approximates a screen-space size threshold. */
+        @Editable
+        public boolean relativeToSize;
+
+        /** The update levels, in order of increasing distance. */
+        @Editable
+        public UpdateLevel[] levels = new UpdateLevel[0];
+
+        /**
+         * Returns the interval (in frames) at which to update a model at the specified distance
+         * from the camera.
+         */
+        public int getInterval (float distance)
+        {
+            int interval = 1;
+            for (UpdateLevel level : levels) {
+                if (distance < level.distance) {
+                    break;
+                }
+                interval = Math.max(1, level.interval);
+            }
+            return interval;
+        }
+    }
+
+    /**
+     * A single level of update detail.
+     */
+    public static class UpdateLevel extends DeepObject
+        implements Exportable
+    {
+        /** The distance beyond which this level applies. */
+        @Editable(min=0, step=0.01, hgroup="d")
+        public float distance;
+
+        /** The number of frames between updates at this level. */
+        @Editable(min=1, hgroup="d")
+        public int interval = 2;
+    }
+
     /**
      * Represents a transform to apply to a node.
      */
@@ -409,6 +457,10 @@ public class ArticulatedConfig extends ModelConfig.Imported
     @Editable(hgroup="t")
     public boolean completable;
 
+    /** The distance-based update rate settings. */
+    @Editable
+    public UpdateLod updateLod = new UpdateLod();
+
     /** The model's animation mappings. */
     @Editable
     public AnimationMapping[] animationMappings = new AnimationMapping[0];
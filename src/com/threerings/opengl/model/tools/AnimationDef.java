@@ -30,6 +30,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import com.threerings.math.Transform3D;
 import com.threerings.opengl.model.config.AnimationConfig;
+import com.threerings.opengl.model.config.AnimationTracks;
 
 /**
  * An intermediate representation for animations used to store data parsed from XML.
@@ -109,8 +110,8 @@ public class AnimationDef
     {
         config.rate = frameRate;
         config.targets = getTargets();
-        config.transforms = getTransforms(
-            config.targets, config.scale, config.loop && config.skipLastFrame);
+        config.tracks = new AnimationTracks(getTransforms(
+            config.targets, config.scale, config.loop && config.skipLastFrame));
     }
 
     /**
@@ -0,0 +1,239 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.xml.sax.SAXException;
+
+import com.threerings.export.BinaryExporter;
+import com.threerings.export.BinaryImporter;
+import com.threerings.math.FloatMath;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+
+import com.threerings.opengl.model.config.AnimationConfig;
+import com.threerings.opengl.model.config.AnimationTracks;
+import com.threerings.opengl.model.tools.xml.AnimationParser;
+
+/**
+ * A headless tool comparing {@link AnimationTracks} to the <code>Transform3D[][]</code> format in
+ * which imported animations were previously stored: the size of each when exported, the time
+ * taken to load each from its exported form, and the heap occupied by each once loaded.  It also
+ * reports the error of the tracks sampled at the original keyframes, and that of the
+ * smallest-three rotation encoding alone.  The animation is parsed from the XML file given on
+ * the command line or, without one, generated with a mix of constant, linear, and sinusoidal
+ * tracks.  This extends {@link AnimationTracks} only to reach its rotation encoding.
+ */
+public class AnimationTracksBenchmark extends AnimationTracks
+{
+    public static void main (String[] args)
+        throws IOException, SAXException
+    {
+        Transform3D[][] transforms = null;
+        if (args.length > 1) {
+            System.err.println("Usage: AnimationTracksBenchmark [animation.mxml]");
+            System.exit(-1);
+        } else if (args.length == 1) {
+            AnimationDef def = new AnimationParser().parseAnimation(args[0]);
+            AnimationConfig.Imported config = new AnimationConfig.Imported();
+            transforms = def.getTransforms(def.getTargets(), config.scale, false);
+        } else {
+            transforms = createTransforms(FRAMES, TARGETS);
+        }
+        AnimationTracks tracks = new AnimationTracks(transforms);
+        int frames = transforms.length, targets = (frames == 0) ? 0 : transforms[0].length;
+        System.out.println(frames + " frames, " + targets + " targets, " +
+            tracks.getKeyCount() + " keys (" + (frames * targets * 3) + " uncompressed)");
+
+        // compare the tracks to the original keyframes
+        float terror = 0f, rerror = 0f, serror = 0f, qerror = 0f;
+        double rtotal = 0.0;
+        Transform3D sample = new Transform3D();
+        Quaternion decoded = new Quaternion();
+        for (int ii = 0; ii < frames; ii++) {
+            for (int jj = 0; jj < targets; jj++) {
+                Transform3D original = transforms[ii][jj];
+                tracks.sample(jj, ii, sample);
+                Quaternion rotation = original.extractRotation();
+                float angle = getAngle(rotation, sample.extractRotation());
+                terror = Math.max(terror, original.extractTranslation().distance(
+                    sample.extractTranslation()));
+                rerror = Math.max(rerror, angle);
+                rtotal += angle;
+                serror = Math.max(serror, Math.abs(original.approximateUniformScale() -
+                    sample.approximateUniformScale()));
+                decodeRotation(encodeRotation(
+                    rotation.x, rotation.y, rotation.z, rotation.w), decoded);
+                qerror = Math.max(qerror, getAngle(rotation, decoded));
+            }
+        }
+        int samples = Math.max(1, frames * targets);
+        System.out.println("Keyframe error: translation " + terror + ", rotation " + rerror +
+            " rad (mean " + (float)(rtotal / samples) + "), scale " + serror);
+        System.out.println("Smallest-three encoding error: " + qerror + " rad");
+
+        // export each format
+        byte[] tbytes = export(transforms), kbytes = export(tracks);
+        System.out.println("Exported: transforms " + tbytes.length + " bytes, tracks " +
+            kbytes.length + " bytes");
+
+        // time loading each so that the JIT has settled before we report
+        for (int ii = 0; ii < WARMUP_ROUNDS; ii++) {
+            load(tbytes, LOADS);
+            load(kbytes, LOADS);
+        }
+        long start = System.nanoTime();
+        load(tbytes, LOADS);
+        long tload = System.nanoTime() - start;
+        start = System.nanoTime();
+        load(kbytes, LOADS);
+        long kload = System.nanoTime() - start;
+        System.out.println("Load: transforms " + (tload / LOADS / 1000L) + " us, tracks " +
+            (kload / LOADS / 1000L) + " us");
+
+        // measure the heap retained by a number of loaded copies of each
+        long tfoot = getFootprint(tbytes), kfoot = getFootprint(kbytes);
+        System.out.println("Heap: transforms " + tfoot + " bytes, tracks " + kfoot + " bytes");
+    }
+
+    /**
+     * Exports the supplied object and returns the resulting bytes.
+     */
+    protected static byte[] export (Object object)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryExporter exporter = new BinaryExporter(out);
+        exporter.writeObject(object);
+        exporter.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Loads the exported object the specified number of times.
+     *
+     * @return the objects loaded.
+     */
+    protected static Object[] load (byte[] bytes, int count)
+        throws IOException
+    {
+        Object[] objects = new Object[count];
+        for (int ii = 0; ii < count; ii++) {
+            BinaryImporter importer = new BinaryImporter(new ByteArrayInputStream(bytes));
+            objects[ii] = importer.readObject();
+            importer.close();
+        }
+        return objects;
+    }
+
+    /**
+     * Returns the approximate number of heap bytes retained by one loaded copy of the exported
+     * object.
+     */
+    protected static long getFootprint (byte[] bytes)
+        throws IOException
+    {
+        long before = getUsedMemory();
+        Object[] objects = load(bytes, FOOTPRINT_COPIES);
+        long after = getUsedMemory();
+        if (objects.length != FOOTPRINT_COPIES) {
+            throw new IllegalStateException(); // keep the copies reachable
+        }
+        return (after - before) / FOOTPRINT_COPIES;
+    }
+
+    /**
+     * Returns the amount of heap in use after collecting garbage.
+     */
+    protected static long getUsedMemory ()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int ii = 0; ii < 4; ii++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns the angle between two rotations.  This is computed from the distances between the
+     * quaternions rather than from their dot product, which loses precision near one.
+     */
+    protected static float getAngle (Quaternion q1, Quaternion q2)
+    {
+        double sign = (q1.x*q2.x + q1.y*q2.y + q1.z*q2.z + q1.w*q2.w < 0f) ? -1.0 : +1.0;
+        double dx = q1.x - sign*q2.x, dy = q1.y - sign*q2.y;
+        double dz = q1.z - sign*q2.z, dw = q1.w - sign*q2.w;
+        double sx = q1.x + sign*q2.x, sy = q1.y + sign*q2.y;
+        double sz = q1.z + sign*q2.z, sw = q1.w + sign*q2.w;
+        return (float)(2.0 * Math.atan2(Math.sqrt(dx*dx + dy*dy + dz*dz + dw*dw),
+            Math.sqrt(sx*sx + sy*sy + sz*sz + sw*sw)));
+    }
+
+    /**
+     * Creates an animation whose targets cycle between constant, linear, and sinusoidal motion
+     * (the last with a varying uniform scale).
+     */
+    protected static Transform3D[][] createTransforms (int frames, int targets)
+    {
+        Transform3D[][] transforms = new Transform3D[frames][targets];
+        Vector3f axis = new Vector3f();
+        for (int ii = 0; ii < targets; ii++) {
+            axis.set(ii % 3, 1f, (ii % 5) * 0.5f).normalizeLocal();
+            for (int jj = 0; jj < frames; jj++) {
+                float t = jj / (float)frames;
+                Transform3D xform;
+                switch (ii % 3) {
+                    case 0:
+                        xform = new Transform3D(new Vector3f(ii, 1f, 0f),
+                            new Quaternion().fromAngleAxis(ii * 0.1f, axis));
+                        break;
+                    case 1:
+                        xform = new Transform3D(new Vector3f(t * ii, 1f, -t),
+                            new Quaternion().fromAngleAxis(t * FloatMath.PI, axis));
+                        break;
+                    default:
+                        float s = FloatMath.sin(t * FloatMath.TWO_PI * (1 + ii % 4));
+                        xform = new Transform3D(new Vector3f(s, s * 0.5f, ii),
+                            new Quaternion().fromAngleAxis(s * FloatMath.HALF_PI, axis),
+                            1f + s * 0.1f);
+                        break;
+                }
+                transforms[jj][ii] = xform;
+            }
+        }
+        return transforms;
+    }
+
+    protected static final int FRAMES = 300;
+    protected static final int TARGETS = 60;
+    protected static final int LOADS = 50;
+    protected static final int FOOTPRINT_COPIES = 50;
+    protected static final int WARMUP_ROUNDS = 5;
+}
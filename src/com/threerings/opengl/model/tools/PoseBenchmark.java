@@ -0,0 +1,284 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model.tools;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.threerings.math.Quaternion;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+
+import com.threerings.opengl.model.Articulated;
+import com.threerings.opengl.model.Pose;
+import com.threerings.opengl.model.config.AnimationTracks;
+import com.threerings.opengl.model.config.ArticulatedConfig;
+
+/**
+ * A headless benchmark comparing the two ways in which {@link Articulated} may blend several
+ * playing animations: sampling and interpolating the node transforms one by one, or blending in
+ * a flat {@link Pose} and copying the results back to the node transforms (as enabled by
+ * {@link Articulated#setUsePoses}).  Each member of a crowd of synthetic knights plays a walk,
+ * an attack, and an idle animation at staggered positions, and the two paths are checked for
+ * agreement before they are timed.
+ */
+public class PoseBenchmark
+{
+    public static void main (String[] args)
+    {
+        int knights = DEFAULT_KNIGHTS;
+        if (args.length > 1) {
+            System.err.println("Usage: PoseBenchmark [knights]");
+            System.exit(-1);
+        } else if (args.length == 1) {
+            try {
+                knights = Integer.parseInt(args[0]);
+            } catch (NumberFormatException nfe) {
+                System.err.println("Usage: PoseBenchmark [knights]");
+                System.exit(-1);
+            }
+        }
+
+        Random random = new Random(1);
+        ArticulatedConfig config = new ArticulatedConfig();
+        ArrayList<String> names = new ArrayList<String>();
+        config.root = createNode(random, names, 0);
+        String[] targets = names.toArray(new String[names.size()]);
+        AnimationTracks[] tracks = new AnimationTracks[ANIMATIONS];
+        for (int ii = 0; ii < ANIMATIONS; ii++) {
+            tracks[ii] = createTracks(random, targets.length);
+        }
+
+        // give each knight its own node transforms (and the node fields used in blending) and pose
+        Transform3D[][] locals = new Transform3D[knights][targets.length];
+        int[][] lastUpdates = new int[knights][targets.length];
+        float[][] totalWeights = new float[knights][targets.length];
+        Pose[] poses = new Pose[knights];
+        float[][] positions = new float[knights][ANIMATIONS];
+        for (int ii = 0; ii < knights; ii++) {
+            for (int jj = 0; jj < targets.length; jj++) {
+                locals[ii][jj] = new Transform3D();
+            }
+            poses[ii] = new Pose(config);
+            for (int jj = 0; jj < ANIMATIONS; jj++) {
+                positions[ii][jj] = random.nextFloat() * (FRAMES - 1);
+            }
+        }
+        int[] indices = poses[0].getNodeIndices(targets);
+
+        // make sure that the paths agree
+        Transform3D[] expected = new Transform3D[targets.length];
+        for (int ii = 0; ii < targets.length; ii++) {
+            expected[ii] = new Transform3D();
+        }
+        float error = 0f;
+        int update = 0;
+        for (int ii = 0; ii < knights; ii++) {
+            update++;
+            blendNodes(tracks, positions[ii], expected, new int[targets.length],
+                new float[targets.length], update);
+            blendPose(tracks, positions[ii], poses[ii], indices, locals[ii], update);
+            for (int jj = 0; jj < targets.length; jj++) {
+                error = Math.max(error, expected[jj].getTranslation().distance(
+                    locals[ii][jj].getTranslation()));
+                error = Math.max(error, expected[jj].getRotation().transform(
+                    Vector3f.UNIT_XYZ).distance(
+                        locals[ii][jj].getRotation().transform(Vector3f.UNIT_XYZ)));
+            }
+        }
+        System.out.println("Maximum difference: " + error);
+
+        // run both paths a few times so that the JIT has settled before we report
+        for (int ii = 0; ii < WARMUP_ROUNDS; ii++) {
+            update = runNodes(tracks, positions, locals, lastUpdates, totalWeights, update);
+            update = runPoses(tracks, positions, poses, indices, locals, update);
+        }
+        long start = System.nanoTime();
+        update = runNodes(tracks, positions, locals, lastUpdates, totalWeights, update);
+        long nodes = System.nanoTime() - start;
+        start = System.nanoTime();
+        runPoses(tracks, positions, poses, indices, locals, update);
+        long pose = System.nanoTime() - start;
+
+        int ticks = knights * TICKS;
+        System.out.println("Nodes: " + (nodes / 1000000L) + " ms, " +
+            (nodes / ticks / 1000f) + " us/knight");
+        System.out.println("Pose: " + (pose / 1000000L) + " ms, " +
+            (pose / ticks / 1000f) + " us/knight");
+    }
+
+    /**
+     * Updates the crowd through the node path.
+     *
+     * @return the new value of the update counter.
+     */
+    protected static int runNodes (
+        AnimationTracks[] tracks, float[][] positions, Transform3D[][] locals,
+        int[][] lastUpdates, float[][] totalWeights, int update)
+    {
+        for (int ii = 0; ii < TICKS; ii++) {
+            update++;
+            for (int jj = 0; jj < locals.length; jj++) {
+                advance(positions[jj]);
+                blendNodes(
+                    tracks, positions[jj], locals[jj], lastUpdates[jj], totalWeights[jj], update);
+            }
+        }
+        return update;
+    }
+
+    /**
+     * Updates the crowd through the pose path.
+     *
+     * @return the new value of the update counter.
+     */
+    protected static int runPoses (
+        AnimationTracks[] tracks, float[][] positions, Pose[] poses, int[] indices,
+        Transform3D[][] locals, int update)
+    {
+        for (int ii = 0; ii < TICKS; ii++) {
+            update++;
+            for (int jj = 0; jj < poses.length; jj++) {
+                advance(positions[jj]);
+                blendPose(tracks, positions[jj], poses[jj], indices, locals[jj], update);
+            }
+        }
+        return update;
+    }
+
+    /**
+     * Blends the animations into the node transforms, as in the imported animation
+     * implementation.
+     */
+    protected static void blendNodes (
+        AnimationTracks[] tracks, float[] positions, Transform3D[] locals, int[] lastUpdates,
+        float[] totalWeights, int update)
+    {
+        for (int ii = 0; ii < tracks.length; ii++) {
+            float position = positions[ii], weight = WEIGHTS[ii];
+            for (int jj = 0; jj < locals.length; jj++) {
+                if (lastUpdates[jj] != update) {
+                    tracks[ii].sample(jj, position, locals[jj]);
+                    lastUpdates[jj] = update;
+                    totalWeights[jj] = weight;
+                    continue;
+                }
+                if (weight <= 0f || totalWeights[jj] >= 1f) {
+                    continue;
+                }
+                float mweight = Math.min(weight, 1f - totalWeights[jj]);
+                tracks[ii].sample(jj, position, _xform);
+                locals[jj].lerpLocal(_xform, mweight / (totalWeights[jj] += mweight));
+            }
+        }
+    }
+
+    /**
+     * Blends the animations into the pose and copies the results to the node transforms, as in
+     * {@link Articulated} when poses are enabled.
+     */
+    protected static void blendPose (
+        AnimationTracks[] tracks, float[] positions, Pose pose, int[] indices,
+        Transform3D[] locals, int update)
+    {
+        for (int ii = 0; ii < tracks.length; ii++) {
+            pose.accumulate(tracks[ii], indices, positions[ii], WEIGHTS[ii], update);
+        }
+        for (int ii = 0; ii < locals.length; ii++) {
+            int idx = indices[ii];
+            if (pose.wasUpdated(idx, update)) {
+                pose.getLocal(idx, locals[ii]);
+            }
+        }
+    }
+
+    /**
+     * Advances the animation positions by one tick.
+     */
+    protected static void advance (float[] positions)
+    {
+        for (int ii = 0; ii < positions.length; ii++) {
+            positions[ii] = (positions[ii] + FRAMES_PER_TICK) % (FRAMES - 1);
+        }
+    }
+
+    /**
+     * Creates a node with a chain of descendants, adding the names of the nodes to the list.
+     */
+    protected static ArticulatedConfig.Node createNode (
+        Random random, ArrayList<String> names, int depth)
+    {
+        String name = "node" + names.size();
+        names.add(name);
+        int ccount = (depth == 0) ? LIMBS : (names.size() < NODES && depth < LIMB_LENGTH ? 1 : 0);
+        ArticulatedConfig.Node[] children = new ArticulatedConfig.Node[ccount];
+        for (int ii = 0; ii < ccount; ii++) {
+            children[ii] = createNode(random, names, depth + 1);
+        }
+        return new ArticulatedConfig.Node(name, createTransform(random), children);
+    }
+
+    /**
+     * Creates a set of tracks with random keys for the specified number of targets.
+     */
+    protected static AnimationTracks createTracks (Random random, int targets)
+    {
+        Transform3D[][] transforms = new Transform3D[FRAMES][targets];
+        for (int ii = 0; ii < FRAMES; ii++) {
+            for (int jj = 0; jj < targets; jj++) {
+                transforms[ii][jj] = createTransform(random);
+            }
+        }
+        return new AnimationTracks(transforms);
+    }
+
+    /**
+     * Creates a random rigid transform.
+     */
+    protected static Transform3D createTransform (Random random)
+    {
+        return new Transform3D(
+            new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()),
+            new Quaternion().fromAngles(
+                random.nextFloat(), random.nextFloat(), random.nextFloat()));
+    }
+
+    /** Holds sampled transforms in the node path. */
+    protected static Transform3D _xform = new Transform3D();
+
+    /** The weights of the walk, attack, and idle animations. */
+    protected static final float[] WEIGHTS = { 0.6f, 0.5f, 1f };
+
+    protected static final int ANIMATIONS = WEIGHTS.length;
+    protected static final int DEFAULT_KNIGHTS = 500;
+    protected static final int NODES = 40;
+    protected static final int LIMBS = 6;
+    protected static final int LIMB_LENGTH = 7;
+    protected static final int FRAMES = 60;
+    protected static final float FRAMES_PER_TICK = 0.5f;
+    protected static final int TICKS = 200;
+    protected static final int WARMUP_ROUNDS = 3;
+}
@@ -33,6 +33,9 @@ import java.lang.ref.SoftReference;
 
 import com.google.common.collect.Maps;
 
+import com.threerings.util.CacheGovernor;
+import com.threerings.util.CacheMeter;
+
 /**
  * Base class for the resource caches.
  */
@@ -49,6 +52,24 @@ public abstract class ResourceCache
     {
         _ctx = ctx;
         _checkTimestamps = checkTimestamps;
+        CacheGovernor.getDefault().register(_meter);
+    }
+
+    /**
+     * Unregisters this cache from the cache governor. This should be called when the cache is
+     * discarded before the application exits.
+     */
+    public void dispose ()
+    {
+        CacheGovernor.getDefault().unregister(_meter);
+    }
+
+    /**
+     * Returns the meter that records the statistics of this cache.
+     */
+    public CacheMeter getMeter ()
+    {
+        return _meter;
     }
 
     /**
@@ -64,12 +85,18 @@ public abstract class ResourceCache
             CachedResource<V> cached = _resources.get(key);
             if (cached != null) {
                 V resource = cached.get();
-                if (!(resource == null || (_checkTimestamps && cached.wasModified()))) {
+                if (resource == null) {
+                    _meter.recordEviction(); // reclaimed by the garbage collector
+                } else if (!(_checkTimestamps && cached.wasModified())) {
+                    _meter.recordHit();
                     return resource;
                 }
             }
+            _meter.recordMiss();
+            long start = System.nanoTime();
             V resource = loadResource(key);
             _resources.put(key, new CachedResource<V>(resource, getResourceFile(key)));
+            _meter.recordLoad(System.nanoTime() - start);
             return resource;
         }
 
@@ -136,4 +163,7 @@ public abstract class ResourceCache
 
     /** Whether or not to check resource file timestamps. */
     protected boolean _checkTimestamps;
+
+    /** Records the statistics of our subcaches. */
+    protected CacheMeter _meter = new CacheMeter(getClass().getSimpleName());
 }
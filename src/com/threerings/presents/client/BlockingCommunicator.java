@@ -42,6 +42,7 @@ import com.samskivert.util.StringUtil;
 import com.samskivert.util.Throttle;
 import com.threerings.io.ByteBufferInputStream;
 import com.threerings.io.ByteBufferOutputStream;
+import com.threerings.io.FrameDeflater;
 import com.threerings.io.FramedInputStream;
 import com.threerings.io.FramingOutputStream;
 import com.threerings.io.ObjectInputStream;
@@ -194,6 +195,18 @@ public class BlockingCommunicator extends Communicator
         return _datagramWriter != null;
     }
 
+    @Override // from Communicator
+    protected void gotAuthResponse (AuthResponse rsp)
+        throws LogonException
+    {
+        // if the server agreed to compress our session, compress our half as well; this must
+        // happen before our writer is started
+        if (rsp.getCompression()) {
+            _deflater = new FrameDeflater();
+        }
+        super.gotAuthResponse(rsp);
+    }
+
     @Override // from Communicator
     protected synchronized void logonSucceeded (AuthResponseData data)
     {
@@ -256,10 +269,16 @@ public class BlockingCommunicator extends Communicator
         // clear out our reader reference
         _reader = null;
 
+        // release the inflater, which only the reader thread uses
+        if (_fin != null) {
+            _fin.close();
+        }
+
         if (_writer == null) {
             // there's no writer during authentication, so we may be responsible for closing the
             // socket channel
             closeChannel();
+            releaseDeflater();
 
             // let the client know when we finally go away
             clientCleanup(_logonError);
@@ -287,6 +306,7 @@ public class BlockingCommunicator extends Communicator
         // now that the writer thread has gone away, we can safely close our socket and let the
         // client know that the logoff process has completed
         closeChannel();
+        releaseDeflater();
 
         // let the client know when we finally go away
         if (_reader == null) {
@@ -294,6 +314,18 @@ public class BlockingCommunicator extends Communicator
         }
     }
 
+    /**
+     * Releases the deflater used to compress outgoing frames, if any.  Called once the writer
+     * thread (or, if there never was one, the reader thread) has exited.
+     */
+    protected void releaseDeflater ()
+    {
+        if (_deflater != null) {
+            _deflater.end();
+            _deflater = null;
+        }
+    }
+
     /**
      * Closes the socket channel that we have open to the server. Called by either {@link
      * #readerDidExit} or {@link #writerDidExit} whichever is called last.
@@ -392,6 +424,9 @@ public class BlockingCommunicator extends Communicator
         // then write the framed message to actual output stream
         try {
             ByteBuffer buffer = _fout.frameAndReturnBuffer();
+            if (_deflater != null) {
+                buffer = _deflater.deflate(buffer);
+            }
             if (buffer.limit() > 4096) {
                 String txt = StringUtil.truncate(String.valueOf(msg), 80, "...");
                 log.info("Whoa, writin' a big one", "msg", txt, "size", buffer.limit());
@@ -633,6 +668,7 @@ public class BlockingCommunicator extends Communicator
                                     _client.getCredentials(), _client.getVersion(),
                                     _client.getBootGroups(), _client.requireSecureAuth(),
                                     pkcreds, (SecureResponse)response);
+                        areq.setRequestCompression(_client.getRequestCompression());
                         sendMessage(areq);
                         _client.setSecret(areq.getSecret());
 
@@ -643,10 +679,11 @@ public class BlockingCommunicator extends Communicator
 
                 } else {
                     // construct an auth request and send it
-                    sendMessage(AESAuthRequest.createAuthRequest(
+                    AuthRequest areq = AESAuthRequest.createAuthRequest(
                                 _client.getCredentials(), _client.getVersion(),
-                                _client.getBootGroups(), _client.requireSecureAuth()));
-
+                                _client.getBootGroups(), _client.requireSecureAuth());
+                    areq.setRequestCompression(_client.getRequestCompression());
+                    sendMessage(areq);
 
                     // now wait for the auth response
                     log.debug("Waiting for auth response.");
@@ -1033,6 +1070,9 @@ public class BlockingCommunicator extends Communicator
     protected FramingOutputStream _fout;
     protected ObjectOutputStream _oout;
 
+    /** Compresses our upstream frames if the server agreed to compress our session. */
+    protected FrameDeflater _deflater;
+
     /** We use this to frame our downstream messages. */
     protected FramedInputStream _fin;
     protected ObjectInputStream _oin;
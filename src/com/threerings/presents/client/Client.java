@@ -252,6 +252,24 @@ public class Client
         return _requireSecureAuth;
     }
 
+    /**
+     * Configures whether this client will ask the server to compress its session. This should be
+     * done before any call to <code>logon</code>. Compression trades CPU on both ends for
+     * bandwidth and is only applied to messages large enough to benefit from it.
+     */
+    public void setRequestCompression (boolean requestCompression)
+    {
+        _requestCompression = requestCompression;
+    }
+
+    /**
+     * Returns true if this client will ask the server to compress its session.
+     */
+    public boolean getRequestCompression ()
+    {
+        return _requestCompression;
+    }
+
     /**
      * Sets the secret key to use with a session.
      */
@@ -1089,6 +1107,9 @@ public class Client
     /** If we require a secure connection to send our credentials. */
     protected boolean _requireSecureAuth = false;
 
+    /** Whether or not we ask the server to compress our session. */
+    protected boolean _requestCompression = false;
+
     /** The unique id of our connection. */
     protected int _connectionId = -1;
 
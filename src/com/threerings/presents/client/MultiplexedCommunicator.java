@@ -0,0 +1,669 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.presents.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.PublicKey;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.LoopingThread;
+import com.samskivert.util.Queue;
+import com.samskivert.util.Throttle;
+
+import com.threerings.io.FrameDeflater;
+import com.threerings.io.FramedInputStream;
+import com.threerings.io.FramingOutputStream;
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+import com.threerings.nio.SelectorIterable;
+import com.threerings.presents.net.AESAuthRequest;
+import com.threerings.presents.net.AuthRequest;
+import com.threerings.presents.net.AuthResponse;
+import com.threerings.presents.net.AuthResponseData;
+import com.threerings.presents.net.DownstreamMessage;
+import com.threerings.presents.net.LogoffRequest;
+import com.threerings.presents.net.PublicKeyCredentials;
+import com.threerings.presents.net.SecureRequest;
+import com.threerings.presents.net.SecureResponse;
+import com.threerings.presents.net.Transport;
+import com.threerings.presents.net.UpstreamMessage;
+
+import static com.threerings.presents.Log.log;
+
+/**
+ * A communicator that performs its I/O using non-blocking sockets serviced by a small pool of
+ * selector threads shared by all such communicators in the VM, rather than the two threads per
+ * connection used by the {@link BlockingCommunicator}.  This allows processes that open many
+ * client connections (load testing bots, for instance) to scale to thousands of connections.
+ * To use it, override {@link Client#createCommunicator}.
+ *
+ * <p> Messages are always sent reliably; this communicator does not establish a datagram
+ * channel.
+ */
+public class MultiplexedCommunicator extends Communicator
+{
+    /**
+     * Sets the number of selector threads over which connections are distributed.  This must be
+     * called before the first multiplexed communicator logs on.
+     */
+    public static synchronized void setSelectorCount (int count)
+    {
+        if (_multiplexers != null) {
+            throw new IllegalStateException("Multiplexers already started.");
+        }
+        _selectorCount = Math.max(1, count);
+    }
+
+    /**
+     * Creates a new communicator instance which is associated with the supplied client.
+     */
+    public MultiplexedCommunicator (Client client)
+    {
+        super(client);
+    }
+
+    @Override // from Communicator
+    public void logon ()
+    {
+        // make sure things are copacetic
+        if (_mux != null) {
+            throw new RuntimeException("Communicator already started.");
+        }
+
+        // resolve the address here so as not to hold up the selector thread
+        final InetSocketAddress addr = new InetSocketAddress(
+            _client.getHostname(), _client.getPorts()[0]);
+        _mux = getMultiplexer();
+        _mux.postTask(new Runnable() {
+            public void run () {
+                connect(addr);
+            }
+        });
+    }
+
+    @Override // from Communicator
+    public void logoff ()
+    {
+        if (_mux == null) {
+            return;
+        }
+        if (!_authenticated) {
+            // we haven't sent anything but authentication requests, so just close up shop
+            _mux.postTask(new Runnable() {
+                public void run () {
+                    shutdown(null);
+                }
+            });
+            return;
+        }
+
+        // post a logoff message followed by the termination marker, which will close the
+        // connection once everything before it has been written
+        postMessage(new LogoffRequest());
+        _msgq.append(new TerminationMessage());
+        _mux.requestFlush(this);
+    }
+
+    @Override // from Communicator
+    public void gotBootstrap ()
+    {
+        // nothing needed
+    }
+
+    @Override // from Communicator
+    public void postMessage (UpstreamMessage msg)
+    {
+        msg.noteActualTransport(Transport.RELIABLE_ORDERED);
+        _msgq.append(msg);
+        if (_authenticated) {
+            _mux.requestFlush(this);
+        }
+    }
+
+    @Override // from Communicator
+    public void setClassLoader (ClassLoader loader)
+    {
+        _loader = loader;
+        if (_oin != null) {
+            _oin.setClassLoader(loader);
+        }
+    }
+
+    @Override // from Communicator
+    public synchronized long getLastWrite ()
+    {
+        return _lastWrite;
+    }
+
+    @Override // from Communicator
+    protected void gotAuthResponse (AuthResponse rsp)
+        throws LogonException
+    {
+        // if the server agreed to compress our session, compress our half as well
+        if (rsp.getCompression()) {
+            _deflater = new FrameDeflater();
+        }
+        super.gotAuthResponse(rsp);
+    }
+
+    @Override // from Communicator
+    protected synchronized void logonSucceeded (AuthResponseData data)
+    {
+        super.logonSucceeded(data);
+        _authenticated = true;
+    }
+
+    /**
+     * Opens the connection and sends the first authentication request.  Called on the selector
+     * thread.
+     */
+    protected void connect (InetSocketAddress addr)
+    {
+        try {
+            if (addr.isUnresolved()) {
+                throw new IOException("Unable to resolve " + addr.getHostName());
+            }
+            log.info("Connecting", "host", addr.getAddress(), "port", addr.getPort());
+            _channel = SocketChannel.open();
+            _channel.configureBlocking(false);
+
+            // our messages are framed (preceded by their length), so we use these helper streams
+            // to manage the framing
+            _fin = new FramedInputStream();
+            _fout = new FramingOutputStream();
+            _oin = new ClientObjectInputStream(_client, _fin);
+            _oin.setClassLoader(_loader);
+            _oout = new ObjectOutputStream(_fout);
+
+            _key = _channel.register(_mux.getSelector(), SelectionKey.OP_CONNECT, this);
+            if (_channel.connect(addr)) {
+                connected();
+            }
+        } catch (IOException ioe) {
+            shutdown(ioe);
+        }
+    }
+
+    /**
+     * Called on the selector thread when our channel has one or more operations ready.
+     */
+    protected void handleReady ()
+    {
+        try {
+            if (_key.isConnectable() && _channel.finishConnect()) {
+                connected();
+            }
+            if (_key.isValid() && _key.isReadable()) {
+                read();
+            }
+            if (_key.isValid() && _key.isWritable()) {
+                // until we're authenticated, only the authentication request may be written
+                if (_authenticated) {
+                    flush();
+                } else {
+                    writeOverflow();
+                }
+            }
+        } catch (EOFException eofe) {
+            log.debug("Connection closed.");
+            shutdown(_authenticated ? null : eofe);
+        } catch (IOException ioe) {
+            shutdown(ioe);
+        } catch (Exception e) {
+            log.warning("Error handling connection.", "client", _client, e);
+            shutdown(e);
+        }
+    }
+
+    /**
+     * Called once our connection has been established to send the authentication request.
+     */
+    protected void connected ()
+        throws IOException
+    {
+        _key.interestOps(SelectionKey.OP_READ);
+
+        // if a public key is specified, we'll attempt to establish a secure authentication
+        // channel
+        PublicKey key = _client.getPublicKey();
+        if (key != null) {
+            _pkcreds = new PublicKeyCredentials(key);
+            writeMessage(new SecureRequest(_pkcreds, _client.getVersion()));
+        } else {
+            AuthRequest areq = AESAuthRequest.createAuthRequest(
+                _client.getCredentials(), _client.getVersion(),
+                _client.getBootGroups(), _client.requireSecureAuth());
+            areq.setRequestCompression(_client.getRequestCompression());
+            writeMessage(areq);
+        }
+    }
+
+    /**
+     * Reads and processes all complete messages available on the channel.
+     */
+    protected void read ()
+        throws IOException
+    {
+        while (_channel != null && _fin.readFrame(_channel)) {
+            DownstreamMessage msg;
+            int size = _fin.available();
+            try {
+                msg = (DownstreamMessage)_oin.readObject();
+            } catch (ClassNotFoundException cnfe) {
+                throw (IOException) new IOException(
+                    "Unable to decode incoming message.").initCause(cnfe);
+            }
+            _client.getMessageTracker().messageReceived(false, size, msg, 0);
+            if (_authenticated) {
+                processMessage(msg);
+            } else {
+                processAuthMessage(msg);
+            }
+        }
+    }
+
+    /**
+     * Processes a message received during authentication.
+     */
+    protected void processAuthMessage (DownstreamMessage msg)
+        throws IOException
+    {
+        // if we've received a secure response, proceed with authentication
+        if (msg instanceof SecureResponse) {
+            AuthRequest areq = AESAuthRequest.createAuthRequest(
+                _client.getCredentials(), _client.getVersion(), _client.getBootGroups(),
+                _client.requireSecureAuth(), _pkcreds, (SecureResponse)msg);
+            areq.setRequestCompression(_client.getRequestCompression());
+            _client.setSecret(areq.getSecret());
+            writeMessage(areq);
+            return;
+        }
+        try {
+            gotAuthResponse((AuthResponse)msg);
+        } catch (Exception e) {
+            log.debug("Logon failed: " + e);
+            shutdown(e);
+            return;
+        }
+
+        // send anything posted while we were authenticating
+        flush();
+    }
+
+    /**
+     * Writes as many queued messages as the socket and our throttle will allow.
+     */
+    protected void flush ()
+        throws IOException
+    {
+        // first write whatever remains of a partially written message
+        if (!writeOverflow()) {
+            return;
+        }
+
+        Throttle throttle = _client.getOutgoingMessageThrottle();
+        UpstreamMessage msg;
+        while ((msg = _msgq.getNonBlocking()) != null) {
+            // if this is a termination message, we've written the logoff request and are done
+            if (msg instanceof TerminationMessage) {
+                shutdown(null);
+                return;
+            }
+
+            // if we're exceeding our outgoing throttle rate, try again later
+            synchronized (throttle) {
+                if (throttle.throttleOp()) {
+                    _msgq.prepend(msg);
+                    _mux.requestRetry(this);
+                    return;
+                }
+            }
+            if (!writeMessage(msg)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes whatever remains of a partially written message.
+     *
+     * @return true if there is nothing left to write.
+     */
+    protected boolean writeOverflow ()
+        throws IOException
+    {
+        if (_overflow != null) {
+            _channel.write(_overflow);
+            if (_overflow.hasRemaining()) {
+                return false;
+            }
+            _overflow = null;
+            _key.interestOps(SelectionKey.OP_READ);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the supplied message to the socket, saving anything that couldn't be written and
+     * waiting for the socket to become writable if necessary.
+     *
+     * @return true if the message was written in its entirety.
+     */
+    protected boolean writeMessage (UpstreamMessage msg)
+        throws IOException
+    {
+        // first we write the message so that we can measure its length
+        _oout.writeObject(msg);
+        _oout.flush();
+
+        // then write the framed message to the channel
+        try {
+            ByteBuffer buffer = _fout.frameAndReturnBuffer();
+            if (_deflater != null) {
+                buffer = _deflater.deflate(buffer);
+            }
+            int size = buffer.limit();
+            _channel.write(buffer);
+            _client.getMessageTracker().messageSent(false, size, msg);
+            if (buffer.hasRemaining()) {
+                _overflow = ByteBuffer.allocate(buffer.remaining());
+                _overflow.put(buffer).flip();
+                _key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return false;
+            }
+        } finally {
+            _fout.resetFrame();
+        }
+
+        // make a note of our most recent write time
+        updateWriteStamp();
+        return true;
+    }
+
+    /**
+     * Closes the connection and notifies the client.  Called on the selector thread.
+     *
+     * @param error the error that caused the connection to close, or <code>null</code> if it
+     * closed normally.
+     */
+    protected void shutdown (final Exception error)
+    {
+        if (_client == null) {
+            return; // already shut down
+        }
+        if (_channel != null) {
+            if (_key != null) {
+                _key.cancel();
+            }
+            try {
+                _channel.close();
+            } catch (IOException ioe) {
+                log.warning("Error closing socket: " + ioe);
+            }
+            _channel = null;
+
+            // clear these out because they are probably large and in charge
+            _oin = null;
+            _oout = null;
+            _overflow = null;
+        }
+
+        // release the native compression state, if any
+        if (_fin != null) {
+            _fin.close();
+        }
+        if (_deflater != null) {
+            _deflater.end();
+            _deflater = null;
+        }
+
+        // if we never made it past authentication, report the failure to log on
+        if (!_authenticated) {
+            clientCleanup(error);
+            return;
+        }
+        if (error != null) {
+            log.info("Connection failed", error);
+            notifyClientObservers(new ObserverOps.Client(_client) {
+                @Override protected void notify (ClientObserver obs) {
+                    obs.clientConnectionFailed(_client, error);
+                }
+            });
+        }
+        notifyClientObservers(new ObserverOps.Session(_client) {
+            @Override protected void notify (SessionObserver obs) {
+                obs.clientDidLogoff(_client);
+            }
+        });
+        clientCleanup(null);
+    }
+
+    /**
+     * Returns the next multiplexer to which to assign a connection, creating them if necessary.
+     */
+    protected static synchronized Multiplexer getMultiplexer ()
+    {
+        if (_multiplexers == null) {
+            _multiplexers = new Multiplexer[_selectorCount];
+            for (int ii = 0; ii < _multiplexers.length; ii++) {
+                try {
+                    _multiplexers[ii] = new Multiplexer(ii);
+                } catch (IOException ioe) {
+                    throw new RuntimeException("Failed to open selector.", ioe);
+                }
+                _multiplexers[ii].start();
+            }
+        }
+        Multiplexer mux = _multiplexers[_nextMultiplexer];
+        _nextMultiplexer = (_nextMultiplexer + 1) % _multiplexers.length;
+        return mux;
+    }
+
+    /**
+     * A selector thread that services any number of communicators.
+     */
+    protected static class Multiplexer extends LoopingThread
+        implements SelectorIterable.SelectFailureHandler
+    {
+        public Multiplexer (int idx)
+            throws IOException
+        {
+            super("MultiplexedCommunicator_Selector-" + idx);
+            setDaemon(true);
+            _selector = Selector.open();
+            _selectorIterable = new SelectorIterable(_selector, SELECT_LOOP_TIME, this);
+        }
+
+        /**
+         * Returns a reference to the selector.  Must only be used on the selector thread.
+         */
+        public Selector getSelector ()
+        {
+            return _selector;
+        }
+
+        /**
+         * Posts a task to be run on the selector thread.
+         */
+        public void postTask (Runnable task)
+        {
+            _tasks.append(task);
+            _selector.wakeup();
+        }
+
+        /**
+         * Requests that the specified communicator's queued messages be written on the selector
+         * thread.
+         */
+        public void requestFlush (final MultiplexedCommunicator comm)
+        {
+            if (!comm._flushRequested.compareAndSet(false, true)) {
+                return; // already pending
+            }
+            postTask(new Runnable() {
+                public void run () {
+                    comm._flushRequested.set(false);
+                    comm.flushSafely();
+                }
+            });
+        }
+
+        /**
+         * Requests that the specified communicator's messages be flushed on the next iteration
+         * (because it was throttled).  Must only be called on the selector thread.
+         */
+        public void requestRetry (MultiplexedCommunicator comm)
+        {
+            _retries.add(comm);
+        }
+
+        // documentation inherited from interface SelectorIterable.SelectFailureHandler
+        public void handleSelectFailure (Exception e)
+        {
+            log.warning("Selector failed repeatedly.", "thread", getName(), e);
+        }
+
+        @Override
+        protected void iterate ()
+        {
+            // run any pending tasks
+            Runnable task;
+            while ((task = _tasks.getNonBlocking()) != null) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.warning("Error running selector task.", "task", task, e);
+                }
+            }
+
+            // handle any ready channels
+            for (SelectionKey key : _selectorIterable) {
+                ((MultiplexedCommunicator)key.attachment()).handleReady();
+            }
+
+            // retry any throttled communicators
+            if (!_retries.isEmpty()) {
+                List<MultiplexedCommunicator> retries = Lists.newArrayList(_retries);
+                _retries.clear();
+                for (MultiplexedCommunicator comm : retries) {
+                    comm.flushSafely();
+                }
+            }
+        }
+
+        @Override
+        protected void handleIterateFailure (Exception e)
+        {
+            log.warning("Uncaught exception in selector thread.", e);
+        }
+
+        /** The selector shared by our communicators. */
+        protected Selector _selector;
+
+        /** Selects and iterates over the ready keys. */
+        protected SelectorIterable _selectorIterable;
+
+        /** Tasks to run on the selector thread. */
+        protected Queue<Runnable> _tasks = new Queue<Runnable>();
+
+        /** Communicators to flush again after being throttled. */
+        protected List<MultiplexedCommunicator> _retries = Lists.newArrayList();
+    }
+
+    /**
+     * Flushes our queued messages, shutting down on failure.  Called on the selector thread.
+     */
+    protected void flushSafely ()
+    {
+        if (_channel == null || !_authenticated) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException ioe) {
+            shutdown(ioe);
+        }
+    }
+
+    /** Marks the end of the outgoing message stream. */
+    protected static class TerminationMessage extends UpstreamMessage
+    {
+    }
+
+    /** The multiplexer servicing our connection. */
+    protected Multiplexer _mux;
+
+    /** Our socket channel and its selection key. */
+    protected SocketChannel _channel;
+    protected SelectionKey _key;
+
+    /** Set once we've successfully authenticated. */
+    protected volatile boolean _authenticated;
+
+    /** Set when a flush has been requested but not yet performed. */
+    protected AtomicBoolean _flushRequested = new AtomicBoolean();
+
+    /** The credentials used for secure authentication, if any. */
+    protected PublicKeyCredentials _pkcreds;
+
+    /** Messages waiting to be written. */
+    protected Queue<UpstreamMessage> _msgq = new Queue<UpstreamMessage>();
+
+    /** The unwritten remainder of a partially written message. */
+    protected ByteBuffer _overflow;
+
+    /** We use this to frame our upstream messages. */
+    protected FramingOutputStream _fout;
+    protected ObjectOutputStream _oout;
+
+    /** Compresses our upstream frames if the server agreed to compress our session. */
+    protected FrameDeflater _deflater;
+
+    /** We use this to frame our downstream messages. */
+    protected FramedInputStream _fin;
+    protected ObjectInputStream _oin;
+
+    protected ClassLoader _loader;
+
+    /** The number of selector threads to create. */
+    protected static int _selectorCount = 1;
+
+    /** The selector threads, once created. */
+    protected static Multiplexer[] _multiplexers;
+
+    /** The index of the next multiplexer to assign. */
+    protected static int _nextMultiplexer;
+
+    /** The maximum time to block in select, which bounds the delay in retrying throttled
+     * messages. */
+    protected static final int SELECT_LOOP_TIME = 5;
+}
@@ -21,8 +21,13 @@
 
 package com.threerings.presents.dobj;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 
+import com.google.common.base.Throwables;
+
 /**
  * Used by {@link DObject} to provide dynamic access to its fields. This class is an implementation
  * detail that can be safely ignored. It is only a public top-level class to ensure that bindings
@@ -57,6 +62,69 @@ public abstract class Accessor implements Comparable<Accessor> {
         }
     }
 
+    /**
+     * An accessor that assumes DObject fields are public Java fields and reads and writes them
+     * through method handles, which the VM can optimize into direct field loads and stores rather
+     * than going through the reflective access checks of {@link ByField} on every call.
+     */
+    public static class ByHandle extends Accessor {
+        public final Field field;
+
+        /**
+         * Creates an accessor for the supplied field.
+         *
+         * @exception IllegalAccessException if handles cannot be created for the field (if it is
+         * final, for example).
+         */
+        public ByHandle (Field field)
+            throws IllegalAccessException
+        {
+            super(field.getName());
+            this.field = field;
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            _getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+            _setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+        }
+
+        @Override
+        public Object get (DObject obj) {
+            try {
+                return (Object)_getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw Throwables.propagate(t);
+            }
+        }
+
+        @Override
+        public void set (DObject obj, Object value) {
+            try {
+                _setter.invokeExact(obj, value);
+            } catch (Throwable t) {
+                throw Throwables.propagate(t);
+            }
+        }
+
+        protected final MethodHandle _getter, _setter;
+
+        protected static final MethodType GETTER_TYPE =
+            MethodType.methodType(Object.class, DObject.class);
+        protected static final MethodType SETTER_TYPE =
+            MethodType.methodType(void.class, DObject.class, Object.class);
+    }
+
+    /**
+     * Creates the most efficient accessor available for the supplied public field: a {@link
+     * ByHandle} if possible, falling back to a {@link ByField} otherwise.
+     */
+    public static Accessor forField (Field field)
+    {
+        try {
+            return new ByHandle(field);
+        } catch (IllegalAccessException iae) {
+            return new ByField(field);
+        }
+    }
+
     /** The name of this attribute. */
     public final String name;
 
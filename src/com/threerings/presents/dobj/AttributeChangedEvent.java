@@ -134,7 +134,10 @@ public class AttributeChangedEvent extends NamedEvent
     {
         // if we're not already applied, grab the previous value and apply the attribute change
         if (!alreadyApplied()) {
-            _oldValue = target.getAttribute(_name);
+            // look up the accessor once for both the read and the write, by index if our sender
+            // supplied one
+            Accessor acc = target.getAccessor(_index, _name);
+            _oldValue = acc.get(target);
             Object value = _value;
             if (value != null) {
                 Class<?> vclass = value.getClass();
@@ -151,7 +154,7 @@ public class AttributeChangedEvent extends NamedEvent
                 }
             }
             // pass the new value on to the object
-            target.setAttribute(_name, value);
+            acc.set(target, value);
         }
         return true;
     }
@@ -179,6 +182,19 @@ public class AttributeChangedEvent extends NamedEvent
         return this;
     }
 
+    /**
+     * Sets the index of the target object's accessor for our attribute.
+     */
+    protected AttributeChangedEvent setIndex (int index)
+    {
+        _index = (short)index;
+        return this;
+    }
+
     protected Object _value;
+
+    /** The index of the accessor for our attribute in the target object's class, or -1 if the
+     * sender did not supply one. */
+    protected short _index = -1;
     protected transient Object _oldValue = UNSET_OLD_VALUE;
 }
@@ -821,9 +821,13 @@ public class DObject
     protected void requestAttributeChange (
         String name, Object value, Object oldValue, Transport transport)
     {
-        // dispatch an attribute changed event
-        postEvent(new AttributeChangedEvent(_oid, name, value).
-                  setOldValue(oldValue).setTransport(transport));
+        // dispatch an attribute changed event; if it will be applied by a remote manager, include
+        // the index of our accessor so that the manager need not look the attribute up by name
+        AttributeChangedEvent event = new AttributeChangedEvent(_oid, name, value);
+        if (!isAuthoritative()) {
+            event.setIndex(getAccessorIndex(name));
+        }
+        postEvent(event.setOldValue(oldValue).setTransport(transport));
     }
 
     /**
@@ -955,6 +959,32 @@ public class DObject
      * IllegalArgumentException}.
      */
     protected final Accessor getAccessor (String name)
+    {
+        return _accessors[getAccessorIndex(name)];
+    }
+
+    /**
+     * Returns the {@link Accessor} at the specified index if it is the accessor for the named
+     * field, otherwise looks the accessor up by name. Checking the name ensures that a stale or
+     * forged index can never redirect a change to some other field.
+     */
+    protected final Accessor getAccessor (int index, String name)
+    {
+        if (index >= 0 && index < _accessors.length) {
+            Accessor acc = _accessors[index];
+            if (acc.name.equals(name)) {
+                return acc;
+            }
+        }
+        return getAccessor(name);
+    }
+
+    /**
+     * Returns the index of the {@link Accessor} for the field with the specified name or throws
+     * an {@link IllegalArgumentException}. Objects of the same class share the same accessor
+     * ordering, so the index may be used to look up the accessor on any instance of this class.
+     */
+    protected final int getAccessorIndex (String name)
     {
         int low = 0, high = _accessors.length-1;
         while (low <= high) {
@@ -966,7 +996,7 @@ public class DObject
             } else if (cmp > 0) {
                 high = mid - 1;
             } else {
-                return midVal; // key found
+                return mid; // key found
             }
         }
         throw new IllegalArgumentException("No such field " + getClass().getName() + "." + name);
@@ -975,7 +1005,7 @@ public class DObject
     /**
      * Creates the accessors that will be used to read and write this object's attributes. The
      * default implementation assumes the object's attributes are all public fields and uses
-     * reflection to get and set their values.
+     * method handles (or reflection, where handles are unavailable) to get and set their values.
      */
     protected Accessor[] createAccessors ()
     {
@@ -984,7 +1014,7 @@ public class DObject
         List<Accessor> accs = Lists.newArrayListWithExpectedSize(fields.length/2);
         for (Field field : fields) {
             if (!Modifier.isStatic(field.getModifiers())) { // skip static fields
-                accs.add(new Accessor.ByField(field));
+                accs.add(Accessor.forField(field));
             }
         }
         return accs.toArray(new Accessor[accs.size()]);
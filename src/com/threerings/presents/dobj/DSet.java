@@ -194,9 +194,7 @@ public class DSet<E extends DSet.Entry>
      */
     public E get (Comparable<?> key)
     {
-        // determine where we'll be adding the new element
-        int eidx = ArrayUtil.binarySearch(
-            _entries, 0, _size, new SimpleEntry<Comparable<?>>(key), ENTRY_COMP);
+        int eidx = keySearch(key);
         return (eidx < 0) ? null : _entries[eidx];
     }
 
@@ -387,8 +385,7 @@ public class DSet<E extends DSet.Entry>
         }
 
         // look up this entry's position in our set
-        int eidx = ArrayUtil.binarySearch(
-            _entries, 0, _size, new SimpleEntry<Comparable<?>>(key), ENTRY_COMP);
+        int eidx = keySearch(key);
 
         // if we found it, remove it
         if (eidx >= 0) {
@@ -440,6 +437,31 @@ public class DSet<E extends DSet.Entry>
         }
     }
 
+    /**
+     * Locates the entry with the supplied key in our sorted entries array. This is the same search
+     * that {@link ArrayUtil#binarySearch} performs with {@link #ENTRY_COMP}, but compares keys
+     * directly so that lookups need not allocate a {@link SimpleEntry} to hold the key.
+     *
+     * @return the index of the matching entry or <code>(-(insertion point) - 1)</code> if no
+     * entry matches.
+     */
+    protected int keySearch (Comparable<?> key)
+    {
+        int low = 0, high = _size-1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(_entries[mid].getKey(), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid; // key found
+            }
+        }
+        return -(low + 1); // key not found
+    }
+
     /**
      * Returns the minimum size where we should warn that we're getting a bit large.
      */
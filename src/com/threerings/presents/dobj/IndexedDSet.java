@@ -0,0 +1,458 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.presents.dobj;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import java.io.IOException;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+import com.threerings.io.Streamable;
+
+import static com.threerings.presents.Log.log;
+
+/**
+ * A {@link DSet} for entries whose keys are integral ({@link Integer}, {@link Long},
+ * {@link Short} or {@link Byte}), intended for large sets with a lot of churn (occupants,
+ * inventories and the like).
+ *
+ * <p> Rather than shifting a sorted array on every addition and removal, entries are kept in a
+ * dense array that is located through a primitive open-addressing index from key to array
+ * position, so additions, removals, updates and lookups are constant time and lookups via
+ * {@link #get(long)} do not allocate. Entries are appended to the array (an entry added out of key
+ * order is sorted into place immediately) and removals leave a hole behind, which iteration skips
+ * and which later mutations squeeze out once they accumulate. Thus iteration and the streamed
+ * form are exactly those of a regular {@link DSet}: entries in ascending key order. Reading the
+ * set never modifies it.
+ *
+ * <p> The set streams as a plain {@link DSet} (see {@link Streamable.AsSuperclass}), so the other
+ * end of the connection needn't know about this class; it rebuilds its index when read.
+ *
+ * @param <E> the type of entry stored in this set.
+ */
+public class IndexedDSet<E extends DSet.Entry> extends DSet<E>
+    implements Streamable.AsSuperclass
+{
+    /**
+     * Creates an indexed set and populates it with values from the supplied iterator.
+     *
+     * @see DSet#DSet(Iterable)
+     */
+    public IndexedDSet (Iterable<? extends E> source)
+    {
+        super(source);
+    }
+
+    /**
+     * Creates an indexed set and populates it with values from the supplied iterator.
+     *
+     * @see DSet#DSet(Iterator)
+     */
+    public IndexedDSet (Iterator<? extends E> source)
+    {
+        super(source);
+    }
+
+    /**
+     * Creates an indexed set and populates it with values from the supplied array.
+     *
+     * @see DSet#DSet(Entry[])
+     */
+    public IndexedDSet (E[] source)
+    {
+        super(source);
+    }
+
+    /**
+     * Constructs an empty indexed set.
+     */
+    public IndexedDSet ()
+    {
+    }
+
+    /**
+     * Returns true if an entry in the set has the supplied integral key.
+     */
+    public boolean containsKey (long key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns the entry with the supplied integral key or null if no entry has that key. Unlike
+     * {@link #get(Comparable)}, this requires neither a boxed key nor any other allocation.
+     */
+    public E get (long key)
+    {
+        int eidx = indexOf(key);
+        return (eidx < 0) ? null : _entries[eidx];
+    }
+
+    @Override
+    public E get (Comparable<?> key)
+    {
+        return (key == null) ? null : get(toLong(key));
+    }
+
+    @Override
+    public Iterator<E> iterator ()
+    {
+        return new Iterator<E>() {
+            public boolean hasNext () {
+                checkComodification();
+                skipHoles();
+                return (_index < _limit);
+            }
+            public E next () {
+                checkComodification();
+                skipHoles();
+                if (_index >= _limit) {
+                    throw new NoSuchElementException();
+                }
+                return _entries[_index++];
+            }
+            public void remove () {
+                throw new UnsupportedOperationException();
+            }
+            protected void skipHoles () {
+                while (_index < _limit && _entries[_index] == null) {
+                    _index++;
+                }
+            }
+            protected void checkComodification () {
+                if (_modCount != _expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+            protected int _index = 0;
+            protected int _expectedModCount = _modCount;
+        };
+    }
+
+    @Override @Deprecated
+    public E[] toArray (E[] array)
+    {
+        if (array == null) {
+            @SuppressWarnings("unchecked") E[] copy = (E[])new Entry[size()];
+            array = copy;
+        }
+        for (int ii = 0, nn = 0; ii < _limit && nn < array.length; ii++) {
+            if (_entries[ii] != null) {
+                array[nn++] = _entries[ii];
+            }
+        }
+        return array;
+    }
+
+    @Override
+    public IndexedDSet<E> clone ()
+    {
+        IndexedDSet<E> nset = (IndexedDSet<E>)super.clone();
+        if (_ikeys != null) {
+            nset._ikeys = _ikeys.clone();
+            nset._islots = _islots.clone();
+        }
+        return nset;
+    }
+
+    @Override
+    public void writeObject (ObjectOutputStream out)
+        throws IOException
+    {
+        // the same format as DSet, skipping any holes
+        out.writeInt(_size);
+        for (int ii = 0; ii < _limit; ii++) {
+            if (_entries[ii] != null) {
+                out.writeObject(_entries[ii]);
+            }
+        }
+    }
+
+    @Override
+    public void readObject (ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        super.readObject(in);
+        _limit = _size;
+        // the writer sends its entries in key order, but we don't rely on it
+        _unordered = true;
+        compact();
+    }
+
+    @Override
+    protected boolean add (E elem)
+    {
+        long key = toLong(elem.getKey());
+        if (indexOf(key) >= 0) {
+            log.warning("Refusing to add duplicate entry", "entry", elem, "set", this,
+                        new Exception());
+            return false;
+        }
+
+        // expand our entries array if necessary, dropping any holes while we're at it
+        if (_limit >= _entries.length) {
+            if (_limit > _size) {
+                compact();
+            }
+            int elength = _entries.length;
+            if (_size >= elength) {
+                if (elength > getWarningSize()) {
+                    log.warning("Requested to expand to questionably large size", "l", elength,
+                                new Exception());
+                }
+                _entries = Arrays.copyOf(_entries, elength*2);
+            }
+        }
+
+        // append the entry, sorting it into place if that disturbed the key ordering
+        boolean unordered = (_limit > 0 && key < _maxKey);
+        if (!unordered) {
+            _maxKey = key;
+        }
+        _entries[_limit] = elem;
+        indexPut(key, _limit);
+        _limit++;
+        _size++;
+        _modCount++;
+        if (unordered) {
+            _unordered = true;
+            compact();
+        }
+        return true;
+    }
+
+    @Override
+    protected E removeKey (Comparable<?> key)
+    {
+        // don't fail, but generate a warning if we're passed a null key
+        if (key == null) {
+            log.warning("Requested to remove null key.", new Exception());
+            return null;
+        }
+
+        long lkey = toLong(key);
+        int eidx = indexOf(lkey);
+        if (eidx < 0) {
+            return null;
+        }
+        E oldEntry = _entries[eidx];
+        _entries[eidx] = null;
+        indexRemove(lkey);
+        _size--;
+        _modCount++;
+
+        // trim trailing holes so that removing the last entry leaves no trace
+        if (eidx == _limit-1) {
+            while (_limit > 0 && _entries[_limit-1] == null) {
+                _limit--;
+            }
+        }
+        // once holes outnumber the entries, squeeze them out (amortized over the removals)
+        if (_limit - _size > Math.max(_size, INITIAL_CAPACITY)) {
+            compact();
+        }
+        if ((_entries.length > INITIAL_CAPACITY) && (_size < _entries.length/8)) {
+            // if we're using less than 1/8 of our capacity, shrink by half
+            compact();
+            _entries = Arrays.copyOf(_entries, _entries.length/2);
+        }
+        return oldEntry;
+    }
+
+    @Override
+    protected E update (E elem)
+    {
+        int eidx = indexOf(toLong(elem.getKey()));
+        if (eidx < 0) {
+            return null;
+        }
+        E oldEntry = _entries[eidx];
+        _entries[eidx] = elem;
+        _modCount++;
+        return oldEntry;
+    }
+
+    /**
+     * Squeezes the holes out of our entries array and restores ascending key order if needed,
+     * rebuilding the index if any entry moved. Does not count as a modification of the set.
+     */
+    protected void compact ()
+    {
+        if (_limit == _size && !_unordered) {
+            return;
+        }
+        int nn = 0;
+        for (int ii = 0; ii < _limit; ii++) {
+            if (_entries[ii] != null) {
+                _entries[nn++] = _entries[ii];
+            }
+        }
+        Arrays.fill(_entries, nn, _limit, null);
+        _limit = _size = nn;
+        if (_unordered) {
+            Arrays.sort(_entries, 0, _size, ENTRY_COMP);
+            _unordered = false;
+        }
+        _maxKey = (_size == 0) ? 0L : toLong(_entries[_size-1].getKey());
+        reindex();
+    }
+
+    /**
+     * Rebuilds the key index from scratch, sized to hold one more than our current entry count.
+     */
+    protected void reindex ()
+    {
+        int capacity = MIN_INDEX_CAPACITY;
+        while (capacity < (_size+1)*2) {
+            capacity <<= 1;
+        }
+        if (_ikeys == null || _ikeys.length != capacity) {
+            _ikeys = new long[capacity];
+            _islots = new int[capacity];
+        } else {
+            Arrays.fill(_islots, 0);
+        }
+        for (int ii = 0; ii < _limit; ii++) {
+            if (_entries[ii] != null) {
+                indexInsert(toLong(_entries[ii].getKey()), ii);
+            }
+        }
+    }
+
+    /**
+     * Returns the position in the entries array of the entry with the supplied key, or -1.
+     */
+    protected int indexOf (long key)
+    {
+        if (_ikeys == null) {
+            return -1;
+        }
+        int mask = _ikeys.length - 1;
+        for (int ii = hash(key) & mask; _islots[ii] != 0; ii = (ii + 1) & mask) {
+            if (_ikeys[ii] == key) {
+                return _islots[ii] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Maps the supplied (not yet present) key to the supplied entries array position, growing
+     * the index if it would become more than half full.
+     */
+    protected void indexPut (long key, int eidx)
+    {
+        if (_ikeys == null || (_size+1)*2 > _ikeys.length) {
+            reindex();
+        }
+        indexInsert(key, eidx);
+    }
+
+    /**
+     * Inserts a mapping into an index known to have room for it.
+     */
+    protected void indexInsert (long key, int eidx)
+    {
+        int mask = _ikeys.length - 1;
+        int ii = hash(key) & mask;
+        while (_islots[ii] != 0) {
+            ii = (ii + 1) & mask;
+        }
+        _ikeys[ii] = key;
+        _islots[ii] = eidx + 1;
+    }
+
+    /**
+     * Removes the mapping for the supplied key, shifting any displaced successors back so that
+     * the index never needs tombstones.
+     */
+    protected void indexRemove (long key)
+    {
+        int mask = _ikeys.length - 1;
+        int ii = hash(key) & mask;
+        while (_ikeys[ii] != key || _islots[ii] == 0) {
+            if (_islots[ii] == 0) {
+                return; // not present
+            }
+            ii = (ii + 1) & mask;
+        }
+        for (int jj = (ii + 1) & mask; _islots[jj] != 0; jj = (jj + 1) & mask) {
+            int home = hash(_ikeys[jj]) & mask;
+            // move the entry at jj into the hole at ii unless its home lies cyclically in (ii, jj]
+            if ((ii <= jj) ? (ii >= home || home > jj) : (ii >= home && home > jj)) {
+                _ikeys[ii] = _ikeys[jj];
+                _islots[ii] = _islots[jj];
+                ii = jj;
+            }
+        }
+        _islots[ii] = 0;
+    }
+
+    /**
+     * Converts an entry key to its primitive form.
+     *
+     * @exception IllegalArgumentException if the key is not of an integral type.
+     */
+    protected static long toLong (Comparable<?> key)
+    {
+        if (key instanceof Integer || key instanceof Long ||
+                key instanceof Short || key instanceof Byte) {
+            return ((Number)key).longValue();
+        }
+        throw new IllegalArgumentException(
+            "IndexedDSet requires integral keys [key=" + key + "]");
+    }
+
+    /**
+     * Spreads the bits of the supplied key for use as an index position.
+     */
+    protected static int hash (long key)
+    {
+        int hash = (int)(key ^ (key >>> 32)) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /** Index keys, parallel to {@link #_islots}. */
+    protected transient long[] _ikeys;
+
+    /** For each index position, one plus the entries array position of the entry with the key
+     * at that position, or zero if the position is vacant. */
+    protected transient int[] _islots;
+
+    /** The number of entries array positions in use, including holes left by removals. */
+    protected transient int _limit;
+
+    /** The key of the last entry appended while the array was in key order. */
+    protected transient long _maxKey;
+
+    /** Set while entries are out of ascending key order (only ever within a mutator). (This must
+     * not have an initializer, as our superclass constructors add entries before initializers
+     * run.) */
+    protected transient boolean _unordered;
+
+    /** The smallest index we'll create. */
+    protected static final int MIN_INDEX_CAPACITY = 8;
+}
@@ -83,6 +83,23 @@ public class AuthRequest extends UpstreamMessage
         return _bootGroups;
     }
 
+    /**
+     * Returns true if this client would like the server to compress the rest of the session.
+     */
+    public boolean getRequestCompression ()
+    {
+        return _requestCompression;
+    }
+
+    /**
+     * Configures whether this client would like the server to compress the rest of the session.
+     * If the server agrees, it will say so in its {@link AuthResponse}.
+     */
+    public void setRequestCompression (boolean requestCompression)
+    {
+        _requestCompression = requestCompression;
+    }
+
     /**
      * Returns a shared secret key used for sending encrypted data to the client.
      */
@@ -124,4 +141,7 @@ public class AuthRequest extends UpstreamMessage
 
     /** The set of bootstrap service groups this client is interested in. */
     protected String[] _bootGroups;
+
+    /** Whether or not this client would like its connection compressed. */
+    protected boolean _requestCompression;
 }
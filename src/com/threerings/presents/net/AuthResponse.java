@@ -21,6 +21,10 @@
 
 package com.threerings.presents.net;
 
+import java.io.IOException;
+
+import com.threerings.io.ObjectInputStream;
+
 /**
  * The auth response communicates authentication success or failure as
  * well as associated information via a distribted object transmitted
@@ -66,11 +70,45 @@ public class AuthResponse extends DownstreamMessage
         _data = data;
     }
 
+    /**
+     * Returns true if the server will compress the frames that follow this response and will
+     * accept compressed frames from the client.
+     */
+    public boolean getCompression ()
+    {
+        return _compression;
+    }
+
+    /**
+     * Notes whether the server will compress the frames that follow this response.
+     */
+    public void setCompression (boolean compression)
+    {
+        _compression = compression;
+    }
+
     @Override
     public String toString ()
     {
         return "[type=ARSP, msgid=" + messageId + ", data=" + _data + "]";
     }
 
+    /**
+     * Reads our custom streamable fields.
+     */
+    public void readObject (ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        try {
+            in.defaultReadObject();
+        } catch (IOException ioe) {
+            // if we fail here because the server is old, it won't have negotiated compression
+            // and we'll simply leave that disabled
+        }
+    }
+
     protected AuthResponseData _data;
+
+    /** Whether or not the server has agreed to compress the connection. */
+    protected boolean _compression;
 }
@@ -22,6 +22,7 @@
 package com.threerings.presents.server;
 
 import com.samskivert.util.Invoker;
+import com.samskivert.util.KeyedInvoker;
 import com.samskivert.util.ResultListener;
 
 import com.threerings.presents.data.AuthCodes;
@@ -54,14 +55,36 @@ public abstract class Authenticator
      * Called by the connection management code when an authenticating connection has received its
      * authentication request from the client.
      */
-    public void authenticateConnection (Invoker invoker, final AuthingConnection conn,
-                                        final ResultListener<AuthingConnection> onComplete)
+    public void authenticateConnection (Invoker invoker, AuthingConnection conn,
+                                        ResultListener<AuthingConnection> onComplete)
+    {
+        invoker.postUnit(createAuthUnit(conn, onComplete));
+    }
+
+    /**
+     * Called by the connection management code when an authenticating connection has received its
+     * authentication request from the client and authentication is being performed on a {@link
+     * KeyedInvoker}. Authentications posted with the same key are processed in order, while those
+     * with different keys may be processed in parallel.
+     */
+    public void authenticateConnection (KeyedInvoker invoker, Object key, AuthingConnection conn,
+                                        ResultListener<AuthingConnection> onComplete)
+    {
+        invoker.postUnit(key, createAuthUnit(conn, onComplete));
+    }
+
+    /**
+     * Creates the invoker unit that authenticates the supplied connection and delivers the
+     * response to the client.
+     */
+    protected Invoker.Unit createAuthUnit (final AuthingConnection conn,
+                                           final ResultListener<AuthingConnection> onComplete)
     {
         final AuthRequest req = conn.getAuthRequest();
         final AuthResponseData rdata = createResponseData();
         final AuthResponse rsp = new AuthResponse(rdata);
 
-        invoker.postUnit(new Invoker.Unit("authenticateConnection") {
+        return new Invoker.Unit("authenticateConnection") {
             @Override
             public boolean invoke () {
                 try {
@@ -86,7 +109,7 @@ public abstract class Authenticator
                 conn.setAuthResponse(rsp);
 
                 // send the response back to the client
-                conn.postMessage(rsp);
+                conn.postAuthResponse(rsp);
 
                 // if the authentication request was granted, let the connection manager know that
                 // we just authed
@@ -94,7 +117,7 @@ public abstract class Authenticator
                     onComplete.requestCompleted(conn);
                 }
             }
-        });
+        };
     }
 
     /**
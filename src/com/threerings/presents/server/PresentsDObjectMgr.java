@@ -27,6 +27,8 @@ import java.lang.reflect.Modifier;
 import java.util.List;
 import java.util.Map;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -35,7 +37,7 @@ import com.samskivert.util.Histogram;
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
 import com.samskivert.util.Interval;
-import com.samskivert.util.Queue;
+import com.samskivert.util.MPSCQueue;
 import com.samskivert.util.StringUtil;
 import com.samskivert.util.Throttle;
 
@@ -78,6 +80,13 @@ public class PresentsDObjectMgr
 
         /** The number of events dispatched during the period. */
         public int eventCount;
+
+        /** The time (in microseconds) that units spent waiting in the queue during the period. */
+        public Histogram queueLatency = new Histogram(0, 500, 20);
+
+        /** The longest time (in microseconds) that a unit waited in the queue during the
+         * period. */
+        public long maxQueueLatency;
     }
 
     /** Post instances of these if you know you're going to tie up the distributed object thread
@@ -106,6 +115,10 @@ public class PresentsDObjectMgr
                 int queueSize = _evqueue.size();
                 report.append("- Queue size: ").append(queueSize).append("\n");
                 report.append("- Max queue size: ").append(stats.maxQueueSize).append("\n");
+                report.append("- Queue latency (500us buckets): ");
+                report.append(stats.queueLatency.summarize()).append("\n");
+                report.append("- Max queue latency: ");
+                report.append(stats.maxQueueLatency).append("us\n");
                 report.append("- Units executed: ").append(stats.eventCount);
                 if (elapsed != 0) {
                     report.append(" (").append(stats.eventCount/(elapsed/1000)).append("/s)\n");
@@ -139,9 +152,9 @@ public class PresentsDObjectMgr
      * @param increment if true, the event id will be incremented so that the caller can "claim"
      * the returned event id.
      */
-    public synchronized long getNextEventId (boolean increment)
+    public long getNextEventId (boolean increment)
     {
-        return increment ? _nextEventId++ : _nextEventId;
+        return increment ? _nextEventId.getAndIncrement() : _nextEventId.get();
     }
 
     /**
@@ -350,7 +363,7 @@ public class PresentsDObjectMgr
      *
      * From interface RunQueue
      */
-    public synchronized boolean isDispatchThread ()
+    public boolean isDispatchThread ()
     {
         return Thread.currentThread() == _dobjThread;
     }
@@ -362,7 +375,7 @@ public class PresentsDObjectMgr
      * initialization are considered safe and only after the distributed object manager is started
      * (and the event thread is established) will we require it.
      */
-    public synchronized void requireEventThread ()
+    public void requireEventThread ()
     {
         if (_dobjThread != null && !isDispatchThread()) {
             throw new IllegalStateException("This method must be called on the dobj event thread.");
@@ -390,13 +403,22 @@ public class PresentsDObjectMgr
         log.info("DOMGR running.");
 
         // make a note of the thread that's processing events
-        synchronized (this) {
-            _dobjThread = Thread.currentThread();
-        }
+        _dobjThread = Thread.currentThread();
 
+        Object[] batch = new Object[UNIT_BATCH_SIZE];
+        long[] stamps = new long[UNIT_BATCH_SIZE];
         while (isRunning()) {
-            // pop the next unit off the queue and process it
-            processUnit(_evqueue.get());
+            // grab the next batch of units off the queue (waiting for at least one)
+            int count = _evqueue.take(batch, stamps);
+            for (int ii = 0; ii < count; ii++) {
+                Object unit = batch[ii];
+                batch[ii] = null;
+                _batchPending = count - ii - 1;
+                if (isRunning()) {
+                    noteQueueLatency(stamps[ii]);
+                    processUnit(unit);
+                }
+            }
         }
 
         log.info("DOMGR exited.");
@@ -635,18 +657,30 @@ public class PresentsDObjectMgr
      */
     public boolean queueIsEmpty ()
     {
-        return !_evqueue.hasElements();
+        return !_evqueue.hasElements() && _batchPending == 0;
     }
 
     /**
      * Tests if the event processing thread is still running. This is required by the
      * ConnectionManager to ensure messages posted just before or during shutdown are sent.
      */
-    public synchronized boolean isRunning ()
+    public boolean isRunning ()
     {
         return _running;
     }
 
+    /**
+     * Records the time that a unit appended to the queue at the specified time spent waiting.
+     */
+    protected void noteQueueLatency (long enqueued)
+    {
+        long latency = (System.nanoTime() - enqueued)/1000;
+        _current.queueLatency.addValue((int)Math.min(latency, Integer.MAX_VALUE));
+        if (latency > _current.maxQueueLatency) {
+            _current.maxQueueLatency = latency;
+        }
+    }
+
     /**
      * Processes a single unit from the queue.
      */
@@ -1073,10 +1107,14 @@ public class PresentsDObjectMgr
     }
 
     /** A flag indicating that the event dispatcher is still running. */
-    protected boolean _running = true;
+    protected volatile boolean _running = true;
+
+    /** The event queue via which all events are processed. Any thread may append to it, but only
+     * the dobj thread consumes from it. */
+    protected MPSCQueue<Object> _evqueue = MPSCQueue.newQueue();
 
-    /** The event queue via which all events are processed. */
-    protected Queue<Object> _evqueue = new Queue<Object>();
+    /** The number of units taken off the queue in the current batch but not yet processed. */
+    protected volatile int _batchPending;
 
     /** The managed distributed objects table. */
     protected IntMap<DObject> _objects = IntMaps.newHashIntMap();
@@ -1102,10 +1140,10 @@ public class PresentsDObjectMgr
 
     /** keeps Track of which thread is executing the event loop so that other services can enforce
      * restrictions on code that should or should not be called from the event dispatch thread. */
-    protected Thread _dobjThread;
+    protected volatile Thread _dobjThread;
 
     /** A monotonically increasing counter used to assign an id to all dispatched events. */
-    protected long _nextEventId = 1;
+    protected AtomicLong _nextEventId = new AtomicLong(1);
 
     /** Used to profile our events and runnable units. */
     protected Map<String, UnitProfile> _profiles = Maps.newHashMap();
@@ -1125,6 +1163,9 @@ public class PresentsDObjectMgr
     /** Whether or not unit profiling is enabled. */
     protected static final boolean UNIT_PROF_ENABLED = true;
 
+    /** The maximum number of units we take off the queue at once. */
+    protected static final int UNIT_BATCH_SIZE = 64;
+
     /** The default size of an oid list refs vector. */
     protected static final int DEFREFVEC_SIZE = 4;
 
@@ -0,0 +1,54 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.presents.server;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.util.Lifecycle;
+
+/**
+ * A pool of threads on which client authentication may be performed in parallel, so that one
+ * slow authentication does not hold up every other client waiting to log on. Authentication
+ * requests from the same address are still processed one at a time and in order. To use it in
+ * place of the single threaded {@link PresentsAuthInvoker}, a server module binds it like so:
+ *
+ * <pre>
+ * bind(KeyedInvoker.class).annotatedWith(AuthInvoker.class).to(PresentsKeyedAuthInvoker.class);
+ * </pre>
+ *
+ * Authenticators used with this invoker must be safe to call from multiple threads at once.
+ */
+@Singleton
+public class PresentsKeyedAuthInvoker extends ReportingKeyedInvoker
+    implements Lifecycle.ShutdownComponent
+{
+    @Inject public PresentsKeyedAuthInvoker (
+        PresentsDObjectMgr omgr, Lifecycle cycle, ReportManager repmgr)
+    {
+        super("presents.KeyedAuthInvoker", omgr, AUTH_THREADS, repmgr);
+        cycle.addComponent(this);
+    }
+
+    /** The number of threads on which we perform authentication. */
+    protected static final int AUTH_THREADS = 4;
+}
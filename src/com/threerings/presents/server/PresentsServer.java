@@ -52,6 +52,8 @@ import com.threerings.crowd.server.PlaceManager;
 import com.threerings.nio.conman.ConnectionManager;
 import com.threerings.nio.conman.ServerSocketChannelAcceptor;
 
+import com.threerings.util.CacheGovernor;
+
 import static com.threerings.presents.Log.log;
 
 /**
@@ -175,6 +177,9 @@ public class PresentsServer
 
         registerSignalHandlers(injector);
 
+        // have our caches relieved when memory runs short
+        CacheGovernor.getDefault().watchMemory(CacheGovernor.DEFAULT_MEMORY_THRESHOLD);
+
         // initialize our deprecated legacy static references
         omgr = _omgr;
         invmgr = _invmgr;
@@ -27,6 +27,8 @@ import com.google.inject.Singleton;
 
 import com.samskivert.util.StringUtil;
 
+import com.threerings.util.CacheGovernor;
+
 import com.threerings.presents.dobj.RootDObjectManager;
 
 import static com.threerings.presents.Log.log;
@@ -61,6 +63,10 @@ public class ReportManager
     /** A string constant representing a report with detailed profiling information. */
     public static final String PROFILE_TYPE = "profile";
 
+    /** A string constant representing a report on the caches governed by the
+     * {@link CacheGovernor}. */
+    public static final String CACHE_TYPE = "caches";
+
     /**
      * Starts up our periodic report generation task.
      */
@@ -132,6 +138,12 @@ public class ReportManager
             report.append(max/1024).append("k max\n");
         }
 
+        // add the governed caches to the cache report
+        if (CACHE_TYPE.equals(type)) {
+            report.append("* util.CacheGovernor:\n");
+            CacheGovernor.getDefault().appendReport(report, reset);
+        }
+
         for (Reporter rptr : _reporters.get(type)) {
             try {
                 rptr.appendReport(report, now, sinceLast, reset);
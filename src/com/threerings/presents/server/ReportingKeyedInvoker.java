@@ -0,0 +1,75 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.presents.server;
+
+import java.util.Map;
+
+import java.util.concurrent.Executor;
+
+import com.samskivert.util.KeyedInvoker;
+
+/**
+ * Extends keyed invoker with a reporter implementation that shows current queue status, maximum
+ * queue depths and the results of unit profiling if enabled.
+ */
+public class ReportingKeyedInvoker extends KeyedInvoker
+{
+    /**
+     * Creates a new reporting keyed invoker. The instance will be registered with the report
+     * manager if profiling is enabled.
+     */
+    public ReportingKeyedInvoker (
+        String name, Executor receiver, int threads, ReportManager repmgr)
+    {
+        super(name, receiver, threads);
+        if (PERF_TRACK) {
+            repmgr.registerReporter(ReportManager.DEFAULT_TYPE, _defrep);
+            repmgr.registerReporter(ReportManager.PROFILE_TYPE, _profrep);
+        }
+    }
+
+    /** Generates a report on our runtime behavior. */
+    protected ReportManager.Reporter _defrep = new ReportManager.Reporter() {
+        public void appendReport (StringBuilder buf, long now, long sinceLast, boolean reset) {
+            buf.append("* " + getName() + ":\n");
+            buf.append("- Threads: ").append(getThreadCount()).append("\n");
+            buf.append("- Pending units: ").append(getPendingUnits()).append("\n");
+            buf.append("- Active queues: ").append(getActiveQueues()).append("\n");
+            for (Map.Entry<String, Integer> entry : getMaxQueueDepths(reset).entrySet()) {
+                buf.append("- Max depth ").append(entry.getKey()).append(": ");
+                buf.append(entry.getValue()).append("\n");
+            }
+        }
+    };
+
+    /** Generates a report with our profiling data. */
+    protected ReportManager.Reporter _profrep = new ReportManager.Reporter() {
+        public void appendReport (StringBuilder buf, long now, long sinceLast, boolean reset) {
+            buf.append("* " + getName() + ":\n");
+            if (PresentsDObjectMgr.UNIT_PROF_ENABLED) {
+                appendProfiles(buf, reset);
+            } else {
+                buf.append(" - Unit profiling disabled.\n");
+            }
+        }
+    };
+}
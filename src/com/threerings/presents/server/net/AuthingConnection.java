@@ -26,10 +26,13 @@ import static com.threerings.presents.Log.log;
 import java.io.IOException;
 import java.security.PrivateKey;
 
+import com.threerings.io.FrameDeflater;
+
 import com.threerings.presents.data.AuthCodes;
 import com.threerings.presents.net.AESAuthRequest;
 import com.threerings.presents.net.AuthRequest;
 import com.threerings.presents.net.AuthResponse;
+import com.threerings.presents.net.AuthResponseData;
 import com.threerings.presents.net.DownstreamMessage;
 import com.threerings.presents.net.Message;
 import com.threerings.presents.net.PublicKeyCredentials;
@@ -133,6 +136,22 @@ public class AuthingConnection extends PresentsConnection
         _authrsp = authrsp;
     }
 
+    /**
+     * Delivers the supplied auth response to the client. If authentication succeeded and the
+     * client asked for compression, this negotiates compression for the remainder of the session:
+     * the response itself is sent uncompressed, but any frame after it may be compressed.
+     */
+    public void postAuthResponse (AuthResponse authrsp)
+    {
+        FrameDeflater deflater = null;
+        if (AuthResponseData.SUCCESS.equals(authrsp.getData().code)) {
+            deflater = _pcmgr.createFrameDeflater(_authreq);
+        }
+        authrsp.setCompression(deflater != null);
+        postMessage(authrsp);
+        _deflater = deflater;
+    }
+
     /**
      * Returns the username that uniquely identifies this authenticated session. This will be used
      * to map {@code Name -> PresentsSession} in the {@code ClientManager} and used elsewhere.
@@ -33,6 +33,7 @@ import java.security.NoSuchAlgorithmException;
 
 import com.google.common.base.Preconditions;
 
+import com.threerings.io.FrameDeflater;
 import com.threerings.io.FramedInputStream;
 import com.threerings.io.FramingOutputStream;
 import com.threerings.io.ObjectInputStream;
@@ -214,7 +215,8 @@ public class PresentsConnection extends Connection
         // make a note that we received an event as of this time
         _lastEvent = when;
 
-        int bytesIn = 0;
+        int bytesIn = 0, inflatedFrames = 0, inflatedIn = 0, inflatedOut = 0;
+        long inflateNanos = 0L;
         try {
             // we're lazy about creating our input streams because we may be inheriting them from
             // our authing connection and we don't want to unnecessarily create them in that case
@@ -230,7 +232,13 @@ public class PresentsConnection extends Connection
             while (_fin.readFrame(_channel)) {
                 // make a note of how many bytes are in this frame (including the frame length
                 // bytes which aren't reported in available())
-                bytesIn = _fin.available() + 4;
+                bytesIn = _fin.getFrameLength();
+                if (_fin.isCompressed()) {
+                    inflatedFrames++;
+                    inflatedIn += bytesIn;
+                    inflatedOut += _fin.available() + 4;
+                    inflateNanos += _fin.getInflateNanos();
+                }
                 // parse the message and pass it on
                 Message msg = (Message)_oin.readObject();
                 msg.received = when;
@@ -258,9 +266,26 @@ public class PresentsConnection extends Connection
             networkFailure(ioe);
         }
 
+        if (inflatedFrames > 0) {
+            _pcmgr.noteInflate(inflatedFrames, inflatedIn, inflatedOut, inflateNanos);
+        }
         return bytesIn;
     }
 
+    @Override
+    protected void closeSocket ()
+    {
+        super.closeSocket();
+
+        // release the native compression state, if any
+        if (_fin != null) {
+            _fin.close();
+        }
+        if (_deflater != null) {
+            _deflater.end();
+        }
+    }
+
     /**
      * Returns the object input stream associated with this connection.  This should only be used
      * by the connection manager.
@@ -289,6 +314,7 @@ public class PresentsConnection extends Connection
         _fin = other._fin;
         _oin = other._oin;
         _oout = other._oout;
+        _deflater = other._deflater;
         if (_loader != null) {
             _oin.setClassLoader(_loader);
         }
@@ -317,6 +343,15 @@ public class PresentsConnection extends Connection
         _oout = oout;
     }
 
+    /**
+     * Returns the deflater used to compress frames sent to this connection, or null if the
+     * connection is not compressed. This should only be used by the connection manager.
+     */
+    protected FrameDeflater getFrameDeflater ()
+    {
+        return _deflater;
+    }
+
     /**
      * Returns a reference to the connection's datagram sequencer.  This should only be called by
      * the connection manager.
@@ -329,6 +364,7 @@ public class PresentsConnection extends Connection
     protected FramedInputStream _fin;
     protected ObjectInputStream _oin;
     protected ObjectOutputStream _oout;
+    protected FrameDeflater _deflater;
 
     protected InetSocketAddress _datagramAddress;
     protected DatagramChannel _datagramChannel;
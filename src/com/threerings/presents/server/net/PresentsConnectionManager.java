@@ -38,12 +38,14 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 import com.samskivert.util.Invoker;
+import com.samskivert.util.KeyedInvoker;
 import com.samskivert.util.Lifecycle;
 import com.samskivert.util.Queue;
 import com.samskivert.util.ResultListener;
 import com.samskivert.util.Tuple;
 
 import com.threerings.io.ByteBufferInputStream;
+import com.threerings.io.FrameDeflater;
 import com.threerings.io.FramingOutputStream;
 import com.threerings.io.ObjectOutputStream;
 import com.threerings.io.UnreliableObjectInputStream;
@@ -52,6 +54,7 @@ import com.threerings.io.UnreliableObjectOutputStream;
 import com.threerings.presents.annotation.AuthInvoker;
 import com.threerings.presents.client.Client;
 import com.threerings.presents.data.PresentsConMgrStats;
+import com.threerings.presents.net.AuthRequest;
 import com.threerings.presents.net.Message;
 import com.threerings.presents.net.PingRequest;
 import com.threerings.presents.net.PongResponse;
@@ -104,6 +107,14 @@ public class PresentsConnectionManager extends ConnectionManager
         long bytesOut = stats.bytesOut - _lastStats.bytesOut;
         long msgsIn = stats.msgsIn - _lastStats.msgsIn;
         long msgsOut = stats.msgsOut - _lastStats.msgsOut;
+        long framesDeflated = stats.framesDeflated - _lastStats.framesDeflated;
+        long deflateBytesIn = stats.deflateBytesIn - _lastStats.deflateBytesIn;
+        long deflateBytesOut = stats.deflateBytesOut - _lastStats.deflateBytesOut;
+        long deflateNanos = stats.deflateNanos - _lastStats.deflateNanos;
+        long framesInflated = stats.framesInflated - _lastStats.framesInflated;
+        long inflateBytesIn = stats.inflateBytesIn - _lastStats.inflateBytesIn;
+        long inflateBytesOut = stats.inflateBytesOut - _lastStats.inflateBytesOut;
+        long inflateNanos = stats.inflateNanos - _lastStats.inflateNanos;
         if (reset) {
             _lastStats = stats;
         }
@@ -135,6 +146,25 @@ public class PresentsConnectionManager extends ConnectionManager
         long avgOut = (msgsOut == 0) ? 0 : (bytesOut/msgsOut);
         report.append(avgOut).append(" avg size, ");
         report.append(bytesOut*1000/sinceLast).append(" bps\n");
+        if (framesDeflated > 0 || framesInflated > 0) {
+            report.append("- Compression: ");
+            report.append(framesDeflated).append(" deflated, ");
+            report.append(deflateBytesIn).append(" -> ").append(deflateBytesOut).append(" bytes, ");
+            report.append(deflateNanos/1000000).append(" ms; ");
+            report.append(framesInflated).append(" inflated, ");
+            report.append(inflateBytesIn).append(" -> ").append(inflateBytesOut).append(" bytes, ");
+            report.append(inflateNanos/1000000).append(" ms\n");
+        }
+    }
+
+    /**
+     * Configures the size (in bytes of frame data) below which frames sent to clients that have
+     * negotiated compression are sent uncompressed. A negative threshold disables compression
+     * entirely; clients that request it will be told that it is not available.
+     */
+    public void setCompressionThreshold (int threshold)
+    {
+        _compressionThreshold = threshold;
     }
 
     /**
@@ -267,6 +297,17 @@ public class PresentsConnectionManager extends ConnectionManager
 
             // now extract that data into a byte array
             ByteBuffer buffer = _framer.frameAndReturnBuffer();
+
+            // compress it if the connection negotiated compression and it's worth the effort
+            FrameDeflater deflater = conn.getFrameDeflater();
+            if (deflater != null) {
+                long start = System.nanoTime();
+                ByteBuffer deflated = deflater.deflate(buffer);
+                if (deflated != buffer) {
+                    noteDeflate(buffer.limit(), deflated.limit(), System.nanoTime() - start);
+                    buffer = deflated;
+                }
+            }
             byte[] data = new byte[buffer.limit()];
             buffer.get(data);
             // log.info("Flattened " + msg + " into " + data.length + " bytes.");
@@ -279,6 +320,17 @@ public class PresentsConnectionManager extends ConnectionManager
         }
     }
 
+    /**
+     * Creates the deflater used to compress frames sent to a newly authenticated connection, or
+     * returns null if the connection is to be uncompressed. Called on the distributed object
+     * thread.
+     */
+    protected FrameDeflater createFrameDeflater (AuthRequest req)
+    {
+        return (req.getRequestCompression() && _compressionThreshold >= 0) ?
+            new FrameDeflater(_compressionThreshold) : null;
+    }
+
     /**
      * Helper function for {@link #postMessage}; handles posting the message as a datagram.
      *
@@ -443,14 +495,23 @@ public class PresentsConnectionManager extends ConnectionManager
             }
         }
 
-        author.authenticateConnection(_authInvoker, conn, new ResultListener<AuthingConnection>() {
+        ResultListener<AuthingConnection> onComplete = new ResultListener<AuthingConnection>() {
             public void requestCompleted (AuthingConnection conn) {
                 _authq.append(conn);
             }
             public void requestFailed (Exception cause) {
                 // this never happens
             }
-        });
+        };
+
+        // if a keyed auth invoker has been bound, authenticate in parallel, serializing only the
+        // requests that come from the same address
+        if (_keyedAuthInvoker != null && !_keyedAuthInvoker.shutdownRequested()) {
+            author.authenticateConnection(
+                _keyedAuthInvoker, conn.getInetAddress(), conn, onComplete);
+        } else {
+            author.authenticateConnection(_authInvoker, conn, onComplete);
+        }
     }
 
     /**
@@ -597,10 +658,18 @@ public class PresentsConnectionManager extends ConnectionManager
     protected Queue<OutgoingConnectionHandler> _outfailq = Queue.newQueue();
 
     protected FramingOutputStream _framer = new FramingOutputStream();
+
+    /** The frame size below which we don't compress, or -1 if compression is disabled. */
+    protected int _compressionThreshold = FrameDeflater.DEFAULT_THRESHOLD;
     protected ByteArrayOutputStream _flattener = new ByteArrayOutputStream();
 
     // some dependencies
     @Inject @AuthInvoker protected Invoker _authInvoker;
+
+    /** Performs authentication on a pool of threads if bound (to {@link
+     * com.threerings.presents.server.PresentsKeyedAuthInvoker}, for example), otherwise all
+     * authentication is performed serially on {@link #_authInvoker}. */
+    @Inject(optional=true) @AuthInvoker protected KeyedInvoker _keyedAuthInvoker;
     @Inject protected ClientManager _clmgr;
     @Inject protected PresentsDObjectMgr _omgr;
 
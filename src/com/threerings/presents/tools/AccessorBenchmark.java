@@ -0,0 +1,217 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+
+package com.threerings.presents.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.dobj.DEvent;
+import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.DObjectManager;
+import com.threerings.presents.dobj.Subscriber;
+
+import com.threerings.crowd.chat.data.SpeakMarshaller;
+import com.threerings.crowd.data.BodyObject;
+import com.threerings.crowd.data.Place;
+import com.threerings.crowd.data.PlaceObject;
+
+/**
+ * A microbenchmark of {@link AttributeChangedEvent} application on {@link BodyObject} and {@link
+ * PlaceObject}. Events are generated by the setters of non-authoritative copies of the objects
+ * (as they would be on a client), streamed, and read back before being applied to the
+ * authoritative copies, once as generated (carrying their accessor indices) and once rebuilt
+ * without indices, so that the accessor must be looked up by name.
+ */
+public class AccessorBenchmark
+{
+    public static void main (String[] args)
+        throws Exception
+    {
+        int events = DEFAULT_EVENTS;
+        if (args.length > 1) {
+            System.err.println("Usage: AccessorBenchmark [events]");
+            System.exit(-1);
+        } else if (args.length == 1) {
+            try {
+                events = Integer.parseInt(args[0]);
+            } catch (NumberFormatException nfe) {
+                System.err.println("Usage: AccessorBenchmark [events]");
+                System.exit(-1);
+            }
+        }
+
+        AccessorBenchmark bench = new AccessorBenchmark();
+        String[] labels = { "by name", "by index" };
+
+        // run everything through a few times so that the JIT has settled before we report
+        for (int ii = 0; ii < WARMUP_ROUNDS; ii++) {
+            bench.run(false, events);
+            bench.run(true, events);
+        }
+        for (int ii = 0; ii < labels.length; ii++) {
+            long elapsed = bench.run(ii == 1, events);
+            System.out.println(labels[ii] + ": " + (elapsed / 1000000L) + " ms, " +
+                (elapsed / events) + " ns/event");
+        }
+    }
+
+    public AccessorBenchmark ()
+    {
+        _cbody.setManager(_recorder);
+        _cplace.setManager(_recorder);
+        for (DObject object : new DObject[] { _body, _cbody }) {
+            object.setOid(BODY_OID);
+        }
+        for (DObject object : new DObject[] { _place, _cplace }) {
+            object.setOid(PLACE_OID);
+        }
+    }
+
+    /**
+     * Applies the specified number of events, returning the nanoseconds spent applying them.
+     */
+    protected long run (boolean indexed, int events)
+        throws Exception
+    {
+        long elapsed = 0L;
+        for (int done = 0; done < events; done += BATCH_SIZE) {
+            List<DEvent> batch = createBatch(indexed);
+            long start = System.nanoTime();
+            for (DEvent event : batch) {
+                event.applyToObject(event.getTargetOid() == BODY_OID ? _body : _place);
+            }
+            elapsed += System.nanoTime() - start;
+
+            // make sure the events did what they were supposed to
+            if (_body.status != _cbody.status || !_body.awayMessage.equals(_cbody.awayMessage) ||
+                    _body.location.placeOid != _cbody.location.placeOid ||
+                    (_place.speakService == null) != (_cplace.speakService == null)) {
+                throw new IllegalStateException("Event application failed [indexed=" +
+                    indexed + ", body=" + _body + ", cbody=" + _cbody + "].");
+            }
+        }
+        return elapsed;
+    }
+
+    /**
+     * Creates a batch of events with the client copies' setters, streams them out and reads them
+     * back in.
+     */
+    protected List<DEvent> createBatch (boolean indexed)
+        throws Exception
+    {
+        _recorder.events.clear();
+        for (int ii = 0; ii < BATCH_SIZE; ii += 4) {
+            int value = _counter++;
+            _cbody.setStatus((byte)(value & 3));
+            _cbody.setAwayMessage(AWAY_MESSAGES[value & 3]);
+            _cbody.setLocation(new Place(value));
+            _cplace.setSpeakService((value & 1) == 0 ? null : _speakService);
+        }
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        for (AttributeChangedEvent event : _recorder.events) {
+            oout.writeObject(indexed ? event :
+                new AttributeChangedEvent(event.getTargetOid(), event.getName(), event.getValue()));
+        }
+        oout.flush();
+
+        ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()));
+        List<DEvent> batch = Lists.newArrayListWithCapacity(_recorder.events.size());
+        for (int ii = 0, nn = _recorder.events.size(); ii < nn; ii++) {
+            batch.add((DEvent)oin.readObject());
+        }
+        return batch;
+    }
+
+    /**
+     * Stands in for a client's object manager, which is not authoritative for its objects and
+     * simply collects the events that they post.
+     */
+    protected static class EventRecorder
+        implements DObjectManager
+    {
+        /** The events posted since we were last cleared. */
+        public List<AttributeChangedEvent> events = Lists.newArrayList();
+
+        // from interface DObjectManager
+        public boolean isManager (DObject object)
+        {
+            return false;
+        }
+
+        // from interface DObjectManager
+        public <T extends DObject> void subscribeToObject (int oid, Subscriber<T> target)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        // from interface DObjectManager
+        public <T extends DObject> void unsubscribeFromObject (int oid, Subscriber<T> target)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        // from interface DObjectManager
+        public void postEvent (DEvent event)
+        {
+            events.add((AttributeChangedEvent)event);
+        }
+
+        // from interface DObjectManager
+        public void removedLastSubscriber (DObject obj, boolean deathWish)
+        {
+            // nothing doing
+        }
+    }
+
+    /** The authoritative objects to which we apply events. */
+    protected BodyObject _body = new BodyObject();
+    protected PlaceObject _place = new PlaceObject();
+
+    /** The client copies whose setters generate the events. */
+    protected BodyObject _cbody = new BodyObject();
+    protected PlaceObject _cplace = new PlaceObject();
+
+    /** Collects the events posted by the client copies. */
+    protected EventRecorder _recorder = new EventRecorder();
+
+    /** A speak service to alternate with null. */
+    protected SpeakMarshaller _speakService = new SpeakMarshaller();
+
+    /** Used to vary the values we set. */
+    protected int _counter;
+
+    protected static final int BODY_OID = 1, PLACE_OID = 2;
+
+    protected static final String[] AWAY_MESSAGES = { "lunch", "meeting", "gone", "back soon" };
+
+    protected static final int DEFAULT_EVENTS = 1000000;
+    protected static final int BATCH_SIZE = 1000;
+    protected static final int WARMUP_ROUNDS = 5;
+}
@@ -19,6 +19,9 @@
 
 package com.threerings.resource;
 
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -97,6 +100,33 @@ public class FileResourceBundle extends ResourceBundle
         return ResourceManager.loadImage(getResourceFile(path), useFastIO);
     }
 
+    @Override
+    public Set<String> getResourcePaths ()
+    {
+        try {
+            if (resolveJarFile()) {
+                return null;
+            }
+        } catch (IOException ioe) {
+            return null;
+        }
+        Set<String> paths = new HashSet<String>();
+        for (Enumeration<JarEntry> iter = _jarSource.entries(); iter.hasMoreElements(); ) {
+            JarEntry entry = iter.nextElement();
+            if (!entry.isDirectory()) {
+                paths.add(entry.getName());
+            }
+        }
+        return paths;
+    }
+
+    @Override
+    public boolean hasExactPaths ()
+    {
+        // once unpacked, we look our resources up as files rather than jar entries
+        return (_cache == null);
+    }
+
     /**
      * Returns the {@link File} from which resources are fetched for this bundle.
      */
@@ -28,6 +28,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.security.AccessControlException;
+import java.util.HashSet;
 import java.util.Set;
 
 import com.samskivert.util.Logger;
@@ -92,6 +93,22 @@ public class NetworkResourceBundle extends KnownAvailabilityResourceBundle
         }
     }
 
+    @Override
+    public Set<String> getResourcePaths ()
+    {
+        if (_rsrcs == null) {
+            return null;
+        }
+        // our known resources are listed with our identifier prepended
+        Set<String> paths = new HashSet<String>();
+        for (String rsrc : _rsrcs) {
+            if (rsrc.startsWith(_ident)) {
+                paths.add(rsrc.substring(_ident.length()));
+            }
+        }
+        return paths;
+    }
+
     @Override
     public BufferedImage getImageResource (String path, boolean useFastIO)
         throws IOException
@@ -19,6 +19,8 @@
 
 package com.threerings.resource;
 
+import java.util.Set;
+
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -54,4 +56,24 @@ public abstract class ResourceBundle
      */
     public abstract BufferedImage getImageResource (String path, boolean useFastIO)
         throws IOException;
+
+    /**
+     * Returns the paths of all of the resources in this bundle, or null if the bundle does not
+     * (or cannot yet) know its contents. The resource manager uses these to index its resource
+     * sets and will not ask a bundle that reports its paths for any resource not among them.
+     */
+    public Set<String> getResourcePaths ()
+    {
+        return null;
+    }
+
+    /**
+     * Returns true if this bundle only finds resources whose paths exactly match those reported by
+     * {@link #getResourcePaths}, false if it resolves paths through the file system, which may
+     * ignore case or treat differently spelled paths as the same file.
+     */
+    public boolean hasExactPaths ()
+    {
+        return true;
+    }
 }
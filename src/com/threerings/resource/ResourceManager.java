@@ -23,15 +23,19 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -53,6 +57,7 @@ import com.google.common.collect.Maps;
 
 import com.samskivert.io.StreamUtil;
 import com.samskivert.net.PathUtil;
+import com.samskivert.util.LRUHashMap;
 import com.samskivert.util.ObserverList;
 import com.samskivert.util.ResultListener;
 import com.samskivert.util.WeakObserverList;
@@ -97,7 +102,11 @@ import static com.threerings.resource.Log.log;
  * is a call to {@link #getResource(String)}.
  *
  * <p> When a resource is loaded from a resource set, the set is searched in the order that entries
- * are specified in the definition.
+ * are specified in the definition. To avoid asking every bundle for every resource, each set is
+ * indexed (by the paths its bundles report via {@link ResourceBundle#getResourcePaths}) the first
+ * time it is searched, and only bundles that contain the resource or could not be indexed are
+ * consulted. The indices are rebuilt when the bundles change (see {@link
+ * #invalidateResourceIndex}).
  */
 public class ResourceManager
 {
@@ -348,8 +357,24 @@ public class ResourceManager
             };
         }
 
+        // our resource sets have changed, and will change again once the bundles are unpacked
+        invalidateResourceIndex();
+        final InitObserver fobs = initObs;
+        InitObserver iobs = new InitObserver() {
+            public void progress (int percent, long remaining) {
+                if (percent >= 100) {
+                    invalidateResourceIndex();
+                }
+                fobs.progress(percent, remaining);
+            }
+            public void initializationFailed (Exception e) {
+                invalidateResourceIndex();
+                fobs.initializationFailed(e);
+            }
+        };
+
         // start a thread to unpack our bundles
-        Unpacker unpack = new Unpacker(dlist, initObs);
+        Unpacker unpack = new Unpacker(dlist, iobs);
         unpack.start();
 
         if (shouldWait[0]) {
@@ -392,6 +417,7 @@ public class ResourceManager
             resourceDir += File.separator;
         }
         _rdir = new File(resourceDir);
+        invalidateResourceIndex();
     }
 
     /**
@@ -520,6 +546,34 @@ public class ResourceManager
     public void setClassLoader (ClassLoader loader)
     {
         _loader = loader;
+        _classpathMisses.clear();
+    }
+
+    /**
+     * Discards the indices of our resource sets (and our record of resources known to be missing
+     * from the classpath), which will be rebuilt as they are next needed. This is called
+     * automatically when our bundles are (re)initialized, but should also be called if the
+     * contents of a bundle are changed by other means.
+     */
+    public void invalidateResourceIndex ()
+    {
+        _indexGeneration.incrementAndGet();
+        _indices.clear();
+        _classpathMisses.clear();
+    }
+
+    /**
+     * Returns a measure of the effectiveness of our resource set indices.
+     *
+     * @return an array containing {hits, misses, probes, classpath misses}: the number of lookups
+     * resolved by an index to a single bundle, the number of lookups the index showed to be in no
+     * indexed bundle, the number of times an unindexed bundle had to be searched and the number
+     * of classpath lookups avoided because the resource was previously found to be missing.
+     */
+    public int[] getLookupStats ()
+    {
+        return new int[] { _indexHits.get(), _indexMisses.get(), _bundleProbes.get(),
+                           _classpathMissHits.get() };
     }
 
     /**
@@ -534,22 +588,11 @@ public class ResourceManager
         throws IOException
     {
         String localePath = getLocalePath(path);
-        InputStream in;
 
         // first look for this resource in our default resource bundle
-        for (ResourceBundle bundle : _default) {
-            // Try a localized version first.
-            if (localePath != null) {
-                in = bundle.getResource(localePath);
-                if (in != null) {
-                    return in;
-                }
-            }
-            // If that didn't work, try generic.
-            in = bundle.getResource(path);
-            if (in != null) {
-                return in;
-            }
+        InputStream in = getBundleResource(_default, localePath, path);
+        if (in != null) {
+            return in;
         }
 
         // fallback next to an unpacked resource file
@@ -589,20 +632,9 @@ public class ResourceManager
         String localePath = getLocalePath(path);
 
         // first look for this resource in our default resource bundle
-        for (ResourceBundle bundle : _default) {
-            // try a localized version first
-            BufferedImage image;
-            if (localePath != null) {
-                image = bundle.getImageResource(localePath, false);
-                if (image != null) {
-                    return image;
-                }
-            }
-            // if we didn't find that, try generic
-            image = bundle.getImageResource(path, false);
-            if (image != null) {
-                return image;
-            }
+        BufferedImage image = getBundleImageResource(_default, localePath, path);
+        if (image != null) {
+            return image;
         }
 
         // fallback next to an unpacked resource file
@@ -648,22 +680,10 @@ public class ResourceManager
                 "Unable to locate resource [set=" + rset + ", path=" + path + "]");
         }
 
-        String localePath = getLocalePath(path);
         // look for the resource in any of the bundles
-        for (ResourceBundle bundle : bundles) {
-            InputStream in;
-            // Try a localized version first.
-            if (localePath != null) {
-                in = bundle.getResource(localePath);
-                if (in != null) {
-                    return in;
-                }
-            }
-            // If we didn't find that, try a generic.
-            in = bundle.getResource(path);
-            if (in != null) {
-                return in;
-            }
+        InputStream in = getBundleResource(bundles, getLocalePath(path), path);
+        if (in != null) {
+            return in;
         }
 
         throw new FileNotFoundException(
@@ -687,22 +707,10 @@ public class ResourceManager
                 "Unable to locate image resource [set=" + rset + ", path=" + path + "]");
         }
 
-        String localePath = getLocalePath(path);
         // look for the resource in any of the bundles
-        for (ResourceBundle bundle : bundles) {
-            BufferedImage image;
-            // try a localized version first
-            if (localePath != null) {
-                image = bundle.getImageResource(localePath, false);
-                if (image != null) {
-                    return image;
-                }
-            }
-            // if we didn't find that, try generic
-            image = bundle.getImageResource(path, false);
-            if (image != null) {
-                return image;
-            }
+        BufferedImage image = getBundleImageResource(bundles, getLocalePath(path), path);
+        if (image != null) {
+            return image;
         }
 
         throw new FileNotFoundException(
@@ -853,16 +861,128 @@ public class ResourceManager
         return new NetworkResourceBundle(root, path, rsrcList);
     }
 
+    /**
+     * Searches the supplied bundles (in order) for the specified resource, preferring in each
+     * bundle the locale-specific path (if non-null) to the generic path.
+     *
+     * @return the resource or null if no bundle contains it.
+     */
+    protected InputStream getBundleResource (
+        ResourceBundle[] bundles, String localePath, String path)
+        throws IOException
+    {
+        BundleIndex index = getBundleIndex(bundles);
+        int hit = index.getFirst(localePath, path);
+        for (int ii = 0; ii < bundles.length; ii++) {
+            if (!shouldSearch(index, ii, hit, localePath, path)) {
+                continue;
+            }
+            InputStream in;
+            // try a localized version first
+            if (localePath != null) {
+                in = bundles[ii].getResource(localePath);
+                if (in != null) {
+                    return in;
+                }
+            }
+            // if we didn't find that, try generic
+            in = bundles[ii].getResource(path);
+            if (in != null) {
+                return in;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Searches the supplied bundles (in order) for the specified image resource, as per {@link
+     * #getBundleResource}.
+     *
+     * @return the decoded image or null if no bundle contains it.
+     */
+    protected BufferedImage getBundleImageResource (
+        ResourceBundle[] bundles, String localePath, String path)
+        throws IOException
+    {
+        BundleIndex index = getBundleIndex(bundles);
+        int hit = index.getFirst(localePath, path);
+        for (int ii = 0; ii < bundles.length; ii++) {
+            if (!shouldSearch(index, ii, hit, localePath, path)) {
+                continue;
+            }
+            BufferedImage image;
+            // try a localized version first
+            if (localePath != null) {
+                image = bundles[ii].getImageResource(localePath, false);
+                if (image != null) {
+                    return image;
+                }
+            }
+            // if we didn't find that, try generic
+            image = bundles[ii].getImageResource(path, false);
+            if (image != null) {
+                return image;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines whether we need to search the bundle at the specified position for a resource,
+     * noting the outcome in our lookup stats.
+     *
+     * @param hit the position of the first exactly indexed bundle that contains the resource, or
+     * -1.
+     */
+    protected boolean shouldSearch (
+        BundleIndex index, int idx, int hit, String localePath, String path)
+    {
+        if (idx == hit || index.mayContain(idx, localePath, path)) {
+            _indexHits.incrementAndGet();
+            return true;
+        } else if (!index.isIndexed(idx)) {
+            _bundleProbes.incrementAndGet();
+            return true;
+        } else if (idx == index.getLastIndexed() && hit == -1) {
+            // count each lookup that no indexed bundle could satisfy once
+            _indexMisses.incrementAndGet();
+        }
+        return false;
+    }
+
+    /**
+     * Returns the (possibly newly built) index for the supplied resource set.
+     */
+    protected BundleIndex getBundleIndex (ResourceBundle[] bundles)
+    {
+        int generation = _indexGeneration.get();
+        BundleIndex index = _indices.get(bundles);
+        if (index == null || index.generation != generation) {
+            // if we race with another thread, we'll just build the index twice
+            _indices.put(bundles, index = new BundleIndex(bundles, generation));
+        }
+        return index;
+    }
+
     /**
      * Returns an InputStream from this manager's classloader for the given path.
      */
     protected InputStream getInputStreamFromClasspath (final String fullyQualifiedPath)
     {
-        return AccessController.doPrivileged(new PrivilegedAction<InputStream>() {
+        // the classpath doesn't change, so there's no point in repeating a failed search
+        if (_classpathMisses.containsKey(fullyQualifiedPath)) {
+            _classpathMissHits.incrementAndGet();
+            return null;
+        }
+        InputStream in = AccessController.doPrivileged(new PrivilegedAction<InputStream>() {
             public InputStream run () {
                 return _loader.getResourceAsStream(fullyQualifiedPath);
             }
         });
+        if (in == null) {
+            _classpathMisses.put(fullyQualifiedPath, Boolean.TRUE);
+        }
+        return in;
     }
 
     /**
@@ -1018,6 +1138,115 @@ public class ResourceManager
         protected long _startTime;
     }
 
+    /**
+     * Maps resource paths to the first bundle in a resource set that contains them. Bundles that
+     * resolve paths through the file system (see {@link ResourceBundle#hasExactPaths}) are instead
+     * indexed loosely, by {@link #getLooseKey}, and are searched whenever a lookup matches loosely.
+     */
+    protected static class BundleIndex
+    {
+        /** The index generation for which this index was built. */
+        public final int generation;
+
+        public BundleIndex (ResourceBundle[] bundles, int generation) {
+            this.generation = generation;
+            _indexed = new boolean[bundles.length];
+            _loose = new Set<?>[bundles.length];
+            _lastIndexed = -1;
+            for (int ii = 0; ii < bundles.length; ii++) {
+                Set<String> paths = bundles[ii].getResourcePaths();
+                if (paths == null) {
+                    continue; // we'll have to search this bundle every time
+                }
+                _indexed[ii] = true;
+                _lastIndexed = ii;
+                if (!bundles[ii].hasExactPaths()) {
+                    Set<String> keys = new HashSet<String>(paths.size());
+                    for (String path : paths) {
+                        keys.add(getLooseKey(path));
+                    }
+                    _loose[ii] = keys;
+                    continue;
+                }
+                Integer idx = ii;
+                for (String path : paths) {
+                    if (!_first.containsKey(path)) {
+                        _first.put(path, idx);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the position of the first exactly indexed bundle that contains either of the
+         * supplied paths (the first of which may be null), or -1 if no such bundle contains
+         * either.
+         */
+        public int getFirst (String localePath, String path) {
+            Integer lidx = (localePath == null) ? null : _first.get(localePath);
+            Integer idx = _first.get(path);
+            if (lidx == null) {
+                return (idx == null) ? -1 : idx;
+            }
+            return (idx == null) ? lidx : Math.min(lidx, idx);
+        }
+
+        /**
+         * Returns true if the bundle at the specified position was loosely indexed and may
+         * contain either of the supplied paths (the first of which may be null).
+         */
+        public boolean mayContain (int idx, String localePath, String path) {
+            Set<?> keys = _loose[idx];
+            return (keys != null) && (keys.contains(getLooseKey(path)) ||
+                (localePath != null && keys.contains(getLooseKey(localePath))));
+        }
+
+        /**
+         * Returns true if the bundle at the specified position was indexed.
+         */
+        public boolean isIndexed (int idx) {
+            return _indexed[idx];
+        }
+
+        /**
+         * Returns the position of the last indexed bundle, or -1 if none were indexed.
+         */
+        public int getLastIndexed () {
+            return _lastIndexed;
+        }
+
+        /**
+         * Reduces a path to a key that matches every spelling of the path that the file system
+         * might resolve to the same file: separators are normalized, empty and "." components
+         * are dropped, ".." components are resolved and case is ignored.
+         */
+        protected static String getLooseKey (String path) {
+            List<String> comps = Lists.newArrayList();
+            for (StringTokenizer tok = new StringTokenizer(path, "/\\"); tok.hasMoreTokens(); ) {
+                String comp = tok.nextToken();
+                if (comp.equals("..") && !comps.isEmpty() &&
+                        !comps.get(comps.size() - 1).equals("..")) {
+                    comps.remove(comps.size() - 1);
+                } else if (!comp.equals(".")) {
+                    comps.add(comp);
+                }
+            }
+            StringBuilder buf = new StringBuilder(path.length());
+            for (String comp : comps) {
+                if (buf.length() > 0) {
+                    buf.append('/');
+                }
+                buf.append(comp);
+            }
+            return buf.toString().toLowerCase(Locale.ROOT);
+        }
+
+        protected HashMap<String, Integer> _first = Maps.newHashMap();
+        protected boolean[] _indexed;
+        protected Set<?>[] _loose;
+        protected int _lastIndexed;
+    }
+
     /** Contains the state of an observed file resource. */
     protected static class ObservedResource
     {
@@ -1097,12 +1326,31 @@ public class ResourceManager
     /** Converts a path to a locale-specific path. */
     protected LocaleHandler _localeHandler;
 
+    /** The indices of our resource sets, keyed on (the identity of) the sets' bundle arrays. */
+    protected Map<ResourceBundle[], BundleIndex> _indices =
+        new ConcurrentHashMap<ResourceBundle[], BundleIndex>();
+
+    /** Incremented whenever our resource set indices are invalidated. */
+    protected AtomicInteger _indexGeneration = new AtomicInteger();
+
+    /** Fully qualified paths of (the most recently requested) resources known not to be on the
+     * classpath. */
+    protected Map<String, Boolean> _classpathMisses = Collections.synchronizedMap(
+        new LRUHashMap<String, Boolean>(MAX_CLASSPATH_MISSES));
+
+    /** Lookup statistics; see {@link #getLookupStats}. */
+    protected AtomicInteger _indexHits = new AtomicInteger(), _indexMisses = new AtomicInteger(),
+        _bundleProbes = new AtomicInteger(), _classpathMissHits = new AtomicInteger();
+
     /** Maps resource paths to observed file resources. */
     protected HashMap<String, ObservedResource> _observed = Maps.newHashMap();
 
     /** A reusable instance of {@link ResourceModifiedOp}. */
     protected static ResourceModifiedOp _resourceModifiedOp = new ResourceModifiedOp();
 
+    /** The maximum number of classpath misses we remember. */
+    protected static final int MAX_CLASSPATH_MISSES = 4096;
+
     /** The prefix of configuration entries that describe a resource set. */
     protected static final String RESOURCE_SET_PREFIX = "resource.set.";
 
@@ -43,5 +43,14 @@ public class IntStatIncrementer extends StatModifier<IntStat>
         stat.increment(_delta);
     }
 
+    @Override // from StatModifier
+    public StatModifier<IntStat> merge (StatModifier<IntStat> next)
+    {
+        if (!(next instanceof IntStatIncrementer)) {
+            return null;
+        }
+        return new IntStatIncrementer(_type, _delta + ((IntStatIncrementer)next)._delta);
+    }
+
     protected int _delta;
 }
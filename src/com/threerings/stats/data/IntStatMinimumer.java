@@ -46,5 +46,14 @@ public class IntStatMinimumer extends StatModifier<IntStat>
         }
     }
 
+    @Override // from StatModifier
+    public StatModifier<IntStat> merge (StatModifier<IntStat> next)
+    {
+        if (!(next instanceof IntStatMinimumer)) {
+            return null;
+        }
+        return new IntStatMinimumer(_type, Math.max(_minimum, ((IntStatMinimumer)next)._minimum));
+    }
+
     protected int _minimum;
 }
@@ -77,6 +77,16 @@ public abstract class StatModifier<T extends Stat>
      */
     public abstract void modify (T stat);
 
+    /**
+     * Returns a single modifier with the same effect as applying this modifier followed by the
+     * supplied modifier (of the same stat type), or null if the two cannot be combined. This
+     * allows modifications to be coalesced before they are written to the database.
+     */
+    public StatModifier<T> merge (StatModifier<T> next)
+    {
+        return null;
+    }
+
     /** The type of the stat on which we're operating. */
     protected transient Stat.Type _type;
 }
@@ -0,0 +1,645 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.stats.server.persist;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.samskivert.io.StreamUtil;
+import com.samskivert.util.IntMap;
+import com.samskivert.util.IntMaps;
+import com.samskivert.util.Interval;
+import com.samskivert.util.RunQueue;
+
+import com.samskivert.depot.Key;
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.stats.data.Stat;
+import com.threerings.stats.data.StatModifier;
+
+import static com.threerings.stats.Log.log;
+
+/**
+ * Collects stat modifications in memory and writes them to a {@link StatRepository} behind the
+ * backs of the callers. Modifications to the same stat of the same player are coalesced (see
+ * {@link StatModifier#merge}) and written together, and each flush loads the stats it is about to
+ * modify in batches, so a stat that is modified thousands of times between flushes costs one
+ * read-modify-write cycle. Each write is made with the same optimistic concurrency (by
+ * <code>modCount</code>) as {@link StatRepository#updateStat(int,StatModifier)}, so aggregators
+ * on any number of servers may safely modify the same stats.
+ *
+ * <p> Every modification is appended to a local journal before it is queued, and a record of
+ * each successful write is appended once it is made. If the server exits before queued
+ * modifications are written, the next aggregator to use the same journal directory will recover
+ * them and write them on its first flush. (A modification written just before a crash, whose
+ * record of writing had not yet reached the journal, will be applied again.)
+ *
+ * <p> Journal records are appended with one unbuffered write apiece, made by the thread queueing
+ * the modification while it holds the aggregator's monitor, and are never forced to disk. The
+ * journal thus survives the server process exiting or crashing, but modifications journaled
+ * shortly before the operating system crashes or the machine loses power may be lost along with
+ * the journal's unflushed pages. Each modification also costs its caller a system call, and
+ * callers queueing concurrently wait on one another's writes.
+ *
+ * <p> Modifications may be queued from any thread. Flushes access the database and should thus
+ * happen on an invoker thread; {@link #start} arranges for periodic flushes on the supplied
+ * invoker, and {@link #flush(int)} should be called when a player's session ends.
+ */
+public class StatAggregator
+{
+    /**
+     * Creates an aggregator that writes to the supplied repository and journals into the supplied
+     * directory, recovering any modifications journaled but not written by a previous aggregator.
+     *
+     * @param journalDir the directory in which to journal modifications, which must be used by no
+     * other aggregator, or null to aggregate without journaling.
+     *
+     * @exception IOException thrown if the journal cannot be created.
+     */
+    public StatAggregator (StatRepository repo, File journalDir)
+        throws IOException
+    {
+        _repo = repo;
+        _journalDir = journalDir;
+        if (_journalDir != null) {
+            if (!_journalDir.isDirectory() && !_journalDir.mkdirs()) {
+                throw new IOException("Unable to create stat journal directory " + _journalDir);
+            }
+            recover();
+        }
+    }
+
+    /**
+     * Arranges for all queued modifications to be flushed periodically on the supplied invoker.
+     */
+    public void start (RunQueue invoker, long period)
+    {
+        if (_flusher != null) {
+            _flusher.cancel();
+        }
+        _flusher = new Interval(invoker) {
+            @Override public void expired () {
+                flush();
+            }
+        };
+        _flusher.schedule(period, true);
+    }
+
+    /**
+     * Stops our periodic flushes, flushes all queued modifications and closes our journal. This
+     * should be called on the invoker thread once no further modifications will be queued.
+     */
+    public void shutdown ()
+    {
+        if (_flusher != null) {
+            _flusher.cancel();
+            _flusher = null;
+        }
+        flush();
+        synchronized (this) {
+            closeJournal();
+        }
+    }
+
+    /**
+     * Queues a modification to a stat of the specified player, to be written on the next flush.
+     * If we are journaling, the modification is appended to the journal before this returns.
+     */
+    public synchronized <T extends Stat> void queueModification (
+        int playerId, StatModifier<T> modifier)
+    {
+        long seq = _nextSeq++;
+        if (_jout != null) {
+            try {
+                writeModification(seq, playerId, modifier);
+            } catch (IOException ioe) {
+                log.warning("Failed to journal stat modification, journaling suspended until " +
+                            "next flush", "journal", _jfile, ioe);
+                closeJournal();
+            }
+        }
+        @SuppressWarnings("unchecked") StatModifier<Stat> smod = (StatModifier<Stat>)modifier;
+        enqueue(playerId, smod, seq);
+    }
+
+    /**
+     * Returns the number of stats with modifications waiting to be written.
+     */
+    public synchronized int getPendingCount ()
+    {
+        int count = 0;
+        for (IntMap<Pending> stats : _pending.values()) {
+            count += stats.size();
+        }
+        return count;
+    }
+
+    /**
+     * Writes all queued modifications to the database. Modifications that cannot be written are
+     * queued again, to be retried on the next flush.
+     */
+    public void flush ()
+    {
+        synchronized (_flushLock) {
+            IntMap<IntMap<Pending>> pending;
+            synchronized (this) {
+                pending = _pending;
+                _pending = IntMaps.newHashIntMap();
+                // start a new journal so that the old ones can go once everything in them is
+                // written (the modifications in them can only be in the batch we just took)
+                rollJournal();
+            }
+            List<Pending> batch = Lists.newArrayList();
+            for (IntMap<Pending> stats : pending.values()) {
+                batch.addAll(stats.values());
+            }
+            if (write(batch)) {
+                deleteObsoleteJournals();
+            }
+        }
+    }
+
+    /**
+     * Writes the queued modifications to the specified player's stats to the database. This
+     * should be called when a player's session ends.
+     */
+    public void flush (int playerId)
+    {
+        synchronized (_flushLock) {
+            IntMap<Pending> stats;
+            synchronized (this) {
+                stats = _pending.remove(playerId);
+            }
+            if (stats != null) {
+                write(Lists.newArrayList(stats.values()));
+            }
+        }
+    }
+
+    /**
+     * Writes the supplied pending modifications to the database, loading the affected stats in
+     * batches. Modifications that fail to be written are queued again.
+     *
+     * @return true if all modifications were written, false if any were queued again.
+     */
+    protected boolean write (List<Pending> pending)
+    {
+        boolean success = true;
+        for (List<Pending> batch : Lists.partition(pending, WRITE_BATCH_SIZE)) {
+            // load the current versions of all of the stats in the batch at once
+            Map<Key<StatRecord>, StatRecord> records = Maps.newHashMap();
+            try {
+                List<Key<StatRecord>> keys = Lists.newArrayListWithCapacity(batch.size());
+                for (Pending pend : batch) {
+                    keys.add(StatRecord.getKey(pend.playerId, pend.getType().code()));
+                }
+                for (StatRecord record : _repo.loadAll(keys)) {
+                    records.put(StatRecord.getKey(record.playerId, record.statCode), record);
+                }
+            } catch (Exception e) {
+                log.warning("Failed to load stats for writing", "count", batch.size(), e);
+                requeue(batch);
+                success = false;
+                continue;
+            }
+
+            for (Pending pend : batch) {
+                try {
+                    int code = pend.getType().code();
+                    write(pend, records.get(StatRecord.getKey(pend.playerId, code)));
+                    noteWritten(pend);
+                } catch (Exception e) {
+                    log.warning("Failed to write stat modifications", "playerId", pend.playerId,
+                                "stat", pend.getType(), e);
+                    requeue(Arrays.asList(pend));
+                    success = false;
+                }
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Applies the supplied pending modifications to the supplied (prefetched and possibly null)
+     * record and writes the result, falling back to {@link StatRepository#updateStat} if another
+     * writer modified the stat in the meantime.
+     */
+    protected void write (Pending pend, StatRecord record)
+    {
+        Stat stat = (record == null) ? pend.getType().newStat() :
+            _repo.decodeStat(record.statCode, record.statData, record.modCount);
+        if (stat == null) {
+            log.warning("Dropping modifications to undecodable stat", "playerId", pend.playerId,
+                        "stat", pend.getType(), "modifiers", pend.modifiers);
+            return;
+        }
+        pend.modify(stat);
+        if (stat.isModified() && !_repo.updateStat(pend.playerId, stat, false)) {
+            // we collided with another writer, so go through the usual reload and retry process
+            _repo.updateStat(pend.playerId, pend);
+        }
+    }
+
+    /**
+     * Records in the journal that the supplied modifications have been written.
+     */
+    protected synchronized void noteWritten (Pending pend)
+    {
+        if (_jout == null) {
+            return;
+        }
+        try {
+            _jout.writeByte(WRITTEN);
+            _jout.writeInt(pend.playerId);
+            _jout.writeInt(pend.getType().code());
+            _jout.writeLong(pend.maxSeq);
+            appendRecord();
+        } catch (IOException ioe) {
+            log.warning("Failed to journal stat write, journaling suspended until next flush",
+                        "journal", _jfile, ioe);
+            closeJournal();
+        }
+    }
+
+    /**
+     * Appends a modification record to the journal. The caller must hold our monitor.
+     */
+    protected void writeModification (long seq, int playerId, StatModifier<?> modifier)
+        throws IOException
+    {
+        _jout.writeByte(MODIFICATION);
+        _jout.writeLong(seq);
+        _jout.writeInt(playerId);
+        _jout.writeObject(modifier);
+        appendRecord();
+    }
+
+    /**
+     * Appends the record just encoded into {@link #_jbuf} to the journal file with a single write,
+     * so that a failure while encoding a record never leaves part of it in the journal. The caller
+     * must hold our monitor.
+     */
+    protected void appendRecord ()
+        throws IOException
+    {
+        try {
+            _jout.flush();
+            _jbuf.writeTo(_jfout);
+        } finally {
+            _jbuf.reset();
+        }
+    }
+
+    /**
+     * Queues the supplied (unwritten) modifications again, ahead of any modifications to the same
+     * stats queued in the meantime.
+     */
+    protected synchronized void requeue (Collection<Pending> pending)
+    {
+        for (Pending pend : pending) {
+            IntMap<Pending> stats = getStats(pend.playerId);
+            Pending newer = stats.put(pend.getType().code(), pend);
+            if (newer != null) {
+                for (StatModifier<Stat> modifier : newer.modifiers) {
+                    pend.add(modifier, newer.maxSeq);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a modification to our queue. The caller must hold our monitor.
+     */
+    protected void enqueue (int playerId, StatModifier<Stat> modifier, long seq)
+    {
+        IntMap<Pending> stats = getStats(playerId);
+        int code = modifier.getType().code();
+        Pending pend = stats.get(code);
+        if (pend == null) {
+            stats.put(code, pend = new Pending(playerId, modifier.getType()));
+        }
+        pend.add(modifier, seq);
+    }
+
+    /**
+     * Returns the map of pending modifications to the specified player's stats, creating it if
+     * necessary. The caller must hold our monitor.
+     */
+    protected IntMap<Pending> getStats (int playerId)
+    {
+        IntMap<Pending> stats = _pending.get(playerId);
+        if (stats == null) {
+            _pending.put(playerId, stats = IntMaps.<Pending>newHashIntMap());
+        }
+        return stats;
+    }
+
+    /**
+     * Reads the journals left behind by a previous aggregator, queueing any modifications that it
+     * did not write, and opens our own journal.
+     */
+    protected void recover ()
+        throws IOException
+    {
+        File[] files = _journalDir.listFiles();
+        List<File> journals = Lists.newArrayList();
+        for (File file : (files == null) ? new File[0] : files) {
+            if (getJournalNumber(file) >= 0) {
+                journals.add(file);
+            }
+        }
+        Collections.sort(journals, new Comparator<File>() {
+            public int compare (File f1, File f2) {
+                return Long.signum(getJournalNumber(f1) - getJournalNumber(f2));
+            }
+        });
+
+        // read all of the modifications and write records in order
+        Map<Long, Object[]> mods = Maps.newLinkedHashMap();
+        Map<Long, Long> written = Maps.newHashMap();
+        for (File journal : journals) {
+            _nextJournal = Math.max(_nextJournal, getJournalNumber(journal) + 1);
+            readJournal(journal, mods, written);
+        }
+
+        synchronized (this) {
+            // open a new journal into which we copy the unwritten modifications (under their
+            // original sequence numbers, so that we never recover them twice); the old journals
+            // are deleted once the recovered modifications have been flushed
+            _obsolete.addAll(journals);
+            rollJournal();
+
+            // never reuse a sequence number recorded as written, even if the modifications
+            // bearing it were in journals that have since been deleted
+            for (long wseq : written.values()) {
+                _nextSeq = Math.max(_nextSeq, wseq + 1);
+            }
+
+            int recovered = 0;
+            for (Map.Entry<Long, Object[]> entry : mods.entrySet()) {
+                long seq = entry.getKey();
+                int playerId = (Integer)entry.getValue()[0];
+                @SuppressWarnings("unchecked") StatModifier<Stat> modifier =
+                    (StatModifier<Stat>)entry.getValue()[1];
+                Long wseq = written.get(getStatKey(playerId, modifier.getType().code()));
+                _nextSeq = Math.max(_nextSeq, seq + 1);
+                if (wseq != null && seq <= wseq) {
+                    continue;
+                }
+                if (_jout != null) {
+                    writeModification(seq, playerId, modifier);
+                }
+                enqueue(playerId, modifier, seq);
+                recovered++;
+            }
+            if (recovered > 0) {
+                log.info("Recovered unwritten stat modifications", "count", recovered,
+                         "stats", getPendingCount(), "journals", journals);
+            }
+        }
+    }
+
+    /**
+     * Reads the supplied journal, adding its modifications (keyed on sequence number) to the
+     * supplied map and noting for each stat the highest sequence number recorded as written.
+     */
+    protected void readJournal (File journal, Map<Long, Object[]> mods, Map<Long, Long> written)
+    {
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(journal)));
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException eofe) {
+                    break; // we've reached the end of the journal
+                }
+                if (type == MODIFICATION) {
+                    long seq = in.readLong();
+                    int playerId = in.readInt();
+                    Object modifier = in.readObject();
+                    // recovered modifications may appear in more than one journal
+                    if (!mods.containsKey(seq)) {
+                        mods.put(seq, new Object[] { playerId, modifier });
+                    }
+                } else if (type == WRITTEN) {
+                    long key = getStatKey(in.readInt(), in.readInt());
+                    long seq = in.readLong();
+                    Long oseq = written.get(key);
+                    written.put(key, (oseq == null) ? seq : Math.max(oseq, seq));
+                } else {
+                    throw new IOException("Unknown journal record type " + type);
+                }
+            }
+        } catch (Exception e) {
+            // a record may have been partially written when we crashed, in which case we have
+            // all of the records that preceded it
+            log.warning("Failed to read entire stat journal", "journal", journal, "error", e);
+        } finally {
+            StreamUtil.close(in);
+        }
+    }
+
+    /**
+     * Closes our current journal (if any) and opens a new one, noting the old journals as
+     * obsolete. The caller must hold our monitor.
+     */
+    protected void rollJournal ()
+    {
+        if (_journalDir == null) {
+            return;
+        }
+        if (_jfile != null) {
+            closeJournal();
+            _obsolete.add(_jfile);
+        }
+        _jfile = new File(_journalDir, JOURNAL_PREFIX + (_nextJournal++) + JOURNAL_SUFFIX);
+        try {
+            _jfout = new FileOutputStream(_jfile);
+        } catch (IOException ioe) {
+            log.warning("Failed to open stat journal", "journal", _jfile, ioe);
+            return;
+        }
+        // records are encoded into a buffer and appended to the file whole; the object stream
+        // persists across records, as the class mappings it writes are shared by all of them
+        _jbuf = new ByteArrayOutputStream();
+        _jout = new ObjectOutputStream(_jbuf);
+    }
+
+    /**
+     * Closes our current journal (if any), suspending journaling until the next roll. The caller
+     * must hold our monitor.
+     */
+    protected void closeJournal ()
+    {
+        StreamUtil.close(_jfout);
+        _jfout = null;
+        _jout = null;
+        _jbuf = null;
+    }
+
+    /**
+     * Deletes the journals whose modifications have all been written.
+     */
+    protected void deleteObsoleteJournals ()
+    {
+        List<File> obsolete;
+        synchronized (this) {
+            obsolete = Lists.newArrayList(_obsolete);
+            _obsolete.clear();
+        }
+        for (File journal : obsolete) {
+            if (!journal.delete()) {
+                log.warning("Failed to delete obsolete stat journal", "journal", journal);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of the supplied journal file, or -1 if it is not a journal.
+     */
+    protected static long getJournalNumber (File file)
+    {
+        String name = file.getName();
+        if (!name.startsWith(JOURNAL_PREFIX) || !name.endsWith(JOURNAL_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(
+                JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length()));
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    /**
+     * Combines a player id and stat code into a single key.
+     */
+    protected static long getStatKey (int playerId, int statCode)
+    {
+        return ((long)playerId << 32) | (statCode & 0xFFFFFFFFL);
+    }
+
+    /** The modifications queued for a single stat of a single player. */
+    protected static class Pending extends StatModifier<Stat>
+    {
+        /** The player whose stat is to be modified. */
+        public final int playerId;
+
+        /** The modifications to apply, in order. */
+        public final List<StatModifier<Stat>> modifiers = Lists.newArrayListWithCapacity(1);
+
+        /** The highest sequence number of the modifications. */
+        public long maxSeq = -1;
+
+        public Pending (int playerId, Stat.Type type) {
+            super(type);
+            this.playerId = playerId;
+        }
+
+        /**
+         * Adds a modification, merging it with the last one if possible.
+         */
+        public void add (StatModifier<Stat> modifier, long seq) {
+            int last = modifiers.size() - 1;
+            StatModifier<Stat> merged = (last < 0) ? null : modifiers.get(last).merge(modifier);
+            if (merged != null) {
+                modifiers.set(last, merged);
+            } else {
+                modifiers.add(modifier);
+            }
+            maxSeq = Math.max(maxSeq, seq);
+        }
+
+        @Override // from StatModifier
+        public void modify (Stat stat) {
+            for (StatModifier<Stat> modifier : modifiers) {
+                modifier.modify(stat);
+            }
+        }
+    }
+
+    /** The repository to which we write. */
+    protected StatRepository _repo;
+
+    /** Our pending modifications, by player id and stat code. */
+    protected IntMap<IntMap<Pending>> _pending = IntMaps.newHashIntMap();
+
+    /** The sequence number to assign to the next modification. */
+    protected long _nextSeq;
+
+    /** Prevents flushes from overlapping. */
+    protected Object _flushLock = new Object();
+
+    /** Our periodic flusher, if started. */
+    protected Interval _flusher;
+
+    /** The directory in which we keep our journals, or null. */
+    protected File _journalDir;
+
+    /** Our current journal file. */
+    protected File _jfile;
+
+    /** The stream to our current journal file, or null if we're not journaling. */
+    protected FileOutputStream _jfout;
+
+    /** Holds each journal record as it is encoded, until it is appended to the file. */
+    protected ByteArrayOutputStream _jbuf;
+
+    /** The stream with which we encode journal records into {@link #_jbuf}, or null if we're not
+     * journaling. */
+    protected ObjectOutputStream _jout;
+
+    /** The number of the next journal we'll open. */
+    protected long _nextJournal;
+
+    /** Journals that can be deleted once the modifications they contain have been written. */
+    protected Set<File> _obsolete = Sets.newLinkedHashSet();
+
+    /** The maximum number of stats loaded with a single query. */
+    protected static final int WRITE_BATCH_SIZE = 100;
+
+    /** Journal record types. */
+    protected static final byte MODIFICATION = 0, WRITTEN = 1;
+
+    /** Journal file names. */
+    protected static final String JOURNAL_PREFIX = "stats.", JOURNAL_SUFFIX = ".journal";
+}
@@ -1359,6 +1359,16 @@ public class TudeySceneModel extends SceneModel
      */
     public void init (ConfigManager cfgmgr)
     {
+        // instances share their prototype's config manager and shadow data and need only create
+        // their own space elements
+        if (_elementsPending) {
+            _elementsPending = false;
+            for (Entry entry : _entries.values()) {
+                addSpaceElement(entry);
+            }
+            return;
+        }
+
         // make sure we're not already initialized
         if (_cfgmgr.isInitialized()) {
             return;
@@ -1825,6 +1835,7 @@ public class TudeySceneModel extends SceneModel
     {
         // position must be between 1 and the size of layers + 1
         Preconditions.checkNotNull(name);
+        unshareEntries();
         _layers.add(position - 1, name);
         return position; // assume it worked
     }
@@ -1836,6 +1847,7 @@ public class TudeySceneModel extends SceneModel
     {
         Preconditions.checkArgument(validateLayer(layer) != 0, "Cannot rename layer 0");
         Preconditions.checkNotNull(name);
+        unshareEntries();
         _layers.set(layer - 1, name);
     }
 
@@ -1862,6 +1874,7 @@ public class TudeySceneModel extends SceneModel
     public void removeLayer (int layer)
     {
         Preconditions.checkArgument(validateLayer(layer) != 0, "Cannot remove layer 0");
+        unshareEntries();
         _layers.remove(layer - 1);
         // adjust any entries at higher layers
         for (Iterator<Map.Entry<Integer, Integer>> itr = _layerMap.entrySet().iterator();
@@ -1925,6 +1938,7 @@ public class TudeySceneModel extends SceneModel
      */
     public Paint setPaint (int x, int y, Paint paint)
     {
+        unshareTiles();
         int ovalue;
         if (paint == null) {
             ovalue = _paint.remove(x, y);
@@ -1956,6 +1970,7 @@ public class TudeySceneModel extends SceneModel
      */
     public void clearPaint ()
     {
+        unshareTiles();
         _paint.clear();
         _paintConfigs.clear();
         _paintConfigIds.clear();
@@ -2484,6 +2499,47 @@ public class TudeySceneModel extends SceneModel
         return direction;
     }
 
+    /**
+     * Creates an instance of this model for use by another scene. Rather than copying this
+     * model's tiles, entries, paint, layers and shadow flags, the instance shares them until either
+     * it or this model is first modified, at which point the modified model takes its own copy of
+     * the data affected: its entry mappings when the entries or layers change, and its tiles,
+     * paint and shadow data when the tiles or paint change.
+     * This model must have been initialized, and the instance must itself be {@link #init}ialized
+     * before use, which creates its own space elements (those are mutated by queries and so are
+     * never shared).
+     */
+    public TudeySceneModel createInstance ()
+    {
+        TudeySceneModel model = new TudeySceneModel();
+        model.sceneId = sceneId;
+        model.name = name;
+        model.version = version;
+        model.auxModels = auxModels;
+        model._notes = _notes;
+        model._placeConfig = _placeConfig;
+        model._cfgmgr = _cfgmgr;
+        model._tiles = _tiles;
+        model._tileConfigs = _tileConfigs;
+        model._tileConfigIds = _tileConfigIds;
+        model._entries = _entries;
+        model._paint = _paint;
+        model._paintConfigs = _paintConfigs;
+        model._paintConfigIds = _paintConfigIds;
+        model._layers = _layers;
+        model._layerMap = _layerMap;
+        model._tagged = _tagged;
+        model._lastEntryId = _lastEntryId;
+        model._references = _references;
+        model._tileCoords = _tileCoords;
+        model._collisionFlags = _collisionFlags;
+        model._directionFlags = _directionFlags;
+        model._entriesShared = _entriesShared = true;
+        model._tilesShared = _tilesShared = true;
+        model._elementsPending = true;
+        return model;
+    }
+
     @Override
     public TudeySceneModel clone ()
     {
@@ -2528,6 +2584,83 @@ public class TudeySceneModel extends SceneModel
         return model;
     }
 
+    /**
+     * Checks whether this model currently shares its data with other instances.
+     */
+    public boolean isShared ()
+    {
+        return _entriesShared || _tilesShared;
+    }
+
+    /**
+     * Takes a private copy of the entry mappings, layers and tag mappings shared with other
+     * instances of the model, if we have not already done so. This must be called before any
+     * modification of that data.
+     */
+    protected void unshareEntries ()
+    {
+        if (!_entriesShared) {
+            return;
+        }
+        _entriesShared = false;
+
+        // the entries themselves are never modified in place, so we need only copy the mappings
+        _entries = Maps.newHashMap(_entries);
+        _layers = Lists.newArrayList(_layers);
+        _layerMap = Maps.newHashMap(_layerMap);
+        _tagged = ArrayListMultimap.create(_tagged);
+        _references = new WeakHashMap<ConfigReference<?>, ConfigReference<?>>(_references);
+    }
+
+    /**
+     * Takes a private copy of the tiles, paint and shadow data shared with other instances of the
+     * model, if we have not already done so. This must be called before any modification of that
+     * data (the tag mappings of tiles are copied with the entries, by {@link #mapEntry} and
+     * {@link #unmapEntry}).
+     */
+    protected void unshareTiles ()
+    {
+        if (!_tilesShared) {
+            return;
+        }
+        _tilesShared = false;
+
+        // copy the tiles and their configs, preserving the reference counts
+        _tiles = new CoordIntMap(_tiles);
+        ArrayList<TileConfigMapping> tileConfigs = Lists.newArrayListWithCapacity(
+            _tileConfigs.size());
+        for (TileConfigMapping mapping : _tileConfigs) {
+            TileConfigMapping nmapping = null;
+            if (mapping != null) {
+                nmapping = new TileConfigMapping(mapping.tile);
+                nmapping.count = mapping.count;
+            }
+            tileConfigs.add(nmapping);
+        }
+        _tileConfigs = tileConfigs;
+        _tileConfigIds = Maps.newHashMap(_tileConfigIds);
+
+        // likewise with the paint
+        _paint = new CoordIntMap(_paint);
+        ArrayList<PaintConfigMapping> paintConfigs = Lists.newArrayListWithCapacity(
+            _paintConfigs.size());
+        for (PaintConfigMapping mapping : _paintConfigs) {
+            PaintConfigMapping nmapping = null;
+            if (mapping != null) {
+                nmapping = new PaintConfigMapping(mapping.paintable);
+                nmapping.count = mapping.count;
+            }
+            paintConfigs.add(nmapping);
+        }
+        _paintConfigs = paintConfigs;
+        _paintConfigIds = Maps.newHashMap(_paintConfigIds);
+
+        // and the shadow data
+        _tileCoords = new CoordIntMap(_tileCoords);
+        _collisionFlags = new CoordIntMap(_collisionFlags);
+        _directionFlags = new CoordIntMap(_directionFlags);
+    }
+
     /**
      * Performs the actual addition of the specified entry.
      *
@@ -2537,6 +2670,7 @@ public class TudeySceneModel extends SceneModel
     {
         validateLayer(layer);
         if (entry instanceof TileEntry) {
+            unshareTiles();
             TileEntry tentry = (TileEntry)entry;
             Coord coord = tentry.getLocation();
             int idx = addTileConfig(tentry.tile);
@@ -2550,6 +2684,7 @@ public class TudeySceneModel extends SceneModel
             createShadow(tentry);
 
         } else {
+            unshareEntries();
             Entry oentry = _entries.put(entry.getKey(), entry);
             if (oentry != null) {
                 // replace the old entry (a warning will be logged)
@@ -2573,6 +2708,7 @@ public class TudeySceneModel extends SceneModel
     protected Entry update (Entry nentry)
     {
         if (!(nentry instanceof TileEntry)) {
+            unshareEntries();
             Entry oentry = _entries.put(nentry.getKey(), nentry);
             if (oentry == null) {
                 // remove the entry (a warning will be logged)
@@ -2585,6 +2721,7 @@ public class TudeySceneModel extends SceneModel
             }
             return oentry;
         }
+        unshareTiles();
         TileEntry tentry = (TileEntry)nentry;
         Coord coord = tentry.getLocation();
         int idx = addTileConfig(tentry.tile);
@@ -2611,6 +2748,7 @@ public class TudeySceneModel extends SceneModel
     protected Entry remove (Object key)
     {
         if (!(key instanceof Coord)) {
+            unshareEntries();
             _layerMap.remove(key);
             Entry oentry = _entries.remove(key);
             if (oentry != null) {
@@ -2619,6 +2757,7 @@ public class TudeySceneModel extends SceneModel
             }
             return oentry;
         }
+        unshareTiles();
         Coord coord = (Coord)key;
         int ovalue = _tiles.remove(coord.x, coord.y);
         if (ovalue == -1) {
@@ -2635,15 +2774,23 @@ public class TudeySceneModel extends SceneModel
      * Adds the entry's space element to the hash space and maps it by its tags.
      */
     protected void addElement (Entry entry)
+    {
+        addSpaceElement(entry);
+
+        // map the entry by its tags
+        mapEntry(entry);
+    }
+
+    /**
+     * Adds the entry's space element (if it has one) to the hash space.
+     */
+    protected void addSpaceElement (Entry entry)
     {
         SpaceElement element = entry.createElement(_cfgmgr);
         if (element != null) {
             _space.add(element);
             _elements.put(entry.getKey(), element);
         }
-
-        // map the entry by its tags
-        mapEntry(entry);
     }
 
     /**
@@ -2668,11 +2815,12 @@ public class TudeySceneModel extends SceneModel
         int pair = entry.getLocation().encode();
         TileConfig.Original config = entry.getConfig(_cfgmgr);
         entry.getRegion(config, _region);
+
+        // add to tile coordinate mapping
+        _tileCoords.putAll(_region, pair);
+
         for (int yy = _region.y, yymax = yy + _region.height; yy < yymax; yy++) {
             for (int xx = _region.x, xxmax = xx + _region.width; xx < xxmax; xx++) {
-                // add to tile coordinate mapping
-                _tileCoords.put(xx, yy, pair);
-
                 // add the collision flags, if any
                 int flags = entry.getCollisionFlags(config, xx, yy);
                 if (flags != 0) {
@@ -2697,18 +2845,9 @@ public class TudeySceneModel extends SceneModel
     protected void deleteShadow (TileEntry entry)
     {
         entry.getRegion(entry.getConfig(_cfgmgr), _region);
-        for (int yy = _region.y, yymax = yy + _region.height; yy < yymax; yy++) {
-            for (int xx = _region.x, xxmax = xx + _region.width; xx < xxmax; xx++) {
-                // remove from tile coordinate mapping
-                _tileCoords.remove(xx, yy);
-
-                // remove collision flags
-                _collisionFlags.remove(xx, yy);
-
-                // remove direction flags
-                _directionFlags.remove(xx, yy);
-            }
-        }
+        _tileCoords.removeAll(_region);
+        _collisionFlags.removeAll(_region);
+        _directionFlags.removeAll(_region);
 
         // remove the tag mappings
         unmapEntry(entry);
@@ -2719,7 +2858,11 @@ public class TudeySceneModel extends SceneModel
      */
     protected void mapEntry (Entry entry)
     {
-        for (String tag : entry.getTags(_cfgmgr)) {
+        String[] tags = entry.getTags(_cfgmgr);
+        if (tags.length > 0) {
+            unshareEntries();
+        }
+        for (String tag : tags) {
             _tagged.put(tag, entry);
         }
     }
@@ -2729,7 +2872,11 @@ public class TudeySceneModel extends SceneModel
      */
     protected void unmapEntry (Entry entry)
     {
-        for (String tag : entry.getTags(_cfgmgr)) {
+        String[] tags = entry.getTags(_cfgmgr);
+        if (tags.length > 0) {
+            unshareEntries();
+        }
+        for (String tag : tags) {
             _tagged.remove(tag, entry);
         }
     }
@@ -2910,9 +3057,15 @@ public class TudeySceneModel extends SceneModel
     protected boolean setEntryLayer (Object key, int layer)
     {
         if (layer == 0) {
+            // (tiles are always on layer 0, so adding them needn't copy the entry mappings)
+            if (!_layerMap.containsKey(key)) {
+                return false;
+            }
+            unshareEntries();
             return (null != _layerMap.remove(key));
 
         } else {
+            unshareEntries();
             Preconditions.checkArgument((key instanceof Integer),
                 "Tiles may only be placed on layer 0");
             Integer layerVal = layer;
@@ -3057,6 +3210,16 @@ public class TudeySceneModel extends SceneModel
     /** The last entry id assigned. */
     protected transient int _lastEntryId;
 
+    /** Whether we share our entry, layer and tag mappings with other instances of the model (see
+     * {@link #createInstance}). */
+    protected transient boolean _entriesShared;
+
+    /** Whether we share our tile, paint and shadow data with other instances of the model. */
+    protected transient boolean _tilesShared;
+
+    /** Set on instances that have yet to create their space elements. */
+    protected transient boolean _elementsPending;
+
     /** The set of entry references (used to ensure that entries with equal references use the same
      * instance. */
     @DeepOmit
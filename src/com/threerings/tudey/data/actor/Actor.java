@@ -366,7 +366,9 @@ public class Actor extends DeepObject
         // we handle base class fields "manually" for performance reasons, since they get called
         // often and the reflective implementation is comparatively slow
         Actor result = (Actor)super.copy(dest);
-        result._config = _config.clone();
+        if (result._config == _config || !_config.equals(result._config)) {
+            result._config = _config.clone();
+        }
         result._id = _id;
         result._created = _created;
         result._destroyed = _destroyed;
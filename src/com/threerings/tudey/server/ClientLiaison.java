@@ -149,6 +149,16 @@ public class ClientLiaison
         return _lastInput;
     }
 
+    /**
+     * Returns the timestamp of the oldest tick record retained for the client (the last
+     * acknowledged tick).  Actor snapshots handed out on this tick or later may still be
+     * referenced by the liaison.
+     */
+    public int getOldestRecordTimestamp ()
+    {
+        return _records.get(0).getTimestamp();
+    }
+
     /**
      * Notes that the client has successfully entered the place.
      */
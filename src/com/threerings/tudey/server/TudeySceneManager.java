@@ -354,6 +354,15 @@ public class TudeySceneManager extends SceneManager
         return _previousTimestamp;
     }
 
+    /**
+     * Returns the timestamp of the oldest tick whose actor snapshots may still be referenced by
+     * client liaisons.  Snapshots retired on or before this tick may be reused.
+     */
+    public int getSnapshotHorizon ()
+    {
+        return _snapshotHorizon;
+    }
+
     /**
      * Returns the approximate timestamp of the next tick.
      */
@@ -1517,6 +1526,12 @@ public class TudeySceneManager extends SceneManager
         _timestamp += (int)(now - _lastTick);
         _lastTick = now;
 
+        // find the oldest tick whose snapshots the clients may still reference
+        _snapshotHorizon = _timestamp;
+        for (ClientLiaison client : _clients.values()) {
+            _snapshotHorizon = Math.min(_snapshotHorizon, client.getOldestRecordTimestamp());
+        }
+
         // copy the runnables into another list and clear
         synchronized (_runnables) {
             _runlist.addAll(_runnables);
@@ -1763,6 +1778,9 @@ public class TudeySceneManager extends SceneManager
     /** The timestamp of the current and previous ticks. */
     protected int _timestamp, _previousTimestamp;
 
+    /** The oldest tick whose actor snapshots may still be referenced by clients. */
+    protected int _snapshotHorizon;
+
     /** The time at which the last occupant left. */
     protected long _emptyTime;
 
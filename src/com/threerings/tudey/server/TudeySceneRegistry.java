@@ -26,10 +26,13 @@
 package com.threerings.tudey.server;
 
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentMap;
 
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
+import com.samskivert.io.PersistenceException;
 import com.samskivert.util.HashIntMap;
 import com.samskivert.util.Interval;
 import com.samskivert.util.IntMap.IntEntry;
@@ -46,6 +49,7 @@ import com.threerings.whirled.client.SceneService;
 import com.threerings.whirled.data.SceneModel;
 import com.threerings.whirled.server.SceneMoveHandler;
 import com.threerings.whirled.server.SceneRegistry;
+import com.threerings.whirled.util.NoSuchSceneException;
 import com.threerings.whirled.util.UpdateList;
 
 import com.threerings.config.ConfigManager;
@@ -105,6 +109,24 @@ public class TudeySceneRegistry extends SceneRegistry
         resolveScene(sceneId, listener);
     }
 
+    /**
+     * Flushes the cached model stored under the specified key (see {@link #getSceneModelKey}),
+     * so that it will be reloaded the next time a scene using it is resolved. Scenes already
+     * using the model are unaffected.
+     */
+    public void flushSceneModel (Object key)
+    {
+        _sceneModels.remove(key);
+    }
+
+    /**
+     * Flushes all cached scene models.
+     */
+    public void flushSceneModels ()
+    {
+        _sceneModels.clear();
+    }
+
     /**
      * Returns a reference to the default scene ticker.
      */
@@ -129,14 +151,56 @@ public class TudeySceneRegistry extends SceneRegistry
         resolveScene(caller, sceneId, handler);
     }
 
+    @Override
+    protected SceneModel loadSceneModel (int sceneId)
+        throws PersistenceException, NoSuchSceneException
+    {
+        // if we have a cached model for the scene, create an instance rather than loading it
+        Object key = getSceneModelKey(sceneId);
+        TudeySceneModel prototype = (key == null) ? null : _sceneModels.get(key);
+        if (prototype == null) {
+            return super.loadSceneModel(sceneId);
+        }
+        TudeySceneModel model = prototype.createInstance();
+        model.sceneId = sceneId;
+        return model;
+    }
+
     @Override
     protected void processSuccessfulResolution (
         SceneModel model, UpdateList updates, Object extras)
     {
         // initialize the scene model
-        ((TudeySceneModel)model).init(_cfgmgr);
+        TudeySceneModel tsmodel = (TudeySceneModel)model;
+        tsmodel.init(_cfgmgr);
+
+        // if the model is to be cached and was loaded afresh, it becomes the prototype for this
+        // and subsequent instances
+        Object key = getSceneModelKey(model.sceneId);
+        if (key != null && !tsmodel.isShared() && _sceneModels.putIfAbsent(key, tsmodel) == null) {
+            tsmodel = tsmodel.createInstance();
+            tsmodel.init(_cfgmgr);
+        }
 
-        super.processSuccessfulResolution(model, updates, extras);
+        super.processSuccessfulResolution(tsmodel, updates, extras);
+    }
+
+    /**
+     * Returns the key under which to cache the model for the specified scene, or
+     * <code>null</code> to load the model from the repository every time the scene is resolved
+     * (the default). Games that run many concurrent copies of the same level should return an
+     * identifier for the level, so that its model is loaded and initialized once and its data
+     * shared between the scenes using it until they modify it. This is called on both the invoker
+     * thread and the event thread.
+     *
+     * <p> Cached models are only removed by {@link #flushSceneModel} and
+     * {@link #flushSceneModels}, so the keys returned must come from a bounded set (one per
+     * level, say, rather than one per scene).  Games whose levels come and go should flush the
+     * models of those they retire.
+     */
+    protected Object getSceneModelKey (int sceneId)
+    {
+        return null;
     }
 
     /**
@@ -238,6 +302,10 @@ public class TudeySceneRegistry extends SceneRegistry
     /** The config manager. */
     @Inject protected ConfigManager _cfgmgr;
 
+    /** Initialized scene models from which to create instances, mapped by cache key.  Nothing is
+     * evicted but by an explicit flush, so the key space must be bounded. */
+    protected ConcurrentMap<Object, TudeySceneModel> _sceneModels = Maps.newConcurrentMap();
+
     /** Maps body oids to the keys of their destination portals. */
     protected HashIntMap<PortalMapping> _portals = IntMaps.newHashIntMap();
 
@@ -680,14 +680,19 @@ public class ActorLogic extends Logic
     {
         int timestamp = _scenemgr.getTimestamp();
         if (timestamp > _snaptime) {
+            if (_previousSnapshot != _snapshot) {
+                retireSnapshot(_previousSnapshot, timestamp);
+            }
             _previousSnapshot = _snapshot;
             _snapshotDelta = null;
             if (_actor.isDirty()) {
+                // the delta is still created anew: client tick records and merged deltas hold on
+                // to it, so unlike the snapshots, we can't tell when it may be reused
                 _snapshotDelta = new ActorDelta(_snapshot, _actor);
                 if (_snapshotDelta.isEmpty()) {
                     _snapshotDelta = null;
                 } else {
-                    _snapshot = (Actor)_actor.clone();
+                    _snapshot = createSnapshot();
                 }
                 _actor.setDirty(false);
             }
@@ -695,6 +700,57 @@ public class ActorLogic extends Logic
         }
     }
 
+    /**
+     * Creates a new snapshot of the actor, reusing a retired snapshot if the clients can no
+     * longer be referencing it.
+     */
+    protected Actor createSnapshot ()
+    {
+        if (_spareCount == 0 || _spareTimes[_spareStart] > _scenemgr.getSnapshotHorizon()) {
+            return (Actor)_actor.clone();
+        }
+        Actor snapshot = _spareSnapshots[_spareStart];
+        _spareSnapshots[_spareStart] = null;
+        _spareStart = (_spareStart + 1) % _spareSnapshots.length;
+        _spareCount--;
+        return (Actor)_actor.copy(snapshot);
+    }
+
+    /**
+     * Adds a snapshot that is no longer current to the list of those available for reuse.
+     *
+     * @param timestamp the timestamp of the tick on which the snapshot was retired.
+     */
+    protected void retireSnapshot (Actor snapshot, int timestamp)
+    {
+        if (_spareSnapshots == null) {
+            _spareSnapshots = new Actor[INITIAL_SPARE_SNAPSHOTS];
+            _spareTimes = new int[INITIAL_SPARE_SNAPSHOTS];
+
+        } else if (_spareCount == _spareSnapshots.length) {
+            if (_spareCount >= MAX_SPARE_SNAPSHOTS) {
+                // the clients are lagging; let the oldest go rather than holding on to them all
+                _spareSnapshots[_spareStart] = null;
+                _spareStart = (_spareStart + 1) % _spareSnapshots.length;
+                _spareCount--;
+            } else {
+                Actor[] nsnapshots = new Actor[_spareCount * 2];
+                int[] ntimes = new int[_spareCount * 2];
+                for (int ii = 0; ii < _spareCount; ii++) {
+                    int idx = (_spareStart + ii) % _spareSnapshots.length;
+                    nsnapshots[ii] = _spareSnapshots[idx];
+                    ntimes[ii] = _spareTimes[idx];
+                }
+                _spareSnapshots = nsnapshots;
+                _spareTimes = ntimes;
+                _spareStart = 0;
+            }
+        }
+        int idx = (_spareStart + _spareCount++) % _spareSnapshots.length;
+        _spareSnapshots[idx] = snapshot;
+        _spareTimes[idx] = timestamp;
+    }
+
     /**
      * Override to perform custom initialization.
      */
@@ -747,7 +803,8 @@ public class ActorLogic extends Logic
     /** The actor object, which may be manipulated directly. */
     protected Actor _actor;
 
-    /** The actor snapshot, which must not be modified once created. */
+    /** The actor snapshot, which must not be modified once created (until it has been retired
+     * and the clients can no longer be referencing it). */
     protected Actor _snapshot;
 
     /** The actor snapshot at the previous tick. */
@@ -759,6 +816,15 @@ public class ActorLogic extends Logic
     /** The timestamp of the actor snapshot. */
     protected int _snaptime;
 
+    /** Retired snapshots awaiting reuse (a ring buffer in order of retirement). */
+    protected Actor[] _spareSnapshots;
+
+    /** The timestamps of the ticks on which the spare snapshots were retired. */
+    protected int[] _spareTimes;
+
+    /** The index of the oldest spare snapshot and the number of spare snapshots. */
+    protected int _spareStart, _spareCount;
+
     /** The actor's shape element. */
     protected ShapeElement _shape;
 
@@ -804,4 +870,10 @@ public class ActorLogic extends Logic
 
     /** The maximum path length from the origin for adjustment. */
     protected static final float MAX_ADJUSTMENT_PATH_LENGTH = 8f;
+
+    /** The initial capacity of the spare snapshot buffer. */
+    protected static final int INITIAL_SPARE_SNAPSHOTS = 2;
+
+    /** The maximum number of spare snapshots to retain. */
+    protected static final int MAX_SPARE_SNAPSHOTS = 16;
 }
@@ -0,0 +1,391 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.Maps;
+
+import com.threerings.config.ConfigManager;
+import com.threerings.config.ConfigReference;
+import com.threerings.config.ManagedConfig;
+import com.threerings.config.Parameter;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Transform2D;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector2f;
+import com.threerings.math.Vector3f;
+import com.threerings.resource.ResourceManager;
+import com.threerings.util.DeepUtil;
+
+import com.threerings.opengl.geometry.config.GeometryConfig;
+import com.threerings.opengl.model.config.AnimationConfig;
+import com.threerings.opengl.model.config.ArticulatedConfig;
+import com.threerings.opengl.model.config.ModelConfig;
+
+import com.threerings.tudey.config.ActionConfig;
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.config.ActorSpriteConfig;
+import com.threerings.tudey.config.HandlerConfig;
+import com.threerings.tudey.shape.config.ShapeConfig;
+
+/**
+ * A headless benchmark comparing the compiled {@link DeepUtil} handlers to the reflective ones
+ * on model and actor configurations.  The configurations are loaded from the resource directory
+ * given on the command line or, without one, generated to resemble imported knights and their
+ * actors.  The copies made through each kind of handler are checked against one another and
+ * against the originals (with both kinds of handler) before copy, equals, and hash code are timed.
+ * This extends {@link DeepUtil} only to reach its handler table.
+ */
+public class DeepUtilBenchmark extends DeepUtil
+{
+    public static void main (String[] args)
+    {
+        List<ManagedConfig> configs = new ArrayList<ManagedConfig>();
+        if (args.length > 1) {
+            System.err.println("Usage: DeepUtilBenchmark [resource_dir]");
+            System.exit(-1);
+        } else if (args.length == 1) {
+            ResourceManager rsrcmgr = new ResourceManager("rsrc/");
+            rsrcmgr.initResourceDir(args[0]);
+            ConfigManager cfgmgr = new ConfigManager(rsrcmgr, null, "config/");
+            cfgmgr.init();
+            for (ManagedConfig config : cfgmgr.getGroup(ModelConfig.class).getRawConfigs()) {
+                configs.add(config);
+            }
+            for (ManagedConfig config : cfgmgr.getGroup(ActorConfig.class).getRawConfigs()) {
+                configs.add(config);
+            }
+        } else {
+            Random random = new Random(1);
+            for (int ii = 0; ii < DEFAULT_CONFIGS; ii++) {
+                configs.add(createModel(random, ii));
+                configs.add(createActor(random, ii));
+            }
+        }
+        if (configs.isEmpty()) {
+            System.err.println("No model or actor configs found.");
+            System.exit(-1);
+        }
+        ManagedConfig[] sources = configs.toArray(new ManagedConfig[configs.size()]);
+
+        // run everything through the default (compiled) handlers until they're hot, then make a
+        // reflective handler for each class that they handled
+        ManagedConfig[] dests = new ManagedConfig[sources.length];
+        for (int ii = 0; ii < WARMUP_ROUNDS; ii++) {
+            run(sources, dests);
+        }
+        Map<Class<?>, ObjectHandler<?>> compiled = Maps.newHashMap();
+        Map<Class<?>, ObjectHandler<?>> reflective = Maps.newHashMap();
+        for (Map.Entry<Class<?>, ObjectHandler<?>> entry : _objectHandlers.entrySet()) {
+            if (entry.getValue() instanceof CompiledObjectHandler) {
+                compiled.put(entry.getKey(), entry.getValue());
+                reflective.put(entry.getKey(), new ReflectiveObjectHandler(entry.getKey()));
+            }
+        }
+
+        // make sure that the two kinds of handler agree
+        boolean passed = check(sources, compiled, reflective);
+        System.out.println(sources.length + " configs, " + compiled.size() + " classes: " +
+            (passed ? "checks passed." : "checks FAILED."));
+
+        // warm up the reflective handlers as well, then time each in turn
+        _objectHandlers.putAll(reflective);
+        for (int ii = 0; ii < WARMUP_ROUNDS; ii++) {
+            run(sources, dests);
+        }
+        String[] labels = { "copy", "equals", "hashCode" };
+        long[] rtimes = new long[labels.length], ctimes = new long[labels.length];
+        for (int ii = 0; ii < TIMED_ROUNDS; ii++) {
+            _objectHandlers.putAll(reflective);
+            time(sources, dests, rtimes);
+            _objectHandlers.putAll(compiled);
+            time(sources, dests, ctimes);
+        }
+        long ops = (long)sources.length * TIMED_ROUNDS * ITERATIONS;
+        for (int ii = 0; ii < labels.length; ii++) {
+            System.out.println(labels[ii] + ": reflective " + (rtimes[ii] / 1000000L) + " ms, " +
+                (rtimes[ii] / ops / 1000f) + " us/config; compiled " + (ctimes[ii] / 1000000L) +
+                " ms, " + (ctimes[ii] / ops / 1000f) + " us/config");
+        }
+        System.exit(passed ? 0 : -1);
+    }
+
+    /**
+     * Copies, compares, and hashes each of the configs once.
+     */
+    protected static void run (ManagedConfig[] sources, ManagedConfig[] dests)
+    {
+        for (int ii = 0; ii < sources.length; ii++) {
+            dests[ii] = DeepUtil.copy(sources[ii], dests[ii]);
+            _sink += DeepUtil.equals(sources[ii], dests[ii]) ? 1 : 0;
+            _sink += DeepUtil.hashCode(sources[ii]);
+        }
+    }
+
+    /**
+     * Makes sure that copies made with the compiled handlers are equal to those made with the
+     * reflective handlers and to the originals, and that both compute the same hash codes.
+     *
+     * @return true if the check passed.
+     */
+    protected static boolean check (
+        ManagedConfig[] sources, Map<Class<?>, ObjectHandler<?>> compiled,
+        Map<Class<?>, ObjectHandler<?>> reflective)
+    {
+        boolean passed = true;
+        for (ManagedConfig source : sources) {
+            _objectHandlers.putAll(compiled);
+            ManagedConfig ccopy = DeepUtil.copy(source);
+            int chash = DeepUtil.hashCode(getContents(source));
+            boolean cequal = agree(source, ccopy, null);
+
+            _objectHandlers.putAll(reflective);
+            ManagedConfig rcopy = DeepUtil.copy(source);
+            int rhash = DeepUtil.hashCode(getContents(source));
+            boolean requal = agree(source, rcopy, ccopy) && agree(source, ccopy, null) &&
+                DeepUtil.hashCode(getContents(ccopy)) == rhash;
+
+            _objectHandlers.putAll(compiled);
+            cequal &= agree(source, rcopy, ccopy) && DeepUtil.hashCode(getContents(rcopy)) == chash;
+
+            if (!(cequal && requal && chash == rhash)) {
+                System.err.println("Handlers disagree on " + source.getClass().getName() + " " +
+                    source.getName() + " [compiledEqual=" + cequal + ", reflectiveEqual=" +
+                    requal + ", compiledHash=" + chash + ", reflectiveHash=" + rhash + "].");
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * Checks that the supplied copy is equal to the source and (if non-null) to the other copy
+     * with the current handlers.
+     */
+    protected static boolean agree (ManagedConfig source, ManagedConfig copy, ManagedConfig other)
+    {
+        Object[] contents = getContents(copy);
+        return DeepUtil.equals(getContents(source), contents) &&
+            (other == null || DeepUtil.equals(getContents(other), contents));
+    }
+
+    /**
+     * Returns the parts of the config to compare.  Model configs hold config managers of their
+     * own, which compare by identity, so for those we compare the implementation and parameters.
+     */
+    protected static Object[] getContents (ManagedConfig config)
+    {
+        if (config instanceof ModelConfig) {
+            ModelConfig model = (ModelConfig)config;
+            return new Object[] { model.getName(), model.implementation, model.parameters };
+        }
+        return new Object[] { config };
+    }
+
+    /**
+     * Times copy, equals, and hash code over the configs with the current handlers, adding the
+     * elapsed nanoseconds to the supplied array.
+     */
+    protected static void time (ManagedConfig[] sources, ManagedConfig[] dests, long[] times)
+    {
+        long start = System.nanoTime();
+        for (int ii = 0; ii < ITERATIONS; ii++) {
+            for (int jj = 0; jj < sources.length; jj++) {
+                dests[jj] = DeepUtil.copy(sources[jj], dests[jj]);
+            }
+        }
+        long end = System.nanoTime();
+        times[0] += end - start;
+        start = end;
+        for (int ii = 0; ii < ITERATIONS; ii++) {
+            for (int jj = 0; jj < sources.length; jj++) {
+                _sink += DeepUtil.equals(sources[jj], dests[jj]) ? 1 : 0;
+            }
+        }
+        end = System.nanoTime();
+        times[1] += end - start;
+        start = end;
+        for (int ii = 0; ii < ITERATIONS; ii++) {
+            for (int jj = 0; jj < sources.length; jj++) {
+                _sink += DeepUtil.hashCode(sources[jj]);
+            }
+        }
+        times[2] += System.nanoTime() - start;
+    }
+
+    /**
+     * Creates an articulated model config like those imported for knights: a skeleton with a few
+     * rigid meshes, a skin, material and animation mappings, and attachments.
+     */
+    protected static ModelConfig createModel (Random random, int idx)
+    {
+        ArticulatedConfig impl = new ArticulatedConfig();
+        ArrayList<String> names = new ArrayList<String>();
+        impl.root = createNode(random, names, 0);
+        ModelConfig.VisibleMesh[] visible = new ModelConfig.VisibleMesh[SKIN_MESHES];
+        impl.materialMappings = new ArticulatedConfig.MaterialMapping[SKIN_MESHES];
+        for (int ii = 0; ii < SKIN_MESHES; ii++) {
+            String texture = "knight" + ii + ".png";
+            visible[ii] = new ModelConfig.VisibleMesh(texture, ModelConfig.SKINNED_TAG,
+                GeometryConfig.createQuad(1f, 1f, 4, 4));
+            impl.materialMappings[ii] = impl.new MaterialMapping(
+                texture, ModelConfig.SKINNED_TAG, "character/knight/" + texture);
+        }
+        impl.skin = new ModelConfig.MeshSet(visible, null);
+        impl.animationMappings = new ArticulatedConfig.AnimationMapping[ANIMATIONS];
+        for (int ii = 0; ii < ANIMATIONS; ii++) {
+            ArticulatedConfig.AnimationMapping mapping = new ArticulatedConfig.AnimationMapping();
+            mapping.name = "anim" + ii;
+            mapping.animation = new ConfigReference<AnimationConfig>(
+                "Character/Knight/Anim" + ii);
+            impl.animationMappings[ii] = mapping;
+        }
+        impl.attachments = new ArticulatedConfig.Attachment[ATTACHMENTS];
+        for (int ii = 0; ii < ATTACHMENTS; ii++) {
+            ArticulatedConfig.Attachment attachment = impl.new Attachment();
+            attachment.node = names.get(random.nextInt(names.size()));
+            attachment.model = new ConfigReference<ModelConfig>("Item/Weapon" + ii);
+            attachment.transform = createTransform(random);
+            impl.attachments[ii] = attachment;
+        }
+        ModelConfig config = new ModelConfig(impl);
+        config.setName("Character/Knight" + idx);
+        return config;
+    }
+
+    /**
+     * Creates a node with a chain of descendants, adding the names of the nodes to the list.  The
+     * ends of the chains carry rigid meshes.
+     */
+    protected static ArticulatedConfig.Node createNode (
+        Random random, ArrayList<String> names, int depth)
+    {
+        String name = "node" + names.size();
+        names.add(name);
+        int ccount = (depth == 0) ? LIMBS : (names.size() < NODES && depth < LIMB_LENGTH ? 1 : 0);
+        ArticulatedConfig.Node[] children = new ArticulatedConfig.Node[ccount];
+        for (int ii = 0; ii < ccount; ii++) {
+            children[ii] = createNode(random, names, depth + 1);
+        }
+        if (ccount > 0) {
+            return new ArticulatedConfig.Node(name, createTransform(random), children);
+        }
+        return new ArticulatedConfig.MeshNode(name, createTransform(random), children,
+            new ModelConfig.VisibleMesh("armor.png", ModelConfig.DEFAULT_TAG,
+                GeometryConfig.createQuad(0.5f, 0.5f, 2, 2)), null);
+    }
+
+    /**
+     * Creates an agent actor config with a moving sprite, a compound shape, and a few handlers.
+     */
+    protected static ActorConfig createActor (Random random, int idx)
+    {
+        ActorConfig.Agent impl = new ActorConfig.Agent();
+        ActorSpriteConfig.Moving sprite = new ActorSpriteConfig.Moving();
+        sprite.model = new ConfigReference<ModelConfig>("Character/Knight" + idx);
+        sprite.idles = new ActorSpriteConfig.WeightedAnimation[IDLES];
+        for (int ii = 0; ii < IDLES; ii++) {
+            ActorSpriteConfig.WeightedAnimation idle = new ActorSpriteConfig.WeightedAnimation();
+            idle.weight = random.nextFloat();
+            idle.animation = new ConfigReference<AnimationConfig>("Character/Knight/Idle" + ii);
+            sprite.idles[ii] = idle;
+        }
+        ActorSpriteConfig.SingleMovement movement = new ActorSpriteConfig.SingleMovement();
+        movement.speed = 6f;
+        movement.animation = new ConfigReference<AnimationConfig>("Character/Knight/Walk");
+        sprite.movements = new ActorSpriteConfig.MovementSet[] { movement };
+        impl.sprite = sprite;
+
+        ShapeConfig.Compound shape = new ShapeConfig.Compound();
+        shape.shapes = new ShapeConfig.TransformedShape[SHAPES];
+        for (int ii = 0; ii < SHAPES; ii++) {
+            ShapeConfig.Circle circle = new ShapeConfig.Circle();
+            circle.radius = random.nextFloat();
+            ShapeConfig.TransformedShape tshape = new ShapeConfig.TransformedShape();
+            tshape.shape = circle;
+            tshape.transform = new Transform2D(
+                new Vector2f(random.nextFloat(), random.nextFloat()), random.nextFloat());
+            shape.shapes[ii] = tshape;
+        }
+        impl.shape = shape;
+        impl.tags.tags = new String[] { "knight", "player" };
+
+        impl.handlers = new HandlerConfig[HANDLERS];
+        for (int ii = 0; ii < HANDLERS; ii++) {
+            HandlerConfig.Timer timer = new HandlerConfig.Timer();
+            timer.interval = random.nextFloat();
+            ActionConfig.Compound action = new ActionConfig.Compound();
+            ActionConfig.Signal signal = new ActionConfig.Signal();
+            signal.name = "tick" + ii;
+            ActionConfig.SpawnActor spawn = new ActionConfig.SpawnActor();
+            spawn.actor = new ConfigReference<ActorConfig>("Effect/Spark" + ii);
+            action.actions = new ActionConfig[] { signal, spawn };
+            timer.action = action;
+            impl.handlers[ii] = timer;
+        }
+
+        ActorConfig config = new ActorConfig();
+        config.implementation = impl;
+        Parameter.Direct speed = new Parameter.Direct();
+        speed.name = "Speed";
+        speed.paths = new String[] { "implementation.speed" };
+        config.parameters = new Parameter[] { speed };
+        config.setName("Character/Knight" + idx);
+        return config;
+    }
+
+    /**
+     * Creates a random rigid transform.
+     */
+    protected static Transform3D createTransform (Random random)
+    {
+        return new Transform3D(
+            new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()),
+            new Quaternion().fromAngles(
+                random.nextFloat(), random.nextFloat(), random.nextFloat()));
+    }
+
+    /** Accumulates results so that the VM can't discard the work. */
+    protected static long _sink;
+
+    protected static final int DEFAULT_CONFIGS = 50;
+    protected static final int NODES = 40;
+    protected static final int LIMBS = 6;
+    protected static final int LIMB_LENGTH = 7;
+    protected static final int SKIN_MESHES = 3;
+    protected static final int ANIMATIONS = 8;
+    protected static final int ATTACHMENTS = 2;
+    protected static final int IDLES = 3;
+    protected static final int SHAPES = 2;
+    protected static final int HANDLERS = 4;
+    protected static final int WARMUP_ROUNDS = COMPILE_THRESHOLD * 2;
+    protected static final int TIMED_ROUNDS = 10;
+    protected static final int ITERATIONS = 20;
+}
@@ -0,0 +1,107 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.tools;
+
+import java.lang.management.ManagementFactory;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.data.actor.Mobile;
+import com.threerings.tudey.dobj.ActorDelta;
+
+/**
+ * Counts the bytes allocated by each step of the per-tick actor snapshot update performed by
+ * the server's actor logic: computing the delta from the previous snapshot, and either cloning
+ * the actor or copying it into a retired snapshot.  Exits with an error if copying into a retired
+ * snapshot allocates anything.  Requires a JVM that supports thread allocation measurement.
+ */
+public class SnapshotAllocationCheck
+{
+    public static void main (String[] args)
+    {
+        java.lang.management.ThreadMXBean tbean = ManagementFactory.getThreadMXBean();
+        if (!(tbean instanceof com.sun.management.ThreadMXBean)) {
+            System.err.println("Thread allocation measurement not supported.");
+            System.exit(-1);
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)tbean;
+        if (!bean.isThreadAllocatedMemorySupported()) {
+            System.err.println("Thread allocation measurement not supported.");
+            System.exit(-1);
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        // a moving actor, as its logic would hold it, and the retired snapshots of its ring
+        ConfigReference<ActorConfig> ref = new ConfigReference<ActorConfig>("Knight");
+        Mobile actor = new Mobile(ref, 1, 0, new Vector2f(), 0f);
+        Actor snapshot = (Actor)actor.clone();
+        Actor[] spares = { (Actor)actor.clone(), (Actor)actor.clone() };
+
+        long delta = 0L, clone = 0L, copy = 0L;
+        long tid = Thread.currentThread().getId();
+        for (int ii = 0; ii < WARMUP_TICKS + TICKS; ii++) {
+            if (ii == WARMUP_TICKS) {
+                delta = clone = copy = 0L;
+            }
+            actor.setTranslation((ii + 1) * 0.1f, (ii + 1) * 0.05f);
+            actor.setDirection((ii + 1) * 0.01f);
+
+            long start = bean.getThreadAllocatedBytes(tid);
+            ActorDelta adelta = new ActorDelta(snapshot, actor);
+            long end = bean.getThreadAllocatedBytes(tid);
+            delta += end - start;
+
+            start = bean.getThreadAllocatedBytes(tid);
+            Actor cloned = (Actor)actor.clone();
+            end = bean.getThreadAllocatedBytes(tid);
+            clone += end - start;
+
+            start = bean.getThreadAllocatedBytes(tid);
+            Actor spare = spares[ii & 1];
+            spares[ii & 1] = snapshot;
+            snapshot = (Actor)actor.copy(spare);
+            end = bean.getThreadAllocatedBytes(tid);
+            copy += end - start;
+
+            if (adelta.isEmpty() || cloned.getId() != snapshot.getId()) {
+                throw new IllegalStateException("Unexpected snapshot state.");
+            }
+        }
+        System.out.println("Delta: " + (delta / TICKS) + " bytes/tick");
+        System.out.println("Clone: " + (clone / TICKS) + " bytes/tick");
+        System.out.println("Copy into retired snapshot: " + (copy / TICKS) + " bytes/tick");
+        if (copy > 0L) {
+            System.err.println("Copying into a retired snapshot allocated " + copy + " bytes.");
+            System.exit(-1);
+        }
+    }
+
+    protected static final int WARMUP_TICKS = 100000;
+    protected static final int TICKS = 100000;
+}
@@ -0,0 +1,465 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.tools;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.RunAnywhere;
+import com.samskivert.util.RunQueue;
+
+import com.threerings.util.Name;
+
+import com.threerings.presents.client.Client;
+import com.threerings.presents.client.ClientAdapter;
+import com.threerings.presents.client.Communicator;
+import com.threerings.presents.client.MultiplexedCommunicator;
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.dobj.ObjectAccessException;
+import com.threerings.presents.dobj.Subscriber;
+import com.threerings.presents.net.UsernamePasswordCreds;
+
+import com.threerings.crowd.data.PlaceConfig;
+
+import com.threerings.whirled.client.SceneService;
+import com.threerings.whirled.data.SceneCodes;
+import com.threerings.whirled.data.SceneModel;
+import com.threerings.whirled.data.SceneUpdate;
+
+import com.threerings.math.FloatMath;
+
+import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.data.TudeySceneConfig;
+import com.threerings.tudey.data.TudeySceneObject;
+import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.dobj.ActorDelta;
+import com.threerings.tudey.dobj.SceneDeltaEvent;
+import com.threerings.tudey.dobj.SceneDeltaListener;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * A headless client that logs on to a Tudey server, enters a scene, and streams input frames
+ * to the server as a real client would, keeping track of the actors in the scene without
+ * rendering anything.  The default implementation wanders randomly; subclasses may override
+ * {@link #createInputFrame} to provide scripted input.
+ */
+public class TudeyBot extends ClientAdapter
+    implements SceneService.SceneMoveListener, Subscriber<TudeySceneObject>, SceneDeltaListener
+{
+    /**
+     * Creates a new bot.
+     *
+     * @param runQueue the queue on which to run the client (may be shared between bots).
+     */
+    public TudeyBot (
+        TudeyLoadGenerator.Stats stats, RunQueue runQueue, String hostname, int[] ports,
+        int[] datagramPorts, String username, String password, int sceneId)
+    {
+        _stats = stats;
+        _sceneId = sceneId;
+        _client = new Client(new UsernamePasswordCreds(new Name(username), password), runQueue) {
+            @Override protected Communicator createCommunicator () {
+                // share selector threads with the other bots rather than using two per client
+                return new MultiplexedCommunicator(this);
+            }
+        };
+        _client.setServer(hostname, ports, datagramPorts);
+        _client.setMessageTracker(stats);
+        _client.addServiceGroup(SceneCodes.WHIRLED_GROUP);
+        _client.addClientObserver(this);
+    }
+
+    /**
+     * Returns a reference to the bot's client.
+     */
+    public Client getClient ()
+    {
+        return _client;
+    }
+
+    /**
+     * Checks whether the bot is in its scene and receiving deltas.
+     */
+    public boolean isReceiving ()
+    {
+        return _lastDelta > 0;
+    }
+
+    /**
+     * Returns the actors in the bot's most recent view of the scene.
+     */
+    public HashIntMap<Actor> getActors ()
+    {
+        return _records.isEmpty() ? null : _records.get(_records.size() - 1).actors;
+    }
+
+    /**
+     * Logs on to the server.
+     */
+    public void logon ()
+    {
+        _client.logon();
+    }
+
+    /**
+     * Logs off of the server.
+     */
+    public void logoff ()
+    {
+        if (_client.isLoggedOn()) {
+            _client.logoff(false);
+        }
+    }
+
+    /**
+     * Updates the bot, enqueuing an input frame and transmitting input if the transmit interval
+     * has elapsed.
+     */
+    public void tick ()
+    {
+        long now = RunAnywhere.currentTimeMillis();
+        if (_tsobj == null || _lastDelta == 0 || now - _lastTransmit < _transmitInterval) {
+            return;
+        }
+        _lastTransmit = now;
+
+        // estimate the server time and enqueue a new frame for the time at which it will
+        // probably be received (if we control a pawn)
+        int smoothedTime = _lastDelta + (int)(now - _lastReceived);
+        if (_pawnId > 0) {
+            InputFrame frame = createInputFrame(
+                smoothedTime + _config.getInputAdvance(_ping), now);
+            if (frame != null) {
+                _input.add(frame);
+                _inputTimes.add(now);
+            }
+        }
+
+        // send everything that hasn't been acknowledged
+        InputFrame[] frames = _input.toArray(new InputFrame[_input.size()]);
+        if (_client.getTransmitDatagrams()) {
+            _tsobj.tudeySceneService.enqueueInputUnreliable(_lastDelta, smoothedTime, frames);
+        } else {
+            _tsobj.tudeySceneService.enqueueInputReliable(_lastDelta, smoothedTime, frames);
+        }
+    }
+
+    @Override
+    public void clientDidLogon (Client client)
+    {
+        _stats.noteLoggedOn();
+        moveTo();
+    }
+
+    @Override
+    public void clientFailedToLogon (Client client, Exception cause)
+    {
+        log.info("Bot failed to log on.", "client", client, "cause", cause);
+        _stats.noteFailed();
+    }
+
+    @Override
+    public void clientConnectionFailed (Client client, Exception cause)
+    {
+        log.info("Bot connection failed.", "client", client, "cause", cause);
+        _stats.noteFailed();
+    }
+
+    @Override
+    public void clientDidLogoff (Client client)
+    {
+        leftScene();
+        _stats.noteLoggedOff();
+    }
+
+    // documentation inherited from interface SceneService.SceneMoveListener
+    public void moveSucceeded (int placeId, PlaceConfig config)
+    {
+        _config = (TudeySceneConfig)config;
+        _transmitInterval = _config.getTransmitInterval();
+        _client.getDObjectManager().subscribeToObject(_placeId = placeId, this);
+    }
+
+    // documentation inherited from interface SceneService.SceneMoveListener
+    public void moveSucceededWithUpdates (int placeId, PlaceConfig config, SceneUpdate[] updates)
+    {
+        SceneUpdate last = updates[updates.length - 1];
+        noteSceneVersion(last.getSceneVersion() + last.getVersionIncrement());
+        moveSucceeded(placeId, config);
+    }
+
+    // documentation inherited from interface SceneService.SceneMoveListener
+    public void moveSucceededWithScene (int placeId, PlaceConfig config, SceneModel model)
+    {
+        noteSceneVersion(model.version);
+        moveSucceeded(placeId, config);
+    }
+
+    // documentation inherited from interface SceneService.SceneMoveListener
+    public void moveRequiresServerSwitch (String hostname, int[] ports)
+    {
+        log.warning("Bots cannot switch servers.", "hostname", hostname);
+        _stats.noteFailed();
+    }
+
+    // documentation inherited from interface InvocationService.InvocationListener
+    public void requestFailed (String cause)
+    {
+        log.warning("Bot failed to move to scene.", "sceneId", _sceneId, "cause", cause);
+        _stats.noteFailed();
+    }
+
+    // documentation inherited from interface Subscriber
+    public void objectAvailable (TudeySceneObject tsobj)
+    {
+        _tsobj = tsobj;
+        _pawnId = tsobj.getPawnId(_client.getClientOid());
+        _client.getClientObject().addListener(this);
+        _tsobj.tudeySceneService.enteredPlace();
+        _stats.noteEntered();
+    }
+
+    // documentation inherited from interface Subscriber
+    public void requestFailed (int oid, ObjectAccessException cause)
+    {
+        log.warning("Bot failed to subscribe to scene object.", "oid", oid, "cause", cause);
+        _stats.noteFailed();
+    }
+
+    // documentation inherited from interface SceneDeltaListener
+    public void sceneDeltaReceived (SceneDeltaEvent event)
+    {
+        // make sure it refers to our scene and isn't out of order or a repeat
+        int timestamp = event.getTimestamp();
+        if (_tsobj == null || event.getSceneOid() != _tsobj.getOid() || timestamp <= _lastDelta) {
+            return;
+        }
+        long now = RunAnywhere.currentTimeMillis();
+        _ping = event.getPing();
+        _stats.noteDelta(event.getElapsed());
+
+        // prune the acknowledged input frames, noting the round trip time of each
+        int acknowledge = event.getAcknowledge();
+        while (!_input.isEmpty() && _input.get(0).getTimestamp() <= acknowledge) {
+            _input.remove(0);
+            _stats.noteLatency((int)(now - _inputTimes.remove(0)));
+        }
+
+        // find the reference and remove all records before it
+        int reference = event.getReference();
+        while (!_records.isEmpty() && _records.get(0).timestamp < reference) {
+            _records.remove(0);
+        }
+        HashIntMap<Actor> actors;
+        if (_records.isEmpty() || _records.get(0).timestamp != reference) {
+            if (reference != 0) {
+                log.debug("Missing reference for delta.", "reference", reference);
+                return;
+            }
+            actors = new HashIntMap<Actor>();
+        } else {
+            actors = _records.get(0).actors.clone();
+        }
+
+        // apply the changes to the actor set
+        Actor[] added = event.getAddedActors();
+        if (added != null) {
+            for (Actor actor : added) {
+                actors.put(actor.getId(), actor);
+            }
+        }
+        ActorDelta[] updated = event.getUpdatedActorDeltas();
+        if (updated != null) {
+            for (ActorDelta delta : updated) {
+                Actor oactor = actors.get(delta.getId());
+                if (oactor != null) {
+                    actors.put(delta.getId(), (Actor)delta.apply(oactor));
+                }
+            }
+        }
+        int[] removed = event.getRemovedActorIds();
+        if (removed != null) {
+            for (int id : removed) {
+                actors.remove(id);
+            }
+        }
+        _records.add(new UpdateRecord(timestamp, actors));
+        _lastDelta = timestamp;
+        _lastReceived = now;
+    }
+
+    /**
+     * Creates the next input frame to send to the server.  The default implementation wanders
+     * about randomly.
+     *
+     * @param timestamp the (estimated) server time at which the frame will apply.
+     * @param now the current local time.
+     * @return the frame to enqueue, or <code>null</code> to send none.
+     */
+    protected InputFrame createInputFrame (int timestamp, long now)
+    {
+        if (now >= _nextChange) {
+            _direction = FloatMath.random(-FloatMath.PI, +FloatMath.PI);
+            _flags = (_random.nextFloat() < MOVE_PROBABILITY) ? InputFrame.MOVE : 0;
+            _nextChange = now + MIN_CHANGE_INTERVAL +
+                _random.nextInt(MAX_CHANGE_INTERVAL - MIN_CHANGE_INTERVAL);
+        }
+        return new InputFrame(timestamp, _direction, _direction, _flags);
+    }
+
+    /**
+     * Requests to move to our scene.
+     */
+    protected void moveTo ()
+    {
+        Integer version;
+        synchronized (_sceneVersions) {
+            version = _sceneVersions.get(_sceneId);
+        }
+        _client.requireService(SceneService.class).moveTo(
+            _sceneId, (version == null) ? 0 : version, this);
+    }
+
+    /**
+     * Records the latest version of our scene so that other bots won't have to download it.
+     */
+    protected void noteSceneVersion (int version)
+    {
+        synchronized (_sceneVersions) {
+            _sceneVersions.put(_sceneId, version);
+        }
+    }
+
+    /**
+     * Cleans up after leaving the scene.
+     */
+    protected void leftScene ()
+    {
+        if (_tsobj != null) {
+            _stats.noteLeft();
+            _client.getDObjectManager().unsubscribeFromObject(_placeId, this);
+            ClientObject clobj = _client.getClientObject();
+            if (clobj != null) {
+                clobj.removeListener(this);
+            }
+            _tsobj = null;
+        }
+        _records.clear();
+        _input.clear();
+        _inputTimes.clear();
+        _lastDelta = 0;
+    }
+
+    /**
+     * The state of the scene at a single received update.
+     */
+    protected static class UpdateRecord
+    {
+        /** The timestamp of the update. */
+        public final int timestamp;
+
+        /** The actors in the scene at the time of the update. */
+        public final HashIntMap<Actor> actors;
+
+        public UpdateRecord (int timestamp, HashIntMap<Actor> actors)
+        {
+            this.timestamp = timestamp;
+            this.actors = actors;
+        }
+    }
+
+    /** The statistics to which we report. */
+    protected TudeyLoadGenerator.Stats _stats;
+
+    /** The scene that we enter. */
+    protected int _sceneId;
+
+    /** Our client. */
+    protected Client _client;
+
+    /** The scene config. */
+    protected TudeySceneConfig _config;
+
+    /** The oid of the scene object. */
+    protected int _placeId;
+
+    /** The scene object, once we've subscribed. */
+    protected TudeySceneObject _tsobj;
+
+    /** The id of the pawn that we control, if any. */
+    protected int _pawnId;
+
+    /** The interval at which we transmit our input. */
+    protected int _transmitInterval = 100;
+
+    /** The time at which we last transmitted our input. */
+    protected long _lastTransmit;
+
+    /** The timestamp of the last delta received. */
+    protected int _lastDelta;
+
+    /** The local time at which we received the last delta. */
+    protected long _lastReceived;
+
+    /** The server's latest estimate of our ping. */
+    protected int _ping;
+
+    /** The received updates, starting with the last acknowledged by the server. */
+    protected List<UpdateRecord> _records = Lists.newArrayList();
+
+    /** The input frames that have yet to be acknowledged. */
+    protected List<InputFrame> _input = Lists.newArrayList();
+
+    /** The local times at which we created each unacknowledged input frame. */
+    protected List<Long> _inputTimes = Lists.newArrayList();
+
+    /** Generates random input. */
+    protected Random _random = new Random();
+
+    /** The time at which to change our random input. */
+    protected long _nextChange;
+
+    /** The current random direction. */
+    protected float _direction;
+
+    /** The current random input flags. */
+    protected int _flags;
+
+    /** The latest known scene versions, shared between bots. */
+    protected static Map<Integer, Integer> _sceneVersions = Maps.newHashMap();
+
+    /** The probability that a random input change starts the bot moving. */
+    protected static final float MOVE_PROBABILITY = 0.75f;
+
+    /** The minimum and maximum intervals between random input changes. */
+    protected static final int MIN_CHANGE_INTERVAL = 1000, MAX_CHANGE_INTERVAL = 3000;
+}
@@ -0,0 +1,412 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.tools;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.BasicRunQueue;
+import com.samskivert.util.Interval;
+import com.samskivert.util.RunAnywhere;
+
+import com.threerings.presents.client.Client;
+import com.threerings.presents.client.MessageTracker;
+import com.threerings.presents.net.DownstreamMessage;
+import com.threerings.presents.net.EventNotification;
+import com.threerings.presents.net.UpstreamMessage;
+
+import com.threerings.tudey.dobj.SceneDeltaEvent;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * Load tests a Tudey server by spawning a number of headless {@link TudeyBot}s in a single VM.
+ * The bots share a single run queue; every so often, the generator logs the number of bots
+ * connected, the rate and sizes of the scene deltas received, the intervals between server ticks
+ * (as reported in the deltas), and the round trip latencies of the bots' input.
+ */
+public class TudeyLoadGenerator
+{
+    /**
+     * Collects the statistics reported by the bots.  Methods may be called from any thread.
+     */
+    public static class Stats
+        implements MessageTracker
+    {
+        /**
+         * Notes that a bot has logged on.
+         */
+        public synchronized void noteLoggedOn ()
+        {
+            _loggedOn++;
+        }
+
+        /**
+         * Notes that a bot has entered its scene.
+         */
+        public synchronized void noteEntered ()
+        {
+            _entered++;
+        }
+
+        /**
+         * Notes that a bot has left its scene.
+         */
+        public synchronized void noteLeft ()
+        {
+            _entered--;
+        }
+
+        /**
+         * Notes that a bot has logged off.
+         */
+        public synchronized void noteLoggedOff ()
+        {
+            _loggedOn--;
+        }
+
+        /**
+         * Notes that a bot has failed to log on or enter its scene.
+         */
+        public synchronized void noteFailed ()
+        {
+            _failed++;
+        }
+
+        /**
+         * Notes that a bot has received a scene delta.
+         *
+         * @param elapsed the interval between the server tick and the one before it.
+         */
+        public synchronized void noteDelta (int elapsed)
+        {
+            _tickIntervals.add(elapsed);
+        }
+
+        /**
+         * Notes the time between the creation of an input frame and the receipt of a delta
+         * acknowledging it.
+         */
+        public synchronized void noteLatency (int latency)
+        {
+            _latencies.add(latency);
+        }
+
+        // documentation inherited from interface MessageTracker
+        public void messageSent (boolean datagram, int size, UpstreamMessage msg)
+        {
+            // no-op
+        }
+
+        // documentation inherited from interface MessageTracker
+        public synchronized void messageReceived (
+            boolean datagram, int size, DownstreamMessage msg, int missed)
+        {
+            _missed += missed;
+            if (msg instanceof EventNotification &&
+                    ((EventNotification)msg).getEvent() instanceof SceneDeltaEvent) {
+                _deltaSizes.add(size);
+                _deltaBytes += size;
+            }
+        }
+
+        /**
+         * Logs a summary of the statistics collected since the last report and resets them.
+         *
+         * @param bots the number of bots created.
+         * @param elapsed the time elapsed since the last report.
+         */
+        public synchronized void report (int bots, long elapsed)
+        {
+            float seconds = Math.max(elapsed, 1L) / 1000f;
+            log.info("Load report.", "bots", bots, "loggedOn", _loggedOn, "inScene", _entered,
+                "failed", _failed, "deltasPerSecond", Math.round(_deltaSizes.size() / seconds),
+                "kbytesPerSecond", Math.round(_deltaBytes / seconds / 1024f),
+                "missedDatagrams", _missed, "deltaSize", _deltaSizes.summarize(),
+                "tickInterval", _tickIntervals.summarize(), "latency", _latencies.summarize());
+            _deltaSizes.clear();
+            _tickIntervals.clear();
+            _latencies.clear();
+            _deltaBytes = 0L;
+            _missed = 0;
+        }
+
+        /** The number of bots logged on and in their scenes. */
+        protected int _loggedOn, _entered;
+
+        /** The number of bots that have failed. */
+        protected int _failed;
+
+        /** The number of datagrams missed since the last report. */
+        protected int _missed;
+
+        /** The number of delta bytes received since the last report. */
+        protected long _deltaBytes;
+
+        /** The sizes of the deltas received since the last report. */
+        protected Sampler _deltaSizes = new Sampler();
+
+        /** The tick intervals reported since the last report. */
+        protected Sampler _tickIntervals = new Sampler();
+
+        /** The input latencies measured since the last report. */
+        protected Sampler _latencies = new Sampler();
+    }
+
+    /**
+     * Runs the load generator.
+     */
+    public static void main (String[] args)
+    {
+        if (args.length < 4) {
+            System.err.println("Usage: TudeyLoadGenerator hostname port[,datagram_port] " +
+                "scene_id bots [bots_per_second] [duration_seconds]");
+            System.exit(255);
+        }
+        String[] ports = args[1].split(",");
+        int[] datagramPorts = (ports.length > 1) ?
+            new int[] { Integer.parseInt(ports[1]) } : Client.DEFAULT_DATAGRAM_PORTS;
+        TudeyLoadGenerator generator = new TudeyLoadGenerator(
+            args[0], new int[] { Integer.parseInt(ports[0]) }, datagramPorts,
+            Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+            (args.length > 4) ? Float.parseFloat(args[4]) : DEFAULT_SPAWN_RATE,
+            (args.length > 5) ? Integer.parseInt(args[5]) : 0);
+        generator.start();
+    }
+
+    /**
+     * Creates a new load generator.
+     *
+     * @param sceneId the id of the scene that the bots will enter.
+     * @param count the number of bots to create.
+     * @param rate the number of bots to create per second.
+     * @param duration the number of seconds to run before logging the bots off, or zero to run
+     * indefinitely.
+     */
+    public TudeyLoadGenerator (
+        String hostname, int[] ports, int[] datagramPorts, int sceneId,
+        int count, float rate, int duration)
+    {
+        _hostname = hostname;
+        _ports = ports;
+        _datagramPorts = datagramPorts;
+        _sceneId = sceneId;
+        _count = count;
+        _rate = rate;
+        _duration = duration;
+    }
+
+    /**
+     * Returns a reference to the generator's statistics.
+     */
+    public Stats getStats ()
+    {
+        return _stats;
+    }
+
+    /**
+     * Starts the generator.
+     */
+    public void start ()
+    {
+        _rqueue.start();
+        _started = _lastReport = RunAnywhere.currentTimeMillis();
+        new Interval(_rqueue) {
+            public void expired () {
+                tick();
+            }
+        }.schedule(TICK_INTERVAL, true);
+        new Interval(_rqueue) {
+            public void expired () {
+                long now = RunAnywhere.currentTimeMillis();
+                _stats.report(_bots.size(), now - _lastReport);
+                _lastReport = now;
+            }
+        }.schedule(REPORT_INTERVAL, true);
+        if (_duration > 0) {
+            new Interval(_rqueue) {
+                public void expired () {
+                    shutdown();
+                }
+            }.schedule(_duration * 1000L);
+        }
+    }
+
+    /**
+     * Logs off all of the bots and stops the generator.
+     */
+    public void shutdown ()
+    {
+        log.info("Shutting down load generator.", "bots", _bots.size());
+        _count = _bots.size();
+        for (TudeyBot bot : _bots) {
+            bot.logoff();
+        }
+        new Interval(_rqueue) {
+            public void expired () {
+                _stats.report(_bots.size(), RunAnywhere.currentTimeMillis() - _lastReport);
+                _rqueue.shutdown();
+            }
+        }.schedule(SHUTDOWN_DELAY);
+    }
+
+    /**
+     * Creates any bots scheduled to be created and ticks the existing ones.
+     */
+    protected void tick ()
+    {
+        long now = RunAnywhere.currentTimeMillis();
+        int target = Math.min(_count, (int)((now - _started) * _rate / 1000f) + 1);
+        while (_bots.size() < target) {
+            TudeyBot bot = createBot(_bots.size());
+            _bots.add(bot);
+            bot.logon();
+        }
+        for (int ii = 0, nn = _bots.size(); ii < nn; ii++) {
+            _bots.get(ii).tick();
+        }
+    }
+
+    /**
+     * Creates the bot with the specified index.
+     */
+    protected TudeyBot createBot (int idx)
+    {
+        return new TudeyBot(
+            _stats, _rqueue, _hostname, _ports, _datagramPorts,
+            BOT_USERNAME_PREFIX + idx, BOT_PASSWORD, _sceneId);
+    }
+
+    /**
+     * Accumulates integer samples and summarizes their distribution.
+     */
+    protected static class Sampler
+    {
+        /**
+         * Adds a sample.
+         */
+        public void add (int value)
+        {
+            if (_size == _values.length) {
+                _values = Arrays.copyOf(_values, _size * 2);
+            }
+            _values[_size++] = value;
+        }
+
+        /**
+         * Returns the number of samples.
+         */
+        public int size ()
+        {
+            return _size;
+        }
+
+        /**
+         * Removes all samples.
+         */
+        public void clear ()
+        {
+            _size = 0;
+        }
+
+        /**
+         * Returns a string summarizing the percentiles of the samples.
+         */
+        public String summarize ()
+        {
+            if (_size == 0) {
+                return "-";
+            }
+            Arrays.sort(_values, 0, _size);
+            return "p50=" + getPercentile(50) + " p90=" + getPercentile(90) +
+                " p99=" + getPercentile(99) + " max=" + _values[_size - 1];
+        }
+
+        /**
+         * Returns the specified percentile of the (sorted) samples.
+         */
+        protected int getPercentile (int percentile)
+        {
+            return _values[Math.min((_size * percentile) / 100, _size - 1)];
+        }
+
+        /** The sample values. */
+        protected int[] _values = new int[64];
+
+        /** The number of samples. */
+        protected int _size;
+    }
+
+    /** The server to which the bots connect. */
+    protected String _hostname;
+
+    /** The server ports. */
+    protected int[] _ports, _datagramPorts;
+
+    /** The scene that the bots enter. */
+    protected int _sceneId;
+
+    /** The number of bots to create. */
+    protected int _count;
+
+    /** The number of bots to create per second. */
+    protected float _rate;
+
+    /** The number of seconds to run, or zero to run indefinitely. */
+    protected int _duration;
+
+    /** The queue on which all of the bots run. */
+    protected BasicRunQueue _rqueue = new BasicRunQueue("TudeyLoadGenerator");
+
+    /** The bots created so far. */
+    protected List<TudeyBot> _bots = Lists.newArrayList();
+
+    /** The collected statistics. */
+    protected Stats _stats = new Stats();
+
+    /** The time at which the generator was started and at which we last reported. */
+    protected long _started, _lastReport;
+
+    /** The default number of bots to create per second. */
+    protected static final float DEFAULT_SPAWN_RATE = 20f;
+
+    /** The interval at which we tick the bots. */
+    protected static final long TICK_INTERVAL = 20L;
+
+    /** The interval at which we report our statistics. */
+    protected static final long REPORT_INTERVAL = 10000L;
+
+    /** The time to wait for the bots to log off before stopping. */
+    protected static final long SHUTDOWN_DELAY = 2000L;
+
+    /** The prefix of the bots' usernames. */
+    protected static final String BOT_USERNAME_PREFIX = "bot";
+
+    /** The password used by the bots. */
+    protected static final String BOT_PASSWORD = "bot";
+}
@@ -33,16 +33,22 @@ import java.util.Arrays;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import com.samskivert.util.IntListUtil;
 
+import com.threerings.opengl.gui.util.Rectangle;
+
 import com.threerings.export.Exportable;
+import com.threerings.export.Exporter;
 import com.threerings.export.Importer;
 import com.threerings.util.DeepObject;
 
 /**
- * Maps pairs of integer coordinates to integer values.
+ * Maps pairs of integer coordinates to integer values.  Values are stored in square top-level
+ * cells, which are held in an open-addressing hash table keyed on their packed coordinates.
  */
 public class CoordIntMap extends AbstractMap<Coord, Integer>
     implements Exportable
@@ -123,6 +129,17 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
         protected int _idx;
     }
 
+    /**
+     * Receives the entries found by a region scan.
+     */
+    public interface RegionVisitor
+    {
+        /**
+         * Called for each entry within the region.  The visitor must not modify the map.
+         */
+        public void visit (int x, int y, int value);
+    }
+
     /**
      * Creates a new coord int map with a top-level cell size of 8x8 and with the value -1
      * representing the absence of an entry.
@@ -157,13 +174,36 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
         initTransientFields();
     }
 
+    /**
+     * Creates a new coord int map with the same granularity, empty value and contents as the
+     * specified other.
+     */
+    public CoordIntMap (CoordIntMap other)
+    {
+        _granularity = other._granularity;
+        _empty = other._empty;
+        _mask = other._mask;
+        _keys = other._keys.clone();
+        _cells = new int[other._cells.length][];
+        for (int ii = 0; ii < _cells.length; ii++) {
+            int[] cell = other._cells[ii];
+            _cells[ii] = (cell == null) ? null : cell.clone();
+        }
+        _counts = other._counts.clone();
+        _slotMask = other._slotMask;
+        _shift = other._shift;
+        _threshold = other._threshold;
+        _cellCount = other._cellCount;
+        _size = other._size;
+    }
+
     /**
      * Retrieves the value at the specified coordinates.
      */
     public int get (int x, int y)
     {
-        Cell cell = getCell(x, y);
-        return (cell == null) ? _empty : cell.get(x & _mask, y & _mask);
+        int[] cell = getCell(x, y);
+        return (cell == null) ? _empty : cell[getIndex(x, y)];
     }
 
     /**
@@ -177,14 +217,13 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
             // putting the empty value is equivalent to removing
             return remove(x, y);
         }
-        _coord.set(x >> _granularity, y >> _granularity);
-        Cell cell = _cells.get(_coord);
-        if (cell == null) {
-            _cells.put(_coord.clone(), cell = new Cell());
-        }
-        int ovalue = cell.put(x & _mask, y & _mask, value);
+        int slot = getOrCreateSlot(x, y);
+        int[] cell = _cells[slot];
+        int idx = getIndex(x, y);
+        int ovalue = cell[idx];
+        cell[idx] = value;
         if (ovalue == _empty) {
-            _size++;
+            noteAdded(slot, 1);
         }
         return ovalue;
     }
@@ -197,19 +236,9 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
      */
     public int setBits (int x, int y, int bits)
     {
-        if (bits == 0) {
-            return get(x, y);
-        }
-        _coord.set(x >> _granularity, y >> _granularity);
-        Cell cell = _cells.get(_coord);
-        if (cell == null) {
-            _cells.put(_coord.clone(), cell = new Cell());
-        }
-        int ovalue = cell.setBits(x & _mask, y & _mask, bits);
-        if (ovalue == _empty) {
-            _size++;
-        }
-        return ovalue;
+        int ovalue = get(x, y);
+        int nvalue = ovalue | bits;
+        return (nvalue == ovalue) ? ovalue : put(x, y, nvalue);
     }
 
     /**
@@ -219,17 +248,16 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
      */
     public int remove (int x, int y)
     {
-        _coord.set(x >> _granularity, y >> _granularity);
-        Cell cell = _cells.get(_coord);
+        int slot = findSlot(encode(x >> _granularity, y >> _granularity));
+        int[] cell = _cells[slot];
         if (cell == null) {
             return _empty;
         }
-        int ovalue = cell.remove(x & _mask, y & _mask);
+        int idx = getIndex(x, y);
+        int ovalue = cell[idx];
         if (ovalue != _empty) {
-            _size--;
-            if (cell.size() == 0) {
-                _cells.remove(_coord);
-            }
+            cell[idx] = _empty;
+            noteRemoved(slot, 1);
         }
         return ovalue;
     }
@@ -239,8 +267,7 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
      */
     public boolean containsKey (int x, int y)
     {
-        Cell cell = getCell(x, y);
-        return cell != null && cell.get(x & _mask, y & _mask) != _empty;
+        return get(x, y) != _empty;
     }
 
     /**
@@ -248,26 +275,245 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
      */
     public boolean containsValue (int value)
     {
-        for (Cell cell : _cells.values()) {
-            if (cell.containsValue(value)) {
+        if (value == _empty) {
+            return false;
+        }
+        for (int[] cell : _cells) {
+            if (cell != null && IntListUtil.contains(cell, value)) {
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Passes each entry within the specified region to the supplied visitor.
+     */
+    public void visitRegion (Rectangle region, RegionVisitor visitor)
+    {
+        visitRegion(region.x, region.y, region.width, region.height, visitor);
+    }
+
+    /**
+     * Passes each entry within the specified region to the supplied visitor.  Entries are
+     * visited a cell at a time, so the order is only row-major within each cell.
+     */
+    public void visitRegion (int x, int y, int width, int height, RegionVisitor visitor)
+    {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        int xmax = x + width - 1, ymax = y + height - 1;
+        int cxmin = x >> _granularity, cxmax = xmax >> _granularity;
+        int cymin = y >> _granularity, cymax = ymax >> _granularity;
+        if ((long)(cxmax - cxmin + 1) * (cymax - cymin + 1) <= _cells.length) {
+            for (int cy = cymin; cy <= cymax; cy++) {
+                for (int cx = cxmin; cx <= cxmax; cx++) {
+                    int[] cell = _cells[findSlot(encode(cx, cy))];
+                    if (cell != null) {
+                        visitCell(cx, cy, cell, x, y, xmax, ymax, visitor);
+                    }
+                }
+            }
+            return;
+        }
+        // the region covers more cells than the table holds, so scan the table instead
+        for (int ii = 0; ii < _cells.length; ii++) {
+            int[] cell = _cells[ii];
+            if (cell != null) {
+                long key = _keys[ii];
+                int cx = getX(key), cy = getY(key);
+                if (cx >= cxmin && cx <= cxmax && cy >= cymin && cy <= cymax) {
+                    visitCell(cx, cy, cell, x, y, xmax, ymax, visitor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the value at every location within the specified region.
+     */
+    public void putAll (Rectangle region, int value)
+    {
+        putAll(region.x, region.y, region.width, region.height, value);
+    }
+
+    /**
+     * Sets the value at every location within the specified region.
+     */
+    public void putAll (int x, int y, int width, int height, int value)
+    {
+        if (value == _empty) {
+            removeAll(x, y, width, height);
+            return;
+        }
+        for (int yy = y, yymax = y + height; yy < yymax; yy = nextRow(yy)) {
+            int rows = Math.min(nextRow(yy), yymax) - yy;
+            for (int xx = x, xxmax = x + width; xx < xxmax; xx = nextColumn(xx)) {
+                int columns = Math.min(nextColumn(xx), xxmax) - xx;
+                int slot = getOrCreateSlot(xx, yy);
+                int[] cell = _cells[slot];
+                int added = 0;
+                for (int ii = 0, idx = getIndex(xx, yy); ii < rows; ii++, idx += (_mask + 1)) {
+                    for (int jj = idx, jjmax = idx + columns; jj < jjmax; jj++) {
+                        if (cell[jj] == _empty) {
+                            added++;
+                        }
+                        cell[jj] = value;
+                    }
+                }
+                noteAdded(slot, added);
+            }
+        }
+    }
+
+    /**
+     * Stores the bitwise OR of the previous values and the specified bits at every location
+     * within the specified region.
+     */
+    public void setBits (Rectangle region, int bits)
+    {
+        setBits(region.x, region.y, region.width, region.height, bits);
+    }
+
+    /**
+     * Stores the bitwise OR of the previous values and the specified bits at every location
+     * within the specified region.
+     */
+    public void setBits (int x, int y, int width, int height, int bits)
+    {
+        // locations without entries change only if the bits alter the empty value
+        boolean create = ((_empty | bits) != _empty);
+        for (int yy = y, yymax = y + height; yy < yymax; yy = nextRow(yy)) {
+            int rows = Math.min(nextRow(yy), yymax) - yy;
+            for (int xx = x, xxmax = x + width; xx < xxmax; xx = nextColumn(xx)) {
+                int columns = Math.min(nextColumn(xx), xxmax) - xx;
+                int slot = create ? getOrCreateSlot(xx, yy) :
+                    findSlot(encode(xx >> _granularity, yy >> _granularity));
+                int[] cell = _cells[slot];
+                if (cell == null) {
+                    continue;
+                }
+                int added = 0, removed = 0;
+                for (int ii = 0, idx = getIndex(xx, yy); ii < rows; ii++, idx += (_mask + 1)) {
+                    for (int jj = idx, jjmax = idx + columns; jj < jjmax; jj++) {
+                        int ovalue = cell[jj], nvalue = ovalue | bits;
+                        if (nvalue == ovalue) {
+                            continue;
+                        }
+                        cell[jj] = nvalue;
+                        if (ovalue == _empty) {
+                            added++;
+                        } else if (nvalue == _empty) {
+                            removed++;
+                        }
+                    }
+                }
+                if (added > 0) {
+                    noteAdded(slot, added);
+                }
+                if (removed > 0) {
+                    noteRemoved(slot, removed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all of the entries within the specified region.
+     *
+     * @return whether or not the map changed as a result of the removal.
+     */
+    public boolean removeAll (Rectangle region)
+    {
+        return removeAll(region.x, region.y, region.width, region.height);
+    }
+
+    /**
+     * Removes all of the entries within the specified region.
+     *
+     * @return whether or not the map changed as a result of the removal.
+     */
+    public boolean removeAll (int x, int y, int width, int height)
+    {
+        int osize = _size;
+        for (int yy = y, yymax = y + height; yy < yymax; yy = nextRow(yy)) {
+            int rows = Math.min(nextRow(yy), yymax) - yy;
+            for (int xx = x, xxmax = x + width; xx < xxmax; xx = nextColumn(xx)) {
+                int columns = Math.min(nextColumn(xx), xxmax) - xx;
+                int slot = findSlot(encode(xx >> _granularity, yy >> _granularity));
+                int[] cell = _cells[slot];
+                if (cell == null) {
+                    continue;
+                }
+                int removed = 0;
+                for (int ii = 0, idx = getIndex(xx, yy); ii < rows; ii++, idx += (_mask + 1)) {
+                    for (int jj = idx, jjmax = idx + columns; jj < jjmax; jj++) {
+                        if (cell[jj] != _empty) {
+                            cell[jj] = _empty;
+                            removed++;
+                        }
+                    }
+                }
+                if (removed > 0) {
+                    noteRemoved(slot, removed);
+                }
+            }
+        }
+        return _size != osize;
+    }
+
+    /**
+     * Custom field write method.
+     */
+    public void writeFields (Exporter out)
+        throws IOException
+    {
+        out.write("granularity", _granularity, 3);
+        out.write("empty", _empty, -1);
+
+        // write the cells out as a map, which is how they were stored in earlier versions
+        HashMap<Coord, Cell> cells = new HashMap<Coord, Cell>();
+        for (int ii = 0; ii < _cells.length; ii++) {
+            if (_cells[ii] != null) {
+                long key = _keys[ii];
+                cells.put(new Coord(getX(key), getY(key)), new Cell(_cells[ii]));
+            }
+        }
+        out.write("cells", cells, new HashMap<Coord, Cell>(), HashMap.class);
+    }
+
     /**
      * Custom field read method.
      */
     public void readFields (Importer in)
         throws IOException
     {
-        in.defaultReadFields();
+        _granularity = in.read("granularity", 3);
+        _empty = in.read("empty", -1);
+        @SuppressWarnings("unchecked") HashMap<Coord, Cell> cells =
+            in.read("cells", new HashMap<Coord, Cell>(), HashMap.class);
         initTransientFields();
+        ensureCapacity(cells.size());
 
-        // compute the size
-        for (Cell cell : _cells.values()) {
-            _size += cell.size();
+        // adopt the cell arrays
+        for (Map.Entry<Coord, Cell> entry : cells.entrySet()) {
+            int[] values = entry.getValue().getValues();
+            int count = 0;
+            for (int value : values) {
+                if (value != _empty) {
+                    count++;
+                }
+            }
+            if (count > 0) {
+                Coord coord = entry.getKey();
+                int slot = findSlot(encode(coord.x, coord.y));
+                _keys[slot] = encode(coord.x, coord.y);
+                _cells[slot] = values;
+                _counts[slot] = count;
+                _cellCount++;
+                _size += count;
+            }
         }
     }
 
@@ -285,39 +531,38 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
                     }
                     public CoordIntEntry next () {
                         checkConcurrentModification();
-                        if (_centry == null) {
-                            _centry = _cit.next();
+                        if (_count >= _size) {
+                            throw new NoSuchElementException();
                         }
                         while (true) {
-                            int[] values = _centry.getValue().getValues();
-                            for (; _idx < values.length; _idx++) {
-                                int value = values[_idx];
-                                if (value != _empty) {
-                                    Coord coord = _centry.getKey();
-                                    _dummy.getKey().set(
-                                        (coord.x << _granularity) | (_idx & _mask),
-                                        (coord.y << _granularity) | (_idx >> _granularity));
-                                    _dummy._values = values;
-                                    _dummy._idx = _idx;
-                                    _idx++;
-                                    _count++;
-                                    return _dummy;
+                            int[] cell = _cells[_slot];
+                            if (cell != null) {
+                                for (_idx++; _idx < cell.length; _idx++) {
+                                    if (cell[_idx] != _empty) {
+                                        long key = _keys[_slot];
+                                        _dummy.getKey().set(
+                                            (getX(key) << _granularity) | (_idx & _mask),
+                                            (getY(key) << _granularity) | (_idx >> _granularity));
+                                        _dummy._values = cell;
+                                        _dummy._idx = _idx;
+                                        _count++;
+                                        return _dummy;
+                                    }
                                 }
                             }
-                            _centry = _cit.next();
-                            _idx = 0;
+                            _slot = (_slot + 1) & _slotMask;
+                            _idx = -1;
                         }
                     }
                     public void remove () {
                         checkConcurrentModification();
-                        Cell cell = _centry.getValue();
-                        cell.remove(_idx);
-                        if (cell.size() == 0) {
-                            _cit.remove();
-                            _centry = null;
-                            _idx = 0;
+                        _cells[_slot][_idx] = _empty;
+                        if (_counts[_slot] == 1) {
+                            // removing the cell may shift a later one into its slot, which we
+                            // will then examine from the beginning
+                            _idx = -1;
                         }
-                        _size--;
+                        noteRemoved(_slot, 1);
                         _count--;
                         _omodcount = _modcount;
                     }
@@ -326,9 +571,10 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
                             throw new ConcurrentModificationException();
                         }
                     }
-                    protected Iterator<Entry<Coord, Cell>> _cit = _cells.entrySet().iterator();
-                    protected Entry<Coord, Cell> _centry;
-                    protected int _idx;
+                    // starting from a free slot guarantees that removals never shift cells from
+                    // the slots we have yet to visit into the ones we have already visited
+                    protected int _slot = getFreeSlot();
+                    protected int _idx = -1;
                     protected int _count;
                     protected int _omodcount = _modcount;
                     protected CoordIntEntry _dummy = new CoordIntEntry();
@@ -397,7 +643,7 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
     @Override
     public void clear ()
     {
-        _cells.clear();
+        allocate(MIN_CAPACITY);
         _size = 0;
         _modcount++;
     }
@@ -420,147 +666,263 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
     protected void initTransientFields ()
     {
         _mask = (1 << _granularity) - 1;
+        allocate(MIN_CAPACITY);
     }
 
     /**
-     * Returns the cell corresponding to the specified coordinates.
+     * Returns the values of the cell corresponding to the specified coordinates, or
+     * <code>null</code> if there is no such cell.  Neither allocates nor modifies any state, so
+     * maps shared between scene instances may be read from several threads at once.
      */
-    protected Cell getCell (int x, int y)
+    protected int[] getCell (int x, int y)
     {
-        _coord.set(x >> _granularity, y >> _granularity);
-        return _cells.get(_coord);
+        return _cells[findSlot(encode(x >> _granularity, y >> _granularity))];
     }
 
     /**
-     * Represents a single top-level cell.
+     * Returns the index within its cell of the value at the specified coordinates.
      */
-    protected class Cell extends DeepObject
-        implements Exportable
+    protected int getIndex (int x, int y)
     {
-        /**
-         * Creates a new cell.
-         */
-        public Cell ()
-        {
-            _values = new int[1 << _granularity << _granularity];
-            Arrays.fill(_values, _empty);
-        }
+        return ((y & _mask) << _granularity) | (x & _mask);
+    }
 
-        /**
-         * Returns a reference to the cell's array of values.
-         */
-        public int[] getValues ()
-        {
-            return _values;
+    /**
+     * Returns the first row of the cell following the one containing the specified row.
+     */
+    protected int nextRow (int y)
+    {
+        return (y | _mask) + 1;
+    }
+
+    /**
+     * Returns the first column of the cell following the one containing the specified column.
+     */
+    protected int nextColumn (int x)
+    {
+        return (x | _mask) + 1;
+    }
+
+    /**
+     * Passes the entries of the specified cell that lie within the given bounds to the visitor.
+     */
+    protected void visitCell (
+        int cx, int cy, int[] cell, int xmin, int ymin, int xmax, int ymax, RegionVisitor visitor)
+    {
+        int ox = cx << _granularity, oy = cy << _granularity;
+        int x0 = Math.max(xmin, ox), x1 = Math.min(xmax, ox + _mask);
+        int y0 = Math.max(ymin, oy), y1 = Math.min(ymax, oy + _mask);
+        for (int yy = y0; yy <= y1; yy++) {
+            for (int xx = x0, idx = getIndex(x0, yy); xx <= x1; xx++, idx++) {
+                int value = cell[idx];
+                if (value != _empty) {
+                    visitor.visit(xx, yy, value);
+                }
+            }
         }
+    }
 
-        /**
-         * Determines whether this cell contains the specified value.
-         */
-        public boolean containsValue (int value)
-        {
-            return IntListUtil.contains(_values, value);
+    /**
+     * Returns the slot of the cell containing the specified coordinates, creating the cell if
+     * necessary.
+     */
+    protected int getOrCreateSlot (int x, int y)
+    {
+        long key = encode(x >> _granularity, y >> _granularity);
+        int slot = findSlot(key);
+        if (_cells[slot] != null) {
+            return slot;
         }
+        if (_cellCount >= _threshold) {
+            rehash(_cells.length << 1);
+            slot = findSlot(key);
+        }
+        int[] cell = new int[1 << _granularity << _granularity];
+        Arrays.fill(cell, _empty);
+        _keys[slot] = key;
+        _cells[slot] = cell;
+        _counts[slot] = 0;
+        _cellCount++;
+        return slot;
+    }
 
-        /**
-         * Retrieves the value at the specified coordinates within the cell.
-         */
-        public int get (int x, int y)
-        {
-            return _values[(y << _granularity) | x];
+    /**
+     * Updates the counts after entries have been added to the cell in the specified slot.
+     */
+    protected void noteAdded (int slot, int count)
+    {
+        _counts[slot] += count;
+        _size += count;
+        _modcount++;
+    }
+
+    /**
+     * Updates the counts after entries have been removed from the cell in the specified slot,
+     * removing the cell if it is now empty.
+     */
+    protected void noteRemoved (int slot, int count)
+    {
+        _size -= count;
+        _modcount++;
+        if ((_counts[slot] -= count) == 0) {
+            removeSlot(slot);
         }
+    }
 
-        /**
-         * Sets the value at the specified coordinates within the cell.
-         *
-         * @return the previously stored value.
-         */
-        public int put (int x, int y, int nvalue)
-        {
-            int idx = (y << _granularity) | x;
-            int ovalue = _values[idx];
-            _values[idx] = nvalue;
-            if (ovalue == _empty) {
-                _size++;
+    /**
+     * (Re)allocates the table with the specified capacity, which must be a power of two.  Any
+     * existing cells are discarded.
+     */
+    protected void allocate (int capacity)
+    {
+        _keys = new long[capacity];
+        _cells = new int[capacity][];
+        _counts = new int[capacity];
+        _slotMask = capacity - 1;
+        _shift = Long.numberOfLeadingZeros(capacity) + 1;
+        _threshold = (int)(capacity * MAX_LOAD_FACTOR);
+        _cellCount = 0;
+    }
+
+    /**
+     * Makes sure that the table can hold the specified number of cells without being resized.
+     */
+    protected void ensureCapacity (int cells)
+    {
+        if (cells > _threshold) {
+            int capacity = _cells.length;
+            while (capacity * MAX_LOAD_FACTOR < cells) {
+                capacity <<= 1;
             }
-            _modcount++;
-            return ovalue;
+            rehash(capacity);
         }
+    }
 
-        /**
-         * Sets the value at the specified coordinates to the bitwise OR of the previous
-         * value and the new value.
-         *
-         * @return the previously stored value.
-         */
-        public int setBits (int x, int y, int bits)
-        {
-            int idx = (y << _granularity) | x;
-            int ovalue = _values[idx];
-            _values[idx] |= bits;
-            if (ovalue == _empty) {
-                _size++;
+    /**
+     * Moves the cells into a new table of the specified capacity.
+     */
+    protected void rehash (int capacity)
+    {
+        long[] okeys = _keys;
+        int[][] ocells = _cells;
+        int[] ocounts = _counts;
+        int ocellCount = _cellCount;
+        allocate(capacity);
+        for (int ii = 0; ii < ocells.length; ii++) {
+            if (ocells[ii] != null) {
+                int slot = findSlot(okeys[ii]);
+                _keys[slot] = okeys[ii];
+                _cells[slot] = ocells[ii];
+                _counts[slot] = ocounts[ii];
             }
-            _modcount++;
-            return ovalue;
         }
+        _cellCount = ocellCount;
+        _modcount++;
+    }
 
-        /**
-         * Removes the value at the specified coordinates within the cell.
-         *
-         * @return the previously stored value.
-         */
-        public int remove (int x, int y)
-        {
-            int idx = (y << _granularity) | x;
-            int ovalue = _values[idx];
-            if (ovalue != _empty) {
-                _values[idx] = _empty;
-                _size--;
-                _modcount++;
+    /**
+     * Returns the slot containing the specified cell key or, if there is no such slot, the free
+     * slot at which the key would be inserted.
+     */
+    protected int findSlot (long key)
+    {
+        int slot = (int)((key * HASH_MULTIPLIER) >>> _shift);
+        while (_cells[slot] != null && _keys[slot] != key) {
+            slot = (slot + 1) & _slotMask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the index of a free slot in the table.
+     */
+    protected int getFreeSlot ()
+    {
+        int slot = 0;
+        while (_cells[slot] != null) {
+            slot++;
+        }
+        return slot;
+    }
+
+    /**
+     * Removes the cell in the specified slot, shifting back any following cells in the same
+     * probe sequence so that no tombstones are needed.
+     */
+    protected void removeSlot (int slot)
+    {
+        int last = slot;
+        for (int ii = (slot + 1) & _slotMask; _cells[ii] != null; ii = (ii + 1) & _slotMask) {
+            // the cell may fill the hole unless its home slot lies after the hole
+            int home = (int)((_keys[ii] * HASH_MULTIPLIER) >>> _shift);
+            if (((ii - home) & _slotMask) >= ((ii - last) & _slotMask)) {
+                _keys[last] = _keys[ii];
+                _cells[last] = _cells[ii];
+                _counts[last] = _counts[ii];
+                last = ii;
             }
-            return ovalue;
         }
+        _cells[last] = null;
+        _cellCount--;
+    }
+
+    /**
+     * Packs the specified cell coordinates into a key.
+     */
+    protected static long encode (int x, int y)
+    {
+        return ((long)x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Extracts the x coordinate from a packed key.
+     */
+    protected static int getX (long key)
+    {
+        return (int)(key >> 32);
+    }
 
+    /**
+     * Extracts the y coordinate from a packed key.
+     */
+    protected static int getY (long key)
+    {
+        return (int)key;
+    }
+
+    /**
+     * Wraps the values of a top-level cell for export.
+     */
+    protected class Cell extends DeepObject
+        implements Exportable
+    {
         /**
-         * Removes the value at the specified index.
+         * Creates a new cell.
          */
-        public void remove (int idx)
+        public Cell ()
         {
-            _values[idx] = _empty;
-            _size--;
-            _modcount++;
+            _values = new int[1 << _granularity << _granularity];
+            Arrays.fill(_values, _empty);
         }
 
         /**
-         * Returns the number of entries in the cell.
+         * Creates a cell wrapping the specified values.
          */
-        public int size ()
+        public Cell (int[] values)
         {
-            return _size;
+            _values = values;
         }
 
         /**
-         * Custom field read method.
+         * Returns a reference to the cell's array of values.
          */
-        public void readFields (Importer in)
-            throws IOException
+        public int[] getValues ()
         {
-            in.defaultReadFields();
-
-            // compute the size
-            for (int value : _values) {
-                if (value != _empty) {
-                    _size++;
-                }
-            }
+            return _values;
         }
 
         /** The values in the cell. */
         protected int[] _values;
-
-        /** The number of entries in the cell. */
-        protected transient int _size;
     }
 
     /** The size of the top-level cells as a power of two. */
@@ -569,18 +931,42 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
     /** The value indicating an empty mapping. */
     protected int _empty;
 
-    /** The top-level cells. */
-    protected HashMap<Coord, Cell> _cells = new HashMap<Coord, Cell>();
-
     /** The mask value derived from the granularity. */
     protected transient int _mask;
 
+    /** The packed coordinates of the cell in each slot. */
+    protected transient long[] _keys;
+
+    /** The values of the cell in each slot, or <code>null</code> for free slots. */
+    protected transient int[][] _cells;
+
+    /** The number of entries in the cell in each slot. */
+    protected transient int[] _counts;
+
+    /** The mask applied to slot indices (the table capacity minus one). */
+    protected transient int _slotMask;
+
+    /** The shift applied to hashed keys to obtain their home slots. */
+    protected transient int _shift;
+
+    /** The number of cells at which the table will be grown. */
+    protected transient int _threshold;
+
+    /** The number of cells in the table. */
+    protected transient int _cellCount;
+
     /** The number of entries in the map. */
     protected transient int _size;
 
     /** The modification count (used to detect concurrent modifications). */
     protected transient int _modcount;
 
-    /** A coord to reuse for queries. */
-    protected transient Coord _coord = new Coord();
+    /** The initial (and minimum) capacity of the table. */
+    protected static final int MIN_CAPACITY = 8;
+
+    /** The maximum fraction of the table's slots that may be occupied before it is grown. */
+    protected static final float MAX_LOAD_FACTOR = 0.75f;
+
+    /** The multiplier used to scramble keys (2^64 divided by the golden ratio). */
+    protected static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
 }
@@ -0,0 +1,485 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+
+import static com.threerings.util.Log.log;
+
+/**
+ * Apportions a single memory budget between a number of caches and collects their statistics.
+ *
+ * <p> Each {@link GovernedCache} is registered with a share of the total budget (by default, the
+ * budget it was configured with when registered). When the governor rebalances (which it does
+ * periodically as its caches evict entries, or when asked), caches that are not using their share
+ * are trimmed to their current weight plus some headroom and the remainder is divided between
+ * the caches that are full, in proportion to their shares. No cache's budget is reduced below a
+ * quarter of its share. When memory runs short, {@link #relieve} reclaims memory from the caches
+ * with the poorest hit rates first, rather than from all caches at once. Applications arrange
+ * for it to do so automatically when the heap remains too full after a garbage collection by
+ * calling {@link #watchMemory} on startup (typically with {@link #DEFAULT_MEMORY_THRESHOLD}).
+ * Caches that are discarded before the application exits should be unregistered.
+ *
+ * <p> Caches whose entries are not weighed (such as soft-valued caches) may be registered with
+ * just a {@link CacheMeter}, in which case they are reported on but not governed. (The garbage
+ * collector reclaims their entries as memory runs short; discarding entries that are still in use
+ * elsewhere would only cause them to be duplicated.)
+ *
+ * <p> Budgets are applied lazily: a governed cache adopts its new budget the next time it is
+ * accessed by its owner, so that the governor never needs to acquire the owners' locks.
+ */
+public class CacheGovernor
+{
+    /**
+     * A cache whose budget may be adjusted by the governor.
+     */
+    public interface GovernedCache
+    {
+        /**
+         * Returns the meter that records this cache's statistics.
+         */
+        public CacheMeter getMeter ();
+
+        /**
+         * Returns the number of entries in the cache.
+         */
+        public int size ();
+
+        /**
+         * Returns the (approximate) current weight of the cache's entries, in bytes.
+         */
+        public long getWeight ();
+
+        /**
+         * Returns the cache's budget, in bytes.
+         */
+        public long getBudget ();
+
+        /**
+         * Sets the cache's budget, in bytes. This may be called from any thread.
+         */
+        public void setBudget (long budget);
+    }
+
+    /**
+     * Returns the governor shared by the caches in this VM.
+     */
+    public static CacheGovernor getDefault ()
+    {
+        return _default;
+    }
+
+    /**
+     * Registers a cache to be governed, with a share equal to its current budget. Unless an
+     * explicit total budget has been set, the total budget grows by the same amount.
+     */
+    public void register (GovernedCache cache)
+    {
+        register(cache, Math.max(cache.getBudget(), 1L));
+    }
+
+    /**
+     * Registers a cache to be governed with the specified share of the total budget. Unless an
+     * explicit total budget has been set, the total budget grows by the same amount.
+     */
+    public synchronized void register (GovernedCache cache, long share)
+    {
+        _governed.add(new Governed(cache, share));
+        _meters.add(cache.getMeter());
+        if (!_explicitTotal) {
+            _totalBudget += share;
+        }
+    }
+
+    /**
+     * Registers a cache that is to be reported on, but not governed.
+     */
+    public synchronized void register (CacheMeter meter)
+    {
+        _meters.add(meter);
+    }
+
+    /**
+     * Removes a governed cache from the governor.
+     */
+    public synchronized void unregister (GovernedCache cache)
+    {
+        for (Iterator<Governed> it = _governed.iterator(); it.hasNext(); ) {
+            Governed gov = it.next();
+            if (gov.cache == cache) {
+                it.remove();
+                if (!_explicitTotal) {
+                    _totalBudget -= gov.share;
+                }
+            }
+        }
+        unregister(cache.getMeter());
+    }
+
+    /**
+     * Removes a reported cache from the governor.
+     */
+    public synchronized void unregister (CacheMeter meter)
+    {
+        _meters.remove(meter);
+    }
+
+    /**
+     * Sets the total budget (in bytes) to be divided between the governed caches and rebalances.
+     */
+    public synchronized void setTotalBudget (long budget)
+    {
+        _totalBudget = budget;
+        _explicitTotal = true;
+        rebalance();
+    }
+
+    /**
+     * Returns the total budget (in bytes) divided between the governed caches.
+     */
+    public synchronized long getTotalBudget ()
+    {
+        return _totalBudget;
+    }
+
+    /**
+     * Called by governed caches when they evict entries, to rebalance if we haven't recently.
+     */
+    public synchronized void noteEviction ()
+    {
+        if (System.currentTimeMillis() - _lastRebalance >= REBALANCE_INTERVAL) {
+            rebalance();
+        }
+    }
+
+    /**
+     * Redistributes the total budget between the governed caches.
+     */
+    public synchronized void rebalance ()
+    {
+        _lastRebalance = System.currentTimeMillis();
+        if (_governed.isEmpty()) {
+            return;
+        }
+
+        // first satisfy the caches that aren't making full use of their shares
+        List<Governed> active = Lists.newArrayList(_governed);
+        long remaining = _totalBudget, ashares = getTotalShares();
+        for (boolean changed = true; changed && !active.isEmpty(); ) {
+            changed = false;
+            long premaining = remaining, pshares = ashares;
+            for (Iterator<Governed> it = active.iterator(); it.hasNext(); ) {
+                Governed gov = it.next();
+                if (gov.isFull()) {
+                    continue;
+                }
+                long weight = gov.cache.getWeight();
+                long want = Math.max(getMinimumBudget(gov), weight + weight/HEADROOM_DIVISOR);
+                if (want < apportion(premaining, gov.share, pshares)) {
+                    gov.setBudget(want);
+                    remaining -= want;
+                    ashares -= gov.share;
+                    it.remove();
+                    changed = true;
+                }
+            }
+        }
+
+        // then divide what's left between the rest
+        for (Governed gov : active) {
+            gov.setBudget(Math.max(getMinimumBudget(gov),
+                                   apportion(remaining, gov.share, ashares)));
+        }
+    }
+
+    /**
+     * Attempts to reclaim the specified number of bytes by reducing the budgets of the governed
+     * caches, starting with those that have the lowest hit rates.
+     *
+     * @return the number of bytes that will be reclaimed (as the caches are next accessed).
+     */
+    public synchronized long relieve (long bytes)
+    {
+        List<Governed> governed = Lists.newArrayList(_governed);
+        Collections.sort(governed, new Comparator<Governed>() {
+            public int compare (Governed g1, Governed g2) {
+                return Double.compare(g1.cache.getMeter().getStats().hitRate(),
+                                      g2.cache.getMeter().getStats().hitRate());
+            }
+        });
+        long reclaimed = 0;
+        for (Governed gov : governed) {
+            if (reclaimed >= bytes) {
+                break;
+            }
+            long weight = gov.cache.getWeight();
+            long budget = Math.max(getMinimumBudget(gov), weight - (bytes - reclaimed));
+            if (budget < weight) {
+                gov.setBudget(budget);
+                reclaimed += (weight - budget);
+            }
+        }
+        log.info("Relieved cache memory", "requested", bytes, "reclaimed", reclaimed);
+
+        // leave the reduced budgets in place for a while before rebalancing
+        _lastRebalance = System.currentTimeMillis();
+        return reclaimed;
+    }
+
+    /**
+     * Arranges for this governor to {@link #relieve} memory pressure whenever the usage of the
+     * heap's tenured memory pools, as measured after a garbage collection, exceeds the specified
+     * fraction of their maximum size. The amount relieved is the amount by which usage exceeds
+     * the threshold. Note that the thresholds are set on the VM's memory pools, and thus apply to
+     * all governors and anything else monitoring them.
+     */
+    public synchronized void watchMemory (float fraction)
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            // the tenured pools are the ones that support both kinds of usage threshold
+            if (pool.getType() != MemoryType.HEAP || !pool.isUsageThresholdSupported() ||
+                    !pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+            long max = pool.getUsage().getMax();
+            if (max > 0) {
+                pool.setCollectionUsageThreshold((long)(max * fraction));
+            }
+        }
+        if (_memoryListener != null) {
+            return;
+        }
+        _memoryListener = new NotificationListener() {
+            public void handleNotification (Notification notification, Object handback) {
+                if (notification.getType().equals(
+                        MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED)) {
+                    memoryThresholdExceeded(MemoryNotificationInfo.from(
+                        (CompositeData)notification.getUserData()));
+                }
+            }
+        };
+        ((NotificationEmitter)ManagementFactory.getMemoryMXBean()).addNotificationListener(
+            _memoryListener, null, null);
+    }
+
+    /**
+     * Returns a report on the state of our caches.
+     */
+    public String getReport ()
+    {
+        StringBuilder buf = new StringBuilder();
+        appendReport(buf, false);
+        return buf.toString();
+    }
+
+    /**
+     * Appends a report on the state of our caches to the supplied buffer.
+     *
+     * @param reset if true, the statistics of our caches will be reset.
+     */
+    public synchronized void appendReport (StringBuilder buf, boolean reset)
+    {
+        long weight = 0;
+        for (Governed gov : _governed) {
+            weight += gov.cache.getWeight();
+        }
+        buf.append("- Governed: ").append(weight/1024).append("k used, ");
+        buf.append(_totalBudget/1024).append("k budget\n");
+
+        for (CacheMeter meter : _meters) {
+            buf.append("- ").append(meter.getName()).append(": ");
+            Governed gov = getGoverned(meter);
+            if (gov != null) {
+                buf.append(gov.cache.getWeight()/1024).append("k/");
+                buf.append(gov.cache.getBudget()/1024).append("k, ");
+                buf.append(gov.cache.size()).append(" entries, ");
+            }
+            CacheStats stats = meter.getStats();
+            buf.append(stats.hitCount()).append(" hits (");
+            buf.append(Math.round(stats.hitRate()*100)).append("%), ");
+            buf.append(stats.missCount()).append(" misses, ");
+            buf.append(stats.evictionCount()).append(" evictions, ");
+            buf.append(stats.loadCount()).append(" loads (");
+            buf.append(Math.round(stats.averageLoadPenalty()/1000)).append("us avg)\n");
+            if (reset) {
+                meter.reset();
+            }
+        }
+        if (reset) {
+            for (Governed gov : _governed) {
+                gov.evictions = 0L;
+            }
+        }
+    }
+
+    /**
+     * Called (on a VM notification thread) when the usage of a watched memory pool remains over
+     * its threshold after a garbage collection.
+     */
+    protected void memoryThresholdExceeded (MemoryNotificationInfo info)
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getName().equals(info.getPoolName())) {
+                long excess = info.getUsage().getUsed() - pool.getCollectionUsageThreshold();
+                if (excess > 0) {
+                    log.info("Heap usage over threshold", "pool", info.getPoolName(),
+                             "used", info.getUsage().getUsed(), "excess", excess);
+                    relieve(excess);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the shares of the governed caches.
+     */
+    protected long getTotalShares ()
+    {
+        long shares = 0;
+        for (Governed gov : _governed) {
+            shares += gov.share;
+        }
+        return shares;
+    }
+
+    /**
+     * Returns the smallest budget the specified cache may be given.
+     */
+    protected long getMinimumBudget (Governed gov)
+    {
+        return apportion(_totalBudget, gov.share, getTotalShares()) / MINIMUM_SHARE_DIVISOR;
+    }
+
+    /**
+     * Returns the portion of the specified amount corresponding to the specified share of the
+     * specified total shares, or zero if there are no shares (all caches having been registered
+     * with zero shares).
+     */
+    protected static long apportion (long amount, long share, long shares)
+    {
+        return (shares <= 0) ? 0L : amount * share / shares;
+    }
+
+    /**
+     * Returns the governed cache with the supplied meter, if any.
+     */
+    protected Governed getGoverned (CacheMeter meter)
+    {
+        for (Governed gov : _governed) {
+            if (gov.cache.getMeter() == meter) {
+                return gov;
+            }
+        }
+        return null;
+    }
+
+    /** Tracks a governed cache. */
+    protected static class Governed
+    {
+        /** The cache. */
+        public final GovernedCache cache;
+
+        /** The cache's share of the total budget. */
+        public final long share;
+
+        /** The cache's eviction count when we last set its budget. */
+        public long evictions;
+
+        public Governed (GovernedCache cache, long share) {
+            this.cache = cache;
+            this.share = share;
+        }
+
+        /**
+         * Determines whether the cache has been evicting entries (or is close to doing so) since
+         * we last set its budget.
+         */
+        public boolean isFull () {
+            long budget = cache.getBudget();
+            return cache.getMeter().getStats().evictionCount() > evictions ||
+                cache.getWeight() >= budget - budget/HEADROOM_DIVISOR;
+        }
+
+        /**
+         * Sets the cache's budget and notes its eviction count.
+         */
+        public void setBudget (long budget) {
+            evictions = cache.getMeter().getStats().evictionCount();
+            cache.setBudget(budget);
+        }
+    }
+
+    /** The caches we govern. */
+    protected List<Governed> _governed = Lists.newArrayList();
+
+    /** The meters of all of the caches on which we report. */
+    protected List<CacheMeter> _meters = Lists.newArrayList();
+
+    /** The total budget divided between our caches. */
+    protected long _totalBudget;
+
+    /** Whether our total budget was set explicitly. */
+    protected boolean _explicitTotal;
+
+    /** The time at which we last rebalanced. */
+    protected long _lastRebalance;
+
+    /** Listens for memory usage threshold notifications, if we're watching memory. */
+    protected NotificationListener _memoryListener;
+
+    /** The minimum interval between automatic rebalances. */
+    protected static final long REBALANCE_INTERVAL = 5000L;
+
+    /** Caches that aren't full receive their weight plus this fraction of it as headroom. */
+    protected static final int HEADROOM_DIVISOR = 4;
+
+    /** No cache's budget is reduced below its share divided by this. */
+    protected static final int MINIMUM_SHARE_DIVISOR = 4;
+
+    /** The fraction of the heap that applications typically allow to remain in use after a
+     * collection before the default governor relieves its caches (see {@link #watchMemory}). */
+    public static final float DEFAULT_MEMORY_THRESHOLD = 0.85f;
+
+    /** The default governor. */
+    protected static CacheGovernor _default = new CacheGovernor();
+}
@@ -0,0 +1,116 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Accumulates the hits, misses, evictions and load times of a cache, for reporting through the
+ * {@link CacheGovernor}. Meters are thread safe.
+ */
+public class CacheMeter
+{
+    /**
+     * Creates a meter for the named cache.
+     */
+    public CacheMeter (String name)
+    {
+        _name = name;
+    }
+
+    /**
+     * Returns the name of the metered cache.
+     */
+    public String getName ()
+    {
+        return _name;
+    }
+
+    /**
+     * Notes that a lookup found its entry in the cache.
+     */
+    public void recordHit ()
+    {
+        _stats.recordHits(1);
+    }
+
+    /**
+     * Notes that a lookup failed to find its entry in the cache.
+     */
+    public void recordMiss ()
+    {
+        _stats.recordMisses(1);
+    }
+
+    /**
+     * Notes that an entry was created (following a miss) in the specified number of nanoseconds.
+     */
+    public void recordLoad (long nanos)
+    {
+        _stats.recordLoadSuccess(nanos);
+    }
+
+    /**
+     * Notes that an entry was evicted from the cache to make room for others (or reclaimed by the
+     * garbage collector), rather than explicitly removed.
+     */
+    public void recordEviction ()
+    {
+        _stats.recordEviction();
+    }
+
+    /**
+     * Returns the statistics accumulated since the meter was created or last reset.
+     */
+    public CacheStats getStats ()
+    {
+        return _stats.snapshot().minus(_baseline);
+    }
+
+    /**
+     * Resets the statistics reported by {@link #getStats}.
+     */
+    public void reset ()
+    {
+        _baseline = _stats.snapshot();
+    }
+
+    @Override
+    public String toString ()
+    {
+        return _name;
+    }
+
+    /** The name of the metered cache. */
+    protected String _name;
+
+    /** Accumulates our statistics. */
+    protected AbstractCache.SimpleStatsCounter _stats = new AbstractCache.SimpleStatsCounter();
+
+    /** The statistics as of our last reset. */
+    protected volatile CacheStats _baseline = _stats.snapshot();
+}
@@ -6,6 +6,9 @@ package com.threerings.util;
 import java.util.Map;
 
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ForwardingMap;
 
 /**
  * Utilities to build Maps backed by a guava Cache.
@@ -33,4 +36,48 @@ public class CacheUtil
         }
         return builder.<K, V>build().asMap();
     }
+
+    /**
+     * Create a soft-value map whose hits, misses and evictions (including values reclaimed by the
+     * garbage collector) are recorded by the supplied meter.
+     */
+    public static <K, V> Map<K, V> softValues (CacheMeter meter)
+    {
+        return softValues(meter, -1);
+    }
+
+    /**
+     * Create a soft-value map with the specified initial capacity whose hits, misses and evictions
+     * are recorded by the supplied meter.
+     */
+    public static <K, V> Map<K, V> softValues (final CacheMeter meter, int initialCapacity)
+    {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .softValues();
+        if (initialCapacity != -1) {
+            builder.initialCapacity(initialCapacity);
+        }
+        final Map<K, V> map = builder.removalListener(new RemovalListener<K, V>() {
+            public void onRemoval (RemovalNotification<K, V> notification) {
+                if (notification.wasEvicted()) {
+                    meter.recordEviction();
+                }
+            }
+        }).<K, V>build().asMap();
+        return new ForwardingMap<K, V>() {
+            @Override public V get (Object key) {
+                V value = map.get(key);
+                if (value == null) {
+                    meter.recordMiss();
+                } else {
+                    meter.recordHit();
+                }
+                return value;
+            }
+            @Override protected Map<K, V> delegate () {
+                return map;
+            }
+        };
+    }
 }
@@ -27,6 +27,9 @@ package com.threerings.util;
 
 import java.io.File;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
@@ -36,6 +39,7 @@ import java.util.Arrays;
 import java.util.Map;
 
 import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
@@ -209,7 +213,7 @@ public class DeepUtil
             } else if (clazz.isArray()) {
                 handler = ARRAY_OBJECT_HANDLER;
             } else {
-                handler = new ReflectiveObjectHandler(clazz);
+                handler = new CompiledObjectHandler(clazz);
             }
             _objectHandlers.put(clazz, handler);
         }
@@ -309,10 +313,7 @@ public class DeepUtil
                     return null; // an error will have been logged
                 }
             }
-            // deep-copy the fields
-            for (int ii = 0; ii < _fields.length; ii++) {
-                _handlers[ii].copy(_fields[ii], source, dest);
-            }
+            copyFields(source, dest);
             return dest;
         }
 
@@ -353,6 +354,17 @@ public class DeepUtil
             return tsh.toString();
         }
 
+        /**
+         * Deep-copies the fields of the source object into the dest object.
+         */
+        protected void copyFields (Object source, Object dest)
+            throws IllegalAccessException
+        {
+            for (int ii = 0; ii < _fields.length; ii++) {
+                _handlers[ii].copy(_fields[ii], source, dest);
+            }
+        }
+
         /**
          * Sanitize a field name for toStringing.
          */
@@ -368,6 +380,198 @@ public class DeepUtil
         protected FieldHandler[] _handlers;
     }
 
+    /**
+     * Handles an object reflectively at first, then, once the class has been handled
+     * {@link #COMPILE_THRESHOLD} times, through method handle chains composed according to the same
+     * rules: one chain each for copy, equals and hash code, in which every field is read and
+     * written through a direct handle. This avoids the per-field access checks, boxing of
+     * primitive values and handler dispatch, and lets the VM compile each class's chains into code
+     * of their own. Classes that are rarely handled never pay the cost of composing the chains.
+     */
+    protected static class CompiledObjectHandler extends ReflectiveObjectHandler
+    {
+        public CompiledObjectHandler (Class<?> clazz)
+        {
+            super(clazz);
+        }
+
+        @Override
+        public boolean equals (Object o1, Object o2)
+            throws IllegalAccessException
+        {
+            Chains chains = getChains();
+            if (chains == null) {
+                return super.equals(o1, o2);
+            }
+            try {
+                return (boolean)chains.equals.invokeExact(o1, o2);
+            } catch (Throwable t) {
+                throw Throwables.propagate(t);
+            }
+        }
+
+        @Override
+        public int hashCode (Object object)
+            throws IllegalAccessException
+        {
+            Chains chains = getChains();
+            if (chains == null) {
+                return super.hashCode(object);
+            }
+            try {
+                return (int)chains.hashCode.invokeExact(object);
+            } catch (Throwable t) {
+                throw Throwables.propagate(t);
+            }
+        }
+
+        @Override
+        protected void copyFields (Object source, Object dest)
+            throws IllegalAccessException
+        {
+            Chains chains = getChains();
+            if (chains == null) {
+                super.copyFields(source, dest);
+                return;
+            }
+            try {
+                chains.copy.invokeExact(source, dest);
+            } catch (Throwable t) {
+                throw Throwables.propagate(t);
+            }
+        }
+
+        /**
+         * Returns the compiled chains, composing them if the class has just become hot, or null
+         * if the class should (still) be handled reflectively.
+         */
+        protected Chains getChains ()
+        {
+            Chains chains = _chains;
+            if (chains == null && _uses < COMPILE_THRESHOLD && ++_uses == COMPILE_THRESHOLD) {
+                // (racing threads may both compose the chains, which is harmless)
+                try {
+                    _chains = chains = new Chains(_fields);
+                } catch (ReflectiveOperationException e) {
+                    // we couldn't create handles for one of the fields, so stay reflective
+                    log.info("Couldn't compile deep handler.", "class",
+                        _fields[0].getDeclaringClass(), "error", e);
+                }
+            }
+            return chains;
+        }
+
+        /** The compiled chains, once composed. */
+        protected volatile Chains _chains;
+
+        /** The number of times the class has been handled (until it reaches the threshold). */
+        protected int _uses;
+    }
+
+    /**
+     * The method handle chains of a {@link CompiledObjectHandler}.
+     */
+    protected static class Chains
+    {
+        /** (source, dest) -> void: copies the fields from source to dest. */
+        public final MethodHandle copy;
+
+        /** (o1, o2) -> boolean: compares the fields of two objects. */
+        public final MethodHandle equals;
+
+        /** (object) -> int: computes the hash code of an object from its fields. */
+        public final MethodHandle hashCode;
+
+        /**
+         * Composes the chains for the supplied (accessible) fields.
+         *
+         * @exception ReflectiveOperationException if handles couldn't be created for one of the
+         * fields.
+         */
+        public Chains (Field[] fields)
+            throws ReflectiveOperationException
+        {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle copy = NOOP_COPY, equals = TRUE_EQUALS;
+            MethodHandle[] hashes = new MethodHandle[fields.length];
+            for (int ii = fields.length - 1; ii >= 0; ii--) {
+                Field field = fields[ii];
+                Class<?> type = field.getType();
+                Class<?> vtype = type.isPrimitive() ? type : Object.class;
+                MethodHandle getter = lookup.unreflectGetter(field).asType(
+                    MethodType.methodType(vtype, Object.class));
+                MethodHandle setter = lookup.unreflectSetter(field).asType(
+                    MethodType.methodType(void.class, Object.class, vtype));
+
+                // determine how the field's values are copied, compared and hashed
+                MethodHandle vcopy, vequals, vhash;
+                if (type.isPrimitive()) {
+                    // compare as boolean, long or double and hash as the widest type that
+                    // preserves the reflective handler's results
+                    Class<?> etype = (type == boolean.class) ? type :
+                        (type == float.class || type == double.class) ? double.class : long.class;
+                    Class<?> htype = (type == byte.class || type == char.class ||
+                        type == short.class) ? int.class : type;
+                    vcopy = null;
+                    vequals = findStatic(DeepUtil.class, "primitiveEquals",
+                        MethodType.methodType(boolean.class, etype, etype)).asType(
+                            MethodType.methodType(boolean.class, type, type));
+                    vhash = findStatic(DeepUtil.class, "primitiveHashCode",
+                        MethodType.methodType(int.class, htype)).asType(
+                            MethodType.methodType(int.class, type));
+                } else if (field.getAnnotation(Deep.class) != null) {
+                    vcopy = DEEP_COPY;
+                    vequals = DEEP_EQUALS;
+                    vhash = DEEP_HASH;
+                } else if (field.getAnnotation(Shallow.class) != null) {
+                    vcopy = null;
+                    vequals = SHALLOW_EQUALS;
+                    vhash = SHALLOW_HASH;
+                } else {
+                    vcopy = DEFAULT_COPY;
+                    vequals = DEFAULT_EQUALS;
+                    vhash = DEFAULT_HASH;
+                }
+
+                // (source, dest) -> value to store in dest
+                MethodHandle value;
+                if (vcopy == null) {
+                    value = MethodHandles.dropArguments(getter, 1, Object.class);
+                } else {
+                    // vcopy(source.field, dest.field, dest)
+                    value = MethodHandles.permuteArguments(
+                        MethodHandles.filterArguments(vcopy, 0, getter, getter),
+                        MethodType.methodType(Object.class, Object.class, Object.class), 0, 1, 1);
+                }
+                // (value, source, dest) -> dest.field = value
+                MethodHandle store = MethodHandles.permuteArguments(
+                    MethodHandles.dropArguments(setter, 2, Object.class),
+                    MethodType.methodType(void.class, vtype, Object.class, Object.class), 2, 0, 1);
+
+                // copy this field, then the ones that follow
+                copy = MethodHandles.foldArguments(
+                    copy, MethodHandles.foldArguments(store, value));
+
+                // compare this field and, if equal, the ones that follow
+                equals = MethodHandles.guardWithTest(
+                    MethodHandles.filterArguments(vequals, 0, getter, getter),
+                    equals, FALSE_EQUALS);
+
+                hashes[ii] = MethodHandles.filterReturnValue(getter, vhash);
+            }
+            this.copy = copy;
+            this.equals = equals;
+
+            // mix the field hashes in field order
+            MethodHandle hash = INITIAL_HASH;
+            for (MethodHandle fhash : hashes) {
+                hash = MethodHandles.permuteArguments(MethodHandles.filterArguments(
+                    MIX_HASH, 0, hash, fhash), HASH_TYPE, 0, 0);
+            }
+            this.hashCode = hash;
+        }
+    }
+
     /**
      * Copies or compares a field of a single type.
      */
@@ -778,36 +982,15 @@ public class DeepUtil
     protected static FieldHandler DEFAULT_OBJECT_FIELD_HANDLER = new FieldHandler() {
         public void copy (Field field, Object source, Object dest)
                 throws IllegalAccessException {
-            Object v1 = field.get(source), v2 = field.get(dest);
-            if (v1 == null) {
-                field.set(dest, null);
-            } else if (v1 instanceof Copyable) {
-                field.set(dest, ((Copyable)v1).copy(v2, dest));
-            } else {
-                field.set(dest, DeepUtil.copy(v1, v2, dest));
-            }
+            field.set(dest, defaultCopy(field.get(source), field.get(dest), dest));
         }
         public boolean equals (Field field, Object o1, Object o2)
                 throws IllegalAccessException {
-            Object v1 = field.get(o1), v2 = field.get(o2);
-            if (v1 == null) {
-                return v2 == null;
-            } else if (v1.getClass().isArray()) {
-                return DeepUtil.equals(v1, v2);
-            } else {
-                return v1.equals(v2);
-            }
+            return defaultEquals(field.get(o1), field.get(o2));
         }
         public int hashCode (Field field, Object object)
                 throws IllegalAccessException {
-            Object value = field.get(object);
-            if (value == null) {
-                return 0;
-            } else if (value.getClass().isArray()) {
-                return DeepUtil.hashCode(value);
-            } else {
-                return value.hashCode();
-            }
+            return defaultHashCode(field.get(object));
         }
     };
 
@@ -842,4 +1025,192 @@ public class DeepUtil
             return System.identityHashCode(field.get(object));
         }
     };
+
+    /**
+     * Copies the value of a field without annotations.
+     */
+    protected static Object defaultCopy (Object v1, Object v2, Object dest)
+    {
+        if (v1 == null) {
+            return null;
+        } else if (v1 instanceof Copyable) {
+            return ((Copyable)v1).copy(v2, dest);
+        } else {
+            return DeepUtil.copy(v1, v2, dest);
+        }
+    }
+
+    /**
+     * Compares the values of a field without annotations.
+     */
+    protected static boolean defaultEquals (Object v1, Object v2)
+    {
+        if (v1 == null) {
+            return v2 == null;
+        } else if (v1.getClass().isArray()) {
+            return DeepUtil.equals(v1, v2);
+        } else {
+            return v1.equals(v2);
+        }
+    }
+
+    /**
+     * Hashes the value of a field without annotations.
+     */
+    protected static int defaultHashCode (Object value)
+    {
+        if (value == null) {
+            return 0;
+        } else if (value.getClass().isArray()) {
+            return DeepUtil.hashCode(value);
+        } else {
+            return value.hashCode();
+        }
+    }
+
+    /**
+     * Compares the values of a {@link Shallow} field.
+     */
+    protected static boolean shallowEquals (Object v1, Object v2)
+    {
+        return v1 == v2;
+    }
+
+    /**
+     * Compares primitive field values (after widening, if necessary).
+     */
+    protected static boolean primitiveEquals (boolean v1, boolean v2)
+    {
+        return v1 == v2;
+    }
+
+    /**
+     * Compares primitive field values (after widening, if necessary).
+     */
+    protected static boolean primitiveEquals (long v1, long v2)
+    {
+        return v1 == v2;
+    }
+
+    /**
+     * Compares primitive field values (after widening, if necessary).
+     */
+    protected static boolean primitiveEquals (double v1, double v2)
+    {
+        return v1 == v2;
+    }
+
+    /**
+     * Hashes a boolean field value.
+     */
+    protected static int primitiveHashCode (boolean value)
+    {
+        return value ? 1231 : 1237;
+    }
+
+    /**
+     * Hashes an int (or narrower integral) field value.
+     */
+    protected static int primitiveHashCode (int value)
+    {
+        return value;
+    }
+
+    /**
+     * Hashes a long field value.
+     */
+    protected static int primitiveHashCode (long value)
+    {
+        return (int)(value ^ (value >>> 32));
+    }
+
+    /**
+     * Hashes a float field value.
+     */
+    protected static int primitiveHashCode (float value)
+    {
+        return Float.floatToIntBits(value);
+    }
+
+    /**
+     * Hashes a double field value.
+     */
+    protected static int primitiveHashCode (double value)
+    {
+        return primitiveHashCode(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Combines a running hash code with that of the next field.
+     */
+    protected static int mixHashCode (int hash, int value)
+    {
+        return 31*hash + value;
+    }
+
+    /**
+     * Does nothing; the end of a compiled copy chain.
+     */
+    protected static void noopCopy (Object source, Object dest)
+    {
+        // nothing
+    }
+
+    /**
+     * Looks up one of our static methods for use in compiled handlers.
+     */
+    protected static MethodHandle findStatic (Class<?> clazz, String name, MethodType type)
+    {
+        try {
+            return MethodHandles.lookup().findStatic(clazz, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e); // shouldn't happen
+        }
+    }
+
+    /** The number of times a class is handled reflectively before its handler is compiled. */
+    protected static final int COMPILE_THRESHOLD = 64;
+
+    /** The type of compiled copy handles. */
+    protected static final MethodType COPY_TYPE =
+        MethodType.methodType(void.class, Object.class, Object.class);
+
+    /** The type of compiled equals handles. */
+    protected static final MethodType EQUALS_TYPE =
+        MethodType.methodType(boolean.class, Object.class, Object.class);
+
+    /** The type of compiled hash code handles. */
+    protected static final MethodType HASH_TYPE = MethodType.methodType(int.class, Object.class);
+
+    /** The type of field value copy handles: (source value, dest value, dest) -> value. */
+    protected static final MethodType VALUE_COPY_TYPE =
+        MethodType.methodType(Object.class, Object.class, Object.class, Object.class);
+
+    /** Compiled handler building blocks. */
+    protected static final MethodHandle NOOP_COPY =
+        findStatic(DeepUtil.class, "noopCopy", COPY_TYPE);
+    protected static final MethodHandle TRUE_EQUALS = MethodHandles.dropArguments(
+        MethodHandles.constant(boolean.class, true), 0, Object.class, Object.class);
+    protected static final MethodHandle FALSE_EQUALS = MethodHandles.dropArguments(
+        MethodHandles.constant(boolean.class, false), 0, Object.class, Object.class);
+    protected static final MethodHandle INITIAL_HASH = MethodHandles.dropArguments(
+        MethodHandles.constant(int.class, 1), 0, Object.class);
+    protected static final MethodHandle MIX_HASH = findStatic(DeepUtil.class, "mixHashCode",
+        MethodType.methodType(int.class, int.class, int.class));
+    protected static final MethodHandle DEFAULT_COPY =
+        findStatic(DeepUtil.class, "defaultCopy", VALUE_COPY_TYPE);
+    protected static final MethodHandle DEFAULT_EQUALS =
+        findStatic(DeepUtil.class, "defaultEquals", EQUALS_TYPE);
+    protected static final MethodHandle DEFAULT_HASH =
+        findStatic(DeepUtil.class, "defaultHashCode", HASH_TYPE);
+    protected static final MethodHandle DEEP_COPY =
+        findStatic(DeepUtil.class, "copy", VALUE_COPY_TYPE);
+    protected static final MethodHandle DEEP_EQUALS =
+        findStatic(DeepUtil.class, "equals", EQUALS_TYPE);
+    protected static final MethodHandle DEEP_HASH =
+        findStatic(DeepUtil.class, "hashCode", HASH_TYPE);
+    protected static final MethodHandle SHALLOW_EQUALS =
+        findStatic(DeepUtil.class, "shallowEquals", EQUALS_TYPE);
+    protected static final MethodHandle SHALLOW_HASH =
+        findStatic(System.class, "identityHashCode", HASH_TYPE);
 }
@@ -0,0 +1,159 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import com.samskivert.util.LRUHashMap;
+
+/**
+ * An {@link LRUHashMap} whose size is measured in bytes and whose budget is governed by a
+ * {@link CacheGovernor}. Lookups are recorded as hits or misses and flushed entries as evictions
+ * in the map's {@link CacheMeter}; owners should record the time taken to create entries after a
+ * miss via {@link CacheMeter#recordLoad}.
+ *
+ * <p> Like its superclass, the map is not thread safe; but its budget may be set from any thread,
+ * and is adopted the next time the map is accessed.
+ */
+public class GovernedLRUHashMap<K, V> extends LRUHashMap<K, V>
+    implements CacheGovernor.GovernedCache
+{
+    /**
+     * Creates a map with the specified name and budget (in bytes) and registers it with the
+     * default governor.
+     */
+    public GovernedLRUHashMap (String name, int budget, ItemSizer<V> sizer)
+    {
+        this(CacheGovernor.getDefault(), name, budget, sizer);
+    }
+
+    /**
+     * Creates a map with the specified name and budget (in bytes) and registers it with the
+     * supplied governor.
+     */
+    public GovernedLRUHashMap (
+        CacheGovernor governor, String name, int budget, ItemSizer<V> sizer)
+    {
+        super(budget, sizer);
+        _governor = governor;
+        _meter = new CacheMeter(name);
+        _budget = budget;
+        governor.register(this);
+    }
+
+    // documentation inherited from interface CacheGovernor.GovernedCache
+    public CacheMeter getMeter ()
+    {
+        return _meter;
+    }
+
+    // documentation inherited from interface CacheGovernor.GovernedCache
+    public long getWeight ()
+    {
+        return _size;
+    }
+
+    // documentation inherited from interface CacheGovernor.GovernedCache
+    public long getBudget ()
+    {
+        return _budget;
+    }
+
+    // documentation inherited from interface CacheGovernor.GovernedCache
+    public void setBudget (long budget)
+    {
+        _budget = (int)Math.min(budget, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Unregisters this map from its governor and clears it. This should be called when the map is
+     * discarded before the application exits.
+     */
+    public void dispose ()
+    {
+        _governor.unregister(this);
+        clear();
+    }
+
+    @Override
+    public void setMaxSize (int maxSize)
+    {
+        _budget = maxSize;
+        super.setMaxSize(maxSize);
+    }
+
+    @Override
+    public V get (Object key)
+    {
+        applyBudget();
+        V value = super.get(key);
+        if (value == null) {
+            _meter.recordMiss();
+        } else {
+            _meter.recordHit();
+        }
+        return value;
+    }
+
+    @Override
+    public V put (K key, V value)
+    {
+        applyBudget();
+        return super.put(key, value);
+    }
+
+    @Override
+    protected void flush ()
+    {
+        int osize = _delegate.size();
+        super.flush();
+        int evicted = osize - _delegate.size();
+        if (evicted > 0) {
+            for (int ii = 0; ii < evicted; ii++) {
+                _meter.recordEviction();
+            }
+            _governor.noteEviction();
+        }
+    }
+
+    /**
+     * Adopts our most recently assigned budget, if it has changed.
+     */
+    protected void applyBudget ()
+    {
+        int budget = _budget;
+        if (budget != _maxSize) {
+            super.setMaxSize(budget);
+        }
+    }
+
+    /** The governor that sets our budget. */
+    protected CacheGovernor _governor;
+
+    /** Records our statistics. */
+    protected CacheMeter _meter;
+
+    /** Our most recently assigned budget. */
+    protected volatile int _budget;
+}
@@ -29,7 +29,8 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.threerings.ClydeLog.log;
 
@@ -181,7 +182,8 @@ public class ReflectionUtil
                         break;
                     }
                 }
-            } else {
+            }
+            if (oclazz == null) {
                 oclazz = Void.class;
             }
             _oclasses.put(clazz, oclazz);
@@ -211,12 +213,13 @@ public class ReflectionUtil
     }
 
     /** Maps inner classes to their outer class reference fields. */
-    protected static HashMap<Class<?>, Field> _outers = new HashMap<Class<?>, Field>();
+    protected static Map<Class<?>, Field> _outers = new ConcurrentHashMap<Class<?>, Field>();
 
     /** Maps classes to their outer classes, or to {@link Void} if they are not inner classes. */
-    protected static HashMap<Class<?>, Class<?>> _oclasses = new HashMap<Class<?>, Class<?>>();
+    protected static Map<Class<?>, Class<?>> _oclasses =
+        new ConcurrentHashMap<Class<?>, Class<?>>();
 
     /** Maps classes to their default constructors. */
-    protected static HashMap<Class<?>, Constructor<?>> _ctors =
-            new HashMap<Class<?>, Constructor<?>>();
+    protected static Map<Class<?>, Constructor<?>> _ctors =
+        new ConcurrentHashMap<Class<?>, Constructor<?>>();
 }
@@ -31,6 +31,7 @@ import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
 import com.samskivert.util.Invoker;
 
+import com.samskivert.io.PersistenceException;
 import com.samskivert.jdbc.RepositoryUnit;
 
 import com.threerings.presents.annotation.MainInvoker;
@@ -171,7 +172,7 @@ public class SceneRegistry
         final int fsceneId = sceneId;
         _invoker.postUnit(new RepositoryUnit("resolveScene(" + sceneId + ")") {
             @Override public void invokePersist () throws Exception {
-                _model = _screp.loadSceneModel(fsceneId);
+                _model = loadSceneModel(fsceneId);
                 _updates = _screp.loadUpdates(fsceneId);
                 _extras = _screp.loadExtras(fsceneId, _model);
             }
@@ -237,6 +238,17 @@ public class SceneRegistry
         return newList;
     }
 
+    /**
+     * Loads the model for the specified scene. This is called on the invoker thread during scene
+     * resolution and may be overridden by registries that wish to avoid going to the repository
+     * for every scene.
+     */
+    protected SceneModel loadSceneModel (int sceneId)
+        throws PersistenceException, NoSuchSceneException
+    {
+        return _screp.loadSceneModel(sceneId);
+    }
+
     /**
      * Called when the scene resolution has completed successfully.
      */